@@ -22,6 +22,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +39,8 @@ public class Configurer {
 	
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 	
-	protected static final Map<Class<?>,Configurer> configurers = new HashMap<>();
+	// apps are configured on more than one thread at once
+	protected static final ConcurrentMap<Class<?>,Configurer> configurers = new ConcurrentHashMap<>();
 	
 	protected final Class<?> klass;
 	protected final List<ConfOption> options = new ArrayList<>();
@@ -297,8 +300,8 @@ public class Configurer {
 	public static Configurer findConfigurer(Class<?> klass) {
 		Configurer configurer = configurers.get(klass);
 		if (configurer == null) {
-			configurer = new Configurer(klass);
-			configurers.put(klass, configurer);
+			Configurer existing = configurers.putIfAbsent(klass, configurer = new Configurer(klass));
+			if (existing != null) configurer = existing;
 		}
 		return configurer;
 	}
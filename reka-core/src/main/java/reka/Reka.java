@@ -35,6 +35,7 @@ public class Reka {
 	public static interface SharedExecutors {
 		public static final ExecutorService general = Executors.newCachedThreadPool(new DaemonThreadFactory("reka-general"));
 		public static final ScheduledExecutorService scheduled = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("reka-scheduled"));
+		public static final ExecutorService parallel = Executors.newWorkStealingPool();
 	}
 	
 	private static final Logger log = LoggerFactory.getLogger(Reka.class);
@@ -1,6 +1,7 @@
 package reka.app;
 
 import static java.lang.String.format;
+import static java.util.Collections.emptySet;
 import static java.util.Comparator.naturalOrder;
 import static java.util.stream.Collectors.toList;
 import static reka.util.Util.unchecked;
@@ -9,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -22,6 +24,7 @@ import reka.flow.builder.Flows;
 import reka.identity.Identity;
 import reka.identity.IdentityKey;
 import reka.identity.IdentityStoreReader;
+import reka.module.setup.ModuleUndeployComponent;
 import reka.module.setup.NetworkInfo;
 import reka.module.setup.StatusProvider;
 import reka.util.AsyncShutdown;
@@ -47,6 +50,8 @@ public class Application implements AsyncShutdown {
 	private final List<ApplicationComponent> components = new ArrayList<>();
 	private final List<StatusProvider> statusProviders = new ArrayList<>();
 	
+	private final Set<Path> reusedModules;
+	
 	public Application(
 			Identity identity,
 			Path name, 
@@ -57,7 +62,8 @@ public class Application implements AsyncShutdown {
 			List<NetworkInfo> network, 
 			FlowVisualizer initializerVisualizer,
 			List<ApplicationComponent> components,
-			List<StatusProvider> statusProviders) {
+			List<StatusProvider> statusProviders,
+			Set<Path> reusedModules) {
 		this.identity = identity;
 		this.name = name;
 		this.fullName = name.slashes();
@@ -70,6 +76,7 @@ public class Application implements AsyncShutdown {
 		this.components.addAll(components);
 		this.statusProviders.addAll(statusProviders);
 		this.statusProviders.add(new ApplicationStatusProvider());
+		this.reusedModules = reusedModules;
 		this.network.sort(naturalOrder());
 	}
 	
@@ -155,6 +162,13 @@ public class Application implements AsyncShutdown {
 		return statusProviders;
 	}
 	
+	/**
+	 * The modules that were carried over running from the previous version.
+	 */
+	public Set<Path> reusedModules() {
+		return reusedModules;
+	}
+	
 	public FlowVisualizer initializerVisualizer() {
 		return initializerVisualizer;
 	}
@@ -176,8 +190,16 @@ public class Application implements AsyncShutdown {
 	}
 
 	public void undeploy() {
+		undeploy(emptySet());
+	}
+	
+	/**
+	 * Undeploys everything except the resources of the modules in keep, which the next version
+	 * has taken over.
+	 */
+	public void undeploy(Set<Path> keep) {
 		FutureResult f = AsyncShutdown.resultFuture();
-		shutdown(f);
+		shutdown(keep, f);
 		try {
 			f.future().get(10, TimeUnit.SECONDS);
 		} catch (InterruptedException | ExecutionException | TimeoutException e) {
@@ -187,7 +209,14 @@ public class Application implements AsyncShutdown {
 
 	@Override
 	public void shutdown(Result res) {
+		shutdown(emptySet(), res);
+	}
+	
+	private void shutdown(Set<Path> keep, Result res) {
 		components.forEach(component -> { 
+			if (component instanceof ModuleUndeployComponent && keep.contains(((ModuleUndeployComponent) component).path())) {
+				return;
+			}
 			try {
 				component.undeploy();
 			} catch (Throwable t) {
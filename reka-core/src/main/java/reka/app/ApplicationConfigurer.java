@@ -42,7 +42,9 @@ import reka.core.config.SequenceConfigurer;
 import reka.data.Data;
 import reka.data.DiffContentConsumer.DiffContentType;
 import reka.data.MutableData;
+import reka.data.memory.MutableDataProvider;
 import reka.data.memory.MutableMemoryData;
+import reka.data.persistent.PersistentData;
 import reka.flow.Flow;
 import reka.flow.FlowSegment;
 import reka.flow.FlowTest;
@@ -61,6 +63,7 @@ import reka.module.RootModule;
 import reka.module.setup.AppSetup.ApplicationCheck;
 import reka.module.setup.ApplicationSetup;
 import reka.module.setup.ModuleConfigurer;
+import reka.module.setup.ModuleUndeployComponent;
 import reka.module.setup.Trigger;
 import reka.module.setup.TriggerFlows;
 import reka.util.Path;
@@ -84,6 +87,8 @@ public class ApplicationConfigurer implements ErrorReporter {
     
     private final MutableData meta = MutableMemoryData.create();
     
+    private MutableDataProvider<?> dataProvider;
+    
     public ApplicationConfigurer(AppDirs dirs, ModuleManager modules) {
     	this.modules = modules;
         rootModule = new RootModule(dirs, modules.modules());
@@ -100,6 +105,20 @@ public class ApplicationConfigurer implements ErrorReporter {
     	meta.merge(configToData(val.body()));
     }
     
+    @Conf.At("data")
+    public void data(String val) {
+    	switch (val) {
+    	case "memory":
+    		dataProvider = MutableMemoryData.INSTANCE;
+    		break;
+    	case "persistent":
+    		dataProvider = PersistentData.INSTANCE;
+    		break;
+    	default:
+    		checkConfig(false, "data must be one of memory or persistent, not %s", val);
+    	}
+    }
+    
     @Conf.EachUnmatched
     public void use(Config config) {
     	log.info("setting up module {}{}", config.key(), config.hasValue() ? " " + config.valueAsString() : "");
@@ -144,17 +163,26 @@ public class ApplicationConfigurer implements ErrorReporter {
     
     private void checkValid(IdentityAndVersion idv, Map<Path,IdentityStore> stores) {
     	ApplicationSetup setup = ModuleConfigurer.setup(idv, rootModule, stores);
-    	DefaultConfigurerProvider configurerProvider = new DefaultConfigurerProvider(setup.providers);
-    	setup.triggers.forEach(triggers -> triggers.get().forEach(trigger -> {
-    		trigger.supplier().apply(configurerProvider).bind(trigger.base(), triggers.ctx()).get();
-    	}));
-    	defs.forEach(config -> {
-    		configure(new SequenceConfigurer(configurerProvider), config).bind().get();
-    	});
-    	testConfigs.forEach(config -> {
-    		configure(new TestConfigurer(configurerProvider), config).build();
-    	});
-    	runChecks(idv.identity(), setup);
+    	try {
+	    	DefaultConfigurerProvider configurerProvider = new DefaultConfigurerProvider(setup.providers);
+	    	setup.triggers.forEach(triggers -> triggers.get().forEach(trigger -> {
+	    		trigger.supplier().apply(configurerProvider).bind(trigger.base(), triggers.ctx()).get();
+	    	}));
+	    	defs.forEach(config -> {
+	    		configure(new SequenceConfigurer(configurerProvider), config).bind().get();
+	    	});
+	    	testConfigs.forEach(config -> {
+	    		configure(new TestConfigurer(configurerProvider), config).build();
+	    	});
+	    	runChecks(idv.identity(), setup);
+    	} finally {
+    		// the modules made things in setup() just to be checked, but the stores are the real ones
+    		setup.components.forEach(component -> {
+    			if (!(component instanceof ModuleUndeployComponent)) {
+    				component.undeploy();
+    			}
+    		});
+    	}
     }
     
     private void runChecks(Identity identity, ApplicationSetup setup) {
@@ -192,11 +220,18 @@ public class ApplicationConfigurer implements ErrorReporter {
     }
     
     public CompletableFuture<Application> build(Identity identity, int version, Map<Path,IdentityStoreReader> previousStores) {
+    	return build(identity, version, previousStores, new DeployTimings());
+    }
+    
+    public CompletableFuture<Application> build(Identity identity, int version, Map<Path,IdentityStoreReader> previousStores, DeployTimings timings) {
     	return safelyCompletable(future -> {
 
 			Set<Path> modulePaths = rootModule.modulePaths();
 			Set<Path> previousModulePaths = previousStores.keySet();
 			
+			Map<Path,String> configHashes = ModuleConfigurer.configHashes(rootModule);
+			Set<Path> reuse = new HashSet<>();
+			
 			Map<Path,IdentityStore> stores = new HashMap<>();
 			Sets.union(modulePaths, previousModulePaths).forEach(path -> {
 				
@@ -210,19 +245,38 @@ public class ApplicationConfigurer implements ErrorReporter {
 					stores.put(path, ConcurrentIdentityStore.create());
 				} else {
 					// changed
-					stores.put(path, ConcurrentIdentityStore.createFrom(previousStores.get(path)));
+					IdentityStoreReader previousStore = previousStores.get(path);
+					String hash = configHashes.get(path);
+					if (hash != null && hash.equals(previousStore.lookup(ModuleConfigurer.CONFIG_HASH).orElse(null))) {
+						reuse.add(path);
+					}
+					stores.put(path, ConcurrentIdentityStore.createFrom(previousStore));
 				}
 				
 			});
 			
-			stores.values().forEach(store -> store.put(Application.IDENTITY, identity));
+			if (!reuse.isEmpty()) {
+				log.info("reusing unchanged modules {}", reuse.stream().map(Path::slashes).sorted().collect(joining(", ")));
+			}
+			
+			stores.forEach((path, store) -> {
+				store.put(Application.IDENTITY, identity);
+				String hash = configHashes.get(path);
+				if (hash != null) {
+					store.put(ModuleConfigurer.CONFIG_HASH, hash);
+				}
+			});
     		
+    		long validateStarted = timings.start();
     		checkValid(IdentityAndVersion.create(identity, version), stores);
+    		timings.record("validate", validateStarted);
+    		
+    		long setupStarted = timings.start();
     		
-    		FlowBuilderGroup initflowBuilders = new FlowBuilderGroup();
-    		FlowBuilderGroup flowBuilders = new FlowBuilderGroup();
+    		FlowBuilderGroup initflowBuilders = new FlowBuilderGroup().dataProvider(dataProvider);
+    		FlowBuilderGroup flowBuilders = new FlowBuilderGroup().dataProvider(dataProvider);
     		
-	    	ApplicationSetup setup = ModuleConfigurer.setup(IdentityAndVersion.create(identity, version), rootModule, stores);
+	    	ApplicationSetup setup = ModuleConfigurer.setup(IdentityAndVersion.create(identity, version), rootModule, stores, reuse);
 	    	
 	    	runChecks(identity, setup);
 	    	runPortCheckers(identity, setup);
@@ -266,7 +320,9 @@ public class ApplicationConfigurer implements ErrorReporter {
 	    	
 	    	// ok, initialize this thing!
 	    	
-	    	ApplicationInitializer appi = new ApplicationInitializer(future, identity, flowBuilders, setup, tests);
+	    	timings.record("setup", setupStarted);
+	    	
+	    	ApplicationInitializer appi = new ApplicationInitializer(future, identity, flowBuilders, setup, tests, timings);
 	    	
 	    	log.debug("initializing app");
 	    	
@@ -285,17 +341,23 @@ public class ApplicationConfigurer implements ErrorReporter {
     	private final ApplicationSetup setup;
     	private final Map<Path,FlowTest> tests;
     	
+    	private final DeployTimings timings;
+    	private final long initializeStarted;
+    	
     	public ApplicationInitializer(
 				CompletableFuture<Application> future, 
 				Identity identity,
 				FlowBuilderGroup flowBuilders,
 				ApplicationSetup setup, 
-				Map<Path, FlowTest> tests) {
+				Map<Path, FlowTest> tests,
+				DeployTimings timings) {
 			this.future = future;
 			this.identity = identity;
 			this.flowBuilders = flowBuilders;
 			this.setup = setup;
 			this.tests = tests;
+			this.timings = timings;
+			this.initializeStarted = timings.start();
 		}
     	
     	private final Logger log = LoggerFactory.getLogger(getClass());
@@ -314,6 +376,7 @@ public class ApplicationConfigurer implements ErrorReporter {
 		
 		@Override
 		public void ok(MutableData data) {
+			timings.record("initialize", initializeStarted);
 			log.debug("initialized app");
 			
 			log.debug("NOT building init flows");
@@ -331,12 +394,17 @@ public class ApplicationConfigurer implements ErrorReporter {
 	    		
 	    		log.debug("building main flows");
 	    		
+	    		long flowsStarted = timings.start();
 				Flows flows = flowBuilders.build();
+				timings.record("flows", flowsStarted);
 				
 				setup.flows(flows);
 				
+				long testsStarted = timings.start();
 				runTests(flows, tests, identity).whenComplete((ignored, ex) -> {
 					
+					timings.record("tests", testsStarted);
+					
 					if (ex != null) {
 						future.completeExceptionally(ex);
 						return;
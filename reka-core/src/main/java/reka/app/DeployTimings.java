@@ -0,0 +1,63 @@
+package reka.app;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import reka.data.MutableData;
+
+/**
+ * How long each phase of a deploy took, in the order they happened.
+ */
+public class DeployTimings {
+
+	private final long started = System.nanoTime();
+	private final Map<String,Long> phases = new LinkedHashMap<>();
+	private volatile long total = -1;
+
+	public long start() {
+		return System.nanoTime();
+	}
+
+	public void record(String phase, long startedAt) {
+		long nanos = System.nanoTime() - startedAt;
+		synchronized (phases) {
+			phases.merge(phase, nanos, Long::sum);
+		}
+	}
+
+	public void finish() {
+		total = System.nanoTime() - started;
+	}
+
+	public long millis(String phase) {
+		synchronized (phases) {
+			Long nanos = phases.get(phase);
+			return nanos != null ? NANOSECONDS.toMillis(nanos) : -1;
+		}
+	}
+
+	public MutableData writeTo(MutableData data) {
+		synchronized (phases) {
+			phases.forEach((phase, nanos) -> data.putLong(phase, NANOSECONDS.toMillis(nanos)));
+		}
+		if (total >= 0) {
+			data.putLong("total", NANOSECONDS.toMillis(total));
+		}
+		return data;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		synchronized (phases) {
+			phases.forEach((phase, nanos) -> {
+				if (sb.length() > 0) sb.append(", ");
+				sb.append(phase).append(' ').append(NANOSECONDS.toMillis(nanos)).append("ms");
+			});
+		}
+		return sb.toString();
+	}
+
+}
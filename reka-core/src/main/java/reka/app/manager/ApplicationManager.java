@@ -20,12 +20,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.concurrent.BlockingDeque;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -40,6 +39,7 @@ import reka.EventLogger;
 import reka.Reka;
 import reka.app.Application;
 import reka.app.ApplicationConfigurer;
+import reka.app.DeployTimings;
 import reka.app.IdentityAndVersion;
 import reka.config.NavigableConfig;
 import reka.config.Source;
@@ -100,7 +100,14 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 		void error(Identity identity, Throwable t);
 	}
 	
-	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("reka-manager"));
+	public static final int DEFAULT_MAX_CONCURRENT_TASKS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	
+	private static final Object STATUS_KEY = new Object();
+	
+	private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("reka-manager"));
+	
+	// tasks for the same app path run one after the other, different apps can run at the same time
+	private final KeyedSerialExecutor<Object> tasks;
 	
 	private final Logger log = LoggerFactory.getLogger(getClass());
 	private final EventLogger eventLogger = new EventLogger("/tmp/rekalog");
@@ -114,23 +121,34 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 	
 	private final ConcurrentMap<Identity,List<ModuleStatusReport>> status = new ConcurrentHashMap<>();
 	
-	private final List<EventListener> listeners = Collections.synchronizedList(new ArrayList<>());
+	// status runs alongside deploys, it leaves these alone as their modules are going away
+	private final Set<Identity> undeploying = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<Identity,DeployTimings> timings = new ConcurrentHashMap<>();
 	
-	private final BlockingDeque<AsyncApplicationTask> q = new LinkedBlockingDeque<>();
+	private final List<EventListener> listeners = Collections.synchronizedList(new ArrayList<>());
 	
 	private final AsyncApplicationTask UPDATE_STATUS = new UpdateStatus().async();
+	private final AtomicBoolean statusQueued = new AtomicBoolean();
 	private final ScheduledFuture<?> scheduledStatus;
 
 	public ApplicationManager(BaseDirs dirs, ModuleManager moduleManager) {
+		this(dirs, moduleManager, DEFAULT_MAX_CONCURRENT_TASKS);
+	}
+	
+	public ApplicationManager(BaseDirs dirs, ModuleManager moduleManager, int maxConcurrentTasks) {
 		this.basedirs = dirs;
 		this.moduleManager = moduleManager;
-		executor.submit(new WaitForNextTask());
-		scheduledStatus = Reka.SharedExecutors.scheduled.scheduleAtFixedRate(() -> q.push(UPDATE_STATUS), 1, 1, TimeUnit.SECONDS);
+		this.tasks = new KeyedSerialExecutor<>(executor, maxConcurrentTasks);
+		scheduledStatus = Reka.SharedExecutors.scheduled.scheduleAtFixedRate(() -> {
+			if (statusQueued.compareAndSet(false, true)) {
+				submit(STATUS_KEY, UPDATE_STATUS);
+			}
+		}, 1, 1, TimeUnit.SECONDS);
 		emitSystemMessage("started");
 	}
 	
 	public void deployConfig(Path path, int version, NavigableConfig config, File constrainTo, DeploySubscriber subscriber) {
-		q.push(new DeployApplication(path, version, config, constrainTo, subscriber));
+		submit(path, new DeployApplication(path, version, config, constrainTo, subscriber));
 	}
 	
 	public void deploySource(Path path, int version, Source source, DeploySubscriber subscriber) {
@@ -140,7 +158,7 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 	}
 	
 	public void undeploy(Path path) {
-		q.push(new UndeployApplication(path));
+		submit(path, new UndeployApplication(path));
 	}
 	
 	public void addListener(Flow flow, EventType... eventTypes) {
@@ -148,12 +166,7 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 	}
 	
 	public void removeListener(Flow flow) {
-		Iterator<EventListener> it = listeners.iterator();
-		while (it.hasNext()) {
-			if (it.next().flow.equals(flow)) {
-				it.remove();
-			}
-		}
+		listeners.removeIf(listener -> listener.flow.equals(flow));
 	}
 	
 	public static final Path INITIALIZER_VISUALIZER_NAME = slashes("app/initialize");
@@ -181,6 +194,10 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 		return Optional.ofNullable(status.get(identity));
 	}
 	
+	public Optional<DeployTimings> timingsFor(Identity identity) {
+		return Optional.ofNullable(timings.get(identity));
+	}
+	
 	public int version(Identity identity) {
 		AtomicInteger v = versions.get(identity);
 		return v != null ? v.get() : 0;
@@ -208,13 +225,17 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 
 		@Override
 		public void run() {
+			statusQueued.set(false);
 			Map<Identity, List<ModuleStatusReport>> changed = new HashMap<>();
 			applications.forEach((identity, app) -> {
+				if (undeploying.contains(identity)) return;
 				List<ModuleStatusReport> appStatus = reportsFor(app);
-				List<ModuleStatusReport> previousAppStatus = status.put(identity, appStatus);
-				if (previousAppStatus != null && !appStatus.equals(previousAppStatus)) {
-					changed.put(identity, appStatus);
-				}
+				// only if it is still the deployed app, it might have been redeployed or undeployed meanwhile
+				status.computeIfPresent(identity, (id, previousAppStatus) -> {
+					if (applications.get(id) != app || undeploying.contains(id)) return previousAppStatus;
+					if (!appStatus.equals(previousAppStatus)) changed.put(id, appStatus);
+					return appStatus;
+				});
 			});
 			if (!changed.isEmpty()) {
 				notifyStatusListeners(changed);
@@ -243,13 +264,16 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 				res.complete();
 				return;
 			};
+			undeploying.add(identity);
 			app.shutdown(new Result(){
 
 				@Override
 				public void complete() {
+					applications.remove(identity);
 					status.remove(identity);
+					timings.remove(identity);
 					versions.remove(identity);
-					applications.remove(identity);
+					undeploying.remove(identity);
 					log.info("undeployed [{}]", app.fullName());
 					notifyUndeployListeners(identity, app);
 					res.complete();
@@ -258,6 +282,7 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 				@Override
 				public void completeExceptionally(Throwable t) {
 					// should I do anything here?
+					undeploying.remove(identity);
 					res.completeExceptionally(t);
 				}
 				
@@ -274,6 +299,9 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 		private final File constrainTo;
 		private final DeploySubscriber subscriber;
 		
+		private final DeployTimings deployTimings = new DeployTimings();
+		private final long queuedAt = deployTimings.start();
+		
 		public DeployApplication(Path appPath, int version, NavigableConfig originalConfig, File constrainTo, DeploySubscriber subscriber) {
 			this.appPath = appPath;
 			this.incomingVersion = version;
@@ -284,7 +312,9 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 
 		@Override
 		public void run(TaskResult res) {
-						
+			
+			deployTimings.record("queued", queuedAt);
+			
 			Identity identity = identities.computeIfAbsent(appPath, unused -> Identity.create(appPath.slashes()));
 			
 			int version = incomingVersion > 0 ? incomingVersion : nextVersion(identity);
@@ -305,6 +335,8 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 				
 				log.info("deploying {} v{}", identity, version);
 				
+				long configStarted = deployTimings.start();
+				
 				NavigableConfig config = moduleManager.processor().process(originalConfig);
 				
 				AppDirs dirs = basedirs.resolve(appPath, version);
@@ -312,6 +344,8 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 				dirs.mkdirs();
 				
 				ApplicationConfigurer configurer = configure(new ApplicationConfigurer(dirs, moduleManager), config);
+				
+				deployTimings.record("config", configStarted);
 
 				
 				Map<Path,IdentityStoreReader> previousStores = previous.isPresent() ? previous.get().stores() : new HashMap<>();
@@ -320,15 +354,17 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 					unpause.set(p.pause());
 				});
 				
-				configurer.build(identity, version, previousStores).whenComplete((app, t) -> {
+				configurer.build(identity, version, previousStores, deployTimings).whenComplete((app, t) -> {
 					try {
 						if (app != null) {
+							deployTimings.finish();
+							timings.put(identity, deployTimings);
 							applications.put(identity, app);
-							previous.ifPresent(Application::undeploy);
+							previous.ifPresent(p -> p.undeploy(app.reusedModules()));
 							List<ModuleStatusReport> reports = reportsFor(app);
 							status.put(identity, reports);
-							log.info("deployed [{}] listening on {}", app.fullName(), app.network().stream().map(Object::toString).collect(joining(", ")));
-							notifyDeployListeners(identity, app, reports);
+							log.info("deployed [{}] listening on {} ({})", app.fullName(), app.network().stream().map(Object::toString).collect(joining(", ")), deployTimings);
+							notifyDeployListeners(identity, app, reports, deployTimings);
 							subscriber.ok(identity, version, app);
 							versions.putIfAbsent(identity, new AtomicInteger(1));
 							versions.get(identity).set(version);
@@ -352,11 +388,20 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 	}
 	
 	private static List<ModuleStatusReport> reportsFor(Application app) {
-		List<ModuleStatusReport> appStatus = app.statusProviders().stream().map(StatusProvider::report).collect(toList());
+		List<ModuleStatusReport> appStatus = app.statusProviders().stream().map(ApplicationManager::reportFor).collect(toList());
 		appStatus.sort(comparing(ModuleStatusReport::name));
 		return appStatus;
 	}
 	
+	private static ModuleStatusReport reportFor(StatusProvider provider) {
+		try {
+			return provider.report();
+		} catch (Throwable t) {
+			MutableData data = MutableMemoryData.create().putString("error", t.getMessage() != null ? t.getMessage() : t.getClass().getName());
+			return new ModuleStatusReport(provider.name(), provider.alias(), provider.version(), false, data);
+		}
+	}
+	
 	private static class EventListener {
 		private final Flow flow;
 		private final EnumSet<EventType> types;
@@ -366,9 +411,11 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 		}
 	}
 
-	private void notifyDeployListeners(Identity identity, Application app, List<ModuleStatusReport> reports) {
-		emit(EventType.deploy, AdminUtils.putAppDetails(MutableMemoryData.create(), app, Optional.of(reports))
-				.putString("id", identity.name()));
+	private void notifyDeployListeners(Identity identity, Application app, List<ModuleStatusReport> reports, DeployTimings deployTimings) {
+		MutableData data = AdminUtils.putAppDetails(MutableMemoryData.create(), app, Optional.of(reports))
+				.putString("id", identity.name());
+		deployTimings.writeTo(data.createMapAt("timings"));
+		emit(EventType.deploy, data);
 	}
 	
 	private void notifyUndeployListeners(Identity identity, Application app) {
@@ -452,47 +499,20 @@ public class ApplicationManager implements Iterable<Entry<Identity,Application>>
 		void run(TaskResult res) throws Exception;
 	}
 	
-	private class WaitForNextTask implements Runnable {
-
-		@Override
-		public void run() {
-			try {
-				submit(q.take());
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	private void submit(Object key, AsyncApplicationTask task) {
+		tasks.submit(key, done -> task.run(new TaskResult() {
+			
+			@Override
+			public void complete() {
+				done.run();
 			}
-		}
-		
-	}
-	
-	private void submit(AsyncApplicationTask task) {
-		executor.submit(() -> {
-			AtomicBoolean done = new AtomicBoolean(false);
-			try {
-				task.run(new TaskResult() {
-
-					
-					@Override
-					public void complete() {
-						if (done.compareAndSet(false, true)) {
-							executor.submit(new WaitForNextTask());
-						}
-					}
-					
-					@Override
-					public void completeExceptionally(Throwable t) {
-						if (done.compareAndSet(false, true)) {
-							executor.submit(new WaitForNextTask());
-						}
-					}
-					
-				});
-			} catch (Throwable t) {
-				if (done.compareAndSet(false, true)) {
-					executor.submit(new WaitForNextTask());
-				}
+			
+			@Override
+			public void completeExceptionally(Throwable t) {
+				done.run();
 			}
-		});
+			
+		}));
 	}
 	
 }
@@ -0,0 +1,111 @@
+package reka.app.manager;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs asynchronous tasks one at a time per key, but different keys in parallel.
+ *
+ * A task holds its key (and one of the max running slots) until it calls done, not just until
+ * it returns. Keys get a slot in the order their work arrived.
+ */
+public class KeyedSerialExecutor<K> {
+
+	public static interface Task {
+		void run(Runnable done) throws Exception;
+	}
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Executor executor;
+	private final int maxRunning;
+
+	private final Object lock = new Object();
+	private final Map<K,Deque<Task>> queued = new HashMap<>();
+	private final Set<K> running = new HashSet<>();
+	private final Deque<K> ready = new ArrayDeque<>();
+
+	public KeyedSerialExecutor(Executor executor, int maxRunning) {
+		checkArgument(maxRunning > 0, "must be able to run at least one task");
+		this.executor = executor;
+		this.maxRunning = maxRunning;
+	}
+
+	public void submit(K key, Task task) {
+		synchronized (lock) {
+			Deque<Task> tasks = queued.computeIfAbsent(key, unused -> new ArrayDeque<>());
+			tasks.add(task);
+			if (tasks.size() == 1 && !running.contains(key)) {
+				ready.add(key);
+			}
+		}
+		dispatch();
+	}
+
+	public int running() {
+		synchronized (lock) {
+			return running.size();
+		}
+	}
+
+	public int queued() {
+		synchronized (lock) {
+			return queued.values().stream().mapToInt(Deque::size).sum();
+		}
+	}
+
+	private void dispatch() {
+		List<Runnable> toRun = new ArrayList<>();
+		synchronized (lock) {
+			while (running.size() < maxRunning && !ready.isEmpty()) {
+				K key = ready.poll();
+				Task task = queued.get(key).poll();
+				running.add(key);
+				toRun.add(() -> run(key, task));
+			}
+		}
+		toRun.forEach(executor::execute);
+	}
+
+	private void run(K key, Task task) {
+		AtomicBoolean done = new AtomicBoolean(false);
+		Runnable finished = () -> {
+			if (done.compareAndSet(false, true)) {
+				finished(key);
+			}
+		};
+		try {
+			task.run(finished);
+		} catch (Throwable t) {
+			log.error("task for {} failed", key, t);
+			finished.run();
+		}
+	}
+
+	private void finished(K key) {
+		synchronized (lock) {
+			running.remove(key);
+			Deque<Task> tasks = queued.get(key);
+			if (tasks.isEmpty()) {
+				queued.remove(key);
+			} else {
+				ready.add(key);
+			}
+		}
+		dispatch();
+	}
+
+}
@@ -20,6 +20,7 @@ import reka.data.content.types.FileBinaryContent;
 import reka.data.content.types.IntegerContent;
 import reka.data.content.types.LongContent;
 import reka.data.content.types.NullContent;
+import reka.data.content.types.StreamContent;
 import reka.data.content.types.UTF8Content;
 
 public class Contents {
@@ -77,6 +78,10 @@ public class Contents {
 		return new ByteArrayBinaryContent(contentType, BinaryContent.Encoding.valueOf(encoding.toUpperCase()), bytes);
 	}
 	
+	public static Content stream(String contentType, StreamContent.Source source) {
+		return new StreamContent(contentType, source);
+	}
+	
 	public static byte[] writeValueToByteArray(Content content) {
 		try {
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -23,14 +23,10 @@ public class ByteBufferBinaryContent extends BinaryContent {
 
 	@Override
 	protected byte[] bytes() {
-		buffer.mark();
-		try {
-			byte[] result = new byte[buffer.remaining()];
-			buffer.get(result);
-			return result;
-		} finally {
-			buffer.reset();
-		}
+		// the buffer might be shared, so don't move its position
+		byte[] result = new byte[buffer.remaining()];
+		buffer.duplicate().get(result);
+		return result;
 	}
 
 	@Override
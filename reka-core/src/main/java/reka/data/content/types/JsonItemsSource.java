@@ -0,0 +1,100 @@
+package reka.data.content.types;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.util.MinimalPrettyPrinter;
+
+import reka.util.JsonProvider;
+
+/**
+ * A {@link StreamContent.Source} for a run of json items, e.g. rows or directory entries,
+ * written a few at a time as one json array or as newline delimited json.
+ */
+public abstract class JsonItemsSource implements StreamContent.Source {
+
+	private final boolean array;
+	private final int itemsPerChunk;
+
+	private final SwitchableOutputStream target = new SwitchableOutputStream();
+	private JsonGenerator generator;
+	private long count;
+
+	/**
+	 * @param array true for a json array, false for one item per line
+	 */
+	protected JsonItemsSource(boolean array, int itemsPerChunk) {
+		this.array = array;
+		this.itemsPerChunk = itemsPerChunk;
+	}
+
+	/**
+	 * Writes the next item.
+	 *
+	 * @return false if there are no more
+	 */
+	protected abstract boolean writeItem(JsonGenerator json) throws IOException;
+
+	/**
+	 * Written before the array, e.g. to open an object around it.
+	 */
+	protected void writeStart(JsonGenerator json) throws IOException {
+	}
+
+	/**
+	 * Written after the array.
+	 */
+	protected void writeEnd(JsonGenerator json) throws IOException {
+	}
+
+	@Override
+	public final boolean next(OutputStream out) throws IOException {
+		target.out = out;
+		try {
+			if (generator == null) {
+				generator = JsonProvider.jsonFactory.createJsonGenerator(target);
+				writeStart(generator);
+				if (array) generator.writeRaw('[');
+				// separates the items at the root
+				generator.setPrettyPrinter(new MinimalPrettyPrinter(array ? "," : "\n"));
+			}
+			for (int i = 0; i < itemsPerChunk; i++) {
+				if (!writeItem(generator)) {
+					if (array) {
+						generator.writeRaw(']');
+					} else if (count > 0) {
+						generator.writeRaw('\n');
+					}
+					generator.setPrettyPrinter(null);
+					writeEnd(generator);
+					generator.flush();
+					return false;
+				}
+				count++;
+			}
+			generator.flush();
+			return true;
+		} finally {
+			target.out = null;
+		}
+	}
+
+	// the generator is made once but each chunk goes to the stream it is given
+	private static class SwitchableOutputStream extends OutputStream {
+
+		private OutputStream out;
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+package reka.data.content.types;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static reka.util.Util.unchecked;
+import static reka.util.Util.unsupported;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codehaus.jackson.JsonGenerator;
+
+import reka.data.content.Content;
+
+import com.google.common.hash.Hasher;
+
+/**
+ * Content that is produced while it is being written out instead of being held in memory,
+ * e.g. a large query result going straight to an http response.
+ * 
+ * The source can only be taken once, whoever takes it has to close it. Reading it as bytes or
+ * json takes it and keeps what was read, so it can still be written out after that, but once it
+ * has been taken to stream or closed it can't be read any more.
+ * 
+ * Operations that make one should have it closed when the flow is done, with
+ * {@link reka.flow.ops.OperationContext#closeWhenDone}, so it isn't left open when the flow
+ * fails or the content never gets written anywhere.
+ */
+public class StreamContent implements Content {
+	
+	public static interface Source extends AutoCloseable {
+		
+		/**
+		 * Writes the next piece of the content.
+		 * 
+		 * @return false once there is nothing more to write
+		 */
+		boolean next(OutputStream out) throws IOException;
+		
+		@Override
+		void close();
+		
+	}
+	
+	private final String contentType;
+	private final Source source;
+	private final AtomicBoolean taken = new AtomicBoolean();
+	private volatile byte[] drained;
+	
+	public StreamContent(String contentType, Source source) {
+		checkNotNull(contentType, "must include content type");
+		this.contentType = contentType;
+		this.source = source;
+	}
+	
+	public String contentType() {
+		return contentType;
+	}
+	
+	public Source take() {
+		byte[] bytes = drained;
+		if (bytes != null) return new BytesSource(bytes);
+		checkState(taken.compareAndSet(false, true), "%s has already been streamed or closed", this);
+		return source;
+	}
+	
+	/**
+	 * Closes the source if nobody has taken it.
+	 */
+	public void discard() {
+		if (taken.compareAndSet(false, true)) {
+			source.close();
+		}
+	}
+	
+	@Override
+	public Type type() {
+		return Type.NON_SERIALIZABLE_OBJECT;
+	}
+
+	@Override
+	public Object value() {
+		return this;
+	}
+	
+	@Override
+	public String asUTF8() {
+		return new String(drain(), StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public byte[] asBytes() {
+		return drain();
+	}
+
+	@Override
+	public void writeJsonTo(JsonGenerator json) throws IOException {
+		// only works if the stream is something json-ish
+		json.writeRawValue(asUTF8());
+	}
+
+	@Override
+	public void out(DataOutput out) throws IOException {
+		throw unsupported("can't serialize streamed content");
+	}
+
+	@Override
+	public Hasher hash(Hasher hasher) {
+		return hasher.putString(contentType, StandardCharsets.UTF_8).putInt(System.identityHashCode(this));
+	}
+	
+	private byte[] drain() {
+		byte[] bytes = drained;
+		if (bytes != null) return bytes;
+		synchronized (this) {
+			if (drained == null) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try (Source s = take()) {
+					while (s.next(out));
+				} catch (IOException e) {
+					throw unchecked(e);
+				}
+				drained = out.toByteArray();
+			}
+			return drained;
+		}
+	}
+	
+	private static class BytesSource implements Source {
+		
+		private final byte[] bytes;
+		
+		BytesSource(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public boolean next(OutputStream out) throws IOException {
+			out.write(bytes);
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+		
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(%s)", getClass().getSimpleName(), contentType);
+	}
+	
+}
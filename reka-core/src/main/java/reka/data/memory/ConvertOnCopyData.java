@@ -0,0 +1,241 @@
+package reka.data.memory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+import org.codehaus.jackson.JsonGenerator;
+
+import reka.data.Data;
+import reka.data.ListMutation;
+import reka.data.MapMutation;
+import reka.data.MutableData;
+import reka.data.ObjBuilder;
+import reka.data.content.Content;
+import reka.util.Path;
+import reka.util.Path.PathElement;
+import reka.util.ThrowingConsumer;
+
+import com.google.common.hash.Hasher;
+
+/**
+ * Uses the data it was given until a copy is needed, only then is it converted
+ * to the provider so the copies (and any after them) can share its structure.
+ *
+ * Views into the data (mutableAt, createMapAt, etc) convert it first too, so they
+ * stay attached to it.
+ */
+final class ConvertOnCopyData<T> implements MutableData {
+
+	private final MutableDataProvider<T> provider;
+
+	private volatile MutableData data;
+	private volatile boolean converted;
+
+	ConvertOnCopyData(MutableData data, MutableDataProvider<T> provider) {
+		this.data = data;
+		this.provider = provider;
+	}
+
+	MutableDataProvider<T> provider() {
+		return provider;
+	}
+
+	MutableData data() {
+		return data;
+	}
+
+	private MutableData converted() {
+		if (!converted) {
+			data = MutableDataWrapper.convert(data, provider);
+			converted = true;
+		}
+		return data;
+	}
+
+	// reading
+
+	@Override
+	public Optional<Content> getContent(Path path) {
+		return data.getContent(path);
+	}
+
+	@Override
+	public Data at(Path path) {
+		return data.at(path);
+	}
+
+	@Override
+	public boolean existsAt(Path path) {
+		return data.existsAt(path);
+	}
+
+	@Override
+	public boolean contentExistsAt(Path path) {
+		return data.contentExistsAt(path);
+	}
+
+	@Override
+	public void forEachContent(BiConsumer<Path, Content> visitor) {
+		data.forEachContent(visitor);
+	}
+
+	@Override
+	public boolean isPresent() {
+		return data.isPresent();
+	}
+
+	@Override
+	public boolean isMap() {
+		return data.isMap();
+	}
+
+	@Override
+	public boolean isList() {
+		return data.isList();
+	}
+
+	@Override
+	public boolean isContent() {
+		return data.isContent();
+	}
+
+	@Override
+	public Iterator<Entry<PathElement, Data>> iterator() {
+		return data.iterator();
+	}
+
+	@Override
+	public Collection<PathElement> elements() {
+		return data.elements();
+	}
+
+	@Override
+	public Collection<Data> values() {
+		return data.values();
+	}
+
+	@Override
+	public int size() {
+		return data.size();
+	}
+
+	@Override
+	public Map<String, Object> toMap() {
+		return data.toMap();
+	}
+
+	@Override
+	public void writeJsonTo(JsonGenerator json) throws IOException {
+		data.writeJsonTo(json);
+	}
+
+	@Override
+	public String toJson() {
+		return data.toJson();
+	}
+
+	@Override
+	public String toPrettyJson() {
+		return data.toPrettyJson();
+	}
+
+	@Override
+	public void writeObj(ObjBuilder obj) {
+		data.writeObj(obj);
+	}
+
+	@Override
+	public Hasher hash(Hasher hasher) {
+		return data.hash(hasher);
+	}
+
+	// writing
+
+	@Override
+	public MutableData put(Path path, Content content) {
+		data.put(path, content);
+		return this;
+	}
+
+	@Override
+	public MutableData put(Path path, Data value) {
+		data.put(path, value);
+		return this;
+	}
+
+	@Override
+	public MutableData putOrAppend(Path path, Content content) {
+		data.putOrAppend(path, content);
+		return this;
+	}
+
+	@Override
+	public MutableData putOrAppend(Path path, Data value) {
+		data.putOrAppend(path, value);
+		return this;
+	}
+
+	@Override
+	public MutableData remove(Path path) {
+		data.remove(path);
+		return this;
+	}
+
+	@Override
+	public MutableData createMapAt(Path path) {
+		return converted().createMapAt(path);
+	}
+
+	@Override
+	public MutableData createListAt(Path path) {
+		return converted().createListAt(path);
+	}
+
+	@Override
+	public MutableData putMap(Path path, ThrowingConsumer<MapMutation> map) {
+		data.putMap(path, map);
+		return this;
+	}
+
+	@Override
+	public MutableData putList(Path path, ThrowingConsumer<ListMutation> list) {
+		data.putList(path, list);
+		return this;
+	}
+
+	@Override
+	public void clear() {
+		data.clear();
+	}
+
+	@Override
+	public MutableData mutableCopy() {
+		return converted().mutableCopy();
+	}
+
+	@Override
+	public MutableData mutableAt(Path path) {
+		return converted().mutableAt(path);
+	}
+
+	@Override
+	public int hashCode() {
+		return data.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return data.equals(obj);
+	}
+
+	@Override
+	public String toString() {
+		return data.toString();
+	}
+
+}
@@ -1,9 +1,7 @@
 package reka.data.memory;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static reka.util.Path.path;
 import static reka.util.Path.PathElements.nextIndex;
-import static reka.util.Util.runtime;
 import static reka.util.Util.unchecked;
 
 import java.util.ArrayList;
@@ -34,22 +32,50 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 		this.provider = provider;
 	}
 	
+	public static <T> MutableData convert(MutableData data, MutableDataProvider<T> provider) {
+		if (data instanceof MutableDataWrapper && ((MutableDataWrapper<?>) data).provider.equals(provider)) {
+			return data;
+		}
+		MutableDataWrapper<T> converted = new MutableDataWrapper<>(provider);
+		converted.merge(data);
+		return converted;
+	}
+	
+	/**
+	 * Like {@link #convert(MutableData, MutableDataProvider)} but only pays for it if the data gets copied.
+	 */
+	public static <T> MutableData convertOnCopy(MutableData data, MutableDataProvider<T> provider) {
+		if (data instanceof MutableDataWrapper && ((MutableDataWrapper<?>) data).provider.equals(provider)) {
+			return data;
+		}
+		if (data instanceof ConvertOnCopyData && ((ConvertOnCopyData<?>) data).provider().equals(provider)) {
+			return data;
+		}
+		return new ConvertOnCopyData<>(data, provider);
+	}
+	
 	public void clear() {
 		root = provider.clear(root);
 	}
 	
 	public MutableData put(Path path, Data data) {
-		MutableDataWrapper<T> other = otherOrNull(data);
-		if (other != null) {
-			root = provider.put(root, path, other.root);
-		} else {
-			mutableAt(path).merge(data);
-		}
+		root = provider.put(root, path, rootOf(data));
 		return this;
 	}
 	
+	private T rootOf(Data data) {
+		MutableDataWrapper<T> other = otherOrNull(data);
+		if (other != null) return other.root;
+		MutableDataWrapper<T> converted = new MutableDataWrapper<>(provider);
+		converted.merge(data);
+		return converted.root;
+	}
+	
 	@SuppressWarnings("unchecked")
 	private MutableDataWrapper<T> otherOrNull(Data data) {
+		if (data instanceof ConvertOnCopyData) {
+			data = ((ConvertOnCopyData<?>) data).data();
+		}
 		if (data instanceof MutableDataWrapper) {
 			MutableDataWrapper<T> other = (MutableDataWrapper<T>) data;
 			if (other.provider.equals(provider)) {
@@ -61,12 +87,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 
 	@Override
 	public MutableData putOrAppend(Path path, Data data) {
-		MutableDataWrapper<T> other = otherOrNull(data); 
-		if (other != null) {
-			root = provider.putOrAppend(root, path, other.root);
-		} else {
-			throw runtime("we don't currently handle putOrAppend'ing non MutableDataWrapper<T> data");
-		}
+		root = provider.putOrAppend(root, path, rootOf(data));
 		return this;
 	}
 
@@ -121,7 +142,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 		try {
 			consumer.accept(mutation);
 			for (Path p : mutation.removed) {
-				 provider.remove(root, path.add(p));
+				root = provider.remove(root, path.add(p));
 			}
 			root = provider.put(root, path, mutation.map);
 		} catch (Exception t) {
@@ -136,7 +157,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 		try {
 			consumer.accept(mutation);
 			for (PathElement e : mutation.removed) {
-				 provider.remove(root, path(e));
+				root = provider.remove(root, path.add(e));
 			}
 			root = provider.put(root, path, mutation.list);
 		} catch (Exception t) {
@@ -180,9 +201,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 
 		@Override
 		public ListMutation add(Data data) {
-			MutableDataWrapper<T> other = otherOrNull(data);
-			checkArgument(other != null, "we only support putting MemoryData in (for now), not %s", data.getClass());
-			list = provider.put(list, path(nextIndex()), other.root);
+			list = provider.put(list, path(nextIndex()), rootOf(data));
 			return this;
 		}
 
@@ -192,7 +211,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 			BatchMutateList mutation = new BatchMutateList(provider.createList());
 			try {
 				consumer.accept(mutation);
-				provider.put(list, path(nextIndex()), mutation.list);
+				list = provider.put(list, path(nextIndex()), mutation.list);
 			} catch (Exception t) {
 				throw unchecked(t);
 			}
@@ -204,7 +223,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 			BatchMutateMap mutation = new BatchMutateMap(provider.createMap());
 			try {
 				consumer.accept(mutation);
-				provider.put(list, path(nextIndex()), mutation.map);
+				list = provider.put(list, path(nextIndex()), mutation.map);
 			} catch (Exception t) {
 				throw unchecked(t);
 			}
@@ -231,15 +250,13 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 
 		@Override
 		public MapMutation put(Path path, Data data) {
-			MutableDataWrapper<T> other = otherOrNull(data);
-			checkArgument(other != null, "we only support putting MemoryData in (for now)");
-			provider.put(map, path, other.root);
+			map = provider.put(map, path, rootOf(data));
 			return this;
 		}
 
 		@Override
 		public MapMutation put(Path path, Content content) {
-			provider.putContent(map, path, content);
+			map = provider.putContent(map, path, content);
 			return this;
 		}
 
@@ -248,7 +265,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 			BatchMutateList mutation = new BatchMutateList(provider.createList());
 			try {
 				consumer.accept(mutation);
-				provider.put(map, path, mutation.list);
+				map = provider.put(map, path, mutation.list);
 			} catch (Exception t) {
 				throw unchecked(t);
 			}
@@ -260,7 +277,7 @@ public class MutableDataWrapper<T> extends DataWrapper<T> implements Data, Mutab
 			BatchMutateMap mutation = new BatchMutateMap(provider.createMap());
 			try {
 				consumer.accept(mutation);
-				provider.put(map, path, mutation.map);
+				map = provider.put(map, path, mutation.map);
 			} catch (Exception t) {
 				throw unchecked(t);
 			}
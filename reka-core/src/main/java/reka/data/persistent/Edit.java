@@ -0,0 +1,45 @@
+package reka.data.persistent;
+
+/**
+ * Ownership token for persistent data nodes.
+ * 
+ * Nodes owned by an edit that is not frozen can be changed in place, once it
+ * is frozen they are shared and any change has to copy the path down to it.
+ * 
+ * An edit can be attached to a parent edit so that freezing the parent also
+ * freezes everything that was put into it.
+ */
+final class Edit {
+
+	private volatile boolean frozen;
+	private volatile Edit parent;
+	
+	boolean isFrozen() {
+		for (Edit e = this; e != null; e = e.parent) {
+			if (e.frozen) return true;
+		}
+		return false;
+	}
+	
+	void freeze() {
+		frozen = true;
+	}
+	
+	void adopt(Edit child) {
+		if (child == null || child.isFrozen() || child.within(this)) return;
+		if (child.parent == null && !within(child)) {
+			child.parent = this;
+		} else {
+			// already owned by something else, it'll have to be copied on write from now on
+			child.freeze();
+		}
+	}
+	
+	private boolean within(Edit other) {
+		for (Edit e = this; e != null; e = e.parent) {
+			if (e == other) return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,348 @@
+package reka.data.persistent;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash array mapped trie of string keys that keeps insertion order.
+ * 
+ * Changes are made in place while the map's edit is not frozen, otherwise
+ * {@link #editable(Edit)} has to be used first to get a copy that shares 
+ * all of the untouched trie nodes.
+ */
+final class HashTrieMap {
+	
+	static final class Entry {
+		
+		final String key;
+		final int hash;
+		final Object value;
+		final int seq; // position in the insertion order
+		
+		Entry(String key, int hash, Object value, int seq) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+			this.seq = seq;
+		}
+		
+	}
+	
+	private static final int MIN_COMPACT = 32;
+
+	private final Edit edit;
+	
+	private Node root;
+	private int size;
+	
+	// entries by seq, removed ones leave a null behind until there are enough to compact
+	private TrieVector order;
+	private int removed;
+	
+	HashTrieMap(Edit edit) {
+		this.edit = edit;
+		this.order = new TrieVector(edit);
+	}
+	
+	private HashTrieMap(Edit edit, Node root, int size, TrieVector order, int removed) {
+		this.edit = edit;
+		this.root = root;
+		this.size = size;
+		this.order = order;
+		this.removed = removed;
+	}
+	
+	Edit edit() {
+		return edit;
+	}
+	
+	boolean isEditable() {
+		return !edit.isFrozen();
+	}
+	
+	HashTrieMap editable(Edit newEdit) {
+		return isEditable() ? this : new HashTrieMap(newEdit, root, size, order.editable(newEdit), removed);
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	Object get(String key) {
+		Entry entry = entry(key);
+		return entry != null ? entry.value : null;
+	}
+	
+	boolean containsKey(String key) {
+		return entry(key) != null;
+	}
+	
+	private Entry entry(String key) {
+		return root != null ? root.find(0, hash(key), key) : null;
+	}
+	
+	void put(String key, Object value) {
+		int hash = hash(key);
+		Entry existing = root != null ? root.find(0, hash, key) : null;
+		Entry entry = new Entry(key, hash, value, existing != null ? existing.seq : order.size());
+		root = (root != null ? root : new BitmapNode(edit, 0, new Object[0])).put(edit, 0, entry);
+		if (existing == null) {
+			order.add(entry);
+			size++;
+		} else {
+			order.set(entry.seq, entry);
+		}
+	}
+	
+	void remove(String key) {
+		if (root == null) return;
+		int hash = hash(key);
+		Entry existing = root.find(0, hash, key);
+		if (existing == null) return;
+		root = root.remove(edit, 0, hash, key);
+		order.set(existing.seq, null);
+		size--;
+		removed++;
+		if (removed > MIN_COMPACT && removed > size) compact();
+	}
+	
+	private void compact() {
+		TrieVector compacted = new TrieVector(edit);
+		for (Entry entry : entries()) {
+			Entry moved = new Entry(entry.key, entry.hash, entry.value, compacted.size());
+			root = root.put(edit, 0, moved);
+			compacted.add(moved);
+		}
+		order = compacted;
+		removed = 0;
+	}
+	
+	void clear() {
+		root = null;
+		size = 0;
+		order.clear();
+		removed = 0;
+	}
+	
+	Iterable<Entry> entries() {
+		TrieVector entries = order;
+		return () -> new Iterator<Entry>() {
+			
+			private int i = 0;
+			private Entry next = advance();
+			
+			private Entry advance() {
+				while (i < entries.size()) {
+					Entry entry = (Entry) entries.get(i++);
+					if (entry != null) return entry;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Entry next() {
+				if (next == null) throw new NoSuchElementException();
+				Entry entry = next;
+				next = advance();
+				return entry;
+			}
+			
+		};
+	}
+	
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	private static int bitFor(int hash, int shift) {
+		return 1 << ((hash >>> shift) & 31);
+	}
+	
+	private static interface Node {
+		Entry find(int shift, int hash, String key);
+		Node put(Edit edit, int shift, Entry entry);
+		Node remove(Edit edit, int shift, int hash, String key);
+	}
+	
+	private static final class BitmapNode implements Node {
+		
+		private final Edit edit;
+		private int bitmap;
+		private Object[] array; // each is an Entry or a Node
+		
+		BitmapNode(Edit edit, int bitmap, Object[] array) {
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+		
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+		
+		private BitmapNode editable(Edit e) {
+			return edit == e ? this : new BitmapNode(e, bitmap, array.clone());
+		}
+		
+		private Node set(Edit e, int idx, Object val) {
+			BitmapNode node = editable(e);
+			node.array[idx] = val;
+			return node;
+		}
+
+		@Override
+		public Entry find(int shift, int hash, String key) {
+			int bit = bitFor(hash, shift);
+			if ((bitmap & bit) == 0) return null;
+			Object o = array[index(bit)];
+			if (o instanceof Entry) {
+				Entry entry = (Entry) o;
+				return entry.key.equals(key) ? entry : null;
+			} else {
+				return ((Node) o).find(shift + 5, hash, key);
+			}
+		}
+
+		@Override
+		public Node put(Edit e, int shift, Entry entry) {
+			int bit = bitFor(entry.hash, shift);
+			int idx = index(bit);
+			if ((bitmap & bit) != 0) {
+				Object o = array[idx];
+				if (o instanceof Entry) {
+					Entry existing = (Entry) o;
+					if (existing.key.equals(entry.key)) {
+						return set(e, idx, entry);
+					} else {
+						return set(e, idx, createNode(e, shift + 5, existing, entry));
+					}
+				} else {
+					Node child = (Node) o;
+					Node updated = child.put(e, shift + 5, entry);
+					return updated == child ? this : set(e, idx, updated);
+				}
+			} else {
+				BitmapNode node = editable(e);
+				Object[] updated = new Object[array.length + 1];
+				System.arraycopy(array, 0, updated, 0, idx);
+				updated[idx] = entry;
+				System.arraycopy(array, idx, updated, idx + 1, array.length - idx);
+				node.array = updated;
+				node.bitmap |= bit;
+				return node;
+			}
+		}
+
+		@Override
+		public Node remove(Edit e, int shift, int hash, String key) {
+			int bit = bitFor(hash, shift);
+			if ((bitmap & bit) == 0) return this;
+			int idx = index(bit);
+			Object o = array[idx];
+			if (o instanceof Entry) {
+				if (!((Entry) o).key.equals(key)) return this;
+				return without(e, bit, idx);
+			} else {
+				Node child = (Node) o;
+				Node updated = child.remove(e, shift + 5, hash, key);
+				if (updated == child) {
+					return this;
+				} else if (updated == null) {
+					return without(e, bit, idx);
+				} else {
+					return set(e, idx, updated);
+				}
+			}
+		}
+		
+		private Node without(Edit e, int bit, int idx) {
+			if (bitmap == bit) return null;
+			BitmapNode node = editable(e);
+			Object[] updated = new Object[array.length - 1];
+			System.arraycopy(array, 0, updated, 0, idx);
+			System.arraycopy(array, idx + 1, updated, idx, array.length - idx - 1);
+			node.array = updated;
+			node.bitmap ^= bit;
+			return node;
+		}
+		
+		private static Node createNode(Edit e, int shift, Entry a, Entry b) {
+			if (a.hash == b.hash) {
+				return new CollisionNode(e, a.hash, new Entry[] { a, b });
+			}
+			return new BitmapNode(e, 0, new Object[0]).put(e, shift, a).put(e, shift, b);
+		}
+		
+	}
+	
+	private static final class CollisionNode implements Node {
+		
+		private final Edit edit;
+		private final int hash;
+		private Entry[] entries;
+		
+		CollisionNode(Edit edit, int hash, Entry[] entries) {
+			this.edit = edit;
+			this.hash = hash;
+			this.entries = entries;
+		}
+		
+		private int indexOf(String key) {
+			for (int i = 0; i < entries.length; i++) {
+				if (entries[i].key.equals(key)) return i;
+			}
+			return -1;
+		}
+		
+		private CollisionNode editable(Edit e) {
+			return edit == e ? this : new CollisionNode(e, hash, entries.clone());
+		}
+
+		@Override
+		public Entry find(int shift, int hash, String key) {
+			if (hash != this.hash) return null;
+			int idx = indexOf(key);
+			return idx >= 0 ? entries[idx] : null;
+		}
+
+		@Override
+		public Node put(Edit e, int shift, Entry entry) {
+			if (entry.hash != hash) {
+				return new BitmapNode(e, bitFor(hash, shift), new Object[] { this }).put(e, shift, entry);
+			}
+			CollisionNode node = editable(e);
+			int idx = indexOf(entry.key);
+			if (idx >= 0) {
+				node.entries[idx] = entry;
+			} else {
+				Entry[] updated = new Entry[entries.length + 1];
+				System.arraycopy(entries, 0, updated, 0, entries.length);
+				updated[entries.length] = entry;
+				node.entries = updated;
+			}
+			return node;
+		}
+
+		@Override
+		public Node remove(Edit e, int shift, int hash, String key) {
+			if (hash != this.hash) return this;
+			int idx = indexOf(key);
+			if (idx < 0) return this;
+			if (entries.length == 1) return null;
+			CollisionNode node = editable(e);
+			Entry[] updated = new Entry[entries.length - 1];
+			System.arraycopy(entries, 0, updated, 0, idx);
+			System.arraycopy(entries, idx + 1, updated, idx, entries.length - idx - 1);
+			node.entries = updated;
+			return node;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,486 @@
+package reka.data.persistent;
+
+import static java.lang.String.format;
+import static reka.data.content.Contents.nullValue;
+import static reka.util.Util.createEntry;
+import static reka.util.Util.runtime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.codehaus.jackson.JsonGenerator;
+
+import reka.data.Data;
+import reka.data.MutableData;
+import reka.data.ObjBuilder;
+import reka.data.content.Content;
+import reka.data.memory.DataWrapper;
+import reka.data.memory.MutableDataProvider;
+import reka.data.memory.MutableDataWrapper;
+import reka.util.Path;
+import reka.util.Path.PathElement;
+import reka.util.Path.PathElements;
+
+/**
+ * Data backed by persistent maps and lists that share structure between copies.
+ * 
+ * A copy just freezes the current nodes, so it is O(1), and whichever side 
+ * writes next copies the nodes on the path it changes. Until a copy is taken 
+ * everything is changed in place, the same as {@link reka.data.memory.MutableMemoryData}.
+ * 
+ * The one difference to be aware of is that data returned by 
+ * {@link MutableData#mutableAt(Path)} stops writing through to its parent once
+ * the parent has been copied.
+ */
+public class PersistentData implements MutableDataProvider<Object> {
+	
+	public static final PersistentData INSTANCE = new PersistentData();
+	
+	public static MutableData create() {
+		return new MutableDataWrapper<>(INSTANCE);
+	}
+	
+	public static MutableData from(Data data) {
+		return create().merge(data);
+	}
+	
+	public static MutableData create(Consumer<MutableData> consumer) {
+		MutableData d = create();
+		consumer.accept(d);
+		return d;
+	}
+	
+	private PersistentData() {}
+	
+	@Override
+	public int sizeOf(Object obj) {
+		if (obj instanceof HashTrieMap) {
+			return ((HashTrieMap) obj).size();
+		} else if (obj instanceof TrieVector) {
+			return ((TrieVector) obj).size();
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public Collection<PathElement> elementsOf(Object obj) {
+		if (obj instanceof HashTrieMap) {
+			List<PathElement> elements = new ArrayList<>(sizeOf(obj));
+			for (HashTrieMap.Entry e : ((HashTrieMap) obj).entries()) {
+				elements.add(PathElements.name(e.key));
+			}
+			return elements;
+		} else if (obj instanceof TrieVector) {
+			int size = sizeOf(obj);
+			List<PathElement> elements = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				elements.add(PathElements.index(i));
+			}
+			return elements;
+		} else {
+			return Collections.emptySet();
+		}
+	}
+
+	@Override
+	public Collection<Object> valuesOf(Object obj) {
+		if (obj instanceof HashTrieMap) {
+			List<Object> values = new ArrayList<>(sizeOf(obj));
+			for (HashTrieMap.Entry e : ((HashTrieMap) obj).entries()) {
+				values.add(e.value);
+			}
+			return values;
+		} else if (obj instanceof TrieVector) {
+			List<Object> values = new ArrayList<>(sizeOf(obj));
+			((TrieVector) obj).forEach(values::add);
+			return values;
+		} else {
+			return Collections.emptyList();
+		}
+	}
+
+	@Override
+	public void visitContent(Object obj, Path path, BiConsumer<Path, Content> visitor) {
+		if (obj instanceof HashTrieMap) {
+			for (HashTrieMap.Entry e : ((HashTrieMap) obj).entries()) {
+				visitContent(e.value, path.add(e.key), visitor);
+			}
+		} else if (obj instanceof TrieVector) {
+			int[] i = { 0 };
+			((TrieVector) obj).forEach(item -> visitContent(item, path.add(i[0]++), visitor));
+		} else if (obj instanceof Content) {
+			visitor.accept(path, (Content) obj);
+		} else {
+			visitor.accept(path, nullValue());
+		}
+	}
+
+	@Override
+	public void visitEntries(Object obj, BiConsumer<PathElement, Object> visitor) {
+		if (obj instanceof HashTrieMap) {
+			for (HashTrieMap.Entry e : ((HashTrieMap) obj).entries()) {
+				visitor.accept(PathElements.name(e.key), e.value);
+			}
+		} else if (obj instanceof TrieVector) {
+			int[] i = { 0 };
+			((TrieVector) obj).forEach(item -> visitor.accept(PathElements.index(i[0]++), item));
+		}
+	}
+
+	@Override
+	public Iterator<Entry<PathElement, Data>> iterate(Object obj) {
+		if (!(obj instanceof HashTrieMap || obj instanceof TrieVector)) {
+			return Collections.emptyIterator();
+		}
+		List<Entry<PathElement,Data>> entries = new ArrayList<>(sizeOf(obj));
+		visitEntries(obj, (e, value) -> entries.add(createEntry(e, new DataWrapper<>(value, this))));
+		return entries.iterator();
+	}
+	
+	@Override
+	public Object get(Object obj, Path path) {
+		for (PathElement e : path) {
+			obj = get(obj, e);
+			if (obj == null) return null;
+		}
+		return obj;
+	}
+	
+	private Object get(Object obj, PathElement e) {
+		if (e.isKey() && obj instanceof HashTrieMap) {
+			return ((HashTrieMap) obj).get(e.name());
+		} else if (e.isIndex() && obj instanceof TrieVector) {
+			return ((TrieVector) obj).get(e.index());
+		} else if (e.isEmpty() && obj instanceof Content) {
+			return obj;
+		}
+		return null;
+	}
+
+	@Override
+	public void writeObj(Object o, ObjBuilder builder) {
+		if (o instanceof TrieVector) {
+			builder.writeStartList();
+			((TrieVector) o).forEach(item -> writeObj(item, builder));
+			builder.writeEndList();
+		} else if (o instanceof HashTrieMap) {
+			builder.writeStartMap();
+			for (HashTrieMap.Entry e : ((HashTrieMap) o).entries()) {
+				builder.writeFieldName(e.key);
+				writeObj(e.value, builder);
+			}
+			builder.writeEndMap();
+		} else if (o instanceof Content) {
+			((Content) o).writeObj(builder);
+		}
+	}
+
+	@Override
+	public void out(Object o, JsonGenerator json) throws IOException {
+		if (o instanceof HashTrieMap) {
+			json.writeStartObject();
+			for (HashTrieMap.Entry e : ((HashTrieMap) o).entries()) {
+				json.writeFieldName(e.key);
+				out(e.value, json);
+			}
+			json.writeEndObject();
+		} else if (o instanceof TrieVector) {
+			TrieVector list = (TrieVector) o;
+			json.writeStartArray();
+			for (int i = 0; i < list.size(); i++) {
+				out(list.get(i), json);
+			}
+			json.writeEndArray();
+		} else if (o instanceof Content) {
+			((Content) o).writeJsonTo(json);
+		} else if (o == null) {
+			json.writeNull();
+		} else {
+			throw runtime("can't write %s (%s) to json", o, o.getClass());
+		}
+	}
+
+	@Override
+	public boolean isPresent(Object obj) {
+		return obj != null;
+	}
+
+	@Override
+	public boolean isMap(Object obj) {
+		return obj instanceof HashTrieMap;
+	}
+
+	@Override
+	public boolean isList(Object obj) {
+		return obj instanceof TrieVector;
+	}
+
+	@Override
+	public boolean isContent(Object obj) {
+		return obj instanceof Content;
+	}
+
+	@Override
+	public Content content(Object obj) {
+		return obj instanceof Content ? (Content) obj : null;
+	}
+
+	@Override
+	public Object copy(Object obj) {
+		Edit edit = editOf(obj);
+		if (edit != null) edit.freeze();
+		return obj;
+	}
+
+	@Override
+	public Object createEmpty() {
+		return null;
+	}
+
+	@Override
+	public Object createMap() {
+		return new HashTrieMap(new Edit());
+	}
+
+	@Override
+	public Object createList() {
+		return new TrieVector(new Edit());
+	}
+
+	@Override
+	public Object clear(Object obj) {
+		if (obj instanceof HashTrieMap) {
+			HashTrieMap map = (HashTrieMap) obj;
+			if (!map.isEditable()) return createMap();
+			map.clear();
+		} else if (obj instanceof TrieVector) {
+			TrieVector list = (TrieVector) obj;
+			if (!list.isEditable()) return createList();
+			list.clear();
+		} else if (obj instanceof Content) {
+			obj = null;
+		}
+		return obj;
+	}
+
+	@Override
+	public Object remove(Object obj, Path path) {
+		if (path.isEmpty()) return null;
+		PathElement[] es = path.toArray();
+		Object parent = obj;
+		for (int i = 0; i < es.length - 1; i++) {
+			parent = get(parent, es[i]);
+			if (parent == null) return obj;
+		}
+		if (!hasElement(parent, es[es.length - 1]) && sizeOf(parent) > 0) {
+			return obj; // nothing to remove and nothing left empty
+		}
+		return removeIn(null, obj, es, 0);
+	}
+	
+	private static boolean hasElement(Object obj, PathElement e) {
+		if (e.isKey() && obj instanceof HashTrieMap) {
+			return ((HashTrieMap) obj).containsKey(e.name());
+		} else if (e.isIndex() && obj instanceof TrieVector) {
+			return e.index() < ((TrieVector) obj).size();
+		}
+		return false;
+	}
+	
+	private Object removeIn(Edit parentEdit, Object obj, PathElement[] es, int i) {
+		PathElement e = es[i];
+		Object container = editable(obj, parentEdit);
+		if (i == es.length - 1) {
+			removeElement(container, e);
+		} else {
+			Object child = get(container, e);
+			Object updated = removeIn(editOf(container), child, es, i + 1);
+			if (updated == null) {
+				removeElement(container, e);
+			} else if (updated != child) {
+				setElement(container, e, updated);
+			}
+		}
+		return sizeOf(container) > 0 ? container : null;
+	}
+	
+	private void removeElement(Object container, PathElement e) {
+		if (e.isKey() && container instanceof HashTrieMap) {
+			((HashTrieMap) container).remove(e.name());
+		} else if (e.isIndex() && container instanceof TrieVector) {
+			((TrieVector) container).remove(e.index());
+		}
+	}
+
+	@Override
+	public Object put(Object obj, Path path, Object data) {
+		return internalPut(obj, path, data, false);
+	}
+
+	@Override
+	public Object put(Object obj, Path path, Map<String, Object> map) {
+		return internalPut(obj, path, convert(map), false);
+	}
+
+	@Override
+	public Object put(Object obj, Path path, List<Object> list) {
+		return internalPut(obj, path, convert(list), false);
+	}
+
+	@Override
+	public Object putOrAppend(Object obj, Path path, Object data) {
+		return internalPut(obj, path, data, true);
+	}
+
+	@Override
+	public Object putContent(Object obj, Path path, Content content) {
+		return internalPut(obj, path, content, false);
+	}
+
+	@Override
+	public Object putOrAppendContent(Object obj, Path path, Content content) {
+		return internalPut(obj, path, content, true);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Object convert(Object obj) {
+		if (obj instanceof Map) {
+			HashTrieMap map = new HashTrieMap(new Edit());
+			((Map<String,Object>) obj).forEach((k, v) -> setElement(map, PathElements.name(k), convert(v)));
+			return map;
+		} else if (obj instanceof List) {
+			TrieVector list = new TrieVector(new Edit());
+			((List<Object>) obj).forEach(item -> setElement(list, PathElements.nextIndex(), convert(item)));
+			return list;
+		}
+		return obj;
+	}
+	
+	private Object internalPut(Object root, Path path, Object o, boolean append) {
+		if (path.isEmpty()) return o;
+		return putIn(null, root, path.toArray(), 0, o, append);
+	}
+	
+	private Object putIn(Edit parentEdit, Object obj, PathElement[] es, int i, Object o, boolean append) {
+		PathElement e = es[i];
+		Object container = editableForElement(obj, e, parentEdit);
+		if (i == es.length - 1) {
+			if (append) {
+				putOrAppendElement(container, e, o);
+			} else {
+				putElement(container, e, o);
+			}
+		} else {
+			Object child = get(container, e);
+			Object updated = putIn(editOf(container), child, es, i + 1, o, append);
+			if (updated != child) {
+				setElement(container, e, updated);
+			}
+		}
+		return container;
+	}
+	
+	private Object editableForElement(Object obj, PathElement e, Edit parentEdit) {
+		if (e.isKey()) {
+			return obj instanceof HashTrieMap ? editable(obj, parentEdit) : new HashTrieMap(editFor(parentEdit));
+		} else if (e.isIndexical()) {
+			return obj instanceof TrieVector ? editable(obj, parentEdit) : new TrieVector(editFor(parentEdit));
+		}
+		throw new IllegalArgumentException(format("can't put into %s", e));
+	}
+	
+	private void putElement(Object container, PathElement e, Object o) {
+		if (e.isKey() && o instanceof HashTrieMap) {
+			HashTrieMap map = (HashTrieMap) container;
+			Object existing = map.get(e.name());
+			if (existing instanceof HashTrieMap) {
+				Object merged = merge(map.edit(), (HashTrieMap) existing, (HashTrieMap) o);
+				if (merged != existing) map.put(e.name(), merged);
+				return;
+			}
+		}
+		setElement(container, e, o);
+	}
+	
+	private HashTrieMap merge(Edit parentEdit, HashTrieMap a, HashTrieMap b) {
+		HashTrieMap merged = (HashTrieMap) editable(a, parentEdit);
+		for (HashTrieMap.Entry entry : b.entries()) {
+			putElement(merged, PathElements.name(entry.key), entry.value);
+		}
+		return merged;
+	}
+	
+	private void putOrAppendElement(Object container, PathElement e, Object o) {
+		Object existing = get(container, e);
+		if (existing instanceof TrieVector) {
+			TrieVector list = (TrieVector) editable(existing, editOf(container));
+			setElement(list, PathElements.nextIndex(), o);
+			if (list != existing) setElement(container, e, list);
+		} else if (existing != null) {
+			TrieVector list = new TrieVector(editOf(container));
+			list.add(existing);
+			setElement(list, PathElements.nextIndex(), o);
+			setElement(container, e, list);
+		} else {
+			putElement(container, e, o);
+		}
+	}
+	
+	private void setElement(Object container, PathElement e, Object o) {
+		// container MUST already be editable and the right type for the element
+		Edit child = editOf(o);
+		if (child != null) editOf(container).adopt(child);
+		if (e.isKey()) {
+			((HashTrieMap) container).put(e.name(), o);
+		} else if (e.isIndex()) {
+			TrieVector list = (TrieVector) container;
+			int index = e.index();
+			if (index < list.size()) {
+				list.set(index, o);
+			} else {
+				while (list.size() < index) {
+					list.add(null);
+				}
+				list.add(o);
+			}
+		} else if (e.isNextIndex()) {
+			((TrieVector) container).add(o);
+		} else {
+			throw new IllegalArgumentException(format("can't put %s -> %s", e, o));
+		}
+	}
+	
+	private static Object editable(Object obj, Edit parentEdit) {
+		if (obj instanceof HashTrieMap) {
+			HashTrieMap map = (HashTrieMap) obj;
+			return map.isEditable() ? map : map.editable(editFor(parentEdit));
+		} else if (obj instanceof TrieVector) {
+			TrieVector list = (TrieVector) obj;
+			return list.isEditable() ? list : list.editable(editFor(parentEdit));
+		}
+		return obj;
+	}
+	
+	private static Edit editFor(Edit parentEdit) {
+		return parentEdit != null ? parentEdit : new Edit();
+	}
+	
+	private static Edit editOf(Object obj) {
+		if (obj instanceof HashTrieMap) {
+			return ((HashTrieMap) obj).edit();
+		} else if (obj instanceof TrieVector) {
+			return ((TrieVector) obj).edit();
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,178 @@
+package reka.data.persistent;
+
+import java.util.function.Consumer;
+
+/**
+ * A 32-way bit partitioned vector trie.
+ * 
+ * Like {@link HashTrieMap} it is changed in place while its edit is not 
+ * frozen, and {@link #editable(Edit)} gives a copy sharing all the untouched 
+ * nodes otherwise.
+ */
+final class TrieVector {
+	
+	private static final class VNode {
+		
+		final Edit edit;
+		final Object[] array;
+		
+		VNode(Edit edit, Object[] array) {
+			this.edit = edit;
+			this.array = array;
+		}
+		
+	}
+
+	private final Edit edit;
+	
+	private int size;
+	private int shift;
+	private VNode root;
+	private Object[] tail;
+	
+	TrieVector(Edit edit) {
+		this.edit = edit;
+		reset();
+	}
+	
+	private TrieVector(Edit edit, int size, int shift, VNode root, Object[] tail) {
+		this.edit = edit;
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+	
+	private void reset() {
+		size = 0;
+		shift = 5;
+		root = new VNode(edit, new Object[32]);
+		tail = new Object[32];
+	}
+	
+	Edit edit() {
+		return edit;
+	}
+	
+	boolean isEditable() {
+		return !edit.isFrozen();
+	}
+	
+	TrieVector editable(Edit newEdit) {
+		// the tail is always private to each vector
+		return isEditable() ? this : new TrieVector(newEdit, size, shift, root, tail.clone());
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	private int tailOffset() {
+		return size < 32 ? 0 : ((size - 1) >>> 5) << 5;
+	}
+	
+	private Object[] arrayFor(int i) {
+		if (i >= tailOffset()) return tail;
+		VNode node = root;
+		for (int level = shift; level > 0; level -= 5) {
+			node = (VNode) node.array[(i >>> level) & 31];
+		}
+		return node.array;
+	}
+	
+	Object get(int i) {
+		return i >= 0 && i < size ? arrayFor(i)[i & 31] : null;
+	}
+	
+	void forEach(Consumer<Object> consumer) {
+		for (int i = 0; i < size; i += 32) {
+			Object[] array = arrayFor(i);
+			int end = Math.min(32, size - i);
+			for (int j = 0; j < end; j++) {
+				consumer.accept(array[j]);
+			}
+		}
+	}
+	
+	void set(int i, Object val) {
+		if (i >= tailOffset()) {
+			tail[i & 31] = val;
+		} else {
+			root = doSet(shift, root, i, val);
+		}
+	}
+	
+	private VNode doSet(int level, VNode node, int i, Object val) {
+		VNode ret = editable(node);
+		if (level == 0) {
+			ret.array[i & 31] = val;
+		} else {
+			int subidx = (i >>> level) & 31;
+			ret.array[subidx] = doSet(level - 5, (VNode) node.array[subidx], i, val);
+		}
+		return ret;
+	}
+	
+	void add(Object val) {
+		if (size - tailOffset() < 32) {
+			tail[size & 31] = val;
+			size++;
+			return;
+		}
+		VNode tailNode = new VNode(edit, tail);
+		tail = new Object[32];
+		tail[0] = val;
+		if ((size >>> 5) > (1 << shift)) {
+			VNode newRoot = new VNode(edit, new Object[32]);
+			newRoot.array[0] = root;
+			newRoot.array[1] = newPath(shift, tailNode);
+			root = newRoot;
+			shift += 5;
+		} else {
+			root = pushTail(shift, root, tailNode);
+		}
+		size++;
+	}
+	
+	private VNode pushTail(int level, VNode parent, VNode tailNode) {
+		int subidx = ((size - 1) >>> level) & 31;
+		VNode ret = editable(parent);
+		VNode toInsert;
+		if (level == 5) {
+			toInsert = tailNode;
+		} else {
+			VNode child = (VNode) parent.array[subidx];
+			toInsert = child != null ? pushTail(level - 5, child, tailNode) : newPath(level - 5, tailNode);
+		}
+		ret.array[subidx] = toInsert;
+		return ret;
+	}
+	
+	private VNode newPath(int level, VNode node) {
+		if (level == 0) return node;
+		VNode ret = new VNode(edit, new Object[32]);
+		ret.array[0] = newPath(level - 5, node);
+		return ret;
+	}
+	
+	// not a cheap one, it rebuilds the whole vector
+	void remove(int index) {
+		if (index < 0 || index >= size) return;
+		Object[] items = new Object[size];
+		int[] i = { 0 };
+		forEach(item -> items[i[0]++] = item);
+		reset();
+		for (int j = 0; j < items.length; j++) {
+			if (j != index) add(items[j]);
+		}
+	}
+	
+	void clear() {
+		reset();
+	}
+	
+	private VNode editable(VNode node) {
+		return node.edit == edit ? node : new VNode(edit, node.array.clone());
+	}
+	
+}
@@ -42,7 +42,7 @@ public class EmbeddedFlowAction implements ActionHandler {
 				context.handleError(error, data, t);
 			}
 			
-		}, context.store(), context.statsEnabled());	
+		}, context.operationContext(), context.statsEnabled());	
 	}
 
 }
@@ -11,17 +11,21 @@ import static reka.util.Util.runtime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import reka.Reka;
+import reka.data.memory.MutableDataProvider;
 import reka.flow.Flow;
 import reka.flow.FlowNode;
 import reka.flow.FlowSegment;
 import reka.flow.builder.FlowVisualizer.NodeType;
+import reka.flow.builder.NodeFactory.InlineableFlow;
 import reka.runtime.DefaultFlow;
 import reka.runtime.Node;
 import reka.util.Path;
@@ -35,6 +39,8 @@ public class FlowBuilderGroup {
 	
 	private final Map<Path,FlowInfo> roots = new HashMap<>();
 	
+	private MutableDataProvider<?> dataProvider;
+	
 	public static Flow createFlow(Path name, FlowSegment segment) {
 		FlowBuilderGroup b = new FlowBuilderGroup();
 		b.add(name, segment);
@@ -56,6 +62,7 @@ public class FlowBuilderGroup {
 		
 		private Flow flow;
 		private DefaultFlowVisualizer visualizer;
+		private InlineableFlow inlineable;
 		
 		public FlowInfo(Path name, FlowSegment main) {
 			this.name = name;
@@ -84,6 +91,15 @@ public class FlowBuilderGroup {
 			return flow;
 		}
 		
+		public FlowInfo inlineable(InlineableFlow inlineable) {
+			this.inlineable = inlineable;
+			return this;
+		}
+		
+		public InlineableFlow inlineable() {
+			return inlineable;
+		}
+		
 		public Path name() {
 			return name;
 		}
@@ -113,6 +129,11 @@ public class FlowBuilderGroup {
 		return this;
 	}
 	
+	public FlowBuilderGroup dataProvider(MutableDataProvider<?> provider) {
+		this.dataProvider = provider;
+		return this;
+	}
+	
 	public Collection<Path> roots() {
 		return roots.keySet();
 	}
@@ -163,8 +184,21 @@ public class FlowBuilderGroup {
 		return builder.build();
 	}
 	
+	private Map<Path,InlineableFlow> makeMapOfInlineableFlows() {
+		Map<Path,InlineableFlow> map = new HashMap<>();
+		for (FlowInfo info : roots.values()) {
+			if (info.inlineable() != null && !newContextFlows.contains(info.name())) {
+				map.put(info.name(), info.inlineable());
+			}
+		}
+		return map;
+	}
+	
 	private final Map<Path,FlowConnector> connectors = new HashMap<>();
 	
+	// flows that were split out because they asked for a context of their own, never inlined
+	private final Set<Path> newContextFlows = new HashSet<>();
+	
 	private void createFlow(FlowInfo info, boolean buildFlow) {
 		if (info.built()) return;
 		
@@ -172,6 +206,7 @@ public class FlowBuilderGroup {
 		
 		for (Entry<Path, FlowSegment> e : connections.newContextSegments().entrySet()) {
 			add(e.getKey(), e.getValue());
+			newContextFlows.add(e.getKey());
 		}
 		
 		connectors.put(info.name(), connections);
@@ -240,9 +275,10 @@ public class FlowBuilderGroup {
 		if (buildFlow) {
 			configure(new ConfigurationNodePath(NodeChildBuilder.create(headBuilder)));
 			Map<Path,Flow> dependencies = makeMapOfBuiltFlows();
-	        NodeFactory factory = new NodeFactory(idToNodeBuilder, dependencies);        
+	        NodeFactory factory = new NodeFactory(info.name(), idToNodeBuilder, dependencies, makeMapOfInlineableFlows());
 	        Node headNode = factory.get(nodeToId.get(info.start()));
-	        info.flow(new DefaultFlow(info.name(), headNode));
+	        info.inlineable(new InlineableFlow(idToNodeBuilder, nodeToId.get(info.start())));
+	        info.flow(new DefaultFlow(info.name(), headNode, dataProvider));
 	        //System.out.printf("flow action dot for [%s]:\n\n%s\n", info.name.slashes(), factory.toDot());
 		}
 		
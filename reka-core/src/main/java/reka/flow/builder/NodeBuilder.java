@@ -6,7 +6,6 @@ import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 import static reka.runtime.handlers.DSL.actionHandlers;
 import static reka.runtime.handlers.DSL.backgroundOp;
-import static reka.runtime.handlers.DSL.endAction;
 import static reka.runtime.handlers.DSL.errorHandlers;
 import static reka.runtime.handlers.DSL.haltedHandlers;
 import static reka.runtime.handlers.DSL.op;
@@ -16,6 +15,7 @@ import static reka.util.Util.runtime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
@@ -29,7 +29,6 @@ import reka.flow.ops.NoOp;
 import reka.flow.ops.RouteKey;
 import reka.flow.ops.RouterOperation;
 import reka.runtime.FailureHandler;
-import reka.runtime.FlowContext;
 import reka.runtime.Node;
 import reka.runtime.NodeChild;
 import reka.runtime.handlers.ActionHandler;
@@ -37,8 +36,11 @@ import reka.runtime.handlers.ControlHandler;
 import reka.runtime.handlers.DoNothing;
 import reka.runtime.handlers.ErrorHandler;
 import reka.runtime.handlers.HaltedHandler;
+import reka.runtime.handlers.InlineActionHandler;
+import reka.runtime.handlers.InlineRuntimeNode;
 import reka.runtime.handlers.RuntimeNode;
 import reka.runtime.handlers.stateful.StatefulControl;
+import reka.util.Path;
 
 class NodeBuilder {
 	
@@ -54,6 +56,9 @@ class NodeBuilder {
 	private int parentCount = 0;
 	private boolean isTrigger; // only used if we are a waiting node, means it needs to trigger something further down the flow
 	
+	// built once, a flow inlined in several places shares its operations like it did when it was run on its own
+	private FlowOperation operation;
+	
 	private final FlowNode node;
 	
 	public NodeBuilder(int id, String name, FlowNode node, ExecutorService backgroundExecutor) {
@@ -104,15 +109,19 @@ class NodeBuilder {
         return this.listeners.stream().map(factory::get).collect(toList());
 	}
 	
-	private static final HaltedHandler CONTEXT_HALTED = FlowContext.DEFAULT_HALTED_HANDLER;
-	private static final ErrorHandler CONTEXT_ERROR = FlowContext.DEFAULT_ERROR_HANDLER;
-	
 	private final <A extends B,B> List<B> listToList(List<A> a) {
 		List<B> b = new ArrayList<>();
 		for (A item : a) b.add(item);
 		return b;
 	}
 	
+	private FlowOperation operation() {
+		if (operation == null) {
+			operation = node.operationSupplier().get();
+		}
+		return operation;
+	}
+	
 	Node build(NodeFactory factory) {
 	    
 		String prefix = "";
@@ -129,11 +138,11 @@ class NodeBuilder {
 		
 		final ActionHandler action;
 		
-		ErrorHandler error = CONTEXT_ERROR;
+		ErrorHandler error = factory.contextError();
 		HaltedHandler halted = null;
 				
 		if (node.isEnd()) {
-			halted = CONTEXT_HALTED;
+			halted = factory.contextHalted();
 		}
 		
 		if (hasListeners) {
@@ -150,7 +159,7 @@ class NodeBuilder {
 		FlowOperation operation = null;
 		
 		if (node.hasOperationSupplier()) {
-			operation = node.operationSupplier().get();	
+			operation = operation();
 		} else if (!node.isNoOp() && !node.isEnd() && !node.hasFlowReference()) {
 			throw new IllegalStateException(format("node [%s] must have supplier, be subscribable, or embedded flow reference", name()));
 		}
@@ -193,8 +202,15 @@ class NodeBuilder {
 				}
 				
 			} else if (node.hasFlowReference()) {
-				sb.append("embedded ");
-				action = new EmbeddedFlowAction(factory.getFlow(node.flowReferenceNode().flowName()), next, halted, error);
+				Path flowName = node.flowReferenceNode().flowName();
+				Optional<Node> inlined = factory.inline(flowName, next, halted != null ? halted : DoNothing.INSTANCE, error);
+				if (inlined.isPresent()) {
+					sb.append("inlined ");
+					action = inlined.get();
+				} else {
+					sb.append("embedded ");
+					action = new EmbeddedFlowAction(factory.getFlow(flowName), next, halted, error);
+				}
 			} else {
 				action = next;
 			}
@@ -204,12 +220,12 @@ class NodeBuilder {
 		
 		if (node.isEnd()) {
 			sb.append("end ");
-			main = endAction(main);
+			main = factory.endAction(main);
 		}
 		
 		if (stateful) {
 			sb.append("stateful ");
-			ControlHandler stateHandler = new StatefulControl(id, initialCounter, main, halted, error);
+			ControlHandler stateHandler = new StatefulControl(factory.nodeId(id), initialCounter, main, halted, error);
 			main = stateHandler;
 			halted = stateHandler;
 		}
@@ -225,7 +241,15 @@ class NodeBuilder {
 		checkNotNull(halted, "halted was null");
 		checkNotNull(error, "error was null");
 		
-		RuntimeNode rtNode = new RuntimeNode(id, name, main, halted, error);
+		RuntimeNode rtNode;
+		
+		if (main instanceof InlineActionHandler) {
+			sb.append("inline ");
+			rtNode = new InlineRuntimeNode(factory.nodeId(id), name, (InlineActionHandler) main, halted, error);
+		} else {
+			rtNode = new RuntimeNode(factory.nodeId(id), name, main, halted, error);
+		}
+		
 		log.debug("\n  built node {} -> \n    {}\n    {}", id, sb.toString().trim(), rtNode);
 		
 		factory.dot().append(format("%s\"%s\" [label=\"%s\"]\n", prefix, id, name));
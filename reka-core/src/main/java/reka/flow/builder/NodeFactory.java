@@ -1,29 +1,85 @@
 package reka.flow.builder;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
 
 import reka.flow.Flow;
+import reka.runtime.FlowContext;
 import reka.runtime.Node;
+import reka.runtime.handlers.ActionHandler;
+import reka.runtime.handlers.DSL;
+import reka.runtime.handlers.DoNothing;
+import reka.runtime.handlers.ErrorHandler;
+import reka.runtime.handlers.HaltedHandler;
 import reka.util.Path;
 
 public class NodeFactory {
-    
+
+	// stop inlining if a flow gets this big, a deep tree of flows each using the next one
+	// several times would otherwise multiply out
+	private static final int MAX_INLINED_NODES = 2000;
+
     private final Map<Integer,NodeBuilder> builders;
     private final Map<Path,Flow> embeddableFlows;
+    private final Map<Path,InlineableFlow> inlineableFlows;
     private final Map<Integer,Node> nodes = new HashMap<>();
-    private final StringBuffer dotContent = new StringBuffer();
-    
+    private final StringBuffer dotContent;
+
+    private final Set<Path> inlining;
+    private final int idOffset;
+    private final int[] nextId;
+
+    private final ActionHandler continueWith;
+    private final HaltedHandler halted;
+    private final ErrorHandler error;
+
     NodeFactory(Map<Integer,NodeBuilder> builders, Map<Path,Flow> embeddedableFlows) {
+    	this(null, builders, embeddedableFlows, new HashMap<>());
+    }
+
+    NodeFactory(Path flowName, Map<Integer,NodeBuilder> builders, Map<Path,Flow> embeddedableFlows, Map<Path,InlineableFlow> inlineableFlows) {
+    	this(builders, embeddedableFlows, inlineableFlows, new StringBuffer(), flowName != null ? singleton(flowName) : emptySet(),
+    		 0, new int[] { builders.size() }, null, FlowContext.DEFAULT_HALTED_HANDLER, FlowContext.DEFAULT_ERROR_HANDLER);
+    }
+
+    private NodeFactory(Map<Integer,NodeBuilder> builders, Map<Path,Flow> embeddedableFlows, Map<Path,InlineableFlow> inlineableFlows,
+    		StringBuffer dotContent, Set<Path> inlining, int idOffset, int[] nextId,
+    		ActionHandler continueWith, HaltedHandler halted, ErrorHandler error) {
         this.builders = builders;
         this.embeddableFlows = embeddedableFlows;
+        this.inlineableFlows = inlineableFlows;
+        this.dotContent = dotContent;
+        this.inlining = inlining;
+        this.idOffset = idOffset;
+        this.nextId = nextId;
+        this.continueWith = continueWith;
+        this.halted = halted;
+        this.error = error;
     }
-    
+
+    static class InlineableFlow {
+
+    	private final Map<Integer,NodeBuilder> builders;
+    	private final int headId;
+
+    	InlineableFlow(Map<Integer,NodeBuilder> builders, int headId) {
+    		this.builders = builders;
+    		this.headId = headId;
+    	}
+
+    }
+
     public Node get(int nodeId) {
     	return nodes.computeIfAbsent(nodeId, id -> {
     		NodeBuilder builder = builders.get(id);
@@ -31,31 +87,86 @@ public class NodeFactory {
             return builder.build(this);
     	});
     }
-    
+
     public Flow getFlow(Path name) {
-    	Flow flow = embeddableFlows.get(name);
-    	if (flow == null) {
-    		for (Entry<Path, Flow> e : embeddableFlows.entrySet()) {
-    			if (e.getKey().endsWith(name)) {
-    				flow = e.getValue();
-    				break;
-    			}
-    		}
-    	}
+    	Flow flow = lookup(embeddableFlows, name);
     	checkNotNull(flow, "missing flow [%s]", name);
     	return flow;
     }
-    
+
+    /**
+     * Builds the nodes of the named flow straight into this one, so running it doesn't need a
+     * context of its own. Where it would have ended it carries on with next, and it halts and
+     * errors through the handlers given instead of ending the context.
+     *
+     * Empty if the flow can't be inlined (it's recursive, needs its own context, or it would
+     * make the flow too big), it should be run as a separate flow then.
+     */
+    public Optional<Node> inline(Path name, ActionHandler next, HaltedHandler halted, ErrorHandler error) {
+    	Path resolved = resolve(inlineableFlows, name);
+    	if (resolved == null || inlining.contains(resolved)) return Optional.empty();
+
+    	InlineableFlow flow = inlineableFlows.get(resolved);
+    	if (nextId[0] + flow.builders.size() > MAX_INLINED_NODES) return Optional.empty();
+
+    	int offset = nextId[0];
+    	nextId[0] += flow.builders.size();
+
+    	Set<Path> nowInlining = new HashSet<>(inlining);
+    	nowInlining.add(resolved);
+
+    	// the end node carries straight on with next, so if that can run inline it will
+    	NodeFactory factory = new NodeFactory(flow.builders, embeddableFlows, inlineableFlows, dotContent, nowInlining,
+    	                                      offset, nextId, next, halted, error);
+
+    	return Optional.of(factory.get(flow.headId));
+    }
+
+    int nodeId(int id) {
+    	return idOffset + id;
+    }
+
+    HaltedHandler contextHalted() {
+    	return halted;
+    }
+
+    ErrorHandler contextError() {
+    	return error;
+    }
+
+    ActionHandler endAction(ActionHandler main) {
+    	if (continueWith == null) {
+    		return DSL.endAction(main);
+    	}
+    	checkState(main == DoNothing.INSTANCE, "end nodes cannot have a next action");
+    	return continueWith;
+    }
+
     public Collection<Node> nodes() {
         return nodes.values();
     }
-    
+
     public StringBuffer dot() {
     	return dotContent;
     }
-    
+
     public String toDot() {
     	return format("diagraph G {\n%s}\n", dotContent.toString());
     }
-    
-}
\ No newline at end of file
+
+    private static <T> T lookup(Map<Path,T> map, Path name) {
+    	Path resolved = resolve(map, name);
+    	return resolved != null ? map.get(resolved) : null;
+    }
+
+    private static Path resolve(Map<Path,?> map, Path name) {
+    	if (map.containsKey(name)) return name;
+		for (Entry<Path,?> e : map.entrySet()) {
+			if (e.getKey().endsWith(name)) {
+				return e.getKey();
+			}
+		}
+		return null;
+    }
+
+}
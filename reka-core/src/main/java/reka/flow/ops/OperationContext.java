@@ -1,5 +1,8 @@
 package reka.flow.ops;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import reka.identity.IdentityKey;
@@ -9,10 +12,31 @@ public class OperationContext implements IdentityStoreReader {
 
 	private final IdentityStoreReader store;
 	
+	private List<AutoCloseable> resources; // guarded by this
+	
+	public static OperationContext of(IdentityStoreReader store) {
+		return store instanceof OperationContext ? (OperationContext) store : new OperationContext(store);
+	}
+	
 	public OperationContext(IdentityStoreReader store) {
 		this.store = store;
 	}
 	
+	/**
+	 * Closes the resource once the flow run is finished with its data, for things like streams
+	 * that are opened by an operation but only read after it.
+	 */
+	public synchronized void closeWhenDone(AutoCloseable resource) {
+		if (resources == null) resources = new ArrayList<>();
+		resources.add(resource);
+	}
+	
+	public synchronized List<AutoCloseable> takeResources() {
+		List<AutoCloseable> taken = resources != null ? resources : Collections.emptyList();
+		resources = null;
+		return taken;
+	}
+	
 	@Override
 	public <T> T get(IdentityKey<T> key) {
 		return store.get(key);
@@ -7,6 +7,14 @@ public interface Subscriber {
 	
 	void ok(MutableData data);
 	
+	/**
+	 * Offered anything the run left open before {@link #ok} is called, return true to close it
+	 * yourself once you are done with the data, otherwise it is closed as soon as ok returns.
+	 */
+	default boolean keep(AutoCloseable resource) {
+		return false;
+	}
+	
 	default void halted() {
 		System.err.printf("ignored subscriber halt\n");
 	}
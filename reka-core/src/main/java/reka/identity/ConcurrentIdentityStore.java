@@ -1,69 +1,123 @@
 package reka.identity;
 
-import static java.lang.System.identityHashCode;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static reka.util.Util.runtime;
 
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ConcurrentIdentityStore implements IdentityStore {
-	
+
+	private static final int INITIAL_SIZE = 16;
+
 	public static IdentityStore create() {
 		return new ConcurrentIdentityStore();
 	}
-	
+
 	public static IdentityStore createFrom(IdentityStoreReader incoming) {
 		ConcurrentIdentityStore store = new ConcurrentIdentityStore();
 		if (incoming instanceof ImmutableIdentityStore) {
 			ImmutableIdentityStore from = (ImmutableIdentityStore) incoming;
-			store.map.putAll(from.map);	
+			for (int i = 0; i < from.values.length; i++) {
+				if (from.values[i] != null) store.set(from.base + i, new Entry(from.keys[i], from.values[i]));
+			}
 		} else if (incoming instanceof ConcurrentIdentityStore) {
-			ConcurrentIdentityStore from = (ConcurrentIdentityStore) incoming;
-			store.map.putAll(from.map);
+			AtomicReferenceArray<Entry> from = ((ConcurrentIdentityStore) incoming).entries;
+			for (int i = 0; i < from.length(); i++) {
+				Entry entry = from.get(i);
+				if (entry != null) store.set(i, entry);
+			}
 		} else {
 			throw runtime("sorry, can only create from %s or %s, not %s", ImmutableIdentityStore.class, ConcurrentIdentityStore.class, incoming.getClass());
 		}
 		return store;
 	}
-	
+
+	// the key is kept with its value, it holds on to the slot while the value is here
+	private static final class Entry {
+
+		final IdentityKey<?> key;
+		final Object value;
+
+		Entry(IdentityKey<?> key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+
+	}
+
 	private ConcurrentIdentityStore() {
 	}
-	
-	private final ConcurrentMap<Integer, Object> map = new ConcurrentHashMap<>();
-	
+
+	// reads don't lock, writes lock so they can't land in an array that is being replaced
+	private volatile AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(INITIAL_SIZE);
+
 	@Override
 	public <T> T put(IdentityKey<T> key, T value) {
-		map.put(identityHashCode(key), value);
+		checkNotNull(value, "can't put null for [%s]", key.name());
+		set(key.slot(), new Entry(key, value));
 		return value;
 	}
-	
+
+	private synchronized void set(int slot, Entry entry) {
+		AtomicReferenceArray<Entry> current = entries;
+		if (slot >= current.length()) {
+			AtomicReferenceArray<Entry> bigger = new AtomicReferenceArray<>(Math.max(slot + 1, current.length() * 2));
+			for (int i = 0; i < current.length(); i++) {
+				bigger.lazySet(i, current.get(i));
+			}
+			bigger.set(slot, entry);
+			entries = bigger;
+		} else {
+			current.set(slot, entry);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T get(IdentityKey<T> key) {
-		return (T) map.get(identityHashCode(key));
+		AtomicReferenceArray<Entry> current = entries;
+		int slot = key.slot();
+		if (slot >= current.length()) return null;
+		Entry entry = current.get(slot);
+		return entry != null && entry.key == key ? (T) entry.value : null;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <T> Optional<T> lookup(IdentityKey<T> key) {
-		return Optional.ofNullable((T) map.get(identityHashCode(key)));
+		return Optional.ofNullable(get(key));
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
-	public <T> Optional<T> remove(IdentityKey<T> key) {
-		return Optional.ofNullable((T) map.remove(identityHashCode(key)));
+	public synchronized <T> Optional<T> remove(IdentityKey<T> key) {
+		AtomicReferenceArray<Entry> current = entries;
+		int slot = key.slot();
+		if (slot >= current.length()) return Optional.empty();
+		Entry entry = current.get(slot);
+		if (entry == null || entry.key != key) return Optional.empty();
+		current.set(slot, null);
+		return Optional.of((T) entry.value);
 	}
 
 	@Override
 	public IdentityStoreReader immutable() {
-		return ImmutableIdentityStore.from(map);
+		AtomicReferenceArray<Entry> current = entries;
+		IdentityKey<?>[] keys = new IdentityKey<?>[current.length()];
+		Object[] values = new Object[current.length()];
+		for (int i = 0; i < values.length; i++) {
+			Entry entry = current.get(i);
+			if (entry != null) {
+				keys[i] = entry.key;
+				values[i] = entry.value;
+			}
+		}
+		return ImmutableIdentityStore.from(0, keys, values);
 	}
 
 	@Override
 	public <T> boolean has(IdentityKey<T> key) {
-		return map.containsKey(identityHashCode(key));
+		return get(key) != null;
 	}
-	
-}
\ No newline at end of file
+
+}
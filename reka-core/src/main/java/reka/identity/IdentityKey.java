@@ -1,10 +1,30 @@
 package reka.identity;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.UUID;
 
+/**
+ * Keys are made when classes load or apps are built, each one gets a slot so stores can
+ * keep their values in an array.
+ *
+ * Apps make new keys each time they are built, so a slot is given back once its key has been
+ * collected. Stores keep the key with each value, so no store can have a value for a slot
+ * that has been given back.
+ */
 public final class IdentityKey<T> {
 	
+	private static final ReferenceQueue<IdentityKey<?>> collected = new ReferenceQueue<>();
+	private static final Set<SlotReference> live = new HashSet<>();
+	private static final PriorityQueue<Integer> free = new PriorityQueue<>();
+	private static int next;
+	
 	private final String name;
+	private final int slot;
 	
 	public static <T> IdentityKey<T> named(String name) {
 		return new IdentityKey<>(name);
@@ -12,12 +32,39 @@ public final class IdentityKey<T> {
 	
 	private IdentityKey(String name) {
 		this.name = name;
+		this.slot = allocate(this);
+	}
+	
+	private static synchronized int allocate(IdentityKey<?> key) {
+		Reference<?> ref;
+		while ((ref = collected.poll()) != null) {
+			live.remove(ref);
+			free.add(((SlotReference) ref).slot);
+		}
+		int slot = free.isEmpty() ? next++ : free.poll();
+		live.add(new SlotReference(key, slot));
+		return slot;
+	}
+	
+	private static class SlotReference extends WeakReference<IdentityKey<?>> {
+		
+		private final int slot;
+		
+		SlotReference(IdentityKey<?> key, int slot) {
+			super(key, collected);
+			this.slot = slot;
+		}
+		
 	}
 	
 	public String name() {
 		return name;
 	}
 	
+	int slot() {
+		return slot;
+	}
+	
 	public static void main(String[] args) {
 		IdentityStore store = IdentityStore.createConcurrentIdentityStore();
 		
@@ -1,50 +1,81 @@
 package reka.identity;
 
-import static java.lang.System.identityHashCode;
-
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
-import com.google.common.collect.ImmutableMap;
-
 public class ImmutableIdentityStore implements IdentityStoreReader {
-	
-	protected final Map<Integer, Object> map;
-	
-	public static IdentityStoreReader from(Map<Integer,Object> source) {
-		return new ImmutableIdentityStore(ImmutableMap.copyOf(source));
+
+	private static final IdentityKey<?>[] NO_KEYS = new IdentityKey<?>[0];
+	private static final Object[] EMPTY = new Object[0];
+
+	// keys[i] and values[i] are for slot base + i
+	final int base;
+	final IdentityKey<?>[] keys;
+	final Object[] values;
+
+	static IdentityStoreReader from(int base, IdentityKey<?>[] keys, Object[] source) {
+		int first = 0;
+		int last = source.length - 1;
+		while (first <= last && source[first] == null) first++;
+		while (last >= first && source[last] == null) last--;
+		if (first > last) return new ImmutableIdentityStore(0, NO_KEYS, EMPTY);
+		int length = last - first + 1;
+		IdentityKey<?>[] trimmedKeys = new IdentityKey<?>[length];
+		Object[] values = new Object[length];
+		System.arraycopy(keys, first, trimmedKeys, 0, length);
+		System.arraycopy(source, first, values, 0, length);
+		return new ImmutableIdentityStore(base + first, trimmedKeys, values);
 	}
-	
+
 	public static class Builder {
-		private final ImmutableMap.Builder<Integer,Object> m = ImmutableMap.builder();
+		private final List<IdentityKey<?>> keys = new ArrayList<>();
+		private final List<Object> objects = new ArrayList<>();
 		public <T> Builder put(IdentityKey<T> key, T object) {
-			m.put(identityHashCode(key),object);
+			keys.add(key);
+			objects.add(object);
 			return this;
 		}
 		public IdentityStoreReader build() {
-			return new ImmutableIdentityStore(m.build());
+			if (keys.isEmpty()) return new ImmutableIdentityStore(0, NO_KEYS, EMPTY);
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for (IdentityKey<?> key : keys) {
+				min = Math.min(min, key.slot());
+				max = Math.max(max, key.slot());
+			}
+			IdentityKey<?>[] slotKeys = new IdentityKey<?>[max - min + 1];
+			Object[] values = new Object[max - min + 1];
+			for (int i = 0; i < keys.size(); i++) {
+				IdentityKey<?> key = keys.get(i);
+				slotKeys[key.slot() - min] = key;
+				values[key.slot() - min] = objects.get(i);
+			}
+			return new ImmutableIdentityStore(min, slotKeys, values);
 		}
 	}
-	
-	private ImmutableIdentityStore(Map<Integer,Object> map) {
-		this.map = map;
+
+	private ImmutableIdentityStore(int base, IdentityKey<?>[] keys, Object[] values) {
+		this.base = base;
+		this.keys = keys;
+		this.values = values;
 	}
-	
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T get(IdentityKey<T> key) {
-		return (T) map.get(identityHashCode(key));
+		int i = key.slot() - base;
+		return i >= 0 && i < values.length && keys[i] == key ? (T) values[i] : null;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <T> Optional<T> lookup(IdentityKey<T> key) {
-		return Optional.ofNullable((T) map.get(identityHashCode(key)));
+		return Optional.ofNullable(get(key));
 	}
 
 	@Override
 	public <T> boolean has(IdentityKey<T> key) {
-		return map.containsKey(key);
+		return get(key) != null;
 	}
-	
-}
\ No newline at end of file
+
+}
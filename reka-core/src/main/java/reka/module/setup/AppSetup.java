@@ -103,6 +103,9 @@ public class AppSetup {
 		segments.add(e);
 	}
 	
+	/**
+	 * Runs when this version goes, for things setup() makes each time (listeners, timers, caches).
+	 */
 	public void onUndeploy(String name, Runnable runnable) {
 		collector.components.add(new ApplicationComponent(){
 
@@ -119,8 +122,12 @@ public class AppSetup {
 		});
 	}
 	
+	/**
+	 * Runs when this version goes, for tearing down what onDeploy put in the store. Left out if
+	 * the next version carries this module on, as it is still using them.
+	 */
 	public void onUndeploy(String name, BiConsumer<IdentityAndVersion, IdentityStore> handler) {
-		onUndeploy(name, () -> handler.accept(idv, ctx));
+		collector.components.add(new ModuleUndeployComponent(path, () -> handler.accept(idv, ctx)));
 	}
 	
 	public void simpleOperation(Path name, Function<Config,Operation> fn) {
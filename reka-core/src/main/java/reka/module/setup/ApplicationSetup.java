@@ -5,6 +5,7 @@ import static java.util.stream.Collectors.toList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -36,6 +37,7 @@ public class ApplicationSetup {
 	public final List<Supplier<StatusProvider>> statuses;
 	public final List<Consumer<ApplicationCheck>> checks;
 	public final List<PortRequirement> networkRequirements;
+	public final Set<Path> reused;
 
 	private Identity identity;
 	private Path name;
@@ -45,7 +47,7 @@ public class ApplicationSetup {
 	
 	private final Map<Path,IdentityStoreReader> stores = new HashMap<>();
 
-	ApplicationSetup(Flow initializationFlow, FlowVisualizer initializationFlowVisualizer, ModuleCollector collector) {
+	ApplicationSetup(Flow initializationFlow, FlowVisualizer initializationFlowVisualizer, ModuleCollector collector, Set<Path> reused) {
 		this.initializationFlow = initializationFlow;
 		this.initializationFlowVisualizer = initializationFlowVisualizer;
 		providers = collector.providers;
@@ -56,6 +58,7 @@ public class ApplicationSetup {
 		statuses = collector.statuses;
 		checks = collector.checks;
 		networkRequirements = collector.networkRequirements;
+		this.reused = reused;
 	}
 	
 	public void identity(Identity identity) {
@@ -100,7 +103,8 @@ public class ApplicationSetup {
 							   network, 
 							   initializationFlowVisualizer,
 							   components,
-							   statuses.stream().map(Supplier::get).collect(toList()));
+							   statuses.stream().map(Supplier::get).collect(toList()),
+							   reused);
 	}
 
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package reka.module.setup;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.joining;
 import static reka.config.configurer.Configurer.configure;
 import static reka.config.configurer.Configurer.Preconditions.checkConfig;
@@ -11,6 +13,8 @@ import static reka.flow.builder.FlowSegments.createParallelSegment;
 import static reka.flow.builder.FlowSegments.seq;
 import static reka.util.Path.slashes;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -20,6 +24,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.hash.Hashing;
 
 import reka.app.IdentityAndVersion;
 import reka.config.Config;
@@ -28,6 +35,7 @@ import reka.flow.Flow;
 import reka.flow.FlowSegment;
 import reka.flow.builder.FlowVisualizer;
 import reka.flow.builder.SingleFlow;
+import reka.identity.IdentityKey;
 import reka.identity.IdentityStore;
 import reka.module.ModuleInfo;
 import reka.runtime.NoFlow;
@@ -36,8 +44,22 @@ import reka.util.Path;
 import reka.util.dirs.AppDirs;
 
 public abstract class ModuleConfigurer {
+	
+	/**
+	 * Each module's store holds the hash of the config it was deployed with, so a redeploy
+	 * can tell which modules haven't changed.
+	 */
+	public static final IdentityKey<String> CONFIG_HASH = IdentityKey.named("module config hash");
 
 	public static ApplicationSetup setup(IdentityAndVersion idv, ModuleConfigurer root, Map<Path,IdentityStore> stores) {
+		return setup(idv, root, stores, emptySet());
+	}
+	
+	/**
+	 * The modules in reuse are already running from the previous version, so their
+	 * initialization is left out and they carry on with what is in their store.
+	 */
+	public static ApplicationSetup setup(IdentityAndVersion idv, ModuleConfigurer root, Map<Path,IdentityStore> stores, Set<Path> reuse) {
 		
 		ModuleCollector collector = new ModuleCollector();
 
@@ -66,6 +88,8 @@ public abstract class ModuleConfigurer {
 						                                           module.info().version()));
 			}
 
+			if (reuse.contains(module.fullAliasOrName())) continue;
+
 			setup.buildFlowSegment().ifPresent(segment -> {
 				initializeSegments.put(module, segment);
 			});
@@ -86,7 +110,51 @@ public abstract class ModuleConfigurer {
 			visualizer = NoFlowVisualizer.INSTANCE;
 		}
 
-		return new ApplicationSetup(flow, visualizer, collector);
+		return new ApplicationSetup(flow, visualizer, collector, reuse);
+	}
+	
+	/**
+	 * A hash for each module (by path) that changes if its config, or the config of any module
+	 * it uses, changes.
+	 */
+	public static Map<Path,String> configHashes(ModuleConfigurer root) {
+		Set<ModuleConfigurer> all = collect(root, new HashSet<>());
+		resolveNamedDependencies(all, map(root.uses));
+		Map<ModuleConfigurer,String> hashes = new HashMap<>();
+		Map<Path,String> result = new HashMap<>();
+		for (ModuleConfigurer module : all) {
+			if (module.isRoot()) continue;
+			result.put(module.fullAliasOrName(), configHash(module, hashes));
+		}
+		return result;
+	}
+	
+	private static String configHash(ModuleConfigurer module, Map<ModuleConfigurer,String> hashes) {
+		String hash = hashes.get(module);
+		if (hash != null) return hash;
+		Set<String> parts = new TreeSet<>();
+		for (ModuleConfigurer dep : module.uses) {
+			if (!dep.isRoot()) {
+				parts.add(configHash(dep, hashes));
+			}
+		}
+		hash = Hashing.sha1().hashString(module.config + "\n" + stamps(module.files) + "\n" + join(parts), UTF_8).toString();
+		hashes.put(module, hash);
+		return hash;
+	}
+	
+	private static String join(Set<String> parts) {
+		return parts.stream().collect(joining(","));
+	}
+	
+	private static String stamps(List<java.nio.file.Path> files) {
+		return files.stream().map(file -> {
+			try {
+				return format("%s:%d:%d", file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+			} catch (IOException e) {
+				return format("%s:missing", file);
+			}
+		}).collect(joining(","));
 	}
 
 	private List<ModuleInfo> modules = new ArrayList<>();
@@ -95,6 +163,8 @@ public abstract class ModuleConfigurer {
 	private ModuleInfo info;
 	private String name;
 	private String alias;
+	private String config = "";
+	private final List<java.nio.file.Path> files = new ArrayList<>();
 
 	private boolean isRoot;
 
@@ -168,6 +238,14 @@ public abstract class ModuleConfigurer {
 		return dirs;
 	}
 	
+	/**
+	 * A file outside the config that this module's initialization reads, if it changes the
+	 * module can't be carried over to the next version.
+	 */
+	protected void readsFile(java.nio.file.Path file) {
+		files.add(file);
+	}
+	
 	protected Path fullAliasOrName() {
 		return parentPath.add(slashes(aliasOrName()));
 	}
@@ -200,6 +278,7 @@ public abstract class ModuleConfigurer {
 		module.modules(modules);
 		module.parentPath(modulePath);
 		configure(module, config);
+		module.config = config.format();
 		uses.add(module);
 		module.usedBy.add(this);
 	}
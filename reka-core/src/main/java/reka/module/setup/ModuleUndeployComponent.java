@@ -0,0 +1,34 @@
+package reka.module.setup;
+
+import reka.app.ApplicationComponent;
+import reka.util.Path;
+
+/**
+ * Tears down what a module put in its store when it was deployed. Knows which module it came from
+ * so it can be left alone when the next version carries on using that store.
+ */
+public class ModuleUndeployComponent implements ApplicationComponent {
+	
+	private final Path path;
+	private final Runnable undeploy;
+	
+	public ModuleUndeployComponent(Path path, Runnable undeploy) {
+		this.path = path;
+		this.undeploy = undeploy;
+	}
+	
+	public Path path() {
+		return path;
+	}
+
+	@Override
+	public void undeploy() {
+		undeploy.run();
+	}
+
+	@Override
+	public Runnable pause() {
+		return () -> {};
+	}
+
+}
@@ -25,8 +25,10 @@ public class RekaDetailsOperation implements Operation {
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
 		Identity identity = manager.identityFor(appPathFn.apply(data));
-		manager.get(identity).ifPresent(app -> 
-			AdminUtils.putAppDetails(data.createMapAt(out), app, manager.statusFor(identity)));
+		manager.get(identity).ifPresent(app -> {
+			MutableData details = AdminUtils.putAppDetails(data.createMapAt(out), app, manager.statusFor(identity));
+			manager.timingsFor(identity).ifPresent(timings -> timings.writeTo(details.createMapAt("timings")));
+		});
 	}
 
 }
@@ -69,6 +69,8 @@ public class BuiltinsConfigurer extends ModuleConfigurer {
 		module.defineOperation(path("copy"), provider -> new CopyConfigurer());
     	module.defineOperation(path("run"), provider -> new RunConfigurer(provider));
     	module.defineOperation(path("runp"), provider -> new RunParallelConfigurer(provider));
+    	module.defineOperation(path("map"), provider -> new MapConfigurer(provider, true));
+    	module.defineOperation(path("each"), provider -> new MapConfigurer(provider, false));
     	module.defineOperation(path("context"), provider -> new NewContextConfigurer(provider));
     	module.defineOperation(path("then"), provider -> new RunConfigurer(provider));
     	module.defineOperation(path("log"), provider -> new LogConfigurer());
@@ -0,0 +1,214 @@
+package reka.modules.builtins;
+
+import static java.lang.Math.min;
+import static reka.config.configurer.Configurer.configure;
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
+import static reka.util.Path.dots;
+import static reka.util.Path.path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reka.Reka;
+import reka.config.Config;
+import reka.config.configurer.annotations.Conf;
+import reka.core.config.ConfigurerProvider;
+import reka.core.config.SequenceConfigurer;
+import reka.data.Data;
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.flow.Flow;
+import reka.flow.builder.FlowBuilderGroup;
+import reka.flow.ops.AsyncOperation;
+import reka.flow.ops.OperationContext;
+import reka.flow.ops.Subscriber;
+import reka.module.setup.OperationConfigurer;
+import reka.module.setup.OperationSetup;
+import reka.util.Path;
+
+/**
+ * Runs a sequence for every item in a list, a few items at a time.
+ *
+ * Each run gets its own data with the item at "as" (and its position at "index"), for map the
+ * item is then read back from there and the results are put at "into" in the original order.
+ * Items that halt are left out. The first error fails the whole operation and no more items are started.
+ */
+public class MapConfigurer implements OperationConfigurer {
+
+	private static final Path INDEX = path("index");
+
+	private final ConfigurerProvider provider;
+	private final boolean collect;
+
+	private Path in;
+	private Path into;
+	private Path as = path("item");
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private OperationConfigurer run;
+
+	public MapConfigurer(ConfigurerProvider provider, boolean collect) {
+		this.provider = provider;
+		this.collect = collect;
+	}
+
+	@Conf.Val
+	@Conf.At("in")
+	public void in(String val) {
+		in = dots(val);
+	}
+
+	@Conf.At("into")
+	public void into(String val) {
+		into = dots(val);
+	}
+
+	@Conf.At("as")
+	public void as(String val) {
+		as = dots(val);
+	}
+
+	@Conf.At("parallelism")
+	public void parallelism(String val) {
+		try {
+			parallelism = Integer.parseInt(val);
+		} catch (NumberFormatException e) {
+			checkConfig(false, "parallelism must be a number");
+		}
+		checkConfig(parallelism > 0, "parallelism must be at least 1");
+	}
+
+	@Conf.At("run")
+	public void run(Config config) {
+		checkConfig(config.hasBody(), "run must have a body");
+		run = configure(new SequenceConfigurer(provider), config.body());
+	}
+
+	@Override
+	public void setup(OperationSetup ops) {
+		checkConfig(in != null, "in is required");
+		checkConfig(run != null, "run is required");
+		String name = collect ? "map" : "each";
+		ops.add(name, () -> {
+			Flow flow = FlowBuilderGroup.createFlow(path(name), run.bind(path(name), ops.ctx()).get());
+			return new MapOperation(flow, Reka.SharedExecutors.parallel, in, collect ? (into != null ? into : in) : null, as, parallelism);
+		});
+	}
+
+	public static class MapOperation implements AsyncOperation {
+
+		private final Flow flow;
+		private final ExecutorService executor;
+		private final Path in;
+		private final Path into;
+		private final Path as;
+		private final int parallelism;
+
+		public MapOperation(Flow flow, ExecutorService executor, Path in, Path into, Path as, int parallelism) {
+			this.flow = flow;
+			this.executor = executor;
+			this.in = in;
+			this.into = into;
+			this.as = as;
+			this.parallelism = parallelism;
+		}
+
+		@Override
+		public void call(MutableData data, OperationContext ctx, OperationResult res) {
+			List<Data> items = new ArrayList<>(data.at(in).values());
+			if (items.isEmpty()) {
+				if (into != null) data.putList(into, list -> {});
+				res.done();
+				return;
+			}
+			new Batch(data, items, ctx, res).start();
+		}
+
+		private class Batch {
+
+			private final MutableData data;
+			private final List<Data> items;
+			private final OperationContext ctx;
+			private final OperationResult res;
+
+			private final Data[] results;
+			private final AtomicInteger next = new AtomicInteger();
+			private final AtomicInteger remaining;
+			private final AtomicBoolean failed = new AtomicBoolean(false);
+
+			Batch(MutableData data, List<Data> items, OperationContext ctx, OperationResult res) {
+				this.data = data;
+				this.items = items;
+				this.ctx = ctx;
+				this.res = res;
+				this.results = new Data[items.size()];
+				this.remaining = new AtomicInteger(items.size());
+			}
+
+			void start() {
+				for (int i = 0; i < min(parallelism, items.size()); i++) {
+					runNext();
+				}
+			}
+
+			private void runNext() {
+				if (failed.get()) return;
+				int index = next.getAndIncrement();
+				if (index >= items.size()) return;
+
+				MutableData itemData = MutableMemoryData.create();
+				itemData.put(as, items.get(index));
+				itemData.putInt(INDEX, index);
+
+				flow.prepare()
+					.mutableData(itemData)
+					.operationExecutor(executor)
+					.store(ctx)
+					.stats(false)
+					.complete(new Subscriber() {
+
+						@Override
+						public void ok(MutableData result) {
+							Data item = result.at(as);
+							if (item.isPresent()) results[index] = item;
+							finished();
+						}
+
+						@Override
+						public void halted() {
+							finished();
+						}
+
+						@Override
+						public void error(Data result, Throwable t) {
+							if (failed.compareAndSet(false, true)) {
+								res.error(t);
+							}
+						}
+
+					}).run();
+			}
+
+			private void finished() {
+				if (remaining.decrementAndGet() == 0) {
+					if (failed.get()) return;
+					if (into != null) {
+						data.putList(into, list -> {
+							for (Data result : results) {
+								if (result != null) list.add(result);
+							}
+						});
+					}
+					res.done();
+				} else {
+					runNext();
+				}
+			}
+
+		}
+
+	}
+
+}
@@ -27,13 +27,16 @@ public class FilesystemConfigurer extends ModuleConfigurer {
 	public void setup(AppSetup module) {
 		Path datadir = dirs().data().resolve(dir);
 		Path tmpdir = dirs().tmp().resolve(dir);
-		module.defineOperation(path("write"), provider -> new FilesystemWriteConfigurer(datadir));
+		StaticFileCache cache = new StaticFileCache(datadir);
+		module.onUndeploy("close file cache", cache::close);
+		module.registerStatusProvider(() -> cache);
+		module.defineOperation(path("write"), provider -> new FilesystemWriteConfigurer(datadir, cache));
 		module.defineOperation(path("list"), provider -> new FilesystemListConfigurer(datadir));
-		module.defineOperation(path("read"), provider -> new FilesystemReadConfigurer(datadir));
+		module.defineOperation(path("read"), provider -> new FilesystemReadConfigurer(datadir, cache));
 		module.defineOperation(path("ls"), provider -> new FilesystemListConfigurer(datadir));
 		module.defineOperation(path("mktmpdir"), provider -> new FilesystemMktmpDirConfigurer(tmpdir));
-		module.defineOperation(path("delete"), provider -> new FilesystemDeleteConfigurer(datadir));
-		module.defineOperation(path("rm"), provider -> new FilesystemDeleteConfigurer(datadir));
+		module.defineOperation(path("delete"), provider -> new FilesystemDeleteConfigurer(datadir, cache));
+		module.defineOperation(path("rm"), provider -> new FilesystemDeleteConfigurer(datadir, cache));
 		module.defineOperation(path("resolve"), provider -> new FilesystemResolveConfigurer(datadir));
 		module.defineOperation(path("full-path"), provider -> new FilesystemResolveConfigurer(datadir));
 		module.defineOperation(path("expand"), provider -> new FilesystemResolveConfigurer(datadir));
@@ -13,16 +13,20 @@ import reka.flow.ops.OperationContext;
 public class FilesystemDelete implements Operation {
 	
 	private final java.nio.file.Path basedir;
+	private final StaticFileCache cache;
 	private final Function<Data,String> filenameFn;
 	
-	public FilesystemDelete(java.nio.file.Path basedir, Function<Data,String> filenameFn) {
+	public FilesystemDelete(java.nio.file.Path basedir, StaticFileCache cache, Function<Data,String> filenameFn) {
 		this.basedir = basedir;
+		this.cache = cache;
 		this.filenameFn = filenameFn;	
 	}
 	
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
-		deleteRecursively(resolveAndCheck(basedir, filenameFn.apply(data)));
+		java.nio.file.Path path = resolveAndCheck(basedir, filenameFn.apply(data));
+		deleteRecursively(path);
+		cache.invalidate(path);
 	}
 
 }
@@ -1,69 +1,279 @@
 package reka.modules.filesystem;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static reka.modules.filesystem.FilesystemUtils.resolveAndCheck;
+import static reka.util.Util.runtime;
+import static reka.util.Util.unchecked;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import reka.data.Data;
 import reka.data.MutableData;
+import reka.data.content.Contents;
+import reka.data.content.types.JsonItemsSource;
+import reka.data.content.types.StreamContent;
 import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
 import reka.util.Path;
 
+/**
+ * Lists a directory with one stat per entry, reading it through a {@link DirectoryStream}.
+ *
+ * With a limit it only ever holds one page, the entries that sort after the cursor it was
+ * given, and hands back the cursor for the next page. Unsorted listings can be streamed out
+ * as the directory is read.
+ */
 public class FilesystemList implements Operation {
-	
+
 	public static final String DIRECTORY = "directory";
 	public static final String FILE = "file";
 	public static final String NOT_FOUND = "not found";
-	
-	@SuppressWarnings("unused")
+
+	public static enum Sort { NAME, SIZE, LAST_MODIFIED }
+
+	public static enum Format {
+
+		JSON("application/json"),     // one json array, or an object with entries and next when paging
+		NDJSON("application/x-ndjson"); // one json object per line
+
+		private final String contentType;
+
+		private Format(String contentType) {
+			this.contentType = contentType;
+		}
+
+	}
+
+	private static final int ENTRIES_PER_CHUNK = 100;
+
+	private static final Path ENTRIES = Path.path("entries");
+	private static final Path NEXT = Path.path("next");
+
 	private final Logger logger = LoggerFactory.getLogger("filesystem/list");
 
 	private final java.nio.file.Path basedir;
-	
+
 	private final Function<Data,Path> dataPathFn;
 	private final Function<Data,String> dirFn;
+	private final String glob;
+	private final Sort sort;
+	private final boolean descending;
+	private final int limit;
+	private final Function<Data,String> afterFn;
+	private final Format format;
 
 	public FilesystemList(java.nio.file.Path basedir, Function<Data,Path> dataPathFn, Function<Data,String> dirFn) {
+		this(basedir, dataPathFn, dirFn, null, null, false, 0, null, null);
+	}
+
+	public FilesystemList(java.nio.file.Path basedir, Function<Data,Path> dataPathFn, Function<Data,String> dirFn,
+			String glob, Sort sort, boolean descending, int limit, Function<Data,String> afterFn, Format format) {
 		this.basedir = basedir;
 		this.dataPathFn = dataPathFn;
 		this.dirFn = dirFn;
+		this.glob = glob;
+		this.sort = sort == null && limit > 0 ? Sort.NAME : sort; // pages need an order
+		this.descending = descending;
+		this.limit = limit;
+		this.afterFn = afterFn;
+		this.format = format;
 	}
 
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
 
 		Path dataOut = dataPathFn.apply(data);
-		
+
 		String dir = dirFn.apply(data);
-		
+
 		java.nio.file.Path entryPath = resolveAndCheck(basedir, dir);
-		File entry = entryPath.toFile();
-		
-		if (entry.isDirectory()) {
-			
-			File[] files = entry.listFiles();
-			
-			if (files != null && files.length > 0) {
-			
-				for (int i = 0; i < files.length; i++) {
-					File file = files[i];
-					String path = dir.isEmpty() ? file.getName() : entryPath.resolve(file.getName()).toString();
-					populate(data, dataOut.add(i), file, path);
-				}
-			
+
+		if (!Files.isDirectory(entryPath)) {
+			populate(data, dataOut.add(0), entryPath.toFile(), dir);
+			return;
+		}
+
+		Function<java.nio.file.Path,String> pathFn = p -> dir.isEmpty() ? p.getFileName().toString() : p.toString();
+
+		try {
+			if (sort == null) {
+				unsorted(data, dataOut, entryPath, pathFn, ctx);
 			} else {
+				sorted(data, dataOut, entryPath, pathFn);
+			}
+		} catch (IOException e) {
+			throw unchecked(e);
+		}
+	}
+
+	private DirectoryStream<java.nio.file.Path> open(java.nio.file.Path dir) throws IOException {
+		return glob != null ? Files.newDirectoryStream(dir, glob) : Files.newDirectoryStream(dir);
+	}
+
+	private void unsorted(MutableData data, Path dataOut, java.nio.file.Path dir, Function<java.nio.file.Path,String> pathFn, OperationContext ctx) throws IOException {
+		DirectoryStream<java.nio.file.Path> stream = open(dir);
+		Iterator<Entry> entries = new StatIterator(stream.iterator(), pathFn);
+		if (format != null) {
+			// the directory stays open until the listing is written out or the flow is done
+			StreamContent content = new StreamContent(format.contentType, new ListingSource(entries, stream, null, false));
+			ctx.closeWhenDone(content::discard);
+			data.put(dataOut, content);
+			return;
+		}
+		try {
+			int i = 0;
+			while (entries.hasNext()) {
+				entries.next().populate(data, dataOut.add(i++));
+			}
+			if (i == 0) {
 				data.createListAt(dataOut);
 			}
-		} else {
-			populate(data, dataOut.add(0), entry, dir);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private void sorted(MutableData data, Path dataOut, java.nio.file.Path dir, Function<java.nio.file.Path,String> pathFn) throws IOException {
+
+		Comparator<Entry> order = comparator();
+		Entry after = afterFn != null ? fromCursor(afterFn.apply(data)) : null;
+
+		// only the name is needed to sort by name, the rest is read for the ones we keep
+		boolean statFirst = sort != Sort.NAME;
+
+		// keeps one more than the limit to know if there is another page
+		PriorityQueue<Entry> kept = new PriorityQueue<>(limit > 0 ? limit + 2 : 64, order.reversed());
+
+		try (DirectoryStream<java.nio.file.Path> stream = open(dir)) {
+			Iterator<Entry> it = statFirst ? new StatIterator(stream.iterator(), pathFn) : names(stream.iterator(), pathFn);
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				if (after != null && order.compare(entry, after) <= 0) continue;
+				kept.add(entry);
+				if (limit > 0 && kept.size() > limit + 1) {
+					kept.poll();
+				}
+			}
+		}
+
+		List<Entry> entries = new ArrayList<>(kept);
+		Collections.sort(entries, order);
+
+		boolean more = limit > 0 && entries.size() > limit;
+		if (more) entries.remove(entries.size() - 1);
+
+		if (!statFirst) {
+			entries.removeIf(entry -> !entry.stat());
+		}
+
+		String next = more && !entries.isEmpty() ? cursor(entries.get(entries.size() - 1)) : null;
+
+		if (format != null) {
+			data.put(dataOut, Contents.stream(format.contentType, new ListingSource(entries.iterator(), () -> {}, next, limit > 0)));
+			return;
+		}
+
+		Path list = limit > 0 ? dataOut.add(ENTRIES) : dataOut;
+
+		if (entries.isEmpty()) {
+			data.createListAt(list);
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			entries.get(i).populate(data, list.add(i));
+		}
+		if (next != null) {
+			data.putString(dataOut.add(NEXT), next);
+		}
+	}
+
+	private Comparator<Entry> comparator() {
+		Comparator<Entry> byName = Comparator.comparing(entry -> entry.name);
+		Comparator<Entry> order;
+		switch (sort) {
+		case SIZE:
+			order = Comparator.<Entry>comparingLong(entry -> entry.size).thenComparing(byName);
+			break;
+		case LAST_MODIFIED:
+			order = Comparator.<Entry>comparingLong(entry -> entry.lastModified).thenComparing(byName);
+			break;
+		default:
+			order = byName;
+		}
+		return descending ? order.reversed() : order;
+	}
+
+	private String cursor(Entry entry) {
+		String value;
+		switch (sort) {
+		case SIZE:
+			value = entry.size + "/" + entry.name;
+			break;
+		case LAST_MODIFIED:
+			value = entry.lastModified + "/" + entry.name;
+			break;
+		default:
+			value = entry.name;
 		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(UTF_8));
 	}
-	
+
+	private Entry fromCursor(String cursor) {
+		if (cursor == null || cursor.isEmpty()) return null;
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+			if (sort == Sort.NAME) {
+				return new Entry(value, null, null);
+			}
+			int slash = value.indexOf('/');
+			Entry entry = new Entry(value.substring(slash + 1), null, null);
+			long key = Long.parseLong(value.substring(0, slash));
+			if (sort == Sort.SIZE) {
+				entry.size = key;
+			} else {
+				entry.lastModified = key;
+			}
+			return entry;
+		} catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+			throw runtime("invalid cursor [%s]", cursor);
+		}
+	}
+
+	private static Iterator<Entry> names(Iterator<java.nio.file.Path> paths, Function<java.nio.file.Path,String> pathFn) {
+		return new Iterator<Entry>() {
+
+			@Override
+			public boolean hasNext() {
+				return paths.hasNext();
+			}
+
+			@Override
+			public Entry next() {
+				java.nio.file.Path path = paths.next();
+				return new Entry(path.getFileName().toString(), path, pathFn.apply(path));
+			}
+
+		};
+	}
+
 	private void populate(MutableData item, Path base, File file, String path) {
 		item.putString(base.add("name"), file.getName());
 		item.putString(base.add("path"), path);
@@ -73,4 +283,147 @@ public class FilesystemList implements Operation {
 		item.putBool(base.add("hidden?"), file.isHidden());
 	}
 
+	private static class Entry {
+
+		private final String name;
+		private final java.nio.file.Path file;
+		private final String path;
+
+		private long size;
+		private long lastModified;
+		private boolean dir;
+		private boolean hidden;
+
+		Entry(String name, java.nio.file.Path file, String path) {
+			this.name = name;
+			this.file = file;
+			this.path = path;
+		}
+
+		/**
+		 * Reads everything but the name in one go, false if it has gone since it was listed.
+		 */
+		boolean stat() {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				size = attributes.size();
+				lastModified = attributes.lastModifiedTime().toMillis();
+				dir = attributes.isDirectory();
+				hidden = Files.isHidden(file);
+				return true;
+			} catch (NoSuchFileException e) {
+				return false;
+			} catch (IOException e) {
+				throw unchecked(e);
+			}
+		}
+
+		void populate(MutableData item, Path base) {
+			item.putString(base.add("name"), name);
+			item.putString(base.add("path"), path);
+			item.putLong(base.add("size"), size);
+			item.putLong(base.add("last-modified"), lastModified);
+			item.putBool(base.add("dir?"), dir);
+			item.putBool(base.add("hidden?"), hidden);
+		}
+
+		void writeJsonTo(JsonGenerator json) throws IOException {
+			json.writeStartObject();
+			json.writeStringField("name", name);
+			json.writeStringField("path", path);
+			json.writeNumberField("size", size);
+			json.writeNumberField("last-modified", lastModified);
+			json.writeBooleanField("dir?", dir);
+			json.writeBooleanField("hidden?", hidden);
+			json.writeEndObject();
+		}
+
+	}
+
+	/**
+	 * Stats each path as it's listed, skipping any that have gone in the meantime.
+	 */
+	private static class StatIterator implements Iterator<Entry> {
+
+		private final Iterator<java.nio.file.Path> paths;
+		private final Function<java.nio.file.Path,String> pathFn;
+		private Entry next;
+
+		StatIterator(Iterator<java.nio.file.Path> paths, Function<java.nio.file.Path,String> pathFn) {
+			this.paths = paths;
+			this.pathFn = pathFn;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && paths.hasNext()) {
+				java.nio.file.Path path = paths.next();
+				Entry entry = new Entry(path.getFileName().toString(), path, pathFn.apply(path));
+				if (entry.stat()) next = entry;
+			}
+			return next != null;
+		}
+
+		@Override
+		public Entry next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			Entry entry = next;
+			next = null;
+			return entry;
+		}
+
+	}
+
+	private class ListingSource extends JsonItemsSource {
+
+		private final Iterator<Entry> entries;
+		private final AutoCloseable resource;
+		private final String next;
+		private final boolean paged;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		ListingSource(Iterator<Entry> entries, AutoCloseable resource, String next, boolean paged) {
+			super(format == Format.JSON, ENTRIES_PER_CHUNK);
+			this.entries = entries;
+			this.resource = resource;
+			this.next = next;
+			this.paged = paged && format == Format.JSON;
+		}
+
+		@Override
+		protected void writeStart(JsonGenerator json) throws IOException {
+			if (paged) json.writeRaw("{\"entries\":");
+		}
+
+		@Override
+		protected boolean writeItem(JsonGenerator json) throws IOException {
+			if (!entries.hasNext()) return false;
+			entries.next().writeJsonTo(json);
+			return true;
+		}
+
+		@Override
+		protected void writeEnd(JsonGenerator json) throws IOException {
+			if (!paged) return;
+			json.writeRaw(",\"next\":");
+			if (next != null) {
+				json.writeString(next);
+			} else {
+				json.writeNull();
+			}
+			json.writeRaw('}');
+		}
+
+		@Override
+		public void close() {
+			if (!closed.compareAndSet(false, true)) return;
+			try {
+				resource.close();
+			} catch (Exception e) {
+				logger.error("failed to close directory listing", e);
+			}
+		}
+
+	}
+
 }
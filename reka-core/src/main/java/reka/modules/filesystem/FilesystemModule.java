@@ -1,15 +1,19 @@
 package reka.modules.filesystem;
 
 import static java.util.Arrays.asList;
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
 import static reka.config.configurer.Configurer.configure;
 import static reka.util.Path.dots;
 import static reka.util.Path.path;
 
 import java.nio.file.Path;
+import java.util.Locale;
 import java.util.function.Function;
 
 import reka.config.Config;
 import reka.config.ConfigBody;
+import reka.config.configurer.Configurer.ErrorCollector;
+import reka.config.configurer.ErrorReporter;
 import reka.config.configurer.annotations.Conf;
 import reka.core.config.ConfigurerProvider;
 import reka.core.config.SequenceConfigurer;
@@ -36,14 +40,17 @@ public class FilesystemModule implements Module {
 	public static class FilesystemReadConfigurer implements OperationConfigurer {
 
 		private final Path basedir;
+		private final StaticFileCache cache;
 		
 		private boolean download = false;
+		private boolean precompressed = false;
 		
 		private Function<Data,reka.util.Path> dataPathFn = (unused) -> Response.CONTENT;
 		private Function<Data,String> filenameFn;
 		
-		public FilesystemReadConfigurer(Path basedir) {
+		public FilesystemReadConfigurer(Path basedir, StaticFileCache cache) {
 			this.basedir = basedir;
+			this.cache = cache;
 		}
 		
 		@Conf.At("out")
@@ -62,9 +69,14 @@ public class FilesystemModule implements Module {
 			download = !asList("false", "no").contains(val);
 		}
 		
+		@Conf.At("precompressed")
+		public void precompressed(String val) {
+			precompressed = !asList("false", "no").contains(val);
+		}
+		
 		@Override
 		public void setup(OperationSetup ops) {
-			ops.add("read", () -> new FilesystemRead(basedir, dataPathFn, filenameFn, download));
+			ops.add("read", () -> new FilesystemRead(basedir, cache, dataPathFn, filenameFn, download, precompressed));
 		}
 		
 	}
@@ -72,11 +84,13 @@ public class FilesystemModule implements Module {
 	public static class FilesystemDeleteConfigurer implements OperationConfigurer {
 
 		private final Path basedir;
+		private final StaticFileCache cache;
 		
 		private Function<Data,String> filenameFn;
 		
-		public FilesystemDeleteConfigurer(Path basedir) {
+		public FilesystemDeleteConfigurer(Path basedir, StaticFileCache cache) {
 			this.basedir = basedir;
+			this.cache = cache;
 		}
 		
 		@Conf.Val
@@ -87,17 +101,24 @@ public class FilesystemModule implements Module {
 		
 		@Override
 		public void setup(OperationSetup ops) {
-			ops.add("delete", () -> new FilesystemDelete(basedir, filenameFn));
+			ops.add("delete", () -> new FilesystemDelete(basedir, cache, filenameFn));
 		}
 		
 	}
 	
-	public static class FilesystemListConfigurer implements OperationConfigurer {
+	public static class FilesystemListConfigurer implements OperationConfigurer, ErrorReporter {
 
 		private final Path basedir;
 		
 		private Function<Data,reka.util.Path> dataPathFn = (unused) -> Response.CONTENT;
 		private Function<Data,String> dirFn = (unused) -> ".";
+		private Function<Data,String> afterFn;
+		
+		private String glob;
+		private FilesystemList.Sort sort;
+		private boolean descending;
+		private int limit;
+		private FilesystemList.Format stream;
 		
 		public FilesystemListConfigurer(Path basedir) {
 			this.basedir = basedir;
@@ -114,9 +135,56 @@ public class FilesystemModule implements Module {
 			dirFn = StringWithVars.compile(val);
 		}
 		
+		@Conf.At("glob")
+		public void glob(String val) {
+			glob = val;
+		}
+		
+		@Conf.At("sort")
+		public void sort(String val) {
+			String[] parts = val.trim().split("\\s+");
+			try {
+				sort = FilesystemList.Sort.valueOf(parts[0].toUpperCase(Locale.ENGLISH).replace('-', '_'));
+			} catch (IllegalArgumentException e) {
+				checkConfig(false, "unknown sort %s, use name, size or last-modified", parts[0]);
+			}
+			checkConfig(parts.length == 1 || asList("asc", "desc").contains(parts[1]), "sort order must be asc or desc");
+			descending = parts.length > 1 && parts[1].equals("desc");
+		}
+		
+		@Conf.At("limit")
+		public void limit(String val) {
+			try {
+				limit = Integer.parseInt(val);
+			} catch (NumberFormatException e) {
+				checkConfig(false, "limit must be a number");
+			}
+			checkConfig(limit > 0, "limit must be more than 0");
+		}
+		
+		@Conf.At("after")
+		public void after(String val) {
+			afterFn = StringWithVars.compile(val);
+		}
+		
+		@Conf.At("stream")
+		public void stream(String val) {
+			try {
+				stream = FilesystemList.Format.valueOf(val.toUpperCase(Locale.ENGLISH));
+			} catch (IllegalArgumentException e) {
+				checkConfig(false, "unknown stream format %s, use json or ndjson", val);
+			}
+		}
+		
+		@Override
+		public void errors(ErrorCollector errors) {
+			errors.checkConfig(afterFn == null || limit > 0, "after only works with a limit");
+			errors.checkConfig(limit == 0 || stream != FilesystemList.Format.NDJSON, "can't page an ndjson stream, use json");
+		}
+		
 		@Override
 		public void setup(OperationSetup ops) {
-			ops.add("list", () -> new FilesystemList(basedir, dataPathFn, dirFn));
+			ops.add("list", () -> new FilesystemList(basedir, dataPathFn, dirFn, glob, sort, descending, limit, afterFn, stream));
 		}
 		
 	}
@@ -1,78 +1,116 @@
 package reka.modules.filesystem;
 
-import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
-import static reka.data.content.Contents.binary;
 import static reka.data.content.Contents.longValue;
 import static reka.modules.filesystem.FilesystemUtils.resolveAndCheck;
 import static reka.util.Util.runtime;
 
-import java.io.File;
-import java.io.InputStream;
 import java.util.function.Function;
 
-import javax.activation.MimetypesFileTypeMap;
-
 import reka.data.Data;
 import reka.data.MutableData;
 import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
+import reka.modules.filesystem.StaticFileCache.Entry;
 import reka.util.Path;
+import reka.util.Path.Request;
 import reka.util.Path.Response;
 
 public class FilesystemRead implements Operation {
-	
+
+	private static final String GZIP = "gzip";
+
 	private final java.nio.file.Path basedir;
+	private final StaticFileCache cache;
 	private final Function<Data,Path> dataPathFn;
 	private final Function<Data,String> filenameFn;
 	private final boolean download;
-	private final MimetypesFileTypeMap mimeTypesMap;
-	
-	public FilesystemRead(java.nio.file.Path basedir, Function<Data,Path> dataPathFn, Function<Data,String> filenameFn, boolean download) {
+	private final boolean precompressed;
+
+	public FilesystemRead(java.nio.file.Path basedir, StaticFileCache cache, Function<Data,Path> dataPathFn, Function<Data,String> filenameFn, boolean download, boolean precompressed) {
 		this.basedir = basedir;
+		this.cache = cache;
 		this.dataPathFn = dataPathFn;
 		this.filenameFn = filenameFn;
 		this.download = download;
-		InputStream mimeTypes = getClass().getResourceAsStream("/META-INF/mimetypes.default");
-		checkNotNull(mimeTypes, "couldn't find mime.types on the resource path");
-		mimeTypesMap = new MimetypesFileTypeMap(mimeTypes);
+		this.precompressed = precompressed;
 	}
-	
+
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
-		
+
 		Path dataOut = dataPathFn.apply(data);
-		
+
 		String filename = filenameFn.apply(data);
-		
-		File file = resolveAndCheck(basedir, filename).toFile();
-		
-		if (file.exists() && file.isFile()) {
-			
-			String contentType = mimeTypesMap.getContentType(file.getPath());
-			
-			if (dataOut.equals(Response.CONTENT)) {
-				
-		        data.putString(Response.Headers.CONTENT_TYPE, contentType)
-		        	.put(Response.Headers.CONTENT_LENGTH, longValue(file.length()))
-		        	.put(Response.CONTENT, binary(contentType, file));
-	
-		        if (download) {
-		        	
-		        	data.putString(Response.Headers.CONTENT_DISPOSITION, 
-		        			       format("attachment; filename=\"%s\"", file.getName()));
-		        	
-		        }
-	        
-			} else {
-				
-				data.put(dataOut, binary(contentType, file));
-				
+
+		Entry file = cache.get(resolveAndCheck(basedir, filename));
+
+		if (!file.isFile()) {
+			throw runtime("%s cannot be read", file.path().toAbsolutePath());
+		}
+
+		if (!dataOut.equals(Response.CONTENT)) {
+			data.put(dataOut, file.content());
+			return;
+		}
+
+		Entry send = file;
+
+		if (precompressed) {
+			Entry gz = cache.get(file.path().resolveSibling(file.path().getFileName() + ".gz"));
+			if (gz.isFile() && gz.lastModifiedMillis() >= file.lastModifiedMillis()) {
+				data.putString(Response.Headers.VARY, "Accept-Encoding");
+				if (acceptsGzip(data)) {
+					send = gz;
+				}
 			}
-			
-		} else {
-			throw runtime("%s cannot be read", file.getAbsolutePath());
 		}
+
+		data.putString(Response.Headers.CONTENT_TYPE, file.contentType())
+			.putString(Response.Headers.ETAG, send.etag())
+			.putString(Response.Headers.LAST_MODIFIED, send.lastModified());
+
+		if (notModified(data, send.etag())) {
+			data.putInt(Response.STATUS, 304).putString(Response.CONTENT, "");
+			return;
+		}
+
+		if (send != file) {
+			data.putString(Response.Headers.CONTENT_ENCODING, GZIP);
+		}
+
+		data.put(Response.Headers.CONTENT_LENGTH, longValue(send.length()))
+			.put(Response.CONTENT, send.content());
+
+		if (download) {
+
+			data.putString(Response.Headers.CONTENT_DISPOSITION,
+					       format("attachment; filename=\"%s\"", file.path().getFileName()));
+
+		}
+	}
+
+	private static boolean acceptsGzip(Data data) {
+		String accept = data.getString(Request.Headers.ACCEPT_ENCODING).orElse(null);
+		if (accept == null) return false;
+		for (String coding : accept.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (GZIP.equalsIgnoreCase(parts[0].trim())) {
+				return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	private static boolean notModified(Data data, String etag) {
+		String ifNoneMatch = data.getString(Request.Headers.IF_NONE_MATCH).orElse(null);
+		if (ifNoneMatch == null) return false;
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) tag = tag.substring(2);
+			if (tag.equals(etag) || tag.equals("*")) return true;
+		}
+		return false;
 	}
 
 }
@@ -27,11 +27,13 @@ public class FilesystemWrite implements Operation {
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	private final java.nio.file.Path basedir;
+	private final StaticFileCache cache;
 	private final Function<Data,Path> dataPathFn;
 	private final Function<Data,String> filenameFn;
 	
-	public FilesystemWrite(java.nio.file.Path basedir, Function<Data,Path> dataPathFn, Function<Data,String> filenameFn) {
+	public FilesystemWrite(java.nio.file.Path basedir, StaticFileCache cache, Function<Data,Path> dataPathFn, Function<Data,String> filenameFn) {
 		this.basedir = basedir;
+		this.cache = cache;
 		this.dataPathFn = dataPathFn;
 		this.filenameFn = filenameFn;
 	}
@@ -84,6 +86,8 @@ public class FilesystemWrite implements Operation {
 			}
 		} catch (Throwable t) {
 			throw unchecked(t);
+		} finally {
+			cache.invalidate(to);
 		}
 	}
 
@@ -13,12 +13,14 @@ import reka.util.StringWithVars;
 public class FilesystemWriteConfigurer implements OperationConfigurer {
 
 	private final java.nio.file.Path basedir;
+	private final StaticFileCache cache;
 	
 	private Function<Data,reka.util.Path> dataPathFn;
 	private Function<Data,String> filenameFn;
 	
-	public FilesystemWriteConfigurer(java.nio.file.Path basedir) {
+	public FilesystemWriteConfigurer(java.nio.file.Path basedir, StaticFileCache cache) {
 		this.basedir = basedir;
+		this.cache = cache;
 	}
 	
 	@Conf.At("data")
@@ -33,7 +35,7 @@ public class FilesystemWriteConfigurer implements OperationConfigurer {
 	
 	@Override
 	public void setup(OperationSetup ops) {
-		ops.add("files/write", () -> new FilesystemWrite(basedir, dataPathFn, filenameFn));
+		ops.add("files/write", () -> new FilesystemWrite(basedir, cache, dataPathFn, filenameFn));
 	}
 	
 }
\ No newline at end of file
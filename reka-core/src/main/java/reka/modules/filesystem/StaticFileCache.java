@@ -0,0 +1,312 @@
+package reka.modules.filesystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static reka.data.content.Contents.binary;
+import static reka.util.Util.unchecked;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.activation.MimetypesFileTypeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reka.data.MutableData;
+import reka.data.content.Content;
+import reka.module.setup.StatusDataProvider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * What files under a directory look like, and the contents of the small ones, kept until a
+ * {@link WatchService} says they have changed.
+ *
+ * A directory is watched from the first time a file in it is looked up, so a file that hasn't
+ * changed since is served without touching the filesystem. Missing files are remembered too.
+ */
+public class StaticFileCache implements StatusDataProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(StaticFileCache.class);
+
+	private static final long MAX_BYTES = 64 * 1024 * 1024;
+	private static final int MAX_FILE_SIZE = 256 * 1024; // bigger files are sent from disk
+	private static final int ENTRY_OVERHEAD = 256;
+
+	private static final BaseEncoding HEX_ENCODING = BaseEncoding.base16();
+	private static final HashFunction hash = Hashing.murmur3_128();
+
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+			.withZone(ZoneOffset.UTC);
+
+	private final Path basedir;
+	private final MimetypesFileTypeMap mimeTypesMap;
+
+	private final Cache<Path,Entry> entries = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_BYTES)
+			.weigher((Path path, Entry entry) -> ENTRY_OVERHEAD + (entry.content != null ? entry.content.capacity() : 0))
+		.build();
+
+	private final Map<Path,WatchKey> watched = new ConcurrentHashMap<>();
+	private final AtomicLong changes = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private WatchService watcher;
+	private volatile boolean closed;
+
+	public static final class Entry {
+
+		private final Path path;
+		private final boolean file;
+		private final long length;
+		private final String lastModified;
+		private final long lastModifiedMillis;
+		private final String contentType;
+		private final String etag;
+		private final ByteBuffer content; // read only, null when it's sent from disk
+
+		private Entry(Path path) {
+			this(path, false, 0, 0, null, null, null);
+		}
+
+		private Entry(Path path, boolean file, long length, long lastModified, String contentType, String etag, ByteBuffer content) {
+			this.path = path;
+			this.file = file;
+			this.length = length;
+			this.lastModifiedMillis = lastModified;
+			this.lastModified = file ? HTTP_DATE.format(Instant.ofEpochMilli(lastModified)) : null;
+			this.contentType = contentType;
+			this.etag = etag;
+			this.content = content;
+		}
+
+		public Path path() {
+			return path;
+		}
+
+		public boolean isFile() {
+			return file;
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public String lastModified() {
+			return lastModified;
+		}
+
+		public long lastModifiedMillis() {
+			return lastModifiedMillis;
+		}
+
+		public String contentType() {
+			return contentType;
+		}
+
+		public String etag() {
+			return etag;
+		}
+
+		public boolean inMemory() {
+			return content != null;
+		}
+
+		public Content content() {
+			return content != null ? binary(contentType, content.duplicate()) : binary(contentType, path.toFile());
+		}
+
+	}
+
+	public StaticFileCache(Path basedir) {
+		this.basedir = basedir;
+		InputStream mimeTypes = getClass().getResourceAsStream("/META-INF/mimetypes.default");
+		checkNotNull(mimeTypes, "couldn't find mime.types on the resource path");
+		mimeTypesMap = new MimetypesFileTypeMap(mimeTypes);
+	}
+
+	public Entry get(Path path) {
+		Entry entry = entries.getIfPresent(path);
+		if (entry != null) {
+			hits.increment();
+			return entry;
+		}
+		misses.increment();
+		long seen = changes.get();
+		// watch before looking so a change after this point will invalidate it
+		boolean watching = watch(path.getParent());
+		entry = load(path);
+		if (watching && changes.get() == seen) {
+			entries.put(path, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Forgets about a path and anything under it, for changes we know about before the watcher does.
+	 */
+	public void invalidate(Path path) {
+		changes.incrementAndGet();
+		entries.invalidate(path);
+		for (Path dir : watched.keySet()) {
+			if (dir.startsWith(path)) {
+				// a directory we were watching has gone or moved
+				WatchKey key = watched.remove(dir);
+				if (key != null) key.cancel();
+				entries.asMap().keySet().removeIf(p -> p.startsWith(dir));
+			}
+		}
+	}
+
+	private void invalidateDir(Path dir) {
+		changes.incrementAndGet();
+		entries.asMap().keySet().removeIf(p -> dir.equals(p.getParent()));
+	}
+
+	private Entry load(Path path) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return new Entry(path);
+		} catch (IOException e) {
+			throw unchecked(e);
+		}
+
+		if (!attributes.isRegularFile()) return new Entry(path);
+
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		String contentType = mimeTypesMap.getContentType(path.toString());
+
+		if (length > MAX_FILE_SIZE) {
+			String etag = format("\"%x-%x\"", length, lastModified);
+			return new Entry(path, true, length, lastModified, contentType, etag, null);
+		}
+
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			return new Entry(path);
+		} catch (IOException e) {
+			throw unchecked(e);
+		}
+
+		ByteBuffer content = ByteBuffer.allocateDirect(bytes.length);
+		content.put(bytes).flip();
+
+		String etag = '"' + HEX_ENCODING.encode(hash.hashBytes(bytes).asBytes()) + '"';
+		return new Entry(path, true, bytes.length, lastModified, contentType, etag, content.asReadOnlyBuffer());
+	}
+
+	private boolean watch(Path dir) {
+		if (dir == null || !dir.startsWith(basedir)) return false;
+		if (watched.containsKey(dir)) return true;
+		synchronized (this) {
+			if (closed) return false;
+			if (watched.containsKey(dir)) return true;
+			try {
+				if (watcher == null) {
+					watcher = FileSystems.getDefault().newWatchService();
+					Thread thread = new Thread(this::run, "fs-cache " + basedir);
+					thread.setDaemon(true);
+					thread.start();
+				}
+				watched.put(dir, dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+				return true;
+			} catch (NoSuchFileException e) {
+				return false;
+			} catch (IOException e) {
+				log.warn("can't watch {} so it won't be cached ({})", dir, e.getMessage());
+				return false;
+			}
+		}
+	}
+
+	private void run() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watcher.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			Path dir = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == OVERFLOW) {
+					invalidateDir(dir);
+				} else {
+					invalidate(dir.resolve((Path) event.context()));
+				}
+			}
+			if (!key.reset()) {
+				invalidate(dir);
+			}
+		}
+	}
+
+	public synchronized void close() {
+		closed = true;
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				log.warn("couldn't close watcher for {}", basedir, e);
+			}
+		}
+		watched.clear();
+		entries.invalidateAll();
+	}
+
+	@Override
+	public boolean up() {
+		return !closed;
+	}
+
+	@Override
+	public void statusData(MutableData data) {
+		long requests = hits.sum() + misses.sum();
+		long bytes = 0;
+		for (Entry entry : entries.asMap().values()) {
+			if (entry.content != null) bytes += entry.content.capacity();
+		}
+		data.putLong("hits", hits.sum());
+		data.putLong("misses", misses.sum());
+		data.putString("hit-rate", format("%.2f", requests > 0 ? (double) hits.sum() / requests : 1.0));
+		data.putLong("entries", entries.size());
+		data.putLong("bytes", bytes);
+		data.putInt("watched-dirs", watched.size());
+	}
+
+}
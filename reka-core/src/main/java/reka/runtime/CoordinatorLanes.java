@@ -0,0 +1,53 @@
+package reka.runtime;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import reka.util.DaemonThreadFactory;
+
+/**
+ * A fixed set of single threaded coordinator executors.
+ *
+ * Each flow context is pinned to one lane for its whole lifetime so all of
+ * its coordination still happens on a single thread, but different contexts
+ * can be coordinated in parallel.
+ */
+public class CoordinatorLanes {
+
+	public static CoordinatorLanes create(String basename) {
+		return create(basename, Runtime.getRuntime().availableProcessors());
+	}
+
+	public static CoordinatorLanes create(String basename, int count) {
+		return new CoordinatorLanes(basename, count);
+	}
+
+	private final ExecutorService[] lanes;
+
+	private CoordinatorLanes(String basename, int count) {
+		checkArgument(count > 0, "must have at least one lane");
+		ThreadFactory threadFactory = new DaemonThreadFactory(basename);
+		lanes = new ExecutorService[count];
+		for (int i = 0; i < count; i++) {
+			lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+		}
+	}
+
+	public ExecutorService laneFor(long id) {
+		return lanes[(int) Math.floorMod(id, (long) lanes.length)];
+	}
+
+	public int size() {
+		return lanes.length;
+	}
+
+	public void shutdown() {
+		for (ExecutorService lane : lanes) {
+			lane.shutdown();
+		}
+	}
+
+}
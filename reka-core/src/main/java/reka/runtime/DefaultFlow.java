@@ -5,6 +5,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 import reka.data.MutableData;
+import reka.data.memory.MutableDataProvider;
+import reka.data.memory.MutableDataWrapper;
 import reka.data.memory.MutableMemoryData;
 import reka.flow.Flow;
 import reka.flow.FlowRun;
@@ -20,18 +22,24 @@ public class DefaultFlow implements Flow {
 	private final static AtomicLong ids = new AtomicLong();
 
 	private static final ExecutorService DEFAULT_OPERATION_EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("reka-rt-ops"));
-	private static final ExecutorService DEFAULT_COORDINATOR_EXECUTOR = Executors.newSingleThreadExecutor(new DaemonThreadFactory("reka-rt-coord"));
+	private static final CoordinatorLanes DEFAULT_COORDINATOR_LANES = CoordinatorLanes.create("reka-rt-coord");
 	
 	private final long id;
 	private final Path name;
 	private final String fullName;
 	private final Node head;
+	private final MutableDataProvider<?> dataProvider;
 	
 	public DefaultFlow(Path name, Node head) {
+		this(name, head, null);
+	}
+	
+	public DefaultFlow(Path name, Node head, MutableDataProvider<?> dataProvider) {
 		this.id = ids.incrementAndGet();
 		this.name = name;
 	    this.head = head;
 	    this.fullName = name.slashes();
+	    this.dataProvider = dataProvider;
 	}
 	
 	public class DefaultFlowRun implements FlowRun {
@@ -81,12 +89,15 @@ public class DefaultFlow implements Flow {
 		
 		@Override
         public void run() {
-			if (data == null) data = MutableMemoryData.create();
+			data = data != null ? dataFor(data) : createData();
 			if (operationExecutor == null) operationExecutor = DEFAULT_OPERATION_EXECUTOR;
-			if (coordinationExecutor == null) coordinationExecutor = DEFAULT_COORDINATOR_EXECUTOR;
 			if (subscriber == null) subscriber = Subscriber.DO_NOTHING;
 			if (store == null) store = IdentityStore.emptyReader();
-			DefaultFlow.this.run(operationExecutor, coordinationExecutor, data, subscriber, store, stats);
+			if (coordinationExecutor != null) {
+				DefaultFlow.this.run(operationExecutor, coordinationExecutor, data, subscriber, store, stats);
+			} else {
+				DefaultFlow.this.run(operationExecutor, DEFAULT_COORDINATOR_LANES, data, subscriber, store, stats);
+			}
 		}
 	}
 	
@@ -102,14 +113,28 @@ public class DefaultFlow implements Flow {
 	
 	@Override
 	public void run(Subscriber subscriber) {
-		run(DEFAULT_OPERATION_EXECUTOR, DEFAULT_COORDINATOR_EXECUTOR, MutableMemoryData.create(), subscriber, IdentityStore.emptyReader(), true);
+		run(DEFAULT_OPERATION_EXECUTOR, DEFAULT_COORDINATOR_LANES, createData(), subscriber, IdentityStore.emptyReader(), true);
+	}
+	
+	private MutableData createData() {
+		return dataProvider != null ? new MutableDataWrapper<>(dataProvider) : MutableMemoryData.create();
+	}
+	
+	private MutableData dataFor(MutableData data) {
+		return dataProvider != null ? MutableDataWrapper.convertOnCopy(data, dataProvider) : data;
+	}
+	
+	private void run(ExecutorService operationExecutor, CoordinatorLanes lanes, MutableData data, Subscriber subscriber, IdentityStoreReader store, boolean statsEnabled) {
+		DefaultFlowContext.create(id, operationExecutor, lanes, subscriber, store, statsEnabled ? stats : null).handleAction(head, (d, c, t) -> {
+			subscriber.error(d, t);
+		}, data);
 	}
 	
 	@Override
 	public void run(ExecutorService operationExecutor, ExecutorService coordinationExecutor, MutableData data, Subscriber subscriber, IdentityStoreReader store, boolean statsEnabled) {
 		DefaultFlowContext.create(id, operationExecutor, coordinationExecutor, subscriber, store, statsEnabled ? stats : null).handleAction(head, (d, c, t) -> {
 			subscriber.error(d, t);
-		}, data);
+		}, dataFor(data));
 	}
 	
 	@Override
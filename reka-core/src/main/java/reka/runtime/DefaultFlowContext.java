@@ -2,15 +2,21 @@ package reka.runtime;
 
 import static reka.util.Util.unchecked;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import reka.data.Data;
 import reka.data.MutableData;
 import reka.flow.Flow.FlowStats;
+import reka.flow.ops.OperationContext;
 import reka.flow.ops.Subscriber;
 import reka.identity.IdentityStoreReader;
 import reka.runtime.handlers.ActionHandler;
@@ -22,19 +28,28 @@ import reka.runtime.handlers.stateful.NodeState;
 public class DefaultFlowContext implements FlowContext {
 
 	private static final AtomicLong contextIds = new AtomicLong();
-	
-	private final long contextId = contextIds.incrementAndGet();
+	private static final Logger log = LoggerFactory.getLogger(DefaultFlowContext.class);
 	
 	public static FlowContext create(long flowId, ExecutorService operationExecutor, ExecutorService coordinationExecutor, 
 			                         Subscriber subscriber, IdentityStoreReader store, FlowStats stats) {
-		return new DefaultFlowContext(flowId, operationExecutor, coordinationExecutor, subscriber, store, stats);
+		return new DefaultFlowContext(contextIds.incrementAndGet(), flowId, operationExecutor, coordinationExecutor, subscriber, store, stats);
+	}
+	
+	public static FlowContext create(long flowId, ExecutorService operationExecutor, CoordinatorLanes lanes, 
+			                         Subscriber subscriber, IdentityStoreReader store, FlowStats stats) {
+		long contextId = contextIds.incrementAndGet();
+		return new DefaultFlowContext(contextId, flowId, operationExecutor, lanes.laneFor(contextId), subscriber, store, stats);
 	}
 
+	private final long contextId;
+
 	private final FlowStats stats;
 	private final ExecutorService operationExecutor;
 	private final ExecutorService coordinationExecutor;
 	private final Map<Integer, NodeState> states = new HashMap<>();
 	private final IdentityStoreReader store;
+	private final OperationContext operationContext;
+	private final boolean ownsResources; // embedded flows share the outer run's context and leave closing to it
 	private final Subscriber subscriber;
 	private final long flowId;
 	private final long started;
@@ -45,15 +60,18 @@ public class DefaultFlowContext implements FlowContext {
 
 	private volatile long threadId = -1; // only used when asserts are on
 
-	private DefaultFlowContext(long flowId, ExecutorService operationExecutor,
+	private DefaultFlowContext(long contextId, long flowId, ExecutorService operationExecutor,
 			ExecutorService coordinationExecutor, Subscriber subscriber,
 			IdentityStoreReader store, FlowStats stats) {
+		this.contextId = contextId;
 		this.operationExecutor = operationExecutor;
 		this.coordinationExecutor = coordinationExecutor;
 		this.subscriber = subscriber;
 		this.flowId = flowId;
 		this.stats = stats;
 		this.store = store;
+		this.ownsResources = !(store instanceof OperationContext);
+		this.operationContext = OperationContext.of(store);
 		this.statsEnabled = stats != null;
 		started = System.nanoTime();
 		if (statsEnabled) stats.requests.increment();
@@ -128,8 +146,14 @@ public class DefaultFlowContext implements FlowContext {
 	public void end(MutableData data) {
 		assert hasCorrectThread() : "wrong thread " + Thread.currentThread().getId() + " vs " + threadId;
 		done = true;
+		List<AutoCloseable> resources = takeResources();
 		operationExecutor.execute(() -> {
-			subscriber.ok(data);
+			resources.removeIf(subscriber::keep);
+			try {
+				subscriber.ok(data);
+			} finally {
+				close(resources);
+			}
 		});
 		if (statsEnabled) stats.completed.increment();
 	}
@@ -138,8 +162,13 @@ public class DefaultFlowContext implements FlowContext {
 	public void error(Data data, Throwable t) {
 		assert hasCorrectThread() : "wrong thread " + Thread.currentThread().getId() + " vs " + threadId;
 		done = true;
+		List<AutoCloseable> resources = takeResources();
 		operationExecutor.execute(() -> {
-			subscriber.error(data, t);
+			try {
+				subscriber.error(data, t);
+			} finally {
+				close(resources);
+			}
 		});
 		if (statsEnabled) stats.errors.increment();
 	}
@@ -148,8 +177,13 @@ public class DefaultFlowContext implements FlowContext {
 	public void halted() {
 		assert hasCorrectThread();
 		done = true;
+		List<AutoCloseable> resources = takeResources();
 		operationExecutor.execute(() -> {
-			subscriber.halted();
+			try {
+				subscriber.halted();
+			} finally {
+				close(resources);
+			}
 		});
 		if (statsEnabled) stats.halts.increment();
 	}
@@ -164,6 +198,25 @@ public class DefaultFlowContext implements FlowContext {
 		return store;
 	}
 
+	@Override
+	public OperationContext operationContext() {
+		return operationContext;
+	}
+
+	private List<AutoCloseable> takeResources() {
+		return ownsResources ? operationContext.takeResources() : Collections.emptyList();
+	}
+	
+	private static void close(List<AutoCloseable> resources) {
+		for (AutoCloseable resource : resources) {
+			try {
+				resource.close();
+			} catch (Throwable t) {
+				log.error("failed to close {}", resource, t);
+			}
+		}
+	}
+
 	private boolean hasCorrectThread() {
 		return Thread.currentThread().getId() == threadId;
 	}
@@ -6,6 +6,7 @@ import java.util.concurrent.ExecutorService;
 
 import reka.data.Data;
 import reka.data.MutableData;
+import reka.flow.ops.OperationContext;
 import reka.identity.IdentityStoreReader;
 import reka.runtime.handlers.ActionHandler;
 import reka.runtime.handlers.ErrorHandler;
@@ -41,6 +42,7 @@ public interface FlowContext {
 	boolean statsEnabled();
 	
 	IdentityStoreReader store();
+	OperationContext operationContext();
     
     // call from any thread
 	void handleAction(ActionHandler next, ErrorHandler error, MutableData data);
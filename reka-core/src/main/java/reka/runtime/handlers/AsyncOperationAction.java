@@ -3,7 +3,6 @@ package reka.runtime.handlers;
 import reka.data.MutableData;
 import reka.flow.ops.AsyncOperation;
 import reka.flow.ops.AsyncOperation.OperationResult;
-import reka.flow.ops.OperationContext;
 import reka.runtime.FlowContext;
 
 public class AsyncOperationAction implements ActionHandler {
@@ -21,8 +20,7 @@ public class AsyncOperationAction implements ActionHandler {
 	@Override
 	public void call(MutableData data, FlowContext context) {
 		context.operationExecutor().execute(() -> {
-			// TODO: don't create a new one each time
-			op.call(data, new OperationContext(context.store()), new OperationResult(){
+			op.call(data, context.operationContext(), new OperationResult(){
 	
 				@Override
 				public void done() {
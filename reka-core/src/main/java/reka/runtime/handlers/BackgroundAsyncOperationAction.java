@@ -5,7 +5,6 @@ import java.util.concurrent.ExecutorService;
 import reka.data.MutableData;
 import reka.flow.ops.AsyncOperation;
 import reka.flow.ops.AsyncOperation.OperationResult;
-import reka.flow.ops.OperationContext;
 import reka.runtime.FlowContext;
 
 public class BackgroundAsyncOperationAction implements ActionHandler {
@@ -26,8 +25,7 @@ public class BackgroundAsyncOperationAction implements ActionHandler {
 	public void call(MutableData data, FlowContext context) {
 		backgroundExecutor.execute(() -> {
 			try {
-				// TODO: don't create new one each time
-				op.call(data, new OperationContext(context.store()), new OperationResult(){
+				op.call(data, context.operationContext(), new OperationResult(){
 		
 					@Override
 					public void done() {
@@ -0,0 +1,12 @@
+package reka.runtime.handlers;
+
+import reka.data.MutableData;
+import reka.runtime.FlowContext;
+
+/**
+ * An action that does not need the coordinator and can carry on directly on
+ * the operation thread that is already running the flow.
+ */
+public interface InlineActionHandler extends ActionHandler {
+	void callInline(MutableData data, FlowContext context);
+}
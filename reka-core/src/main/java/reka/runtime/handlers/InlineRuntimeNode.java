@@ -0,0 +1,20 @@
+package reka.runtime.handlers;
+
+import reka.data.MutableData;
+import reka.runtime.FlowContext;
+
+public class InlineRuntimeNode extends RuntimeNode implements InlineActionHandler {
+
+	private final InlineActionHandler next;
+	
+	public InlineRuntimeNode(int id, String name, InlineActionHandler next, HaltedHandler halted, ErrorHandler error) {
+		super(id, name, next, halted, error);
+		this.next = next;
+	}
+
+	@Override
+	public void callInline(MutableData data, FlowContext context) {
+		next.callInline(data, context);
+	}
+
+}
@@ -2,32 +2,41 @@ package reka.runtime.handlers;
 
 import reka.data.MutableData;
 import reka.flow.ops.Operation;
-import reka.flow.ops.OperationContext;
 import reka.runtime.FlowContext;
 
-public class OperationAction implements ActionHandler {
+public class OperationAction implements InlineActionHandler {
 
 	private final Operation operation;
 	private final ActionHandler next;
+	private final InlineActionHandler inlineNext;
 	private final ErrorHandler error;
 	
 	public OperationAction(Operation operation, ActionHandler next, ErrorHandler error) {
 		this.operation = operation;
 		this.next = next;
+		this.inlineNext = next instanceof InlineActionHandler ? (InlineActionHandler) next : null;
 		this.error = error;
 	}
 	
 	@Override
 	public void call(MutableData data, FlowContext context) {
-		context.operationExecutor().execute(() -> {
-			try {
-				// TODO: don't create a new context each time
-				operation.call(data, new OperationContext(context.store()));
-				context.handleAction(next, error, data);
-			} catch (Throwable t) {
-				context.handleError(error, data, t);
-			}
-		});
+		context.operationExecutor().execute(() -> callInline(data, context));
+	}
+
+	@Override
+	public void callInline(MutableData data, FlowContext context) {
+		try {
+			operation.call(data, context.operationContext());
+		} catch (Throwable t) {
+			context.handleError(error, data, t);
+			return;
+		}
+		if (inlineNext != null) {
+			// a following synchronous operation can run right here without going via the coordinator
+			inlineNext.callInline(data, context);
+		} else {
+			context.handleAction(next, error, data);
+		}
 	}
 
 }
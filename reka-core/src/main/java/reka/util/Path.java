@@ -396,6 +396,10 @@ public class Path implements Iterable<Path.PathElement>, Comparable<Path>, Hasha
 			public static final Path IF_NONE_MATCH 	= HEADERS.add("If-None-Match");
 			public static final Path AUTHORIZATION 	= HEADERS.add("Authorization");
 			public static final Path ACCEPT 		= HEADERS.add("Accept");
+			public static final Path RANGE 			= HEADERS.add("Range");
+			public static final Path IF_RANGE 		= HEADERS.add("If-Range");
+			public static final Path IF_MODIFIED_SINCE = HEADERS.add("If-Modified-Since");
+			public static final Path ACCEPT_ENCODING = HEADERS.add("Accept-Encoding");
 		}
 		public static final class Params {
 			public static final Path PRETTY = PARAMS.add("pretty");
@@ -415,6 +419,9 @@ public class Path implements Iterable<Path.PathElement>, Comparable<Path>, Hasha
 			public static final Path CONTENT_DISPOSITION = HEADERS.add("Content-Disposition");
 			public static final Path CONTENT_LENGTH 	 = HEADERS.add("Content-Length");
 			public static final Path ETAG 				 = HEADERS.add("ETag");
+			public static final Path LAST_MODIFIED 		 = HEADERS.add("Last-Modified");
+			public static final Path CONTENT_ENCODING 	 = HEADERS.add("Content-Encoding");
+			public static final Path VARY 				 = HEADERS.add("Vary");
 			public static final Path LINK 				 = HEADERS.add("Link");
 			public static final Path EXPIRES 			 = HEADERS.add("Expires");
 			public static final Path CACHE_CONTROL 		 = HEADERS.add("Cache-Control");
@@ -48,11 +48,14 @@ public class ReadObservedMap<K,V> implements Map<K,V> {
 
 	@Override
 	public boolean containsKey(Object key) {
+		// a key that isn't there yet still matters, it could appear next time
+		valuePaths.add(path.add(key.toString()));
 		return inner.containsKey(key);
 	}
 
 	@Override
 	public boolean containsValue(Object value) {
+		valuePaths.add(path);
 		return inner.containsValue(value);
 	}
 
@@ -102,6 +105,8 @@ public class ReadObservedMap<K,V> implements Map<K,V> {
 
 	@Override
 	public Collection<V> values() {
+		// the values aren't observed one by one, so all of them count
+		valuePaths.add(path);
 		return inner.values();
 	}
 
@@ -0,0 +1,268 @@
+package reka.util;
+
+import static java.lang.String.format;
+import static java.util.Collections.emptyList;
+import static reka.data.content.Contents.binary;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import reka.data.MutableData;
+import reka.module.setup.StatusDataProvider;
+import reka.util.Path.PathElement;
+import reka.util.Path.Request;
+import reka.util.Path.Response;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Caches rendered templates by an etag over just the input values the template reads, the whole
+ * of the data under each of them goes in.
+ *
+ * Which paths those are is learnt by rendering with a {@link ReadObservedMap}, so the first few
+ * renders always miss. All caches share one store of rendered UTF-8, bounded by its size in bytes.
+ * When the output is the main response the etag is sent too, and a matching If-None-Match gets a
+ * 304 without rendering anything.
+ */
+public class RenderCache {
+
+	private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+	private static final BaseEncoding HEX_ENCODING = BaseEncoding.base16();
+	private static final HashFunction hash = Hashing.sha1();
+
+	private static final Cache<String,ByteBuffer> rendered = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_BYTES)
+			.weigher((String etag, ByteBuffer content) -> etag.length() + content.capacity())
+			.recordStats()
+		.build();
+
+	private final String name;
+	private final String contentType;
+	private final byte[] templateHash;
+
+	private final Set<Path> valuePaths = new ConcurrentSkipListSet<>();
+	private final Set<Path> iteratedPaths = new ConcurrentSkipListSet<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder notModified = new LongAdder();
+	
+	private volatile int sizeHint = 1024;
+	
+	public static interface Renderer {
+		void render(Map<String,Object> model, Writer writer) throws Exception;
+	}
+
+	private RenderCache(String name, String template, Collection<String> includes, String contentType) {
+		this.name = name;
+		this.contentType = contentType;
+		Hasher hasher = hash.newHasher()
+			.putString(name, StandardCharsets.UTF_8)
+			.putString(template, StandardCharsets.UTF_8);
+		for (String include : includes) {
+			hasher.putByte((byte) 0).putString(include, StandardCharsets.UTF_8);
+		}
+		this.templateHash = hasher.hash().asBytes();
+	}
+
+	/**
+	 * Renders the map at in, only reading from it through a {@link ReadObservedMap}.
+	 */
+	public void render(MutableData data, Path in, Path out, Renderer renderer) {
+		boolean mainResponse = out.equals(Response.CONTENT);
+
+		String etag = etagFor(data);
+		if (mainResponse && notModified(data, etag)) return;
+
+		ByteBuffer content = rendered.getIfPresent(etag);
+
+		if (content != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			ReadObservedMap<String,Object> map = ReadObservedMap.wrap(data.at(in).toMap());
+			content = Utf8Bytes.exact(Utf8Bytes.write(sizeHint, writer -> renderer.render(map, writer)));
+			sizeHint = content.remaining();
+			if (learn(in, map)) {
+				// it read something we weren't including before
+				etag = etagFor(data);
+			}
+			rendered.put(etag, content);
+			if (mainResponse && notModified(data, etag)) return;
+		}
+
+		write(data, out, mainResponse, content, etag);
+	}
+
+	/**
+	 * Renders a single input, it's the whole of the input that is used for the etag.
+	 */
+	public void render(MutableData data, Path out, String input, Function<String,String> renderer) {
+		boolean mainResponse = out.equals(Response.CONTENT);
+
+		String etag = quoted(hash.newHasher()
+			.putBytes(templateHash)
+			.putString(input, StandardCharsets.UTF_8)
+			.hash());
+
+		if (mainResponse && notModified(data, etag)) return;
+
+		ByteBuffer content = rendered.getIfPresent(etag);
+
+		if (content != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			content = Utf8Bytes.of(renderer.apply(input));
+			rendered.put(etag, content);
+		}
+
+		write(data, out, mainResponse, content, etag);
+	}
+
+	private boolean notModified(MutableData data, String etag) {
+		if (!matches(data.getString(Request.Headers.IF_NONE_MATCH).orElse(""), etag)) return false;
+		notModified.increment();
+		data.putInt(Response.STATUS, 304).putString(Response.CONTENT, "");
+		return true;
+	}
+	
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch.isEmpty()) return false;
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) tag = tag.substring(2);
+			if (tag.equals(etag) || tag.equals("*")) return true;
+		}
+		return false;
+	}
+	
+	private static String quoted(HashCode hash) {
+		return "\"" + HEX_ENCODING.encode(hash.asBytes()) + "\"";
+	}
+
+	private void write(MutableData data, Path out, boolean mainResponse, ByteBuffer content, String etag) {
+		if (mainResponse) {
+			// the encoder can send these bytes as they are
+			data.put(out, binary(contentType, content.duplicate()));
+			if (contentType != null) data.putString(Response.Headers.CONTENT_TYPE, contentType);
+			data.putString(Response.Headers.ETAG, etag)
+				.putString(Response.Headers.CACHE_CONTROL, "no-cache"); // use etag only
+		} else {
+			data.putString(out, Utf8Bytes.toString(content));
+		}
+	}
+
+	private boolean learn(Path in, ReadObservedMap<String,Object> map) {
+		boolean changed = false;
+		for (Path path : map.valuePaths()) {
+			changed |= valuePaths.add(in.add(path));
+		}
+		for (Path path : map.iteratedPaths()) {
+			changed |= iteratedPaths.add(in.add(path));
+		}
+		return changed;
+	}
+
+	private String etagFor(MutableData data) {
+
+		// no need to include the size of the input, anything that iterates over it is in iteratedPaths
+		Hasher hasher = hash.newHasher();
+
+		for (Path path : valuePaths) {
+			hasher.putBytes(path.toByteArray());
+			// lists and maps read whole (or iterated through values()) go in with everything under them
+			data.at(path).hash(hasher);
+			hasher.putByte((byte) 0);
+		}
+
+		hasher.putByte((byte) 1);
+
+		for (Path path : iteratedPaths) {
+			for (PathElement e : data.at(path).elements()) {
+				e.hash(hasher);
+			}
+			hasher.putByte((byte) 0);
+		}
+
+		hasher.putByte((byte) 1);
+
+		hasher.putBytes(templateHash);
+
+		return quoted(hasher.hash());
+	}
+
+	public void writeStats(MutableData data) {
+		long requests = hits.sum() + misses.sum();
+		data.putString("name", name);
+		data.putLong("hits", hits.sum());
+		data.putLong("misses", misses.sum());
+		data.putLong("not-modified", notModified.sum());
+		data.putString("hit-rate", format("%.2f", requests > 0 ? (double) hits.sum() / requests : 1.0));
+		data.putInt("paths", valuePaths.size() + iteratedPaths.size());
+	}
+
+	public static void writeSharedStats(MutableData data) {
+		CacheStats stats = rendered.stats();
+		data.putLong("entries", rendered.size());
+		data.putLong("max-bytes", MAX_BYTES);
+		data.putString("hit-rate", format("%.2f", stats.hitRate()));
+		data.putLong("evictions", stats.evictionCount());
+	}
+
+	/**
+	 * The render caches of one module, reported as its status.
+	 */
+	public static class Group implements StatusDataProvider {
+
+		private static final Path SHARED = Path.path("shared");
+		private static final Path CACHES = Path.path("caches");
+
+		private final List<RenderCache> caches = new CopyOnWriteArrayList<>();
+
+		public RenderCache create(String name, String template, String contentType) {
+			return create(name, template, emptyList(), contentType);
+		}
+
+		/**
+		 * The includes are the other templates (e.g. partials) this one pulls in.
+		 */
+		public RenderCache create(String name, String template, Collection<String> includes, String contentType) {
+			RenderCache cache = new RenderCache(name, template, includes, contentType);
+			caches.add(cache);
+			return cache;
+		}
+
+		@Override
+		public boolean up() {
+			return true;
+		}
+
+		@Override
+		public void statusData(MutableData data) {
+			writeSharedStats(data.createMapAt(SHARED));
+			for (int i = 0; i < caches.size(); i++) {
+				caches.get(i).writeStats(data.createMapAt(CACHES.add(i)));
+			}
+		}
+
+	}
+
+}
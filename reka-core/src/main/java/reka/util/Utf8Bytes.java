@@ -0,0 +1,59 @@
+package reka.util;
+
+import static reka.util.Util.unchecked;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text written straight out as UTF-8 bytes, in a buffer that can be used as content without copying it again.
+ */
+public class Utf8Bytes {
+
+	public static ByteBuffer write(int sizeHint, ThrowingConsumer<Writer> writes) {
+		Output out = new Output(sizeHint);
+		try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+			writes.accept(writer);
+		} catch (Exception e) {
+			throw unchecked(e);
+		}
+		return out.buffer();
+	}
+
+	public static ByteBuffer of(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The same bytes in a buffer with nothing else behind it, for keeping hold of. One from
+	 * {@link #write} usually has spare room in its array.
+	 */
+	public static ByteBuffer exact(ByteBuffer buffer) {
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.array().length == buffer.remaining()) {
+			return buffer;
+		}
+		ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+		copy.put(buffer.duplicate()).flip();
+		return copy;
+	}
+
+	public static String toString(ByteBuffer buffer) {
+		return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+	}
+
+	private static class Output extends ByteArrayOutputStream {
+
+		Output(int size) {
+			super(size);
+		}
+
+		ByteBuffer buffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+package reka.test.app;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static reka.util.Path.path;
+import static reka.util.Path.slashes;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import reka.app.Application;
+import reka.app.manager.ApplicationManager;
+import reka.app.manager.ApplicationManager.DeploySubscriber;
+import reka.config.configurer.annotations.Conf;
+import reka.config.parser.ConfigParser;
+import reka.data.MutableData;
+import reka.identity.Identity;
+import reka.module.Module;
+import reka.module.ModuleDefinition;
+import reka.module.ModuleManager;
+import reka.module.ModuleMeta;
+import reka.module.setup.AppSetup;
+import reka.module.setup.ModuleConfigurer;
+import reka.module.setup.ModuleStatusReport;
+import reka.module.setup.StatusDataProvider;
+import reka.modules.builtins.BuiltinsModule;
+import reka.util.Path;
+import reka.util.dirs.BaseDirs;
+
+public class ApplicationStatusTest {
+
+	public static class BrokenStatusModule implements Module {
+
+		@Override
+		public Path base() {
+			return path("broken");
+		}
+
+		@Override
+		public void setup(ModuleDefinition module) {
+			module.main(() -> new BrokenStatusConfigurer());
+		}
+
+	}
+
+	// like a pool that has been closed under it
+	public static class BrokenStatusConfigurer extends ModuleConfigurer {
+
+		@Conf.At("size")
+		public void size(String val) { }
+
+		@Override
+		public void setup(AppSetup app) {
+			app.registerStatusProvider(() -> new StatusDataProvider() {
+
+				@Override
+				public boolean up() {
+					return true;
+				}
+
+				@Override
+				public void statusData(MutableData data) {
+					throw new IllegalStateException("pool is closed");
+				}
+
+			});
+		}
+
+	}
+
+	// only one per jvm, it locks the event log
+	private static ApplicationManager manager;
+
+	@BeforeClass
+	public static void before() throws Exception {
+		ClassLoader classLoader = ApplicationStatusTest.class.getClassLoader();
+		ModuleManager modules = new ModuleManager(asList(
+				new ModuleMeta(classLoader, "test", new BuiltinsModule()),
+				new ModuleMeta(classLoader, "test", new BrokenStatusModule())));
+		java.nio.file.Path dir = Files.createTempDirectory("reka-test");
+		dir.toFile().deleteOnExit();
+		manager = new ApplicationManager(new BaseDirs(dir.resolve("app"), dir.resolve("data"), dir.resolve("tmp")), modules);
+	}
+
+	@AfterClass
+	public static void after() {
+		manager.shutdownAndWait();
+	}
+
+	private static Identity deploy(Path path) throws Exception {
+		CompletableFuture<Identity> deployed = new CompletableFuture<>();
+		manager.deployConfig(path, 1, ConfigParser.fromString("name status\nbroken {\n  size 1\n}\n"), new File("/"), new DeploySubscriber() {
+
+			@Override
+			public void ok(Identity identity, int version, Application application) {
+				deployed.complete(identity);
+			}
+
+			@Override
+			public void error(Identity identity, Throwable t) {
+				deployed.completeExceptionally(t);
+			}
+
+		});
+		return deployed.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void recordsStatusProvidersThatThrow() throws Exception {
+		Identity identity = deploy(slashes("broken"));
+		Thread.sleep(1500); // let the status polling run too
+		List<ModuleStatusReport> reports = manager.statusFor(identity).get();
+		ModuleStatusReport broken = reports.stream().filter(report -> report.alias().equals("broken")).findFirst().get();
+		assertFalse(broken.up());
+		assertThat(broken.data().getString("error").get(), equalTo("pool is closed"));
+	}
+
+	@Test
+	public void hasNoStatusOnceUndeployed() throws Exception {
+		Identity identity = deploy(slashes("status"));
+		assertTrue(manager.statusFor(identity).isPresent());
+		manager.undeploy(slashes("status"));
+		long deadline = System.currentTimeMillis() + 10000;
+		while (manager.get(identity).isPresent() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Thread.sleep(1500);
+		assertFalse(manager.statusFor(identity).isPresent());
+	}
+
+}
@@ -0,0 +1,118 @@
+package reka.test.app;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import reka.app.manager.KeyedSerialExecutor;
+
+public class KeyedSerialExecutorTest {
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void runsTasksForOneKeyInOrder() throws Exception {
+		KeyedSerialExecutor<String> tasks = new KeyedSerialExecutor<>(executor, 4);
+		List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch latch = new CountDownLatch(5);
+		for (int i = 0; i < 5; i++) {
+			int n = i;
+			tasks.submit("a", done -> {
+				// complete later from another thread, the next one must still wait for it
+				executor.execute(() -> {
+					sleep(10);
+					seen.add(n);
+					done.run();
+					latch.countDown();
+				});
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertThat(seen, equalTo(asList(0, 1, 2, 3, 4)));
+	}
+
+	@Test
+	public void slowKeyDoesNotBlockOtherKeys() throws Exception {
+		KeyedSerialExecutor<String> tasks = new KeyedSerialExecutor<>(executor, 4);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch other = new CountDownLatch(1);
+		tasks.submit("slow", done -> executor.execute(() -> {
+			await(release);
+			done.run();
+		}));
+		tasks.submit("fast", done -> {
+			other.countDown();
+			done.run();
+		});
+		assertTrue(other.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+
+	@Test
+	public void limitsHowManyRunAtOnce() throws Exception {
+		KeyedSerialExecutor<Integer> tasks = new KeyedSerialExecutor<>(executor, 2);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(10);
+		for (int i = 0; i < 10; i++) {
+			tasks.submit(i, done -> executor.execute(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				sleep(20);
+				running.decrementAndGet();
+				done.run();
+				latch.countDown();
+			}));
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertThat(maxRunning.get(), equalTo(2));
+	}
+
+	@Test
+	public void carriesOnAfterATaskThrows() throws Exception {
+		KeyedSerialExecutor<String> tasks = new KeyedSerialExecutor<>(executor, 1);
+		CountDownLatch latch = new CountDownLatch(1);
+		tasks.submit("a", done -> {
+			throw new RuntimeException("oops");
+		});
+		tasks.submit("a", done -> {
+			latch.countDown();
+			done.run();
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package reka.test.bench;
+
+import static reka.flow.builder.FlowSegments.parallel;
+import static reka.flow.builder.OperationFlowNode.operation;
+import static reka.util.Path.path;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reka.flow.Flow;
+import reka.flow.builder.FlowBuilderGroup;
+import reka.runtime.CoordinatorLanes;
+
+/**
+ * Flow runs per second when coordination is spread over an increasing
+ * number of lanes, run with:
+ * 
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=reka.test.bench.CoordinatorLanesBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(Threads.MAX)
+public class CoordinatorLanesBenchmark {
+	
+	private static final int RUNS = 1000;
+	
+	@Param({"1", "2", "4", "8", "16", "32"})
+	public int lanes;
+	
+	private final AtomicLong ids = new AtomicLong();
+	
+	private CoordinatorLanes coordinators;
+	private ExecutorService operations;
+	private Flow flow;
+	
+	@Setup
+	public void setup() {
+		coordinators = CoordinatorLanes.create("bench-coord", lanes);
+		operations = Executors.newCachedThreadPool();
+		flow = FlowBuilderGroup.createFlow(path("bench"), 
+			parallel(
+				operation("a", (data, ctx) -> data.putString("a", "a")),
+				operation("b", (data, ctx) -> data.putString("b", "b")),
+				operation("c", (data, ctx) -> data.putString("c", "c")),
+				operation("d", (data, ctx) -> data.putString("d", "d"))
+			));
+	}
+	
+	@TearDown
+	public void teardown() {
+		coordinators.shutdown();
+		operations.shutdown();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(RUNS)
+	public void flowRuns() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(RUNS);
+		for (int i = 0; i < RUNS; i++) {
+			flow.prepare()
+				.operationExecutor(operations)
+				.coordinationExecutor(coordinators.laneFor(ids.incrementAndGet()))
+				.complete(data -> latch.countDown())
+				.run();
+		}
+		latch.await();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CoordinatorLanesBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
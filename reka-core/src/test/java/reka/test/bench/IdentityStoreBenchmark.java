@@ -0,0 +1,102 @@
+package reka.test.bench;
+
+import static java.lang.System.identityHashCode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reka.flow.ops.OperationContext;
+import reka.identity.IdentityKey;
+import reka.identity.IdentityStore;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * What an operation pays to read the channel from a per request store and a session
+ * from a module store, against the maps keyed by identity hash the stores used to be, run with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=reka.test.bench.IdentityStoreBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IdentityStoreBenchmark {
+
+	private static final IdentityKey<Object> CHANNEL = IdentityKey.named("channel");
+	private static final IdentityKey<Object> SESSIONS = IdentityKey.named("sessions");
+
+	private final Object channel = new Object();
+	private final Object sessions = new Object();
+
+	private OperationContext channelContext;
+	private OperationContext sessionContext;
+
+	private Map<Integer,Object> channelMap;
+	private Map<Integer,Object> sessionMap;
+
+	@Setup
+	public void setup() {
+		channelContext = OperationContext.of(IdentityStore.immutableBuilder().put(CHANNEL, channel).build());
+		IdentityStore store = IdentityStore.createConcurrentIdentityStore();
+		ConcurrentHashMap<Integer,Object> map = new ConcurrentHashMap<>();
+		for (int i = 0; i < 20; i++) {
+			IdentityKey<Object> other = IdentityKey.named("other" + i);
+			store.put(other, i);
+			map.put(identityHashCode(other), i);
+		}
+		store.put(SESSIONS, sessions);
+		map.put(identityHashCode(SESSIONS), sessions);
+		sessionContext = OperationContext.of(store);
+
+		channelMap = ImmutableMap.of(identityHashCode(CHANNEL), channel);
+		sessionMap = map;
+	}
+
+	@Benchmark
+	public Object channel() {
+		return channelContext.get(CHANNEL);
+	}
+
+	@Benchmark
+	public Object session() {
+		return sessionContext.get(SESSIONS);
+	}
+
+	@Benchmark
+	public Object channelNewContext() {
+		return new OperationContext(channelContext).get(CHANNEL);
+	}
+
+	@Benchmark
+	public Object channelMap() {
+		return channelMap.get(identityHashCode(CHANNEL));
+	}
+
+	@Benchmark
+	public Object sessionMap() {
+		return sessionMap.get(identityHashCode(SESSIONS));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IdentityStoreBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,78 @@
+package reka.test.bench;
+
+import static reka.util.Path.dots;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.data.persistent.PersistentData;
+import reka.util.Path;
+
+/**
+ * What a parallel branch costs: copying the data and making a small change to
+ * the copy, run with:
+ * 
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=reka.test.bench.PersistentDataBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PersistentDataBenchmark {
+	
+	private static final Path STATUS = dots("response.status");
+	
+	@Param({"memory", "persistent"})
+	public String impl;
+	
+	@Param({"10", "100", "1000"})
+	public int size;
+	
+	private MutableData data;
+	
+	@Setup
+	public void setup() {
+		data = "persistent".equals(impl) ? PersistentData.create() : MutableMemoryData.create();
+		for (int i = 0; i < size; i++) {
+			data.putString(dots("request.params.p" + i), "value" + i);
+		}
+		data.putList("items", list -> {
+			for (int i = 0; i < size; i++) {
+				list.addString("item" + i);
+			}
+		});
+	}
+	
+	@Benchmark
+	public MutableData mutableCopy() {
+		return data.mutableCopy();
+	}
+	
+	@Benchmark
+	public MutableData mutableCopyAndPut() {
+		return data.mutableCopy().putString(STATUS, "ok");
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PersistentDataBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,25 @@
+package reka.test.config;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static reka.config.configurer.Configurer.configure;
+
+import org.junit.Test;
+
+import reka.config.configurer.Configurer.InvalidConfigurationException;
+import reka.config.parser.ConfigParser;
+import reka.modules.builtins.MapConfigurer;
+
+public class MapConfigurerTest {
+
+	@Test
+	public void reportsAParallelismThatIsNotANumber() {
+		try {
+			configure(new MapConfigurer(null, true), ConfigParser.fromString("parallelism lots\n"));
+			fail("should not accept a parallelism of lots");
+		} catch (InvalidConfigurationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("parallelism must be a number"));
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package reka.test.content;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.junit.Test;
+
+import reka.data.content.types.JsonItemsSource;
+
+public class JsonItemsSourceTest {
+
+	private static class Numbers extends JsonItemsSource {
+
+		private final int total;
+		private int i;
+
+		Numbers(boolean array, int total) {
+			super(array, 2);
+			this.total = total;
+		}
+
+		@Override
+		protected boolean writeItem(JsonGenerator json) throws IOException {
+			if (i == total) return false;
+			json.writeStartObject();
+			json.writeNumberField("n", i++);
+			json.writeEndObject();
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+	private static List<String> chunks(JsonItemsSource source) throws IOException {
+		List<String> chunks = new ArrayList<>();
+		boolean more = true;
+		while (more) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			more = source.next(out);
+			chunks.add(new String(out.toByteArray(), UTF_8));
+		}
+		return chunks;
+	}
+
+	@Test
+	public void writesAnArrayAcrossChunks() throws IOException {
+		assertThat(String.join("", chunks(new Numbers(true, 3))), equalTo("[{\"n\":0},{\"n\":1},{\"n\":2}]"));
+		assertThat(chunks(new Numbers(true, 3)).size(), equalTo(2));
+		assertThat(String.join("", chunks(new Numbers(true, 0))), equalTo("[]"));
+	}
+
+	@Test
+	public void writesOneItemPerLine() throws IOException {
+		assertThat(String.join("", chunks(new Numbers(false, 3))), equalTo("{\"n\":0}\n{\"n\":1}\n{\"n\":2}\n"));
+		assertThat(String.join("", chunks(new Numbers(false, 0))), equalTo(""));
+	}
+
+}
@@ -0,0 +1,158 @@
+package reka.test.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static reka.data.content.Contents.utf8;
+import static reka.util.Path.dots;
+import static reka.util.Path.path;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableDataWrapper;
+import reka.data.memory.MutableMemoryData;
+import reka.data.persistent.PersistentData;
+
+public class PersistentDataTest {
+	
+	@Test
+	public void copiesDoNotSeeEachOthersChanges() {
+		MutableData a = PersistentData.create();
+		a.putString(dots("person.name"), "nick");
+		a.putString(dots("person.city"), "london");
+		
+		MutableData b = a.mutableCopy();
+		b.putString(dots("person.name"), "bob");
+		a.putString(dots("person.age"), "30");
+		
+		assertEquals("{\"person\":{\"name\":\"nick\",\"city\":\"london\",\"age\":\"30\"}}", a.toJson());
+		assertEquals("{\"person\":{\"name\":\"bob\",\"city\":\"london\"}}", b.toJson());
+	}
+	
+	@Test
+	public void nestedCopiesStayIsolated() {
+		MutableData root = PersistentData.create();
+		root.putMap("things", m -> m.putString("a", "1"));
+		MutableData inner = root.mutableAt(path("things")).mutableCopy();
+		root.putString(dots("things.b"), "2");
+		inner.putString("c", "3");
+		assertEquals("{\"things\":{\"a\":\"1\",\"b\":\"2\"}}", root.toJson());
+		assertEquals("{\"a\":\"1\",\"c\":\"3\"}", inner.toJson());
+	}
+	
+	@Test
+	public void createMapAtWritesThrough() {
+		MutableData data = PersistentData.create();
+		data.createMapAt("m").putString("x", "y");
+		assertEquals("{\"m\":{\"x\":\"y\"}}", data.toJson());
+	}
+	
+	@Test
+	public void putOrAppendMakesLists() {
+		MutableData data = PersistentData.create();
+		data.putOrAppend(path("a"), utf8("1"));
+		MutableData copy = data.mutableCopy();
+		data.putOrAppend(path("a"), utf8("2"));
+		data.putOrAppend(path("a"), utf8("3"));
+		assertEquals("{\"a\":[\"1\",\"2\",\"3\"]}", data.toJson());
+		assertEquals("{\"a\":\"1\"}", copy.toJson());
+	}
+	
+	@Test
+	public void removeCleansUpEmptyParents() {
+		MutableData data = PersistentData.create();
+		data.putString(dots("a.b.c"), "d");
+		data.putString(dots("x"), "y");
+		MutableData copy = data.mutableCopy();
+		data.remove(dots("a.b.c"));
+		assertFalse(data.existsAt(path("a")));
+		assertEquals("{\"x\":\"y\"}", data.toJson());
+		assertEquals("d", copy.getString(dots("a.b.c")).get());
+	}
+	
+	@Test
+	public void largeListsShareStructure() {
+		MutableData data = PersistentData.create();
+		data.putList("items", list -> {
+			for (int i = 0; i < 5000; i++) {
+				list.addString("item" + i);
+			}
+		});
+		MutableData copy = data.mutableCopy();
+		data.putString(dots("items[1234]"), "changed");
+		data.putString(dots("items[5000]"), "added");
+		assertEquals(5001, data.at(path("items")).size());
+		assertEquals(5000, copy.at(path("items")).size());
+		assertEquals("changed", data.getString(dots("items[1234]")).get());
+		assertEquals("item1234", copy.getString(dots("items[1234]")).get());
+		assertEquals("item4999", data.getString(dots("items[4999]")).get());
+	}
+	
+	@Test
+	public void behavesLikeMemoryData() {
+		Random random = new Random(42);
+		MutableData memory = MutableMemoryData.create();
+		MutableData persistent = PersistentData.create();
+		String[] keys = { "a", "b", "c", "d", "e" };
+		for (int i = 0; i < 2000; i++) {
+			String p = keys[random.nextInt(keys.length)] + "." + keys[random.nextInt(keys.length)];
+			if (random.nextInt(5) == 0) p += "[" + random.nextInt(4) + "]";
+			int op = random.nextInt(10);
+			if (op < 6) {
+				memory.putString(dots(p), "v" + i);
+				persistent.putString(dots(p), "v" + i);
+			} else if (op < 8) {
+				memory.putOrAppend(dots(p), utf8("v" + i));
+				persistent.putOrAppend(dots(p), utf8("v" + i));
+			} else if (op < 9) {
+				memory.remove(dots(p));
+				persistent.remove(dots(p));
+			} else {
+				persistent = persistent.mutableCopy();
+			}
+			assertEquals(memory.toJson(), persistent.toJson());
+		}
+		assertTrue(memory.equals(persistent));
+	}
+	
+	@Test
+	public void keepsInsertionOrderThroughRemoves() {
+		MutableData data = PersistentData.create();
+		for (int i = 0; i < 200; i++) {
+			data.putString("k" + i, "v" + i);
+		}
+		MutableData copy = data.mutableCopy();
+		for (int i = 0; i < 200; i++) {
+			if (i % 10 != 0) data.remove("k" + i);
+		}
+		data.putString("k0", "changed");
+		data.putString("last", "x");
+		assertEquals("{\"k0\":\"changed\",\"k10\":\"v10\",\"k20\":\"v20\",\"k30\":\"v30\",\"k40\":\"v40\",\"k50\":\"v50\","
+				+ "\"k60\":\"v60\",\"k70\":\"v70\",\"k80\":\"v80\",\"k90\":\"v90\",\"k100\":\"v100\",\"k110\":\"v110\","
+				+ "\"k120\":\"v120\",\"k130\":\"v130\",\"k140\":\"v140\",\"k150\":\"v150\",\"k160\":\"v160\",\"k170\":\"v170\","
+				+ "\"k180\":\"v180\",\"k190\":\"v190\",\"last\":\"x\"}", data.toJson());
+		assertEquals(200, copy.size());
+		assertEquals("k199", copy.elements().stream().reduce((a, b) -> b).get().toString());
+	}
+	
+	@Test
+	public void onlyConvertsWhenCopied() {
+		MutableData memory = MutableMemoryData.create().putString("a", "1");
+		MutableData data = MutableDataWrapper.convertOnCopy(memory, PersistentData.INSTANCE);
+		data.putString("b", "2");
+		assertEquals("2", memory.getString("b").get());
+		assertSame(data, MutableDataWrapper.convertOnCopy(data, PersistentData.INSTANCE));
+		
+		MutableData copy = data.mutableCopy();
+		data.putString("c", "3");
+		copy.putString("d", "4");
+		assertFalse(memory.existsAt("c"));
+		assertEquals("{\"a\":\"1\",\"b\":\"2\",\"c\":\"3\"}", data.toJson());
+		assertEquals("{\"a\":\"1\",\"b\":\"2\",\"d\":\"4\"}", copy.toJson());
+	}
+
+}
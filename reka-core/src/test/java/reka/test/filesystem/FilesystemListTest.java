@@ -0,0 +1,154 @@
+package reka.test.filesystem;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static reka.util.Path.path;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import reka.data.Data;
+import reka.data.MutableData;
+import reka.data.content.types.StreamContent;
+import reka.data.memory.MutableMemoryData;
+import reka.flow.ops.OperationContext;
+import reka.identity.IdentityStore;
+import reka.modules.filesystem.FilesystemList;
+import reka.modules.filesystem.FilesystemList.Format;
+import reka.modules.filesystem.FilesystemList.Sort;
+
+public class FilesystemListTest {
+
+	private static final reka.util.Path OUT = path("out");
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path basedir;
+
+	@Before
+	public void setup() throws IOException {
+		basedir = folder.getRoot().toPath().toRealPath();
+		Path dir = Files.createDirectory(basedir.resolve("files"));
+		for (int i = 0; i < 25; i++) {
+			Files.write(dir.resolve(String.format("file%02d.txt", i)), new byte[i]);
+		}
+		Files.write(dir.resolve("notes.md"), new byte[100]);
+	}
+
+	private MutableData list(String glob, Sort sort, boolean descending, int limit, String after, Format format) {
+		return list(glob, sort, descending, limit, after, format, new OperationContext(IdentityStore.emptyReader()));
+	}
+
+	private MutableData list(String glob, Sort sort, boolean descending, int limit, String after, Format format, OperationContext ctx) {
+		MutableData data = MutableMemoryData.create();
+		new FilesystemList(basedir, unused -> OUT, unused -> "files", glob, sort, descending, limit, unused -> after, format).call(data, ctx);
+		return data;
+	}
+
+	private static List<String> names(Data list) {
+		List<String> names = new ArrayList<>();
+		list.forEachData((unused, item) -> names.add(item.getString("name").get()));
+		return names;
+	}
+
+	@Test
+	public void pagesThroughInNameOrder() {
+		List<String> all = new ArrayList<>();
+		String after = null;
+		int pages = 0;
+		do {
+			MutableData data = list(null, null, false, 10, after, null);
+			all.addAll(names(data.at(OUT.add("entries"))));
+			after = data.getString(OUT.add("next")).orElse(null);
+			pages++;
+		} while (after != null);
+		assertThat(pages, equalTo(3));
+		assertThat(all.size(), equalTo(26));
+		List<String> sorted = new ArrayList<>(all);
+		sorted.sort(null);
+		assertThat(all, equalTo(sorted));
+	}
+
+	@Test
+	public void filtersWithAGlob() {
+		MutableData data = list("*.md", null, false, 0, null, null);
+		assertThat(names(data.at(OUT)), equalTo(Arrays.asList("notes.md")));
+		assertThat(data.getContent(OUT.add(0).add("size")).get().asLong(), equalTo(100L));
+	}
+
+	@Test
+	public void sortsBySizeDescending() {
+		MutableData first = list("*.txt", Sort.SIZE, true, 3, null, null);
+		assertThat(names(first.at(OUT.add("entries"))), equalTo(Arrays.asList("file24.txt", "file23.txt", "file22.txt")));
+		MutableData second = list("*.txt", Sort.SIZE, true, 3, first.getString(OUT.add("next")).get(), null);
+		assertThat(names(second.at(OUT.add("entries"))), equalTo(Arrays.asList("file21.txt", "file20.txt", "file19.txt")));
+	}
+
+	@Test
+	public void streamsTheListing() throws IOException {
+		MutableData data = list(null, null, false, 0, null, Format.JSON);
+		JsonNode json = new ObjectMapper().readTree(data.getContent(OUT).get().asUTF8());
+		assertThat(json.size(), equalTo(26));
+
+		MutableData ndjson = list("*.txt", null, false, 0, null, Format.NDJSON);
+		String[] lines = new String(ndjson.getContent(OUT).get().asBytes(), UTF_8).split("\n");
+		assertThat(lines.length, equalTo(25));
+
+		MutableData paged = list(null, Sort.NAME, false, 20, null, Format.JSON);
+		JsonNode page = new ObjectMapper().readTree(paged.getContent(OUT).get().asUTF8());
+		assertThat(page.get("entries").size(), equalTo(20));
+		assertFalse(page.get("next").isNull());
+	}
+
+	@Test
+	public void closesAStreamedListingNobodyWrote() throws Exception {
+		OperationContext ctx = new OperationContext(IdentityStore.emptyReader());
+		MutableData data = list(null, null, false, 0, null, Format.JSON, ctx);
+		List<AutoCloseable> resources = ctx.takeResources();
+		assertThat(resources.size(), equalTo(1));
+		for (AutoCloseable resource : resources) {
+			resource.close();
+		}
+		try {
+			data.getContent(OUT).get().asUTF8();
+			fail("should not be able to read a closed listing");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void readsAStreamedListingMoreThanOnce() throws Exception {
+		OperationContext ctx = new OperationContext(IdentityStore.emptyReader());
+		MutableData data = list("*.md", null, false, 0, null, Format.NDJSON, ctx);
+		StreamContent content = (StreamContent) data.getContent(OUT).get();
+		String first = content.asUTF8();
+		assertThat(content.asUTF8(), equalTo(first));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (StreamContent.Source source = content.take()) {
+			while (source.next(out));
+		}
+		assertThat(new String(out.toByteArray(), UTF_8), equalTo(first));
+		for (AutoCloseable resource : ctx.takeResources()) {
+			resource.close();
+		}
+		assertThat(content.asUTF8(), equalTo(first));
+	}
+
+}
@@ -0,0 +1,138 @@
+package reka.test.filesystem;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.modules.filesystem.FilesystemRead;
+import reka.modules.filesystem.StaticFileCache;
+import reka.util.Path.Request;
+import reka.util.Path.Response;
+
+public class StaticFileCacheTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path basedir;
+	private StaticFileCache cache;
+
+	@Before
+	public void setup() throws IOException {
+		basedir = folder.getRoot().toPath().toRealPath();
+		cache = new StaticFileCache(basedir);
+	}
+
+	@After
+	public void close() {
+		cache.close();
+	}
+
+	private MutableData read(String filename, MutableData data, boolean precompressed) {
+		new FilesystemRead(basedir, cache, unused -> Response.CONTENT, unused -> filename, false, precompressed).call(data, null);
+		return data;
+	}
+
+	private MutableData read(String filename) {
+		return read(filename, MutableMemoryData.create(), false);
+	}
+
+	private static String content(MutableData data) {
+		return new String(data.getContent(Response.CONTENT).get().asBytes(), UTF_8);
+	}
+
+	@Test
+	public void servesWithAnEtagAndLastModified() throws IOException {
+		Files.write(basedir.resolve("app.js"), "alert(1);".getBytes(UTF_8));
+		MutableData data = read("app.js");
+		assertThat(content(data), equalTo("alert(1);"));
+		assertThat(data.getContent(Response.Headers.CONTENT_LENGTH).get().asLong(), equalTo(9L));
+		assertTrue(data.getString(Response.Headers.ETAG).get().startsWith("\""));
+		assertTrue(data.existsAt(Response.Headers.LAST_MODIFIED));
+		assertTrue(cache.get(basedir.resolve("app.js")).inMemory());
+	}
+
+	@Test
+	public void notModifiedForAMatchingEtag() throws IOException {
+		Files.write(basedir.resolve("app.css"), "body {}".getBytes(UTF_8));
+		String etag = read("app.css").getString(Response.Headers.ETAG).get();
+		MutableData data = read("app.css", MutableMemoryData.create().putString(Request.Headers.IF_NONE_MATCH, etag), false);
+		assertThat(data.getInt(Response.STATUS).getAsInt(), equalTo(304));
+		assertThat(data.getString(Response.Headers.ETAG).get(), equalTo(etag));
+	}
+
+	@Test
+	public void keepsTheEntryUntilTheFileChanges() throws Exception {
+		Path file = basedir.resolve("index.html");
+		Files.write(file, "one".getBytes(UTF_8));
+		StaticFileCache.Entry first = cache.get(file);
+		assertThat(cache.get(file), sameInstance(first));
+
+		Files.write(file, "two!".getBytes(UTF_8));
+		StaticFileCache.Entry changed = first;
+		for (int i = 0; i < 100 && changed == first; i++) {
+			Thread.sleep(50);
+			changed = cache.get(file);
+		}
+		assertThat(changed, not(sameInstance(first)));
+		assertThat(content(read("index.html")), equalTo("two!"));
+	}
+
+	@Test
+	public void remembersMissingFilesUntilTheyAppear() throws Exception {
+		Path file = basedir.resolve("later.txt");
+		assertFalse(cache.get(file).isFile());
+		Files.write(file, "here".getBytes(UTF_8));
+		boolean found = false;
+		for (int i = 0; i < 100 && !found; i++) {
+			Thread.sleep(50);
+			found = cache.get(file).isFile();
+		}
+		assertTrue(found);
+	}
+
+	@Test
+	public void usesAPrecompressedSibling() throws IOException {
+		byte[] gzipped = gzip("var a = 1;");
+		Files.write(basedir.resolve("lib.js"), "var a = 1;".getBytes(UTF_8));
+		Files.write(basedir.resolve("lib.js.gz"), gzipped);
+
+		MutableData gz = read("lib.js", MutableMemoryData.create().putString(Request.Headers.ACCEPT_ENCODING, "gzip, deflate"), true);
+		assertThat(gz.getString(Response.Headers.CONTENT_ENCODING).get(), equalTo("gzip"));
+		assertThat(gz.getString(Response.Headers.VARY).get(), equalTo("Accept-Encoding"));
+		assertThat(gz.getContent(Response.CONTENT).get().asBytes(), equalTo(gzipped));
+		assertThat(gz.getString(Response.Headers.CONTENT_TYPE), equalTo(read("lib.js").getString(Response.Headers.CONTENT_TYPE)));
+
+		MutableData plain = read("lib.js", MutableMemoryData.create(), true);
+		assertFalse(plain.existsAt(Response.Headers.CONTENT_ENCODING));
+		assertThat(content(plain), equalTo("var a = 1;"));
+		assertThat(plain.getString(Response.Headers.ETAG), not(equalTo(gz.getString(Response.Headers.ETAG))));
+	}
+
+	private static byte[] gzip(String value) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+			out.write(value.getBytes(UTF_8));
+		}
+		return baos.toByteArray();
+	}
+
+}
@@ -2,20 +2,27 @@ package reka.test.flow;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static reka.flow.builder.FlowSegments.flowReference;
 import static reka.flow.builder.FlowSegments.parallel;
+import static reka.flow.builder.FlowSegments.seq;
 import static reka.flow.builder.OperationFlowNode.asyncOperation;
+import static reka.flow.builder.OperationFlowNode.node;
 import static reka.flow.builder.OperationFlowNode.operation;
 import static reka.util.Path.dots;
 import static reka.util.Path.path;
 import static reka.util.Util.unchecked;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -26,6 +33,9 @@ import reka.data.content.Content;
 import reka.data.memory.MutableMemoryData;
 import reka.flow.Flow;
 import reka.flow.builder.FlowBuilderGroup;
+import reka.flow.builder.Flows;
+import reka.flow.ops.Operation;
+import reka.flow.ops.Subscriber;
 import reka.util.Path;
 
 public class FlowTest {
@@ -121,6 +131,193 @@ public class FlowTest {
 		}
 	}
 	
+	@Test
+	public void sequentialOperationsRunInlineOnOneThread() {
+		
+		Set<Long> threadIds = ConcurrentHashMap.newKeySet();
+		AtomicLong counter = new AtomicLong();
+		
+		Flow flow = FlowBuilderGroup.createFlow(path("flow"), 
+			seq(
+				operation("op1", (data, ctx) -> {
+					threadIds.add(Thread.currentThread().getId());
+					counter.incrementAndGet();
+				}),
+				operation("op2", (data, ctx) -> {
+					threadIds.add(Thread.currentThread().getId());
+					counter.incrementAndGet();
+				}),
+				operation("op3", (data, ctx) -> {
+					threadIds.add(Thread.currentThread().getId());
+					counter.incrementAndGet();
+				})
+			)
+		);
+		
+		CountDownLatch latch = new CountDownLatch(1);
+		// a fixed pool starts a new thread for each task until it is full, so any hand-off would show up
+		flow.prepare().operationExecutor(Executors.newFixedThreadPool(3)).complete(data -> latch.countDown()).run();
+		
+		try {
+			if (latch.await(1, TimeUnit.SECONDS)) {
+				assertThat(counter.get(), equalTo(3L));
+				assertThat(threadIds.size(), equalTo(1));
+			} else {
+				fail("timed out");
+			}
+		} catch (InterruptedException e) {
+			throw unchecked(e);
+		}
+	}
+	
+	@Test
+	public void embeddedFlowsBuildTheirOperationsOnce() {
+		
+		AtomicInteger built = new AtomicInteger();
+		
+		FlowBuilderGroup group = new FlowBuilderGroup();
+		group.add(path("sub"), seq(
+			node("sub1", () -> {
+				built.incrementAndGet();
+				return (Operation) (data, ctx) -> data.putString("sub", "sub");
+			})
+		));
+		group.add(path("a"), seq(flowReference("sub"), operation("a1", (data, ctx) -> { })));
+		group.add(path("b"), seq(flowReference("sub"), flowReference("sub")));
+		
+		group.build();
+		
+		assertThat(built.get(), equalTo(1));
+	}
+	
+	@Test
+	public void embeddedFlowsRunInPlace() {
+		
+		Set<Long> threadIds = ConcurrentHashMap.newKeySet();
+		
+		FlowBuilderGroup group = new FlowBuilderGroup();
+		group.add(path("sub"), seq(
+			operation("sub1", (data, ctx) -> {
+				threadIds.add(Thread.currentThread().getId());
+				data.putString("sub", data.getString("main").orElse("missing") + "+sub");
+			})
+		));
+		group.add(path("main"), seq(
+			operation("main1", (data, ctx) -> {
+				threadIds.add(Thread.currentThread().getId());
+				data.putString("main", "main");
+			}),
+			flowReference("sub"),
+			operation("main2", (data, ctx) -> {
+				threadIds.add(Thread.currentThread().getId());
+				data.putString("after", data.getString("sub").orElse("missing") + "+after");
+			})
+		));
+		
+		Flow flow = group.build().flow(path("main"));
+		
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<String> result = new AtomicReference<>();
+		flow.prepare().operationExecutor(Executors.newFixedThreadPool(3)).complete(data -> {
+			result.set(data.getString("after").orElse("missing"));
+			latch.countDown();
+		}).run();
+		
+		try {
+			if (latch.await(1, TimeUnit.SECONDS)) {
+				assertThat(result.get(), equalTo("main+sub+after"));
+				assertThat(threadIds.size(), equalTo(1));
+			} else {
+				fail("timed out");
+			}
+		} catch (InterruptedException e) {
+			throw unchecked(e);
+		}
+	}
+	
+	@Test
+	public void closesWhatOperationsLeftOpenWhenTheRunIsDone() throws InterruptedException {
+		
+		AtomicInteger closed = new AtomicInteger();
+		AtomicInteger closedBeforeSubscriber = new AtomicInteger(-1);
+		
+		FlowBuilderGroup group = new FlowBuilderGroup();
+		group.add(path("sub"), seq(
+			operation("open", (data, ctx) -> ctx.closeWhenDone(closed::incrementAndGet))
+		));
+		group.add(path("ok"), seq(
+			flowReference("sub"),
+			operation("check", (data, ctx) -> data.putInt("open-after-sub", 1 - closed.get()))
+		));
+		group.add(path("fails"), seq(
+			operation("open", (data, ctx) -> ctx.closeWhenDone(closed::incrementAndGet)),
+			operation("fail", (data, ctx) -> { throw new RuntimeException("oops"); })
+		));
+		Flows flows = group.build();
+		
+		// closed once ok returns
+		CountDownLatch ok = new CountDownLatch(1);
+		AtomicReference<Data> result = new AtomicReference<>();
+		flows.flow(path("ok")).prepare().complete(data -> {
+			result.set(data);
+			closedBeforeSubscriber.set(closed.get());
+		}).run();
+		waitFor(closed, 1);
+		assertThat(result.get().getContent(path("open-after-sub")).get().asInt(), equalTo(1));
+		assertThat(closedBeforeSubscriber.get(), equalTo(0));
+		
+		// or left to the subscriber if it keeps it
+		AtomicReference<AutoCloseable> kept = new AtomicReference<>();
+		flows.flow(path("ok")).prepare().complete(new Subscriber() {
+			
+			@Override
+			public boolean keep(AutoCloseable resource) {
+				kept.set(resource);
+				return true;
+			}
+			
+			@Override
+			public void ok(MutableData data) {
+				ok.countDown();
+			}
+			
+		}).run();
+		assertTrue(ok.await(1, TimeUnit.SECONDS));
+		Thread.sleep(50);
+		assertThat(closed.get(), equalTo(1));
+		try {
+			kept.get().close();
+		} catch (Exception e) {
+			throw unchecked(e);
+		}
+		assertThat(closed.get(), equalTo(2));
+		
+		// and closed when it fails
+		CountDownLatch failed = new CountDownLatch(1);
+		flows.flow(path("fails")).prepare().complete(new Subscriber() {
+			
+			@Override
+			public void ok(MutableData data) {
+			}
+			
+			@Override
+			public void error(Data data, Throwable t) {
+				failed.countDown();
+			}
+			
+		}).run();
+		assertTrue(failed.await(1, TimeUnit.SECONDS));
+		waitFor(closed, 3);
+	}
+	
+	private static void waitFor(AtomicInteger count, int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 1000;
+		while (count.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(count.get(), equalTo(expected));
+	}
+	
 	private int changeCount(Data a, Data b) {
 		final AtomicInteger changeCount = new AtomicInteger();
 		a.diffContentTo(b, new DiffContentConsumer(){
@@ -0,0 +1,116 @@
+package reka.test.identity;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import reka.flow.ops.OperationContext;
+import reka.identity.ConcurrentIdentityStore;
+import reka.identity.IdentityKey;
+import reka.identity.IdentityStore;
+import reka.identity.IdentityStoreReader;
+
+public class IdentityStoreTest {
+
+	private static final IdentityKey<String> NAME = IdentityKey.named("name");
+	private static final IdentityKey<Integer> COUNT = IdentityKey.named("count");
+
+	@Test
+	public void immutableStoreHasWhatWasPut() {
+		IdentityStoreReader store = IdentityStore.immutableBuilder().put(NAME, "reka").build();
+		assertTrue(store.has(NAME));
+		assertThat(store.get(NAME), equalTo("reka"));
+		assertFalse(store.has(COUNT));
+		assertThat(store.get(COUNT), nullValue());
+		assertFalse(store.lookup(COUNT).isPresent());
+	}
+
+	@Test
+	public void manyKeysKeepTheirOwnValues() {
+		IdentityStore store = IdentityStore.createConcurrentIdentityStore();
+		List<IdentityKey<Integer>> keys = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			IdentityKey<Integer> key = IdentityKey.named("key" + i);
+			keys.add(key);
+			store.put(key, i);
+		}
+		IdentityStoreReader immutable = store.immutable();
+		for (int i = 0; i < keys.size(); i++) {
+			assertThat(store.get(keys.get(i)), equalTo(i));
+			assertThat(immutable.get(keys.get(i)), equalTo(i));
+		}
+		assertFalse(store.has(NAME));
+		assertFalse(immutable.has(NAME));
+	}
+
+	@Test
+	public void immutableCopyDoesNotChange() {
+		IdentityStore store = IdentityStore.createConcurrentIdentityStore();
+		store.put(NAME, "before");
+		IdentityStoreReader immutable = store.immutable();
+		store.put(NAME, "after");
+		store.put(COUNT, 1);
+		assertThat(immutable.get(NAME), equalTo("before"));
+		assertFalse(immutable.has(COUNT));
+	}
+
+	@Test
+	public void removesValues() {
+		IdentityStore store = IdentityStore.createConcurrentIdentityStore();
+		store.put(NAME, "reka");
+		assertThat(store.remove(NAME).get(), equalTo("reka"));
+		assertFalse(store.has(NAME));
+		assertFalse(store.remove(NAME).isPresent());
+		assertFalse(store.remove(IdentityKey.named("never used")).isPresent());
+	}
+
+	@Test
+	public void createsFromPreviousStores() {
+		IdentityStore previous = IdentityStore.createConcurrentIdentityStore();
+		previous.put(NAME, "reka");
+		IdentityStore fromConcurrent = ConcurrentIdentityStore.createFrom(previous);
+		IdentityStore fromImmutable = ConcurrentIdentityStore.createFrom(IdentityStore.immutableBuilder().put(COUNT, 2).build());
+		previous.put(NAME, "changed");
+		assertThat(fromConcurrent.get(NAME), equalTo("reka"));
+		assertThat(fromImmutable.get(COUNT), equalTo(2));
+	}
+
+	@Test
+	public void keysMadeAfterOthersAreCollectedDoNotSeeTheirValues() {
+		IdentityStore store = IdentityStore.createConcurrentIdentityStore();
+		IdentityKey<String> kept = IdentityKey.named("kept");
+		store.put(kept, "reka");
+		for (int round = 0; round < 5; round++) {
+			IdentityStore other = IdentityStore.createConcurrentIdentityStore();
+			for (int i = 0; i < 1000; i++) {
+				other.put(IdentityKey.named("dropped" + i), i);
+			}
+			other = null;
+			System.gc();
+			IdentityStoreReader immutable = store.immutable();
+			for (int i = 0; i < 1000; i++) {
+				IdentityKey<Integer> key = IdentityKey.named("new" + i);
+				assertFalse(store.has(key));
+				assertFalse(immutable.has(key));
+			}
+			assertThat(store.get(kept), equalTo("reka"));
+			assertThat(immutable.get(kept), equalTo("reka"));
+		}
+	}
+
+	@Test
+	public void operationContextIsReusedForAStore() {
+		OperationContext ctx = OperationContext.of(IdentityStore.immutableBuilder().put(NAME, "reka").build());
+		assertThat(OperationContext.of(ctx), sameInstance(ctx));
+		assertThat(ctx.get(NAME), equalTo("reka"));
+	}
+
+}
@@ -0,0 +1,84 @@
+package reka.test.module;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static reka.util.Path.slashes;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.junit.Test;
+
+import reka.config.Config;
+import reka.config.configurer.annotations.Conf;
+import reka.config.parser.ConfigParser;
+import reka.module.ModuleInfo;
+import reka.module.RootModule;
+import reka.module.setup.AppSetup;
+import reka.module.setup.ModuleConfigurer;
+import reka.util.Path;
+
+public class ModuleConfigHashTest {
+
+	public static class ThingModule extends ModuleConfigurer {
+
+		@Conf.At("size")
+		public void size(String val) { }
+
+		@Conf.At("file")
+		public void file(String val) {
+			readsFile(Paths.get(val));
+		}
+
+		@Override
+		public void setup(AppSetup module) { }
+
+	}
+
+	private static Map<Path,String> hashes(String content) {
+		RootModule root = new RootModule(null, asList(new ModuleInfo(slashes("thing"), "1", ThingModule::new)));
+		for (Config config : ConfigParser.fromString(content).each()) {
+			root.useThisConfig(config);
+		}
+		return ModuleConfigurer.configHashes(root);
+	}
+
+	@Test
+	public void sameConfigGivesSameHashes() {
+		String content = "thing a {\n  size 1\n}\nthing b {\n  size 2\n}\n";
+		assertThat(hashes(content), equalTo(hashes(content)));
+	}
+
+	@Test
+	public void onlyTheChangedModuleGetsANewHash() {
+		Map<Path,String> before = hashes("thing a {\n  size 1\n}\nthing b {\n  size 2\n}\n");
+		Map<Path,String> after = hashes("thing a {\n  size 1\n}\nthing b {\n  size 3\n}\n");
+		assertThat(after.get(slashes("a")), equalTo(before.get(slashes("a"))));
+		assertThat(after.get(slashes("b")), not(equalTo(before.get(slashes("b")))));
+	}
+
+	@Test
+	public void changingAModuleChangesTheModulesUsingIt() {
+		Map<Path,String> before = hashes("thing a {\n  size 1\n}\nthing b {\n  use a\n}\nthing c {\n  size 1\n}\n");
+		Map<Path,String> after = hashes("thing a {\n  size 2\n}\nthing b {\n  use a\n}\nthing c {\n  size 1\n}\n");
+		assertThat(after.get(slashes("a")), not(equalTo(before.get(slashes("a")))));
+		assertThat(after.get(slashes("b")), not(equalTo(before.get(slashes("b")))));
+		assertThat(after.get(slashes("c")), equalTo(before.get(slashes("c"))));
+	}
+
+	@Test
+	public void changingAFileTheModuleReadsChangesItsHash() throws Exception {
+		java.nio.file.Path file = Files.createTempFile("reka", ".txt");
+		file.toFile().deleteOnExit();
+		Files.write(file, "one".getBytes(StandardCharsets.UTF_8));
+		String content = "thing a {\n  file " + file + "\n}\n";
+		Map<Path,String> before = hashes(content);
+		Files.write(file, "three".getBytes(StandardCharsets.UTF_8));
+		assertThat(hashes(content).get(slashes("a")), not(equalTo(before.get(slashes("a")))));
+	}
+
+}
@@ -0,0 +1,151 @@
+package reka.test.module;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static reka.config.configurer.Configurer.configure;
+import static reka.util.Path.path;
+import static reka.util.Path.slashes;
+
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import reka.app.Application;
+import reka.app.ApplicationConfigurer;
+import reka.config.Config;
+import reka.config.ConfigBody;
+import reka.config.NavigableConfig;
+import reka.config.configurer.annotations.Conf;
+import reka.config.parser.ConfigParser;
+import reka.identity.Identity;
+import reka.identity.IdentityKey;
+import reka.module.Module;
+import reka.module.ModuleDefinition;
+import reka.module.ModuleManager;
+import reka.module.ModuleMeta;
+import reka.module.setup.AppSetup;
+import reka.module.setup.ModuleConfigurer;
+import reka.module.setup.ModuleSetupContext;
+import reka.modules.builtins.BuiltinsModule;
+import reka.util.Path;
+import reka.util.dirs.BaseDirs;
+
+public class ModuleReuseTest {
+
+	private static final IdentityKey<String> RESOURCE = IdentityKey.named("resource");
+
+	private static final AtomicInteger started = new AtomicInteger();
+	private static final AtomicInteger stopped = new AtomicInteger();
+	private static final AtomicInteger listening = new AtomicInteger();
+
+	public static class CounterModule implements Module {
+
+		@Override
+		public Path base() {
+			return path("counter");
+		}
+
+		@Override
+		public void setup(ModuleDefinition module) {
+			module.main(() -> new CounterConfigurer());
+		}
+
+	}
+
+	// starts something it keeps in the store, and listens like the timer and admin modules do
+	public static class CounterConfigurer extends ModuleConfigurer {
+
+		private ConfigBody on;
+
+		@Conf.At("size")
+		public void size(String val) { }
+
+		@Conf.At("on")
+		public void on(Config config) {
+			on = config.body();
+		}
+
+		@Override
+		public void setup(AppSetup module) {
+			ModuleSetupContext ctx = module.ctx();
+			module.onDeploy(init -> init.run("start", () -> {
+				started.incrementAndGet();
+				ctx.put(RESOURCE, "running");
+			}));
+			module.onUndeploy("stop", (idv, store) -> {
+				store.remove(RESOURCE).ifPresent(unused -> stopped.incrementAndGet());
+			});
+			module.buildFlow("on", on, flow -> {
+				listening.incrementAndGet();
+				module.onUndeploy("stop listening", () -> listening.decrementAndGet());
+			});
+		}
+
+	}
+
+	private static final String CONFIG = "name reuse\ncounter {\n  size 1\n  on {\n    lowercase value\n  }\n}\n";
+	private static final String CHANGED_CONFIG = "name reuse\ncounter {\n  size 2\n  on {\n    lowercase value\n  }\n}\n";
+
+	private final Identity identity = Identity.create("reuse");
+	private int version;
+
+	@Before
+	public void reset() {
+		started.set(0);
+		stopped.set(0);
+		listening.set(0);
+	}
+
+	private Application deploy(String content, Optional<Application> previous) throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		ModuleManager modules = new ModuleManager(asList(
+				new ModuleMeta(classLoader, "test", new BuiltinsModule()),
+				new ModuleMeta(classLoader, "test", new CounterModule())));
+		NavigableConfig config = modules.processor().process(ConfigParser.fromString(content));
+		java.nio.file.Path dir = Files.createTempDirectory("reka-test");
+		dir.toFile().deleteOnExit();
+		BaseDirs dirs = new BaseDirs(dir.resolve("app"), dir.resolve("data"), dir.resolve("tmp"));
+		ApplicationConfigurer configurer = configure(new ApplicationConfigurer(dirs.mktemp(), modules), config);
+		Application app = configurer.build(identity, ++version, previous.map(Application::stores).orElse(emptyMap())).get();
+		previous.ifPresent(p -> p.undeploy(app.reusedModules()));
+		return app;
+	}
+
+	@Test
+	public void redeployingTheSameConfigCarriesTheStoreOnButNotTheListeners() throws Exception {
+		Application first = deploy(CONFIG, Optional.empty());
+		assertThat(started.get(), equalTo(1));
+		assertThat(listening.get(), equalTo(1));
+
+		Application second = deploy(CONFIG, Optional.of(first));
+		assertTrue(second.reusedModules().contains(slashes("counter")));
+		assertThat(started.get(), equalTo(1));
+		assertThat(stopped.get(), equalTo(0));
+		assertThat(listening.get(), equalTo(1));
+
+		second.undeploy();
+		assertThat(stopped.get(), equalTo(1));
+		assertThat(listening.get(), equalTo(0));
+	}
+
+	@Test
+	public void changingTheConfigStartsItAgain() throws Exception {
+		Application first = deploy(CONFIG, Optional.empty());
+		Application second = deploy(CHANGED_CONFIG, Optional.of(first));
+		assertFalse(second.reusedModules().contains(slashes("counter")));
+		assertThat(started.get(), equalTo(2));
+		assertThat(stopped.get(), equalTo(1));
+		assertThat(listening.get(), equalTo(1));
+		second.undeploy();
+		assertThat(stopped.get(), equalTo(2));
+		assertThat(listening.get(), equalTo(0));
+	}
+
+}
@@ -0,0 +1,58 @@
+package reka.test.runtime;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Test;
+
+import reka.runtime.CoordinatorLanes;
+import reka.util.Util;
+
+public class CoordinatorLanesTest {
+	
+	@Test
+	public void sameIdAlwaysGetsSameLane() {
+		CoordinatorLanes lanes = CoordinatorLanes.create("test-coord", 4);
+		try {
+			for (long id = 0; id < 100; id++) {
+				assertThat(lanes.laneFor(id), sameInstance(lanes.laneFor(id)));
+				assertThat(lanes.laneFor(id), sameInstance(lanes.laneFor(id + lanes.size())));
+			}
+		} finally {
+			lanes.shutdown();
+		}
+	}
+	
+	@Test
+	public void idsAreSpreadOverAllLanes() {
+		CoordinatorLanes lanes = CoordinatorLanes.create("test-coord", 4);
+		try {
+			Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (long id = 0; id < 100; id++) {
+				seen.add(lanes.laneFor(id));
+			}
+			assertThat(seen.size(), equalTo(4));
+		} finally {
+			lanes.shutdown();
+		}
+	}
+	
+	@Test
+	public void eachLaneIsSingleThreaded() {
+		CoordinatorLanes lanes = CoordinatorLanes.create("test-coord", 3);
+		try {
+			for (long id = 0; id < lanes.size(); id++) {
+				assertTrue(Util.isSingleThreaded(lanes.laneFor(id)));
+			}
+		} finally {
+			lanes.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package reka.test.util;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static reka.util.Path.path;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.util.Path;
+import reka.util.Path.Request;
+import reka.util.Path.Response;
+import reka.util.RenderCache;
+
+public class RenderCacheTest {
+
+	private final AtomicInteger renders = new AtomicInteger();
+
+	private final RenderCache.Renderer hello = (map, writer) -> {
+		renders.incrementAndGet();
+		writer.write("hello " + map.get("name"));
+	};
+
+	private final RenderCache cache = new RenderCache.Group().create("test", "hello {{name}}", "text/html");
+
+	private MutableData data(String name, String other) {
+		return MutableMemoryData.create().putString("name", name).putString("other", other);
+	}
+
+	private MutableData render(MutableData data) {
+		cache.render(data, Path.empty(), path("out"), hello);
+		return data;
+	}
+
+	@Test
+	public void onlyRendersAgainWhenAReadValueChanges() {
+		assertThat(render(data("nick", "a")).getString("out").get(), equalTo("hello nick"));
+		assertThat(render(data("nick", "b")).getString("out").get(), equalTo("hello nick"));
+		assertThat(renders.get(), equalTo(1));
+		assertThat(render(data("alex", "a")).getString("out").get(), equalTo("hello alex"));
+		assertThat(renders.get(), equalTo(2));
+	}
+
+	@Test
+	public void notModifiedForTheMainResponse() {
+		MutableData first = data("nick", "a");
+		cache.render(first, Path.empty(), Response.CONTENT, hello);
+		String etag = first.getString(Response.Headers.ETAG).get();
+		assertThat(first.getContent(Response.CONTENT).get().asUTF8(), equalTo("hello nick"));
+		assertThat(first.getString(Response.Headers.CONTENT_TYPE).get(), equalTo("text/html"));
+
+		MutableData second = data("nick", "b").putString(Request.Headers.IF_NONE_MATCH, etag);
+		cache.render(second, Path.empty(), Response.CONTENT, hello);
+		assertThat(second.getInt(Response.STATUS).getAsInt(), equalTo(304));
+		assertThat(renders.get(), equalTo(1));
+	}
+
+	@Test
+	public void sendsAQuotedEtagAndMatchesWeakOnes() {
+		MutableData first = data("nick", "a");
+		cache.render(first, Path.empty(), Response.CONTENT, hello);
+		String etag = first.getString(Response.Headers.ETAG).get();
+		assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+		MutableData second = data("nick", "a").putString(Request.Headers.IF_NONE_MATCH, "\"other\", W/" + etag);
+		cache.render(second, Path.empty(), Response.CONTENT, hello);
+		assertThat(second.getInt(Response.STATUS).getAsInt(), equalTo(304));
+	}
+
+	@Test
+	public void rendersAgainWhenAListItReadsChanges() {
+		RenderCache lists = new RenderCache.Group().create("lists", "{{#items}}{{.}}{{/items}}", "text/html");
+		RenderCache.Renderer items = (map, writer) -> {
+			renders.incrementAndGet();
+			writer.write(String.valueOf(map.get("items")));
+		};
+		MutableData first = MutableMemoryData.create();
+		first.putList("items", list -> list.addString("a").addString("b"));
+		lists.render(first, Path.empty(), path("out"), items);
+		MutableData second = MutableMemoryData.create();
+		second.putList("items", list -> list.addString("a").addString("c"));
+		lists.render(second, Path.empty(), path("out"), items);
+		assertThat(renders.get(), equalTo(2));
+		assertThat(second.getString("out").get(), equalTo("[a, c]"));
+	}
+
+	@Test
+	public void includesChangeTheEtag() {
+		RenderCache.Group group = new RenderCache.Group();
+		MutableData first = data("nick", "a");
+		group.create("partials", "{{> header}}", asList("one"), "text/html").render(first, Path.empty(), Response.CONTENT, hello);
+		MutableData second = data("nick", "a");
+		group.create("partials", "{{> header}}", asList("two"), "text/html").render(second, Path.empty(), Response.CONTENT, hello);
+		assertThat(first.getString(Response.Headers.ETAG).get(), not(equalTo(second.getString(Response.Headers.ETAG).get())));
+	}
+
+}
@@ -0,0 +1,30 @@
+package reka.test.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import reka.util.Utf8Bytes;
+
+public class Utf8BytesTest {
+
+	@Test
+	public void exactDropsTheSpareRoomWriteLeaves() {
+		ByteBuffer written = Utf8Bytes.write(1024, writer -> writer.write("hello ☃"));
+		assertThat(written.capacity(), equalTo(1024));
+		ByteBuffer exact = Utf8Bytes.exact(written);
+		assertThat(exact.capacity(), equalTo(exact.remaining()));
+		assertThat(Utf8Bytes.toString(exact), equalTo("hello ☃"));
+	}
+
+	@Test
+	public void exactKeepsABufferThatIsAlreadyExact() {
+		ByteBuffer buffer = Utf8Bytes.of("hello");
+		assertThat(Utf8Bytes.exact(buffer), sameInstance(buffer));
+	}
+
+}
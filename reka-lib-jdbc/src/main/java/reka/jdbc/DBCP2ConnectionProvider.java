@@ -24,12 +24,14 @@ public class DBCP2ConnectionProvider implements JdbcConnectionProvider {
 	private final PoolableConnectionFactory factory;
 	private final ObjectPool<PoolableConnection> pool;
 	private final PoolingDataSource<PoolableConnection> ds;
+	private final int maxConnections;
 
 	public DBCP2ConnectionProvider(String url, String username, String password, boolean poolStatements) {
 		factory = new PoolableConnectionFactory(new DriverManagerConnectionFactory(url, username, password), null);
 		factory.setPoolStatements(poolStatements);
 		GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-		poolConfig.setMaxTotal(Runtime.getRuntime().availableProcessors() * 2);
+		maxConnections = Runtime.getRuntime().availableProcessors() * 2;
+		poolConfig.setMaxTotal(maxConnections);
 		pool = new GenericObjectPool<>(factory, poolConfig);
 		factory.setPool(pool);
 		ds = new PoolingDataSource<>(pool);
@@ -50,6 +52,11 @@ public class DBCP2ConnectionProvider implements JdbcConnectionProvider {
 	public DataSource dataSource() {
 		return ds;
 	}
+	
+	@Override
+	public int maxConnections() {
+		return maxConnections;
+	}
 
 	@Override
 	public void writeStats(MutableData data) {
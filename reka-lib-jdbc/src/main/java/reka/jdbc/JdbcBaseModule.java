@@ -44,6 +44,8 @@ import reka.util.StringWithVars.Variable;
 public abstract class JdbcBaseModule extends ModuleConfigurer {
 	
 	protected static final IdentityKey<JdbcConnectionProvider> POOL = IdentityKey.named("connection pool");
+	protected static final IdentityKey<JdbcExecutor> EXECUTOR = IdentityKey.named("jdbc executor");
+	protected static final IdentityKey<JdbcResultCaches> CACHES = IdentityKey.named("jdbc result caches");
 
 	@SuppressWarnings("unused")
 	private final Logger log = LoggerFactory.getLogger(getClass());
@@ -54,6 +56,7 @@ public abstract class JdbcBaseModule extends ModuleConfigurer {
 	protected String username, password;
 	
 	private boolean returnGeneratedKeys = false;
+	private int queueSize = JdbcExecutor.DEFAULT_QUEUE_SIZE;
 	
 	private final Map<String,String> migrations = new HashMap<>();
 	private int migrationNum = 1;
@@ -78,6 +81,12 @@ public abstract class JdbcBaseModule extends ModuleConfigurer {
 		returnGeneratedKeys = val;
 	}
 
+	@Conf.At("queue")
+	public void queue(Config config) {
+		queueSize = config.valueAsInt();
+		checkConfig(queueSize >= 0, "queue must not be negative");
+	}
+
 	public abstract String jdbcUrl();
 	public abstract JdbcConnectionProvider connectionProvider(String username, String password); 
 	
@@ -121,10 +130,15 @@ public abstract class JdbcBaseModule extends ModuleConfigurer {
 		module.defineOperation(path("first"), provider -> new JdbcQueryConfigurer(config, true));
 		module.defineOperation(path("insert"), provider -> new JdbcInsertConfigurer());
 		
+		// each version's queries make their own caches, so they don't pile up when the pool is carried over
+		ctx.put(CACHES, new JdbcResultCaches());
+		
 		module.onDeploy(init -> {
 			
 			init.run("create connection pool", () -> {
-				ctx.put(POOL, connectionProvider(username, password));
+				JdbcConnectionProvider pool = connectionProvider(username, password);
+				ctx.put(POOL, pool);
+				ctx.put(EXECUTOR, new JdbcExecutor("reka-jdbc", pool.maxConnections(), queueSize));
 			});
 
 			if (!migrations.isEmpty()) {
@@ -232,10 +246,11 @@ public abstract class JdbcBaseModule extends ModuleConfigurer {
 		
 		});
 		
-		module.registerStatusProvider(() -> new JdbcStatusProvider(url, ctx.get(POOL)));
+		module.registerStatusProvider(() -> new JdbcStatusProvider(url, ctx.get(POOL), ctx.get(EXECUTOR), ctx.get(CACHES)));
 		
-		module.onUndeploy("close connection pool", () -> {
-			ctx.lookup(POOL).ifPresent(jdbc -> { 
+		module.onUndeploy("close connection pool", (idv, store) -> {
+			store.lookup(EXECUTOR).ifPresent(JdbcExecutor::shutdown);
+			store.lookup(POOL).ifPresent(jdbc -> { 
 				try {
 					jdbc.close();
 				} catch (Exception e) {
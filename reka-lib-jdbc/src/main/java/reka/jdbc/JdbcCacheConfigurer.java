@@ -0,0 +1,52 @@
+package reka.jdbc;
+
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import reka.config.Config;
+import reka.config.configurer.annotations.Conf;
+
+public class JdbcCacheConfigurer {
+
+	// cache 30000
+	// cache {
+	//   ttl 30000
+	//   size 10000
+	//   table things
+	// }
+
+	public static final long DEFAULT_TTL = 60000;
+	public static final long DEFAULT_SIZE = 1000;
+
+	private long ttl = DEFAULT_TTL;
+	private long size = DEFAULT_SIZE;
+	private final Set<String> tables = new LinkedHashSet<>();
+
+	@Conf.Val
+	@Conf.At("ttl")
+	public void ttl(String val) {
+		ttl = Long.parseLong(val.trim());
+		checkConfig(ttl > 0, "ttl must be positive");
+	}
+
+	@Conf.At("size")
+	public void size(Config config) {
+		size = config.valueAsLong();
+		checkConfig(size > 0, "size must be positive");
+	}
+
+	@Conf.Each("table")
+	public void table(String val) {
+		tables.addAll(JdbcTables.normalize(val));
+	}
+
+	/**
+	 * Uses the tables from the config if there were any, otherwise works them out from the sql.
+	 */
+	public JdbcResultCache build(JdbcResultCaches caches, String sql) {
+		return caches.create(tables.isEmpty() ? JdbcTables.reads(sql) : tables, size, ttl);
+	}
+
+}
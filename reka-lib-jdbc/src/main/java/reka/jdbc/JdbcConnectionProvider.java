@@ -11,5 +11,6 @@ public interface JdbcConnectionProvider extends AutoCloseable {
 	Connection getConnection() throws SQLException;
 	void finished(Connection connection) throws SQLException;
 	DataSource dataSource();
+	int maxConnections();
 	void writeStats(MutableData data);
 }
@@ -0,0 +1,92 @@
+package reka.jdbc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static reka.util.Util.runtime;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import reka.data.MutableData;
+import reka.flow.ops.AsyncOperation.OperationResult;
+import reka.util.DaemonThreadFactory;
+
+/**
+ * Runs the blocking jdbc calls for one datasource.
+ * 
+ * There are only as many threads as the pool has connections (any more would just be waiting
+ * for one) and a bounded queue in front of them. When the queue is full the operation fails
+ * straight away instead of piling up more waiting work.
+ */
+public class JdbcExecutor {
+	
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+	
+	private final ThreadPoolExecutor executor;
+	private final int queueSize;
+	
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	
+	public JdbcExecutor(String name, int threads, int queueSize) {
+		checkArgument(threads > 0, "must have at least one thread");
+		checkArgument(queueSize >= 0, "queue size must not be negative");
+		this.queueSize = queueSize;
+		BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, new DaemonThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Runs the task and completes the result with done() if it returns or error() if it throws.
+	 */
+	public void execute(OperationResult res, Runnable task) {
+		long queuedAt = System.nanoTime();
+		try {
+			executor.execute(() -> {
+				waited(System.nanoTime() - queuedAt);
+				try {
+					task.run();
+				} catch (Throwable t) {
+					res.error(t);
+					return;
+				}
+				res.done();
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			res.error(runtime("too busy, %d jdbc operations already waiting", executor.getQueue().size()));
+		}
+	}
+	
+	private void waited(long nanos) {
+		completed.increment();
+		waitNanos.add(nanos);
+		long max;
+		while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos));
+	}
+	
+	public void writeStats(MutableData data) {
+		long count = completed.sum();
+		data.putInt("threads", executor.getMaximumPoolSize())
+			.putInt("busy", executor.getActiveCount())
+			.putInt("queued", executor.getQueue().size())
+			.putInt("queue-size", queueSize)
+			.putLong("rejected", rejected.sum())
+			.putLong("executed", count)
+			.putLong("wait-avg-us", count > 0 ? TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / count) : 0)
+			.putLong("wait-max-us", TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+	}
+	
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+}
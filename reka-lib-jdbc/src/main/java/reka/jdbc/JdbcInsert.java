@@ -1,79 +1,155 @@
 package reka.jdbc;
 
-import static java.lang.String.format;
 import static java.lang.String.join;
+import static java.util.Collections.nCopies;
 import static reka.util.Util.unchecked;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 import reka.data.Data;
 import reka.data.MutableData;
-import reka.data.content.Content;
-import reka.flow.ops.Operation;
+import reka.flow.ops.AsyncOperation;
 import reka.flow.ops.OperationContext;
-import reka.util.StringWithVars;
-import reka.util.StringWithVars.Variable;
 
-public class JdbcInsert implements Operation {
-	
+public class JdbcInsert implements AsyncOperation {
+
 	private final JdbcConnectionProvider jdbc;
+	private final JdbcExecutor executor;
+	private final JdbcResultCaches caches;
 	private final String table;
-	private final List<Data> values;
-	
-	public JdbcInsert(JdbcConnectionProvider jdbc, String table, List<Data> values) {
+	private final List<Row> rows;
+	private final JdbcInsertBatcher batcher;
+
+	public JdbcInsert(JdbcConnectionProvider jdbc, JdbcExecutor executor, JdbcResultCaches caches, String table, List<Data> values) {
+		this(jdbc, executor, caches, table, values, 0, 0);
+	}
+
+	public JdbcInsert(JdbcConnectionProvider jdbc, JdbcExecutor executor, JdbcResultCaches caches, String table, List<Data> values, int batchSize, long batchDelayMillis) {
 		this.jdbc = jdbc;
+		this.executor = executor;
+		this.caches = caches;
 		this.table = table;
-		this.values = new ArrayList<>(values);
+		this.rows = rows(table, values);
+		this.batcher = batchSize > 0 ? new JdbcInsertBatcher(jdbc, executor, batchSize, batchDelayMillis, this::inserted) : null;
 	}
 
 	@Override
-	public void call(MutableData data, OperationContext ctx) {
+	public void call(MutableData data, OperationContext ctx, OperationResult res) {
+		if (batcher != null) {
+			batcher.add(rows, res);
+		} else {
+			executor.execute(res, this::insert);
+		}
+	}
+
+	private void insert() {
 		try (Connection conn = jdbc.getConnection()) {
-			for (Data entry : values) {
-				
-				StringBuilder sb = new StringBuilder();
-				
-				List<String> fields = new ArrayList<>();
-				List<String> valuePlaceholders = new ArrayList<>();
-				
-				entry.forEachContent((path, content) -> {
-					String fieldname = path.dots(); 
-					fields.add(fieldname);
-					valuePlaceholders.add(format("{%s}", fieldname));
-				});
-				
-				// TODO: make this safer... (table name cannot be a prepared query param though)
-				sb.append("insert into ").append(table)
-					.append("(").append(join(",", fields)).append(")")
-					.append("values")
-						.append("(").append(join(", ", valuePlaceholders)).append(")");
-			
-				StringWithVars query = StringWithVars.compile(sb.toString());
-				
-				PreparedStatement statement = conn.prepareStatement(query.withPlaceholder("?"));
-				
-				for (int i = 0; i < query.vars().size(); i++) {
-					Variable v = query.vars().get(i);
-					Optional<Content> o = entry.getContent(v.path());
-					Object value = null;
-					if (o.isPresent()) {
-						value = o.get().value();
-					} else if (v.defaultValue() != null) {
-						value = v.defaultValue();
-					}
-					statement.setObject(i + 1, value);
-				}
-				
-				statement.execute();
-			}
+			addBatches(conn, rows).executeAll();
 		} catch (SQLException e) {
 			throw unchecked(e);
 		}
+		inserted();
+	}
+	
+	private void inserted() {
+		if (caches != null) {
+			caches.invalidate(table);
+		}
+	}
+
+	static class Row {
+
+		private final String sql;
+		private final Object[] values;
+
+		private Row(String sql, Object[] values) {
+			this.sql = sql;
+			this.values = values;
+		}
+
+	}
+
+	/*
+	 * The rows are fixed once configured so the sql is worked out up front, one
+	 * statement per distinct set of columns.
+	 */
+	static List<Row> rows(String table, List<Data> values) {
+		Map<List<String>,String> sqlByColumns = new HashMap<>();
+		List<Row> rows = new ArrayList<>();
+		for (Data entry : values) {
+			List<String> columns = new ArrayList<>();
+			List<Object> rowValues = new ArrayList<>();
+			entry.forEachContent((path, content) -> {
+				columns.add(path.dots());
+				rowValues.add(content.value());
+			});
+			if (columns.isEmpty()) continue;
+			// TODO: make this safer... (table name cannot be a prepared query param though)
+			String sql = sqlByColumns.computeIfAbsent(columns, c ->
+				"insert into " + table + "(" + join(",", c) + ") values (" + join(", ", nCopies(c.size(), "?")) + ")");
+			rows.add(new Row(sql, rowValues.toArray()));
+		}
+		return rows;
+	}
+
+	static Statements addBatches(Connection conn, Collection<Row> rows) throws SQLException {
+		Statements statements = new Statements(conn);
+		for (Row row : rows) {
+			statements.add(row);
+		}
+		return statements;
+	}
+
+	/**
+	 * Prepares each distinct insert once and batches the rows up against it.
+	 */
+	static class Statements implements AutoCloseable {
+
+		private final Connection conn;
+		private final Map<String,PreparedStatement> statements = new LinkedHashMap<>();
+
+		Statements(Connection conn) {
+			this.conn = conn;
+		}
+
+		void add(Row row) throws SQLException {
+			PreparedStatement statement = statements.get(row.sql);
+			if (statement == null) {
+				statement = conn.prepareStatement(row.sql);
+				statements.put(row.sql, statement);
+			}
+			for (int i = 0; i < row.values.length; i++) {
+				statement.setObject(i + 1, row.values[i]);
+			}
+			statement.addBatch();
+		}
+
+		void executeAll() throws SQLException {
+			try {
+				for (PreparedStatement statement : statements.values()) {
+					statement.executeBatch();
+				}
+			} finally {
+				close();
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			for (PreparedStatement statement : statements.values()) {
+				statement.close();
+			}
+			statements.clear();
+		}
+
 	}
 
 }
@@ -0,0 +1,146 @@
+package reka.jdbc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static reka.util.Util.unchecked;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reka.Reka;
+import reka.flow.ops.AsyncOperation.OperationResult;
+import reka.jdbc.JdbcInsert.Row;
+import reka.jdbc.JdbcInsert.Statements;
+
+/**
+ * Collects the rows from concurrent inserts and writes them together.
+ *
+ * A batch is written once it has max size rows in it or max delay has passed since its
+ * first insert arrived, whichever comes first. The whole batch goes in one transaction on one
+ * connection and every insert in it completes (or fails) when that commits.
+ */
+class JdbcInsertBatcher {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final JdbcConnectionProvider jdbc;
+	private final JdbcExecutor executor;
+	private final int maxSize;
+	private final long maxDelayMillis;
+	private final Runnable committed;
+
+	private final Object lock = new Object();
+	private List<Pending> pending = new ArrayList<>();
+	private int pendingRows;
+	private ScheduledFuture<?> scheduled;
+
+	JdbcInsertBatcher(JdbcConnectionProvider jdbc, JdbcExecutor executor, int maxSize, long maxDelayMillis, Runnable committed) {
+		checkArgument(maxSize > 0, "batch size must be positive");
+		checkArgument(maxDelayMillis >= 0, "batch delay must not be negative");
+		this.jdbc = jdbc;
+		this.executor = executor;
+		this.maxSize = maxSize;
+		this.maxDelayMillis = maxDelayMillis;
+		this.committed = committed;
+	}
+
+	void add(List<Row> rows, OperationResult res) {
+		List<Pending> batch = null;
+		synchronized (lock) {
+			pending.add(new Pending(rows, res));
+			pendingRows += rows.size();
+			if (pendingRows >= maxSize || maxDelayMillis == 0) {
+				batch = take();
+			} else if (scheduled == null) {
+				scheduled = Reka.SharedExecutors.scheduled.schedule(this::flushDelayed, maxDelayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (batch != null) {
+			flush(batch);
+		}
+	}
+
+	private void flushDelayed() {
+		List<Pending> batch;
+		synchronized (lock) {
+			scheduled = null;
+			batch = take();
+		}
+		if (!batch.isEmpty()) {
+			flush(batch);
+		}
+	}
+
+	private List<Pending> take() {
+		if (scheduled != null) {
+			scheduled.cancel(false);
+			scheduled = null;
+		}
+		List<Pending> batch = pending;
+		pending = new ArrayList<>();
+		pendingRows = 0;
+		return batch;
+	}
+
+	private void flush(List<Pending> batch) {
+		executor.execute(new OperationResult() {
+
+			@Override
+			public void done() {
+				for (Pending p : batch) {
+					p.res.done();
+				}
+			}
+
+			@Override
+			public void error(Throwable t) {
+				for (Pending p : batch) {
+					p.res.error(t);
+				}
+			}
+
+		}, () -> write(batch));
+	}
+
+	private void write(List<Pending> batch) {
+		try (Connection conn = jdbc.getConnection()) {
+			conn.setAutoCommit(false);
+			try (Statements statements = new Statements(conn)) {
+				int count = 0;
+				for (Pending p : batch) {
+					for (Row row : p.rows) {
+						statements.add(row);
+						count++;
+					}
+				}
+				statements.executeAll();
+				conn.commit();
+				log.debug("inserted {} rows from {} operations", count, batch.size());
+			} catch (Throwable t) {
+				conn.rollback();
+				throw t;
+			}
+		} catch (Throwable t) {
+			throw unchecked(t);
+		}
+		committed.run();
+	}
+
+	private static class Pending {
+
+		private final List<Row> rows;
+		private final OperationResult res;
+
+		Pending(List<Row> rows, OperationResult res) {
+			this.rows = rows;
+			this.res = res;
+		}
+
+	}
+
+}
@@ -1,6 +1,9 @@
 package reka.jdbc;
 
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
 import static reka.core.config.ConfigUtils.configToData;
+import static reka.jdbc.JdbcBaseModule.CACHES;
+import static reka.jdbc.JdbcBaseModule.EXECUTOR;
 import static reka.jdbc.JdbcBaseModule.POOL;
 
 import java.util.ArrayList;
@@ -21,6 +24,9 @@ public class JdbcInsertConfigurer implements OperationConfigurer {
 
 	private final List<Data> values = new ArrayList<>();
 	private String table;
+	
+	private int batchSize = 0;
+	private long batchDelay = 10;
 
 	@Conf.Val
 	public void table(String val) {
@@ -33,10 +39,22 @@ public class JdbcInsertConfigurer implements OperationConfigurer {
 		values.add(configToData(config.body()));
 	}
 	
+	@Conf.At("batch-size")
+	public void batchSize(Config config) {
+		batchSize = config.valueAsInt();
+		checkConfig(batchSize > 0, "batch-size must be positive");
+	}
+	
+	@Conf.At("batch-delay")
+	public void batchDelay(Config config) {
+		batchDelay = config.valueAsLong();
+		checkConfig(batchDelay >= 0, "batch-delay must not be negative");
+	}
+	
 	@Override
 	public void setup(OperationSetup ops) {
 		log.debug("building jdbc insert with values [{}]", values);
-		ops.add("insert", () -> new JdbcInsert(ops.ctx().get(POOL), table, values));
+		ops.add("insert", () -> new JdbcInsert(ops.ctx().get(POOL), ops.ctx().get(EXECUTOR), ops.ctx().get(CACHES), table, values, batchSize, batchDelay));
 	}
 
 }
@@ -24,7 +24,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,16 +36,18 @@ import reka.data.Data;
 import reka.data.MapMutation;
 import reka.data.MutableData;
 import reka.data.content.Content;
+import reka.data.content.types.JsonItemsSource;
+import reka.data.content.types.StreamContent;
 import reka.data.memory.MutableMemoryData;
-import reka.flow.ops.Operation;
+import reka.flow.ops.AsyncOperation;
 import reka.flow.ops.OperationContext;
 import reka.util.Path;
+import reka.util.Path.Response;
 import reka.util.StringWithVars;
 import reka.util.StringWithVars.Variable;
 
-public class JdbcQuery implements Operation {
+public class JdbcQuery implements AsyncOperation {
 
-	@SuppressWarnings("unused")
 	private static final Logger logger = LoggerFactory.getLogger("jdbc-query");
 
 	private final JdbcConfiguration config;
@@ -51,21 +56,58 @@ public class JdbcQuery implements Operation {
 	private final boolean firstOnly;
 	private final String queryWithPlaceholders;
 	private final JdbcConnectionProvider provider;
+	private final JdbcExecutor executor;
 	private final Path resultField;
+	private final JdbcStreamFormat streamFormat;
+	private final JdbcResultCaches caches;
+	private final JdbcResultCache cache;
+	private final boolean writes;
+	private final Set<String> written; // empty if we couldn't tell
 	
 	private volatile Meta meta;
 	
-	public JdbcQuery(JdbcConfiguration config, JdbcConnectionProvider provider, StringWithVars query, boolean firstOnly, Path resultPath) {
+	public JdbcQuery(JdbcConfiguration config, JdbcConnectionProvider provider, JdbcExecutor executor, StringWithVars query, boolean firstOnly, Path resultPath) {
+		this(config, provider, executor, query, firstOnly, resultPath, null, null, null);
+	}
+	
+	public JdbcQuery(JdbcConfiguration config, JdbcConnectionProvider provider, JdbcExecutor executor, StringWithVars query, boolean firstOnly, Path resultPath, JdbcStreamFormat streamFormat, JdbcResultCaches caches, JdbcResultCache cache) {
 		this.config = config;
 		this.query = query;
 		this.firstOnly = firstOnly;
 		this.queryWithPlaceholders = query.withPlaceholder("?");
 		this.provider = provider;
+		this.executor = executor;
 		this.resultField = resultPath;
+		this.streamFormat = streamFormat;
+		this.caches = caches;
+		this.cache = cache;
+		this.writes = !JdbcTables.readOnly(queryWithPlaceholders);
+		this.written = JdbcTables.writes(queryWithPlaceholders);
 	}
 	
 	@Override
-	public void call(MutableData data, OperationContext ctx) {
+	public void call(MutableData data, OperationContext ctx, OperationResult res) {
+		if (streamFormat != null) {
+			executor.execute(res, () -> stream(data, ctx));
+			return;
+		}
+		
+		List<Object> values = values(data);
+		
+		// a hit doesn't need to wait for a jdbc thread
+		if (cache != null) {
+			JdbcResultCache.Result cached = cache.get(values);
+			if (cached != null) {
+				cached.writeTo(data);
+				res.done();
+				return;
+			}
+		}
+		
+		executor.execute(res, () -> run(data, values));
+	}
+	
+	private void run(MutableData data, List<Object> values) {
 		
 		try {
 			
@@ -75,6 +117,8 @@ public class JdbcQuery implements Operation {
 			
 				connection.setAutoCommit(false);
 	
+				long generation = cache != null ? cache.generation() : 0;
+				JdbcResultCache.Result result = null;
 				boolean updates = false;
 				int updateCount = 0;
 				
@@ -84,24 +128,16 @@ public class JdbcQuery implements Operation {
 						queryWithPlaceholders,
 						config.returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
 				
-				for (int i = 0; i < query.vars().size(); i++) {
-					Variable v = query.vars().get(i);
-					Data val = data.at(v.path());
-					Object value = null;
-					if (val.isPresent()) {
-						if (val.isContent()) {
-							value = val.content().value();
-						} else {
-							value = val.toJson();
-						}
-					} else if (v.hasDefaultValue()) {
-						value = v.defaultValue();
-					}
-					statement.setObject(i + 1, value);
-				}
+				bind(statement, values);
 				
 				if (statement.execute()) { // true -> select, false -> insert/update
-					handleResultSet(statement.getResultSet(), data);
+					if (cache != null) {
+						MutableData out = MutableMemoryData.create();
+						Path into = handleResultSet(statement.getResultSet(), out);
+						result = new JdbcResultCache.Result(into, into != null ? out.at(into) : null);
+					} else {
+						handleResultSet(statement.getResultSet(), data);
+					}
 				} else {
 					updateCount += statement.getUpdateCount();
 					updates = true;
@@ -110,6 +146,16 @@ public class JdbcQuery implements Operation {
 				
 				connection.commit();
 				
+				if (result != null) {
+					cache.put(values, generation, result);
+					result.writeTo(data);
+				}
+				
+				// not just when there's an update count, "insert ... returning" comes back as a result set
+				if (writes && caches != null) {
+					caches.invalidate(written);
+				}
+				
 				if (updates) {
 					data.put(resultField.add("update-count"), integer(updateCount));
 				}
@@ -133,6 +179,118 @@ public class JdbcQuery implements Operation {
 		}
 	}
 	
+	private List<Object> values(Data data) {
+		List<Object> values = new ArrayList<>(query.vars().size());
+		for (int i = 0; i < query.vars().size(); i++) {
+			Variable v = query.vars().get(i);
+			Data val = data.at(v.path());
+			Object value = null;
+			if (val.isPresent()) {
+				if (val.isContent()) {
+					value = val.content().value();
+				} else {
+					value = val.toJson();
+				}
+			} else if (v.hasDefaultValue()) {
+				value = v.defaultValue();
+			}
+			values.add(value);
+		}
+		return values;
+	}
+	
+	private void bind(PreparedStatement statement, List<Object> values) throws SQLException {
+		for (int i = 0; i < values.size(); i++) {
+			statement.setObject(i + 1, values.get(i));
+		}
+	}
+	
+	/*
+	 * Runs the query but leaves the rows in the result set, they get read as the stream
+	 * is written out and the connection is only given back once it's been closed, at the
+	 * latest when the flow is done with it.
+	 */
+	private void stream(MutableData data, OperationContext ctx) {
+		try {
+			Connection connection = provider.getConnection();
+			try {
+				connection.setAutoCommit(false);
+				PreparedStatement statement = connection.prepareStatement(queryWithPlaceholders, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				statement.setFetchSize(STREAM_FETCH_SIZE);
+				bind(statement, values(data));
+				ResultSet result = statement.executeQuery();
+				Path into = resultField.isEmpty() ? Response.CONTENT : resultField;
+				StreamContent content = new StreamContent(streamFormat.contentType(), new ResultSetSource(connection, statement, result, meta(result)));
+				ctx.closeWhenDone(content::discard);
+				data.put(into, content);
+			} catch (Throwable t) {
+				connection.rollback();
+				provider.finished(connection);
+				throw t;
+			}
+		} catch (Throwable t) {
+			throw unchecked(t);
+		}
+	}
+	
+	private static final int STREAM_FETCH_SIZE = 500;
+	private static final int STREAM_ROWS_PER_CHUNK = 100;
+	private static final Path ROW = path("row");
+	
+	private class ResultSetSource extends JsonItemsSource {
+		
+		private final Connection connection;
+		private final PreparedStatement statement;
+		private final ResultSet result;
+		private final Meta meta;
+		private final AtomicBoolean closed = new AtomicBoolean();
+		
+		ResultSetSource(Connection connection, PreparedStatement statement, ResultSet result, Meta meta) {
+			super(streamFormat == JdbcStreamFormat.JSON, STREAM_ROWS_PER_CHUNK);
+			this.connection = connection;
+			this.statement = statement;
+			this.result = result;
+			this.meta = meta;
+		}
+
+		@Override
+		protected boolean writeItem(JsonGenerator json) throws IOException {
+			try {
+				if (!result.next()) return false;
+				MutableData row = MutableMemoryData.create();
+				row.putMap(ROW, map -> {
+					for (int column = 1; column < meta.count + 1; column++) {
+						putResult(map, meta.keys[column], meta, result, column);
+					}
+				});
+				row.at(ROW).writeJsonTo(json);
+				return true;
+			} catch (SQLException e) {
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			if (!closed.compareAndSet(false, true)) return;
+			try {
+				try {
+					result.close();
+					statement.close();
+					connection.commit();
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				} finally {
+					provider.finished(connection);
+				}
+			} catch (SQLException e) {
+				logger.error("failed to close streamed result", e);
+			}
+		}
+		
+	}
+	
 	private void handleKeys(ResultSet result, Collection<Content> keys) throws SQLException {
 		Meta meta = meta(result);
 		while (result.next()) {
@@ -179,7 +337,10 @@ public class JdbcQuery implements Operation {
 		
 	}
 	
-	private void handleResultSet(ResultSet result, MutableData data) throws SQLException {
+	/*
+	 * Returns where the results were put, or null if there weren't any.
+	 */
+	private Path handleResultSet(ResultSet result, MutableData data) throws SQLException {
 
 		Meta meta = meta(result);
 		
@@ -194,8 +355,11 @@ public class JdbcQuery implements Operation {
 						putResult(map, meta.keys[column], meta, result, column);
 					}
 				});
+				return into;
 			}
 			
+			return null;
+			
 		} else {
 			
 			Path tableName = meta.tablename;
@@ -211,6 +375,8 @@ public class JdbcQuery implements Operation {
 					});
 				}
 			});
+			
+			return into;
 		
 		}
 		
@@ -1,9 +1,16 @@
 package reka.jdbc;
 
 import static java.util.Objects.requireNonNull;
+import static reka.config.configurer.Configurer.configure;
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
+import static reka.jdbc.JdbcBaseModule.CACHES;
+import static reka.jdbc.JdbcBaseModule.EXECUTOR;
 import static reka.jdbc.JdbcBaseModule.POOL;
 import static reka.util.Path.dots;
 import static reka.util.Path.root;
+
+import java.util.Locale;
+
 import reka.config.Config;
 import reka.config.configurer.annotations.Conf;
 import reka.module.setup.OperationConfigurer;
@@ -17,6 +24,9 @@ public class JdbcQueryConfigurer implements OperationConfigurer {
 	private Path into = root();
 	
 	private boolean firstOnly = false;
+	private JdbcStreamFormat stream;
+	private JdbcCacheConfigurer cache;
+	private JdbcResultCache resultCache; // one for the query, however many times the operation is built
     
     private StringWithVars queryFn;
 	
@@ -52,10 +62,38 @@ public class JdbcQueryConfigurer implements OperationConfigurer {
         into = dots(val);
     }
 	
+    @Conf.At("stream")
+    public void stream(String val) {
+        try {
+            stream = JdbcStreamFormat.valueOf(val.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            checkConfig(false, "unknown stream format %s, use json or ndjson", val);
+        }
+        checkConfig(!firstOnly, "can't stream when only taking the first row");
+    }
+    
+    @Conf.At("cache")
+    public void cache(Config config) {
+        cache = configure(new JdbcCacheConfigurer(), config);
+    }
+    
 	@Override
 	public void setup(OperationSetup ops) {
 	    requireNonNull(queryFn, "you didn't pick a query!");
-		ops.add("run", () -> new JdbcQuery(config, ops.ctx().get(POOL), queryFn, firstOnly, into));
+	    checkConfig(stream == null || cache == null, "can't cache a streamed query");
+	    checkConfig(cache == null || JdbcTables.readOnly(queryFn.withPlaceholder("?")), "can only cache queries that just read");
+		ops.add("run", () -> {
+			JdbcResultCaches caches = ops.ctx().get(CACHES);
+			return new JdbcQuery(config, ops.ctx().get(POOL), ops.ctx().get(EXECUTOR), queryFn, firstOnly, into, stream, 
+					caches, cache != null ? resultCache(caches) : null);
+		});
+	}
+	
+	private synchronized JdbcResultCache resultCache(JdbcResultCaches caches) {
+		if (resultCache == null) {
+			resultCache = cache.build(caches, queryFn.withPlaceholder("?"));
+		}
+		return resultCache;
 	}
 
 }
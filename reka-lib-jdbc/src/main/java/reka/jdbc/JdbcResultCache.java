@@ -0,0 +1,104 @@
+package reka.jdbc;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import reka.data.Data;
+import reka.data.MutableData;
+import reka.util.Path;
+
+/**
+ * The cached results for one query, keyed by the values that were bound into it.
+ *
+ * Any write to one of the tables the query reads from throws the whole lot away. The
+ * generation guards against a result that was read before a write being put in after it.
+ */
+public class JdbcResultCache {
+
+	private final Set<String> tables;
+	private final Cache<List<Object>,Result> cache;
+	private final AtomicLong generation = new AtomicLong();
+	private final LongAdder invalidations = new LongAdder();
+
+	JdbcResultCache(Set<String> tables, long maxSize, long ttlMillis) {
+		this.tables = tables;
+		this.cache = CacheBuilder.newBuilder()
+			.maximumSize(maxSize)
+			.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+			.recordStats()
+			.build();
+	}
+
+	public Result get(List<Object> key) {
+		return cache.getIfPresent(key);
+	}
+
+	public long generation() {
+		return generation.get();
+	}
+
+	public void put(List<Object> key, long readAt, Result result) {
+		if (generation.get() != readAt) return;
+		cache.put(key, result);
+		if (generation.get() != readAt) {
+			cache.invalidate(key);
+		}
+	}
+
+	boolean reads(Collection<String> written) {
+		// if we don't know what it reads we have to assume it might be anything
+		if (tables.isEmpty() || written.isEmpty()) return true;
+		for (String table : written) {
+			if (tables.contains(table)) return true;
+		}
+		return false;
+	}
+
+	void invalidate() {
+		generation.incrementAndGet();
+		cache.invalidateAll();
+		invalidations.increment();
+	}
+
+	long size() {
+		return cache.size();
+	}
+
+	CacheStats stats() {
+		return cache.stats();
+	}
+
+	long invalidations() {
+		return invalidations.sum();
+	}
+
+	public static class Result {
+
+		private final Path into;
+		private final Data value;
+
+		public Result(Path into, Data value) {
+			this.into = into;
+			this.value = value;
+		}
+
+		public void writeTo(MutableData data) {
+			if (into == null) return;
+			if (into.isEmpty()) {
+				data.merge(value);
+			} else {
+				data.put(into, value.copy());
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+package reka.jdbc;
+
+import static java.util.Collections.emptySet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.cache.CacheStats;
+
+import reka.data.MutableData;
+
+/**
+ * All the query result caches for one datasource, so a write from any query or insert can
+ * invalidate the ones reading from the tables it touched.
+ */
+public class JdbcResultCaches {
+
+	private final List<JdbcResultCache> caches = new CopyOnWriteArrayList<>();
+
+	public JdbcResultCache create(Set<String> tables, long maxSize, long ttlMillis) {
+		JdbcResultCache cache = new JdbcResultCache(tables, maxSize, ttlMillis);
+		caches.add(cache);
+		return cache;
+	}
+
+	public void invalidate(String table) {
+		invalidate(JdbcTables.normalize(table));
+	}
+
+	/**
+	 * Empty tables means we don't know what was written to, so everything goes.
+	 */
+	public void invalidate(Collection<String> tables) {
+		for (JdbcResultCache cache : caches) {
+			if (cache.reads(tables)) {
+				cache.invalidate();
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		invalidate(emptySet());
+	}
+
+	public boolean isEmpty() {
+		return caches.isEmpty();
+	}
+
+	public void writeStats(MutableData data) {
+		long hits = 0, misses = 0, evictions = 0, invalidations = 0, size = 0;
+		for (JdbcResultCache cache : caches) {
+			CacheStats stats = cache.stats();
+			hits += stats.hitCount();
+			misses += stats.missCount();
+			evictions += stats.evictionCount();
+			invalidations += cache.invalidations();
+			size += cache.size();
+		}
+		data.putInt("queries", caches.size())
+			.putLong("size", size)
+			.putLong("hits", hits)
+			.putLong("misses", misses)
+			.putLong("evictions", evictions)
+			.putLong("invalidations", invalidations);
+	}
+
+}
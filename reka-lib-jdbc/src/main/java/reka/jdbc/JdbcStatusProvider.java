@@ -1,5 +1,7 @@
 package reka.jdbc;
 
+import static reka.util.Path.path;
+
 import java.sql.Connection;
 
 import reka.data.MutableData;
@@ -11,10 +13,14 @@ public class JdbcStatusProvider implements StatusDataProvider {
 	
 	private final String url;
 	private final JdbcConnectionProvider pool;
+	private final JdbcExecutor executor;
+	private final JdbcResultCaches caches;
 	
-	public JdbcStatusProvider(String url, JdbcConnectionProvider pool) {
+	public JdbcStatusProvider(String url, JdbcConnectionProvider pool, JdbcExecutor executor, JdbcResultCaches caches) {
 		this.url = url;
 		this.pool = pool;
+		this.executor = executor;
+		this.caches = caches;
 	}
 	
 	@Override
@@ -30,6 +36,10 @@ public class JdbcStatusProvider implements StatusDataProvider {
 	@Override
 	public void statusData(MutableData data) {
 		pool.writeStats(data);
+		executor.writeStats(data.createMapAt(path("executor")));
+		if (!caches.isEmpty()) {
+			caches.writeStats(data.createMapAt(path("cache")));
+		}
 		data.putString("url", url);
 	}
 
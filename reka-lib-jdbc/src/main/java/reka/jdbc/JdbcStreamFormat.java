@@ -0,0 +1,18 @@
+package reka.jdbc;
+
+public enum JdbcStreamFormat {
+	
+	JSON("application/json"),     // one json array
+	NDJSON("application/x-ndjson"); // one json object per line
+	
+	private final String contentType;
+	
+	private JdbcStreamFormat(String contentType) {
+		this.contentType = contentType;
+	}
+	
+	public String contentType() {
+		return contentType;
+	}
+	
+}
@@ -0,0 +1,104 @@
+package reka.jdbc;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A rough idea of which tables a bit of sql reads from or writes to, good enough to know
+ * which cached results to throw away.
+ *
+ * Names are compared without quotes, schema or case so it will sometimes match too much, but
+ * that only costs an extra cache miss. When a from clause can't be followed the reads come back
+ * empty, which the caches take to mean anything.
+ */
+final class JdbcTables {
+
+	private static final String NAME = "([\\w.\"`\\[\\]]+)";
+
+	private static final Pattern FROM = Pattern.compile(
+			"\\b(?:from|join)\\b\\s*", Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern TABLE = Pattern.compile(NAME);
+
+	// the next table in "from a, b x, c as y"
+	private static final Pattern NEXT_TABLE = Pattern.compile(
+			"(?:\\s+(?:as\\s+)?(?!(?:where|join|inner|left|right|full|cross|natural|outer|on|using|group|order|having|limit|offset|fetch|union|except|intersect|window|for)\\b)\\w+)?\\s*,\\s*" + NAME,
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern READ_ONLY = Pattern.compile(
+			"^\\s*\\(*\\s*(?:select|with|values|show|explain|describe)\\b", Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern WRITES = Pattern.compile(
+			"\\b(?:insert\\s+into|update|delete\\s+from|merge\\s+into|truncate(?:\\s+table)?|(?:drop|alter)\\s+table(?:\\s+if\\s+exists)?)\\s+" + NAME,
+			Pattern.CASE_INSENSITIVE);
+
+	private JdbcTables() {}
+
+	static Set<String> reads(String sql) {
+		Set<String> tables = new LinkedHashSet<>();
+		Matcher from = FROM.matcher(sql);
+		Matcher table = TABLE.matcher(sql);
+		Matcher next = NEXT_TABLE.matcher(sql);
+		while (from.find()) {
+			int at = from.end();
+			table.region(at, sql.length());
+			if (!table.lookingAt()) return emptySet();
+			add(tables, table.group(1));
+			at = table.end();
+			next.region(at, sql.length());
+			while (next.lookingAt()) {
+				add(tables, next.group(1));
+				next.region(next.end(), sql.length());
+			}
+		}
+		return tables;
+	}
+
+	static Set<String> writes(String sql) {
+		return find(WRITES, sql);
+	}
+
+	/**
+	 * If the sql only reads, anything else has to be treated as a write even when we can't tell
+	 * what it wrote to (e.g. a procedure call).
+	 */
+	static boolean readOnly(String sql) {
+		return READ_ONLY.matcher(sql).find() && writes(sql).isEmpty();
+	}
+
+	static Set<String> normalize(String table) {
+		return singleton(name(table));
+	}
+
+	private static Set<String> find(Pattern pattern, String sql) {
+		Set<String> tables = new LinkedHashSet<>();
+		Matcher m = pattern.matcher(sql);
+		while (m.find()) {
+			add(tables, m.group(1));
+		}
+		return tables;
+	}
+
+	private static void add(Set<String> tables, String table) {
+		String name = name(table);
+		if (!name.isEmpty()) {
+			tables.add(name);
+		}
+	}
+
+	private static String name(String table) {
+		String name = table.replaceAll("[\"`\\[\\]]", "");
+		int dot = name.lastIndexOf('.');
+		if (dot >= 0) {
+			name = name.substring(dot + 1);
+		}
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+}
@@ -0,0 +1,96 @@
+package reka.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.flow.ops.AsyncOperation.OperationResult;
+
+public class JdbcExecutorTest {
+	
+	private final JdbcExecutor executor = new JdbcExecutor("jdbc-test", 1, 1);
+	
+	@After
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	static CompletableFuture<Void> execute(JdbcExecutor executor, Runnable task) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		executor.execute(result(future), task);
+		return future;
+	}
+	
+	static OperationResult result(CompletableFuture<Void> future) {
+		return new OperationResult() {
+			
+			@Override
+			public void done() {
+				future.complete(null);
+			}
+			
+			@Override
+			public void error(Throwable t) {
+				future.completeExceptionally(t);
+			}
+			
+		};
+	}
+	
+	@Test
+	public void rejectsStraightAwayWhenTheQueueIsFull() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		
+		CompletableFuture<Void> running = execute(executor, () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		
+		CompletableFuture<Void> queued = execute(executor, () -> {});
+		CompletableFuture<Void> rejected = execute(executor, () -> {});
+		
+		// failed on the calling thread, without waiting for the busy one
+		assertTrue(rejected.isCompletedExceptionally());
+		try {
+			rejected.get();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getMessage().startsWith("too busy"));
+		}
+		
+		release.countDown();
+		running.get(5, TimeUnit.SECONDS);
+		queued.get(5, TimeUnit.SECONDS);
+		
+		MutableData stats = MutableMemoryData.create();
+		executor.writeStats(stats);
+		assertEquals(1L, stats.getContent("rejected").get().asLong());
+		assertEquals(2L, stats.getContent("executed").get().asLong());
+	}
+	
+	@Test
+	public void errorsWhenTheTaskThrows() throws Exception {
+		CompletableFuture<Void> future = execute(executor, () -> { throw new IllegalStateException("broken"); });
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertEquals("broken", e.getCause().getMessage());
+		}
+		assertTrue(future.isCompletedExceptionally());
+	}
+
+}
@@ -0,0 +1,127 @@
+package reka.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static reka.jdbc.JdbcExecutorTest.result;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import reka.data.Data;
+import reka.data.memory.MutableMemoryData;
+import reka.jdbc.JdbcInsert.Row;
+
+public class JdbcInsertBatcherTest {
+	
+	private static final AtomicInteger databases = new AtomicInteger();
+	
+	private JdbcConnectionProvider jdbc;
+	private JdbcExecutor executor;
+	private final AtomicInteger commits = new AtomicInteger();
+	
+	@Before
+	public void setup() throws SQLException {
+		jdbc = new DBCP2ConnectionProvider("jdbc:h2:mem:batch" + databases.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "", false);
+		executor = new JdbcExecutor("jdbc-test", 2, 16);
+		update("create table things (id int primary key, name varchar(20))");
+	}
+	
+	@After
+	public void shutdown() throws Exception {
+		update("drop table things");
+		executor.shutdown();
+		jdbc.close();
+	}
+	
+	private void update(String sql) throws SQLException {
+		try (Connection conn = jdbc.getConnection(); Statement statement = conn.createStatement()) {
+			statement.executeUpdate(sql);
+		}
+	}
+	
+	private int count() throws SQLException {
+		try (Connection conn = jdbc.getConnection(); Statement statement = conn.createStatement(); ResultSet result = statement.executeQuery("select count(*) from things")) {
+			result.next();
+			return result.getInt(1);
+		}
+	}
+	
+	private static List<Row> row(int id) {
+		Data values = MutableMemoryData.create().putInt("id", id).putString("name", "thing" + id);
+		return JdbcInsert.rows("things", asList(values));
+	}
+	
+	private CompletableFuture<Void> add(JdbcInsertBatcher batcher, int id) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		batcher.add(row(id), result(future));
+		return future;
+	}
+	
+	@Test
+	public void flushesWhenTheBatchIsFull() throws Exception {
+		JdbcInsertBatcher batcher = new JdbcInsertBatcher(jdbc, executor, 3, 60000, commits::incrementAndGet);
+		CompletableFuture<Void> first = add(batcher, 1);
+		CompletableFuture<Void> second = add(batcher, 2);
+		Thread.sleep(100);
+		assertFalse(first.isDone());
+		assertEquals(0, count());
+		CompletableFuture<Void> third = add(batcher, 3);
+		
+		// long before the delay is up
+		CompletableFuture.allOf(first, second, third).get(5, TimeUnit.SECONDS);
+		assertEquals(3, count());
+		assertEquals(1, commits.get());
+	}
+	
+	@Test
+	public void flushesOnceTheDelayHasPassed() throws Exception {
+		JdbcInsertBatcher batcher = new JdbcInsertBatcher(jdbc, executor, 100, 200, commits::incrementAndGet);
+		long started = System.nanoTime();
+		CompletableFuture<Void> first = add(batcher, 1);
+		CompletableFuture<Void> second = add(batcher, 2);
+		CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 200);
+		assertEquals(2, count());
+		assertEquals(1, commits.get());
+		
+		// and the next rows start a new batch
+		add(batcher, 3).get(5, TimeUnit.SECONDS);
+		assertEquals(3, count());
+		assertEquals(2, commits.get());
+	}
+	
+	@Test
+	public void failsEveryInsertInABatchThatRollsBack() throws Exception {
+		JdbcInsertBatcher batcher = new JdbcInsertBatcher(jdbc, executor, 3, 60000, commits::incrementAndGet);
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		futures.add(add(batcher, 1));
+		futures.add(add(batcher, 2));
+		futures.add(add(batcher, 1)); // duplicate key
+		for (CompletableFuture<Void> future : futures) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("should have failed");
+			} catch (ExecutionException e) {
+				// expected
+			}
+		}
+		assertEquals(0, count());
+		assertEquals(0, commits.get());
+	}
+
+}
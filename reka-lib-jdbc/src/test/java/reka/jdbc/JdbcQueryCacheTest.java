@@ -0,0 +1,148 @@
+package reka.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static reka.jdbc.JdbcExecutorTest.execute;
+import static reka.jdbc.JdbcExecutorTest.result;
+import static reka.util.Path.dots;
+import static reka.util.Path.path;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.util.StringWithVars;
+
+public class JdbcQueryCacheTest {
+	
+	private static final AtomicInteger databases = new AtomicInteger();
+	
+	private final JdbcConfiguration config = new JdbcConfiguration(false);
+	private final JdbcResultCaches caches = new JdbcResultCaches();
+	
+	private JdbcConnectionProvider jdbc;
+	private JdbcExecutor executor;
+	
+	@Before
+	public void setup() throws SQLException {
+		jdbc = new DBCP2ConnectionProvider("jdbc:h2:mem:cache" + databases.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "", false);
+		executor = new JdbcExecutor("jdbc-test", 1, 1);
+		update("create table things (id int primary key, name varchar(20), owner int)");
+		update("create table owners (id int primary key, name varchar(20))");
+		update("insert into owners values (1, 'alice')");
+		update("insert into things values (1, 'cup', 1)");
+	}
+	
+	@After
+	public void shutdown() throws Exception {
+		update("drop all objects");
+		executor.shutdown();
+		jdbc.close();
+	}
+	
+	private void update(String sql) throws SQLException {
+		try (Connection conn = jdbc.getConnection(); Statement statement = conn.createStatement()) {
+			statement.executeUpdate(sql);
+		}
+	}
+	
+	private JdbcQuery query(String sql, JdbcResultCache cache) {
+		return new JdbcQuery(config, jdbc, executor, StringWithVars.compile(sql), true, path("result"), null, caches, cache);
+	}
+	
+	private static MutableData run(JdbcQuery query, MutableData data) throws Exception {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		query.call(data, null, result(future));
+		future.get(5, TimeUnit.SECONDS);
+		return data;
+	}
+	
+	private static String owner(JdbcQuery query) throws Exception {
+		return run(query, MutableMemoryData.create().putInt("id", 1)).getString(dots("result.owner")).orElse(null);
+	}
+	
+	private static final String OWNER = "select o.name as owner from things t, owners o where o.id = t.owner and t.id = :id";
+	
+	@Test
+	public void hitsDoNotWaitForAJdbcThread() throws Exception {
+		JdbcResultCache cache = caches.create(JdbcTables.reads(OWNER), 100, 60000);
+		JdbcQuery query = query(OWNER, cache);
+		assertEquals("alice", owner(query));
+		
+		// the only jdbc thread is busy and the queue is full
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Void> busy = execute(executor, () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		CompletableFuture<Void> queued = execute(executor, () -> {});
+		try {
+			assertEquals("alice", owner(query));
+			assertEquals(1, cache.stats().hitCount());
+		} finally {
+			release.countDown();
+			busy.get(5, TimeUnit.SECONDS);
+			queued.get(5, TimeUnit.SECONDS);
+		}
+	}
+	
+	@Test
+	public void writesToCommaJoinedTablesInvalidate() throws Exception {
+		JdbcResultCache cache = caches.create(JdbcTables.reads(OWNER), 100, 60000);
+		JdbcQuery query = query(OWNER, cache);
+		assertEquals("alice", owner(query));
+		
+		run(query("update owners set name = 'bob' where id = :id", null), MutableMemoryData.create().putInt("id", 1));
+		assertEquals("bob", owner(query));
+		
+		JdbcInsert insert = new JdbcInsert(jdbc, executor, caches, "owners", asList(MutableMemoryData.create().putInt("id", 2).putString("name", "carol")));
+		CompletableFuture<Void> inserted = new CompletableFuture<>();
+		insert.call(MutableMemoryData.create(), null, result(inserted));
+		inserted.get(5, TimeUnit.SECONDS);
+		
+		assertEquals(2, cache.invalidations());
+		assertEquals(0, cache.stats().hitCount());
+	}
+	
+	@Test
+	public void writesToOtherTablesDoNotInvalidate() throws Exception {
+		update("create table others (id int)");
+		JdbcResultCache cache = caches.create(JdbcTables.reads(OWNER), 100, 60000);
+		JdbcQuery query = query(OWNER, cache);
+		owner(query);
+		run(query("insert into others values (:id)", null), MutableMemoryData.create().putInt("id", 1));
+		owner(query);
+		assertEquals(0, cache.invalidations());
+		assertEquals(1, cache.stats().hitCount());
+	}
+	
+	@Test
+	public void resultsExpire() throws Exception {
+		JdbcResultCache cache = caches.create(JdbcTables.reads(OWNER), 100, 100);
+		JdbcQuery query = query(OWNER, cache);
+		assertEquals("alice", owner(query));
+		update("update owners set name = 'dave' where id = 1"); // behind the cache's back
+		assertEquals("alice", owner(query));
+		Thread.sleep(200);
+		assertEquals("dave", owner(query));
+		assertTrue(cache.stats().missCount() >= 2);
+	}
+
+}
@@ -0,0 +1,47 @@
+package reka.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class JdbcTablesTest {
+	
+	private static Set<String> tables(String... names) {
+		return new LinkedHashSet<>(asList(names));
+	}
+	
+	@Test
+	public void readsJoinedTables() {
+		assertEquals(tables("things", "owners"), JdbcTables.reads("select * from things t join owners o on o.id = t.owner"));
+		assertEquals(tables("things"), JdbcTables.reads("select * from \"PUBLIC\".\"THINGS\" where id = ?"));
+	}
+	
+	@Test
+	public void readsCommaJoinedTables() {
+		assertEquals(tables("things", "owners", "places"), JdbcTables.reads("select * from things, owners o, places as p where o.id = things.owner"));
+		assertEquals(tables("things", "owners"), JdbcTables.reads("select * from things t, owners where t.id in (1, 2) order by t.a, t.b"));
+	}
+	
+	@Test
+	public void readsNothingWhenItCantFollowTheFrom() {
+		assertTrue(JdbcTables.reads("select substring(name from ?) from things").isEmpty());
+		assertTrue(JdbcTables.reads("select * from (select * from things) x, owners").isEmpty());
+	}
+	
+	@Test
+	public void knowsWhatOnlyReads() {
+		assertTrue(JdbcTables.readOnly("select * from things"));
+		assertTrue(JdbcTables.readOnly("with t as (select 1) select * from t"));
+		assertFalse(JdbcTables.readOnly("insert into things (name) values (?) returning id"));
+		assertFalse(JdbcTables.readOnly("with t as (delete from things returning *) select * from t"));
+		assertFalse(JdbcTables.readOnly("call refresh_things()"));
+		assertEquals(tables("things"), JdbcTables.writes("update things set name = ?"));
+	}
+
+}
@@ -373,11 +373,11 @@ public class SmtpServerConfigurer extends ModuleConfigurer {
 					ctx.put(SERVER, server);
 					servers.put(port, server);
 					
-					app.registerNetwork(port, "smtp");
-					
 				});
 			});
 			
+			app.registerNetwork(port, "smtp");
+			
 			app.buildFlow("on email", emailHandler, flow -> {
 				RekaSmtpServer server = ctx.require(SERVER);
 				server.add(flow);
@@ -386,7 +386,7 @@ public class SmtpServerConfigurer extends ModuleConfigurer {
 				});
 			});
 			
-			app.onUndeploy("stop smtp server", () -> ctx.get(SERVER).stopIfEmpty());
+			app.onUndeploy("stop smtp server", (idv, store) -> store.get(SERVER).stopIfEmpty());
 			
 		}
 	}
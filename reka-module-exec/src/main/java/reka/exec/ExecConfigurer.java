@@ -208,9 +208,10 @@ public class ExecConfigurer extends ModuleConfigurer {
 				
 			});
 			
-			app.onUndeploy("disconnect ssh", () -> {
-				ctx.lookup(CLIENT).ifPresent(client -> {
-					if (client.version() == app.version()) {
+			app.onUndeploy("disconnect ssh", (idv, store) -> {
+				store.lookup(CLIENT).ifPresent(client -> {
+					// a later version might have taken it over
+					if (client.version() <= idv.version()) {
 						try {
 							client.disconnect();
 						} catch (Exception e) {
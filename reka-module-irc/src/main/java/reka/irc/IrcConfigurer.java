@@ -8,6 +8,7 @@ import reka.config.configurer.annotations.Conf;
 import reka.flow.Flow;
 import reka.flow.builder.TriggerHelper;
 import reka.identity.IdentityKey;
+import reka.irc.RekaBot.IrcListener;
 import reka.module.setup.AppSetup;
 import reka.module.setup.ModuleConfigurer;
 
@@ -71,17 +72,21 @@ public class IrcConfigurer extends ModuleConfigurer {
 			});
 		});
 
-		app.onUndeploy("disconnect", () -> {
-			app.ctx().remove(BOT).ifPresent(RekaBot::shutdown);
+		app.onUndeploy("disconnect", (idv, store) -> {
+			store.remove(BOT).ifPresent(RekaBot::shutdown);
 		});
 
 		app.buildFlows(triggers.build(), reg -> {
 			RekaBot bot = app.ctx().get(BOT);
 			reg.lookup(MESSAGE).ifPresent(flow -> {
-				bot.addListener(new IrcMessageFlowListener(flow));
+				IrcListener listener = new IrcMessageFlowListener(flow);
+				bot.addListener(listener);
+				app.onUndeploy("remove listener", () -> bot.removeListener(listener));
 			});	
 			reg.lookup(PRIVATE_MESSAGE).ifPresent(flow -> {
-				bot.addListener(new IrcPrivateMessageFlowListener(flow));
+				IrcListener listener = new IrcPrivateMessageFlowListener(flow);
+				bot.addListener(listener);
+				app.onUndeploy("remove listener", () -> bot.removeListener(listener));
 			});	
 			bot.connect();
 		});
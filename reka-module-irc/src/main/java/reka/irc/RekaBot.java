@@ -67,7 +67,13 @@ public class RekaBot {
 		return this;
 	}
 	
+	public RekaBot removeListener(IrcListener listener) {
+		this.listeners.remove(listener);
+		return this;
+	}
+	
 	public void connect() {
+		if (bot.isConnected()) return;
 		try {
 			bot.connect(hostname);
 			if (key != null) {
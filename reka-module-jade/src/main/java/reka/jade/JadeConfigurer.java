@@ -3,12 +3,15 @@ package reka.jade;
 import static reka.util.Path.root;
 import reka.module.setup.AppSetup;
 import reka.module.setup.ModuleConfigurer;
+import reka.util.RenderCache;
 
 public class JadeConfigurer extends ModuleConfigurer {
 
 	@Override
 	public void setup(AppSetup init) {
-		init.defineOperation(root(), provider -> new JadeRenderConfigurer());
+		RenderCache.Group caches = new RenderCache.Group();
+		init.defineOperation(root(), provider -> new JadeRenderConfigurer(caches));
+		init.registerStatusProvider(() -> caches);
 	}
 
 }
@@ -1,35 +1,58 @@
 package reka.jade;
 
+import static reka.data.content.Contents.binary;
+
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
 
 import reka.data.MutableData;
 import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
 import reka.util.Path;
 import reka.util.Path.Response;
+import reka.util.RenderCache;
+import reka.util.Utf8Bytes;
 import de.neuland.jade4j.model.JadeModel;
 import de.neuland.jade4j.template.JadeTemplate;
 
 public class JadeRender implements Operation {
 	
+	private static final int SIZE_HINT = 8192;
+	
 	private final JadeTemplate template;
 	private final Path in;
 	private final Path out;
 	private final boolean mainResponse;
+	private final RenderCache cache;
 
-	public JadeRender(JadeTemplate template, Path in, Path out) {
+	public JadeRender(JadeTemplate template, Path in, Path out, RenderCache cache) {
 		this.template = template;
 		this.in = in;
 		this.out = out;
 		this.mainResponse = out.equals(Response.CONTENT);
+		this.cache = cache;
 	}
 
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
-		if (mainResponse) data.putString(Response.Headers.CONTENT_TYPE, "text/html");
-		StringWriter writer = new StringWriter();
-        template.process(new JadeModel(data.at(in).viewAsMap()), writer);
-	    data.putString(out, writer.toString());
+		if (cache != null) {
+			cache.render(data, in, out, this::render);
+			return;
+		}
+		Map<String,Object> model = data.at(in).viewAsMap();
+		if (mainResponse) {
+			data.putString(Response.Headers.CONTENT_TYPE, "text/html");
+			data.put(out, binary("text/html", Utf8Bytes.write(SIZE_HINT, writer -> render(model, writer))));
+		} else {
+			StringWriter writer = new StringWriter();
+			render(model, writer);
+			data.putString(out, writer.toString());
+		}
+	}
+	
+	private void render(Map<String,Object> model, Writer writer) {
+        template.process(new JadeModel(model), writer);
 	}
 	
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import reka.config.configurer.annotations.Conf;
 import reka.module.setup.OperationConfigurer;
 import reka.module.setup.OperationSetup;
 import reka.util.Path;
+import reka.util.RenderCache;
 import de.neuland.jade4j.JadeConfiguration;
 import de.neuland.jade4j.exceptions.JadeException;
 import de.neuland.jade4j.template.JadeTemplate;
@@ -21,24 +22,32 @@ import de.neuland.jade4j.template.TemplateLoader;
 
 public class JadeRenderConfigurer implements OperationConfigurer {
 	
+	private final RenderCache.Group caches;
+	
 	private JadeTemplate template;
+	private String text;
 	
-	@SuppressWarnings("unused")
-	private Boolean cache = false; // TODO: fix up the caching
+	private boolean cache = false;
 	
 	private Path in = Path.empty(), out;
 	
+	public JadeRenderConfigurer(RenderCache.Group caches) {
+		this.caches = caches;
+	}
+	
 	@Conf.Config
 	@Conf.At("template")
 	public void template(Config config) {
 	    if (config.hasDocument()) {
 	        checkArgument("jade".equals(config.documentType()), "template must be of type [jade]");
-            template = compile(new String(config.documentContent(), StandardCharsets.UTF_8));
+            text = new String(config.documentContent(), StandardCharsets.UTF_8);
+            template = compile(text);
             if (config.hasValue() && out == null) {
             	out = dots(config.valueAsString());
             }
         } else if (config.hasValue()) {
-            template = compile(config.valueAsString());
+            text = config.valueAsString();
+            template = compile(text);
         }
 	}
 	
@@ -73,10 +82,16 @@ public class JadeRenderConfigurer implements OperationConfigurer {
 		out = dots(value);
 	}
 	
+	@Conf.At("cache")
+	public void cache(String value) {
+		cache = Boolean.valueOf(value);
+	}
+	
 	@Override
 	public void setup(OperationSetup ops) {
 		if (out == null) out = Path.Response.CONTENT;
-	    ops.add("jade", () -> new JadeRender(template, in, out));
+		RenderCache renderCache = cache ? caches.create("jade", text, "text/html") : null;
+	    ops.add("jade", () -> new JadeRender(template, in, out, renderCache));
 	}
 	
 }
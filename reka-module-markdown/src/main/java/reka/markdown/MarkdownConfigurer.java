@@ -9,11 +9,19 @@ import reka.data.Data;
 import reka.module.setup.OperationConfigurer;
 import reka.module.setup.OperationSetup;
 import reka.util.Path;
+import reka.util.RenderCache;
 import reka.util.StringWithVars;
 
 public class MarkdownConfigurer implements OperationConfigurer {
 
+	private final RenderCache.Group caches;
+	
 	private Function<Data,Path> outFn, inFn;
+	private boolean cache = false;
+	
+	public MarkdownConfigurer(RenderCache.Group caches) {
+		this.caches = caches;
+	}
 	
 	@Conf.Val
 	public void val(String val) {
@@ -43,9 +51,15 @@ public class MarkdownConfigurer implements OperationConfigurer {
 		}
 	}
 	
+	@Conf.At("cache")
+	public void cache(String val) {
+		cache = Boolean.valueOf(val);
+	}
+	
 	@Override
 	public void setup(OperationSetup ops) {
-		ops.add("convert", () -> new MarkdownOperation(inFn, outFn));
+		RenderCache renderCache = cache ? caches.create("markdown", "", "text/html") : null;
+		ops.add("convert", () -> new MarkdownOperation(inFn, outFn, renderCache));
 	}
 
 }
@@ -7,6 +7,7 @@ import org.pegdown.PegDownProcessor;
 
 import reka.module.setup.AppSetup;
 import reka.module.setup.ModuleConfigurer;
+import reka.util.RenderCache;
 
 public class MarkdownModuleConfigurer extends ModuleConfigurer {
 	
@@ -14,7 +15,9 @@ public class MarkdownModuleConfigurer extends ModuleConfigurer {
 
 	@Override
 	public void setup(AppSetup module) {
-		module.defineOperation(root(), provider -> new MarkdownConfigurer());
+		RenderCache.Group caches = new RenderCache.Group();
+		module.defineOperation(root(), provider -> new MarkdownConfigurer(caches));
+		module.registerStatusProvider(() -> caches);
 	}
 
 }
@@ -9,22 +9,33 @@ import reka.data.MutableData;
 import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
 import reka.util.Path;
+import reka.util.RenderCache;
 
 public class MarkdownOperation implements Operation {
 
 	private final Function<Data,Path> inFn, outFn;
+	private final RenderCache cache;
 	
-	public MarkdownOperation(Function<Data,Path> inFn, Function<Data,Path> outFn) {
+	public MarkdownOperation(Function<Data,Path> inFn, Function<Data,Path> outFn, RenderCache cache) {
 		this.inFn = inFn;
 		this.outFn = outFn;
+		this.cache = cache;
 	}
 	
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
+		Path out = outFn.apply(data);
 		data.at(inFn.apply(data)).forEachContent((path, content) -> {
-			content = utf8(MarkdownModuleConfigurer.md.get().markdownToHtml(content.asUTF8()));
-			data.put(outFn.apply(data).add(path), content);
+			if (cache != null) {
+				cache.render(data, out.add(path), content.asUTF8(), MarkdownOperation::toHtml);
+			} else {
+				data.put(out.add(path), utf8(toHtml(content.asUTF8())));
+			}
 		});
 	}
 	
+	private static String toHtml(String markdown) {
+		return MarkdownModuleConfigurer.md.get().markdownToHtml(markdown);
+	}
+	
 }
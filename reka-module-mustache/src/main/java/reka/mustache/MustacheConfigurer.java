@@ -3,12 +3,15 @@ package reka.mustache;
 import static reka.util.Path.root;
 import reka.module.setup.AppSetup;
 import reka.module.setup.ModuleConfigurer;
+import reka.util.RenderCache;
 
 public class MustacheConfigurer extends ModuleConfigurer {
 
 	@Override
 	public void setup(AppSetup init) {
-		init.defineOperation(root(), provider -> new MustacheRenderConfigurer());
+		RenderCache.Group caches = new RenderCache.Group();
+		init.defineOperation(root(), provider -> new MustacheRenderConfigurer(caches));
+		init.registerStatusProvider(() -> caches);
 	}
 
 }
@@ -1,17 +1,37 @@
 package reka.mustache;
 
 import static reka.util.Path.dots;
+import static reka.util.Util.unchecked;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.TreeMap;
+
 import reka.config.Config;
 import reka.config.configurer.annotations.Conf;
 import reka.module.setup.OperationConfigurer;
 import reka.module.setup.OperationSetup;
 import reka.util.Path;
 import reka.util.Path.Response;
+import reka.util.RenderCache;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.google.common.io.CharStreams;
 
 public class MustacheRenderConfigurer implements OperationConfigurer {
 
+	private final RenderCache.Group caches;
+	
 	private String template;
 	private Path in, out;
+	private boolean cache = false;
+	
+	public MustacheRenderConfigurer(RenderCache.Group caches) {
+		this.caches = caches;
+	}
 	
 	@Conf.Config
 	@Conf.At("template")
@@ -32,11 +52,41 @@ public class MustacheRenderConfigurer implements OperationConfigurer {
 		out = dots(value);
 	}
 	
+	@Conf.At("cache")
+	public void cache(String value) {
+		cache = Boolean.valueOf(value);
+	}
+	
 	@Override
 	public void setup(OperationSetup ops) {
 		if (in == null) in = Path.empty();
 		if (out == null) out = Response.CONTENT;
-		ops.add("render", () -> new MustacheRenderOperation(template, in, out));
+		Map<String,String> partials = new TreeMap<>();
+		Mustache mustache = new PartialRecordingFactory(partials).compile(new StringReader(template), "template");
+		RenderCache renderCache = cache ? caches.create("mustache", template, partials.values(), "text/html") : null;
+		ops.add("render", () -> new MustacheRenderOperation(mustache, in, out, renderCache));
+	}
+	
+	// keeps what each partial said when it was compiled, so changing one changes the cache's etags
+	private static class PartialRecordingFactory extends DefaultMustacheFactory {
+		
+		private final Map<String,String> partials;
+		
+		PartialRecordingFactory(Map<String,String> partials) {
+			this.partials = partials;
+		}
+		
+		@Override
+		public Reader getReader(String resourceName) {
+			try (Reader reader = super.getReader(resourceName)) {
+				String content = CharStreams.toString(reader);
+				partials.put(resourceName, content);
+				return new StringReader(content);
+			} catch (IOException e) {
+				throw unchecked(e);
+			}
+		}
+		
 	}
 
 }
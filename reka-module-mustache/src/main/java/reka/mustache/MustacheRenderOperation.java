@@ -1,9 +1,11 @@
 package reka.mustache;
 
+import static reka.data.content.Contents.binary;
 import static reka.data.content.Contents.utf8;
 
-import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
 
 import reka.data.MutableData;
 import reka.data.content.Content;
@@ -11,33 +13,48 @@ import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
 import reka.util.Path;
 import reka.util.Path.Response;
+import reka.util.RenderCache;
+import reka.util.Utf8Bytes;
 
-import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 
 public class MustacheRenderOperation implements Operation {
 	
-	private final static MustacheFactory mf = new DefaultMustacheFactory();
+	private final static int SIZE_HINT = 8192;
 	
 	private final Mustache mustache;
 	private final Path in, out;
 	private final boolean isMain;
 	private final Content TEXT_HTML = utf8("text/html");
+	private final RenderCache cache;
 	
-	public MustacheRenderOperation(String template, Path inputPath, Path outputPath) {
-		mustache = mf.compile(new StringReader(template), "template");
+	public MustacheRenderOperation(Mustache mustache, Path inputPath, Path outputPath, RenderCache cache) {
+		this.mustache = mustache;
 		this.in = inputPath;
 		this.out = outputPath;
+		this.cache = cache;
 		isMain = out.equals(Response.CONTENT);
 	}
 
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
-		StringWriter writer = new StringWriter();
-		mustache.execute(writer, data.at(in).viewAsMap());
-		data.putString(out, writer.toString());
-		if (isMain) data.put(Response.Headers.CONTENT_TYPE, TEXT_HTML);
+		if (cache != null) {
+			cache.render(data, in, out, this::render);
+			return;
+		}
+		Map<String,Object> scope = data.at(in).viewAsMap();
+		if (isMain) {
+			data.put(out, binary("text/html", Utf8Bytes.write(SIZE_HINT, writer -> render(scope, writer))));
+			data.put(Response.Headers.CONTENT_TYPE, TEXT_HTML);
+		} else {
+			StringWriter writer = new StringWriter();
+			render(scope, writer);
+			data.putString(out, writer.toString());
+		}
+	}
+	
+	private void render(Map<String,Object> scope, Writer writer) {
+		mustache.execute(writer, scope);
 	}
 
 }
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,8 +48,13 @@ import reka.net.ChannelAttrs.AttributeMatcher;
 import reka.net.NetSettings.TlsSettings;
 import reka.net.NetSettings.Type;
 import reka.net.http.HostAndPort;
+import reka.net.http.accesslog.AccessLog;
+import reka.net.http.client.HttpClientPool;
 import reka.net.http.server.HttpChannelSetup;
+import reka.net.http.server.HttpCompression;
 import reka.net.http.server.HttpInitializer;
+import reka.net.http.server.HttpLimits;
+import reka.net.http.server.HttpLoadShedder;
 import reka.net.http.server.HttpOrWebsocket;
 import reka.net.http.server.WebsocketChannelSetup;
 import reka.net.socket.SocketFlowHandler;
@@ -63,6 +69,7 @@ public class NetManager {
 
 	private final EventLoopGroup nettyEventGroup;
 	
+	// guarded by this, different apps deploy and undeploy at the same time
 	private final Map<Integer,PortHandler> handlers = new HashMap<>();
 	private final Map<Identity,Map<String,Entry<NetSettings,Integer>>> deployed = new HashMap<>();
 	
@@ -88,45 +95,39 @@ public class NetManager {
 	
 	public ApplicationComponent deployHttp(Identity identity, HostAndPort listen, HttpFlows flows) {
 		NetSettings settings = NetSettings.http(listen.port(), listen.host());
-		PortHandler handler = ensurePortHandler(settings);
-		int version = saveSettingsAndIncrementVersion(identity, settings);
-		return new NetApplicationComponent(identity, settings, version, handler.httpAdd(identity, settings.host().get(), flows));
+		return deploy(identity, settings, handler -> handler.httpAdd(identity, settings.host().get(), flows));
 	}
 	
 	public ApplicationComponent deployHttps(Identity identity, HostAndPort listen, TlsSettings ssl, HttpFlows flows) {
 		checkNotNull(ssl, "must pass in ssl settings for https");
 		NetSettings settings = NetSettings.https(listen.port(), listen.host(), ssl);
-		PortHandler handler = ensurePortHandler(settings);
-		int version = saveSettingsAndIncrementVersion(identity, settings);
-		return new NetApplicationComponent(identity, settings, version, handler.httpAdd(identity, settings.host().get(), flows));
+		return deploy(identity, settings, handler -> handler.httpAdd(identity, settings.host().get(), flows));
 	}
 	
 	public ApplicationComponent deployWebsocket(Identity identity, HostAndPort listen, SocketFlows flows) {
 		NetSettings settings = NetSettings.ws(listen.port(), listen.host());
-		PortHandler handler = ensurePortHandler(settings);
-		int version = saveSettingsAndIncrementVersion(identity, settings);
-		return new NetApplicationComponent(identity, settings, version, handler.websocketAdd(identity, settings.host().get(), flows));
+		return deploy(identity, settings, handler -> handler.websocketAdd(identity, settings.host().get(), flows));
 	}
 	
 	public ApplicationComponent deployWebsocketSsl(Identity identity, HostAndPort listen, TlsSettings ssl, SocketFlows flows) {
 		NetSettings settings = NetSettings.wss(listen.port(), listen.host(), ssl);
-		PortHandler handler = ensurePortHandler(settings);
-		int version = saveSettingsAndIncrementVersion(identity, settings);
-		return new NetApplicationComponent(identity, settings, version, handler.websocketAdd(identity, settings.host().get(), flows));
+		return deploy(identity, settings, handler -> handler.websocketAdd(identity, settings.host().get(), flows));
 	}
 	
 	public ApplicationComponent deploySocket(Identity identity, int port, SocketFlows flows) {
 		NetSettings settings = NetSettings.socket(port);
-		PortHandler handler = ensurePortHandler(settings);
-		int version = saveSettingsAndIncrementVersion(identity, settings);
-		return new NetApplicationComponent(identity, settings, version, handler.socketSet(identity, flows));
+		return deploy(identity, settings, handler -> handler.socketSet(identity, flows));
 	}
 	
 	public ApplicationComponent deploySocketSsl(Identity identity, int port, TlsSettings ssl, SocketFlows flows) {
 		NetSettings settings = NetSettings.socketSsl(port, ssl);
+		return deploy(identity, settings, handler -> handler.socketSet(identity, flows));
+	}
+	
+	private synchronized ApplicationComponent deploy(Identity identity, NetSettings settings, Function<PortHandler,Runnable> add) {
 		PortHandler handler = ensurePortHandler(settings);
 		int version = saveSettingsAndIncrementVersion(identity, settings);
-		return new NetApplicationComponent(identity, settings, version, handler.socketSet(identity, flows));
+		return new NetApplicationComponent(identity, settings, version, add.apply(handler));
 	}
 	
 	public class NetApplicationComponent implements ApplicationComponent {
@@ -145,6 +146,12 @@ public class NetManager {
 		
 		@Override
 		public void undeploy() {
+			synchronized (NetManager.this) {
+				undeployLocked();
+			}
+		}
+		
+		private void undeployLocked() {
 			PortHandler handler = handlers.get(settings.port());
 			if (handler == null) return;
 			Map<String, Entry<NetSettings,Integer>> m = deployed.get(identity);
@@ -170,6 +177,18 @@ public class NetManager {
 
 		@Override
 		public Runnable pause() {
+			Runnable resume;
+			synchronized (NetManager.this) {
+				resume = pauseLocked();
+			}
+			return () -> {
+				synchronized (NetManager.this) {
+					resume.run();
+				}
+			};
+		}
+		
+		private Runnable pauseLocked() {
 			PortHandler handler = handlers.get(settings.port());
 			if (handler == null) return () -> {};
 			switch (settings.type()) {
@@ -190,6 +209,10 @@ public class NetManager {
 		return nettyEventGroup;
 	}
 	
+	public HttpClientPool createHttpClients() {
+		return new HttpClientPool(nettyEventGroup, nettyClientChannelType);
+	}
+	
 	public Class<? extends ServerChannel> nettyServerChannelType() {
 		return nettyServerChannelType;
 	}
@@ -204,12 +227,17 @@ public class NetManager {
 		
 		private final HttpChannelSetup http;
 		private final WebsocketChannelSetup websocket;
+		private final HttpLoadShedder shedder;
+		
+		// each host on the port brings its own, the port gets them merged
+		private final Map<String,HttpLimits> limits = new HashMap<>();
 		
 		HttpPortHandler(int port, TlsSettings tlsSettings) {
 			super(port, tlsSettings);
 			http = new HttpChannelSetup(channels, port, tlsSettings != null);
 			websocket = new WebsocketChannelSetup(channels, port);
-			initializer = new HttpInitializer(new HttpOrWebsocket(http, websocket), tlsSettings);
+			shedder = new HttpLoadShedder(HttpLimits.DEFAULT);
+			initializer = new HttpInitializer(new HttpOrWebsocket(http, websocket), tlsSettings, shedder);
 		}
 
 		@Override
@@ -224,9 +252,31 @@ public class NetManager {
 
 		@Override
 		public Runnable httpAdd(Identity identity, String host, HttpFlows flows) {
+			Map<String,HttpLimits> updated = new HashMap<>(limits);
+			updated.put(host, flows.limits());
+			HttpLimits merged = merged(updated);
 			Runnable undeploy = http.add(host, identity, flows);
+			limits.put(host, flows.limits());
+			shedder.limits(merged);
 			start();
-			return undeploy;
+			return () -> {
+				undeploy.run();
+				if (limits.remove(host, flows.limits())) {
+					shedder.limits(merged(limits));
+				}
+			};
+		}
+		
+		private HttpLimits merged(Map<String,HttpLimits> all) {
+			HttpLimits merged = HttpLimits.DEFAULT;
+			for (HttpLimits other : all.values()) {
+				try {
+					merged = merged.merge(other);
+				} catch (RuntimeException e) {
+					throw unchecked(e, "conflicting http limits on port %d", port());
+				}
+			}
+			return merged;
 		}
 
 		@Override
@@ -362,6 +412,10 @@ public class NetManager {
 		public abstract Runnable websocketPause(String host);
 		public abstract Runnable socketPause();
 		
+		public int port() {
+			return port;
+		}
+		
 		public TlsSettings tlsSettings() {
 			return tlsSettings;
 		}
@@ -425,8 +479,18 @@ public class NetManager {
 		
 	}
 	
-	public Map<Identity,Map<String,Entry<NetSettings,Integer>>> deployed() {
-		return ImmutableMap.copyOf(deployed);
+	public synchronized Map<Identity,Map<String,Entry<NetSettings,Integer>>> deployed() {
+		ImmutableMap.Builder<Identity,Map<String,Entry<NetSettings,Integer>>> copy = ImmutableMap.builder();
+		deployed.forEach((identity, settings) -> copy.put(identity, ImmutableMap.copyOf(settings)));
+		return copy.build();
+	}
+	
+	public synchronized Optional<HttpLoadShedder> httpShedder(int port) {
+		PortHandler handler = handlers.get(port);
+		if (handler instanceof HttpPortHandler) {
+			return Optional.of(((HttpPortHandler) handler).shedder);
+		}
+		return Optional.empty();
 	}
 	
 	public ChannelGroupWithMatcher channels(ChannelMatcher matcher) {
@@ -437,7 +501,7 @@ public class NetManager {
 		return new ChannelGroupWithMatcher(channels, new AttributeMatcher<>(ChannelAttrs.identity, identity));
 	}
 	
-	public boolean isAvailable(Identity identity, HostAndPort listen) {
+	public synchronized boolean isAvailable(Identity identity, HostAndPort listen) {
 		return deployed.entrySet().stream().allMatch(e -> {
 			Identity deployedIdentity = e.getKey();
 			if (deployedIdentity.equals(identity)) return true;
@@ -463,7 +527,7 @@ public class NetManager {
 		});
 	}
 	
-	public boolean isAvailable(Identity identity, int port) {
+	public synchronized boolean isAvailable(Identity identity, int port) {
 		return deployed.entrySet().stream().allMatch(e -> {
 			Identity deployedIdentity = e.getKey();
 			if (deployedIdentity.equals(identity)) return true;
@@ -488,6 +552,12 @@ public class NetManager {
 
 		@Override
 		public void run() {
+			synchronized (NetManager.this) {
+				runLocked();
+			}
+		}
+		
+		private void runLocked() {
 			PortHandler handler = handlers.get(settings.port());
 			if (handler == null) return;
 			Map<String, Entry<NetSettings,Integer>> m = deployed.get(identity);
@@ -578,19 +648,41 @@ public class NetManager {
 	public static class HttpFlows {
 		
 		private final Flow onMessage;
+		private final AccessLog accessLog;
+		private final HttpCompression compression;
+		private final HttpLimits limits;
 		
 		public HttpFlows(Flow onMessage) {
+			this(onMessage, null, HttpCompression.DEFAULT, HttpLimits.DEFAULT);
+		}
+		
+		public HttpFlows(Flow onMessage, AccessLog accessLog, HttpCompression compression, HttpLimits limits) {
 			this.onMessage = onMessage;
+			this.accessLog = accessLog;
+			this.compression = compression;
+			this.limits = limits;
 		}
 		
 		public HttpFlows(Optional<Flow> onMessage) {
-			this.onMessage = onMessage.orElse(NoFlow.INSTANCE);
+			this(onMessage.orElse(NoFlow.INSTANCE));
 		}
 		
 		public Flow onMessage() {
 			return onMessage;
 		}
 		
+		public AccessLog accessLog() {
+			return accessLog;
+		}
+		
+		public HttpCompression compression() {
+			return compression;
+		}
+		
+		public HttpLimits limits() {
+			return limits;
+		}
+		
 	}
 	
 	public static class SocketFlows {
@@ -1,23 +1,39 @@
 package reka.net.common.sockets;
 
 import static java.lang.String.format;
+import static reka.util.Path.path;
+
+import java.util.Collections;
+import java.util.List;
+
 import reka.data.MutableData;
 import reka.identity.Identity;
 import reka.module.setup.StatusDataProvider;
 import reka.net.ChannelAttrs;
 import reka.net.NetManager;
 import reka.net.NetSettings.Type;
+import reka.net.http.HostAndPort;
+import reka.net.http.client.HttpClientPool;
+import reka.net.http.server.HttpLoadShedder;
 
 public class NetStatusProvider implements StatusDataProvider {
 
 	private final NetManager server;
 	private final Identity identity;
 	private final Type type;
+	private final List<HostAndPort> listens;
+	private final HttpClientPool clients;
 	
 	public NetStatusProvider(NetManager server, Identity identity, Type type) {
+		this(server, identity, type, Collections.emptyList(), null);
+	}
+	
+	public NetStatusProvider(NetManager server, Identity identity, Type type, List<HostAndPort> listens, HttpClientPool clients) {
 		this.server = server;
 		this.identity = identity;
 		this.type = type;
+		this.listens = listens;
+		this.clients = clients;
 	}
 	
 	@Override
@@ -29,7 +45,19 @@ public class NetStatusProvider implements StatusDataProvider {
 	public void statusData(MutableData data) {
 		long conns = server.channels(identity).withAttr(ChannelAttrs.type, type).count();
 		data.putLong("connections", conns);
-		data.putString("summary", format("conns:%d", conns));
+		if (type == Type.HTTP) {
+			clients.statusData(data.createMapAt(path("client")));
+			long rejected = 0;
+			for (int port : listens.stream().mapToInt(HostAndPort::port).distinct().toArray()) {
+				HttpLoadShedder shedder = server.httpShedder(port).orElse(null);
+				if (shedder == null) continue;
+				shedder.statusData(data.createMapAt(path("listeners", String.valueOf(port))));
+				rejected += shedder.rejected();
+			}
+			data.putString("summary", format("conns:%d client-conns:%d rejected:%d", conns, clients.open(), rejected));
+		} else {
+			data.putString("summary", format("conns:%d", conns));
+		}
 	}
 	
 }
\ No newline at end of file
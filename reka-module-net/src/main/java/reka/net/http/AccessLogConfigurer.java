@@ -0,0 +1,87 @@
+package reka.net.http;
+
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import reka.config.Config;
+import reka.config.configurer.annotations.Conf;
+import reka.net.http.accesslog.AccessLog;
+import reka.net.http.accesslog.AccessLogFormat;
+import reka.util.dirs.AppDirs;
+
+public class AccessLogConfigurer {
+	
+	// access-log logs/access.log
+	// access-log {
+	//   file logs/access.log
+	//   format json
+	//   buffer 16384
+	//   max-size 100mb
+	//   keep 5
+	// }
+	
+	private static final Pattern SIZE = Pattern.compile("^([0-9]+)\\s*(b|kb?|mb?|gb?)?$");
+	
+	private final AppDirs dirs;
+	
+	private String file = "access.log";
+	private AccessLogFormat format = AccessLogFormat.COMBINED;
+	private int buffer = 8192;
+	private long maxSize = 100L * 1024 * 1024;
+	private int keep = 5;
+	
+	public AccessLogConfigurer(AppDirs dirs) {
+		this.dirs = dirs;
+	}
+	
+	@Conf.Val
+	@Conf.At("file")
+	public void file(String val) {
+		file = val;
+	}
+	
+	@Conf.At("format")
+	public void format(String val) {
+		try {
+			format = AccessLogFormat.valueOf(val.toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			checkConfig(false, "unknown access log format %s, use combined or json", val);
+		}
+	}
+	
+	@Conf.At("buffer")
+	public void buffer(Config config) {
+		buffer = config.valueAsInt();
+		checkConfig(buffer > 0, "buffer must be positive");
+	}
+	
+	@Conf.At("max-size")
+	public void maxSize(String val) {
+		Matcher m = SIZE.matcher(val.trim().toLowerCase(Locale.ENGLISH));
+		checkConfig(m.matches(), "invalid size %s, use something like 500kb or 100mb", val);
+		long n = Long.parseLong(m.group(1));
+		String unit = m.group(2) != null ? m.group(2).substring(0, 1) : "b";
+		switch (unit) {
+		case "k": n *= 1024; break;
+		case "m": n *= 1024 * 1024; break;
+		case "g": n *= 1024 * 1024 * 1024; break;
+		}
+		maxSize = n;
+	}
+	
+	@Conf.At("keep")
+	public void keep(Config config) {
+		keep = config.valueAsInt();
+		checkConfig(keep >= 0, "keep must not be negative");
+	}
+	
+	public AccessLog build() {
+		Path path = dirs.data().resolve(file);
+		return new AccessLog(path, format, buffer, maxSize, keep);
+	}
+	
+}
@@ -0,0 +1,67 @@
+package reka.net.http;
+
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import reka.config.Config;
+import reka.config.configurer.annotations.Conf;
+import reka.net.http.server.HttpCompression;
+
+public class HttpCompressionConfigurer {
+	
+	// it's off unless an app asks for it with one of:
+	//
+	// compression on
+	// compression {
+	//   min-size 2048
+	//   level 6
+	//   type text/*
+	//   type application/json
+	// }
+	
+	private boolean enabled = true;
+	private int minSize = HttpCompression.DEFAULT_MIN_SIZE;
+	private int level = HttpCompression.DEFAULT_LEVEL;
+	private final Set<String> types = new LinkedHashSet<>();
+	
+	@Conf.Val
+	public void enabled(String val) {
+		switch (val) {
+		case "on":
+		case "true":
+			enabled = true;
+			break;
+		case "off":
+		case "false":
+			enabled = false;
+			break;
+		default:
+			checkConfig(false, "compression must be on or off, not %s", val);
+		}
+	}
+	
+	@Conf.At("min-size")
+	public void minSize(Config config) {
+		minSize = config.valueAsInt();
+		checkConfig(minSize >= 0, "min-size must not be negative");
+	}
+	
+	@Conf.At("level")
+	public void level(Config config) {
+		level = config.valueAsInt();
+		checkConfig(level >= 1 && level <= 9, "level must be between 1 and 9");
+	}
+	
+	@Conf.Each("type")
+	public void type(String val) {
+		types.add(val.trim().toLowerCase(Locale.ENGLISH));
+	}
+	
+	public HttpCompression build() {
+		return new HttpCompression(enabled, minSize, level, types.isEmpty() ? HttpCompression.DEFAULT_TYPES : types);
+	}
+	
+}
@@ -25,11 +25,15 @@ import reka.net.NetSettings;
 import reka.net.NetSettings.TlsSettings;
 import reka.net.NetSettings.Type;
 import reka.net.common.sockets.NetStatusProvider;
+import reka.net.http.accesslog.AccessLog;
+import reka.net.http.client.HttpClientPool;
 import reka.net.http.configurers.HttpContentConfigurer;
 import reka.net.http.configurers.HttpRedirectConfigurer;
 import reka.net.http.configurers.HttpRequestConfigurer;
 import reka.net.http.configurers.HttpRouterConfigurer;
 import reka.net.http.operations.BasicAuthConfigurer;
+import reka.net.http.server.HttpCompression;
+import reka.net.http.server.HttpLimits;
 import reka.net.http.streaming.HttpEndConfigurer;
 import reka.net.http.streaming.HttpHeadConfigurer;
 import reka.net.http.streaming.HttpWriteConfigurer;
@@ -44,6 +48,9 @@ public class HttpConfigurer extends ModuleConfigurer {
 	private final Pattern listenHostAndPort = Pattern.compile("^(.+):([0-9]+)$");
 	
 	private TlsSettings tls;
+	private AccessLogConfigurer accessLog;
+	private HttpCompression compression = HttpCompression.DEFAULT;
+	private HttpLimits limits = HttpLimits.DEFAULT;
 	
 	private final NetManager net;
 	
@@ -78,6 +85,21 @@ public class HttpConfigurer extends ModuleConfigurer {
 		tls = configure(new TlsConfigurer(), config).build();
 	}
 
+	@Conf.At("access-log")
+	public void accessLog(Config config) {
+		accessLog = configure(new AccessLogConfigurer(dirs()), config);
+	}
+
+	@Conf.At("compression")
+	public void compression(Config config) {
+		compression = configure(new HttpCompressionConfigurer(), config).build();
+	}
+
+	@Conf.At("limits")
+	public void limits(Config config) {
+		limits = configure(new HttpLimitsConfigurer(), config).build();
+	}
+
 	@Conf.Each("on")
 	public void on(Config config) {
 		checkConfig(config.hasValue(), "must have a value");
@@ -102,9 +124,12 @@ public class HttpConfigurer extends ModuleConfigurer {
 		
 		app.defineOperation(path("router"), provider -> new HttpRouterConfigurer(dirs(), provider));
 		app.defineOperation(path("redirect"), provider -> new HttpRedirectConfigurer());
-		app.defineOperation(path("content"), provider -> new HttpContentConfigurer(dirs()));
-		app.defineOperation(path("request"), provider -> new HttpRequestConfigurer(net.nettyEventGroup(), net.nettyChannelType()));
-		app.defineOperation(path("req"), provider -> new HttpRequestConfigurer(net.nettyEventGroup(), net.nettyChannelType()));
+		app.defineOperation(path("content"), provider -> new HttpContentConfigurer(dirs(), compression));
+		HttpClientPool clients = net.createHttpClients();
+		app.registerComponent(clients);
+		
+		app.defineOperation(path("request"), provider -> new HttpRequestConfigurer(clients));
+		app.defineOperation(path("req"), provider -> new HttpRequestConfigurer(clients));
 		app.defineOperation(path("auth"), provider -> new BasicAuthConfigurer(provider));
 		
 		// ones that take care of writing responses
@@ -124,22 +149,28 @@ public class HttpConfigurer extends ModuleConfigurer {
 		});
 		*/
 		
-		app.registerStatusProvider(() -> new NetStatusProvider(net, app.identity(), NetSettings.Type.HTTP));
+		app.registerStatusProvider(() -> new NetStatusProvider(net, app.identity(), NetSettings.Type.HTTP, listens, clients));
 		
 		listens.forEach(listen -> {
 			app.requireNetwork(listen.port(), listen.host());	
 		});
 		
+		AccessLog log = accessLog != null ? accessLog.build() : null;
+		
 		for (Function<ConfigurerProvider, OperationConfigurer> h : requestHandlers) {
 			
 			app.buildFlow("on request", h, flow -> {
 				
+				if (log != null && log.start()) {
+					app.registerComponent(log);
+				}
+				
 				for (HostAndPort listen : listens) {
 					
 					if (tls != null) {
-						app.registerComponent(net.deployHttps(app.identity(), listen, tls, new HttpFlows(flow)));
+						app.registerComponent(net.deployHttps(app.identity(), listen, tls, new HttpFlows(flow, log, compression, limits)));
 					} else {
-						app.registerComponent(net.deployHttp(app.identity(), listen, new HttpFlows(flow)));
+						app.registerComponent(net.deployHttp(app.identity(), listen, new HttpFlows(flow, log, compression, limits)));
 					}
 					
 					app.registerNetwork(listen.port(), Type.HTTP.protocolString(tls != null), details -> {
@@ -0,0 +1,59 @@
+package reka.net.http;
+
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
+
+import reka.config.Config;
+import reka.config.configurer.annotations.Conf;
+import reka.net.http.server.HttpLimits;
+
+public class HttpLimitsConfigurer {
+	
+	// limits {
+	//   read-idle 30
+	//   write-idle 30
+	//   max-connections 5000
+	//   max-in-flight 500
+	//   max-body 10485760
+	// }
+	
+	private int readIdle;
+	private int writeIdle;
+	private int maxConnections;
+	private int maxInFlight;
+	private long maxBody;
+	
+	@Conf.At("read-idle")
+	public void readIdle(Config config) {
+		readIdle = config.valueAsInt();
+		checkConfig(readIdle >= 0, "read-idle must not be negative");
+	}
+	
+	@Conf.At("write-idle")
+	public void writeIdle(Config config) {
+		writeIdle = config.valueAsInt();
+		checkConfig(writeIdle >= 0, "write-idle must not be negative");
+	}
+	
+	@Conf.At("max-connections")
+	public void maxConnections(Config config) {
+		maxConnections = config.valueAsInt();
+		checkConfig(maxConnections >= 0, "max-connections must not be negative");
+	}
+	
+	@Conf.At("max-in-flight")
+	public void maxInFlight(Config config) {
+		maxInFlight = config.valueAsInt();
+		checkConfig(maxInFlight >= 0, "max-in-flight must not be negative");
+	}
+	
+	@Conf.At("max-body")
+	public void maxBody(Config config) {
+		maxBody = config.valueAsLong();
+		checkConfig(maxBody >= 0, "max-body must not be negative");
+	}
+	
+	public HttpLimits build() {
+		return new HttpLimits(readIdle, writeIdle, maxConnections, maxInFlight, maxBody);
+	}
+	
+}
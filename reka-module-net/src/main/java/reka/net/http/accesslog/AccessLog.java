@@ -0,0 +1,198 @@
+package reka.net.http.accesslog;
+
+import static reka.util.Util.unchecked;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reka.app.ApplicationComponent;
+import reka.util.DaemonThreadFactory;
+
+/**
+ * Access log records are put into a preallocated ring buffer by the event 
+ * loops and written out in batches by a background thread.
+ * 
+ * If the writer can't keep up the ring fills and new records are dropped, the
+ * event loops never wait for it.
+ */
+public class AccessLog implements ApplicationComponent {
+	
+	private static final Logger log = LoggerFactory.getLogger(AccessLog.class);
+	
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final long DROPPED_WARNING_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+	
+	static final class Record {
+		
+		volatile long sequence = -1;
+		
+		long timestamp;
+		SocketAddress remote;
+		String host;
+		String method;
+		String path;
+		String protocol;
+		int status;
+		long bytes;
+		long micros;
+		String referer;
+		String userAgent;
+		
+	}
+	
+	private final Path file;
+	private final AccessLogFormat format;
+	private final long maxSize;
+	private final int keep;
+	
+	private final Record[] ring;
+	private final int mask;
+	
+	private final AtomicLong head = new AtomicLong();
+	private volatile long tail = 0;
+	
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	
+	private volatile boolean running;
+	private Thread writer;
+	
+	public AccessLog(Path file, AccessLogFormat format, int capacity, long maxSize, int keep) {
+		this.file = file;
+		this.format = format;
+		this.maxSize = maxSize;
+		this.keep = keep;
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		ring = new Record[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = new Record();
+		}
+		mask = size - 1;
+	}
+	
+	public synchronized boolean start() {
+		if (writer != null) return false;
+		RollingFileWriter out;
+		try {
+			out = new RollingFileWriter(file, maxSize, keep);
+		} catch (IOException e) {
+			throw unchecked(e, "could not open access log %s", file);
+		}
+		running = true;
+		writer = new DaemonThreadFactory("reka-access-log").newThread(() -> drain(out));
+		writer.start();
+		log.info("writing access log to {}", file);
+		return true;
+	}
+	
+	/**
+	 * @param status 0 if no response was sent
+	 * @param bytes the body bytes sent, -1 if no response was sent
+	 */
+	public void record(SocketAddress remote, String host, String method, String path, String protocol, int status, long bytes, long micros, String referer, String userAgent) {
+		long seq;
+		do {
+			seq = head.get();
+			if (seq - tail >= ring.length) {
+				dropped.incrementAndGet();
+				return;
+			}
+		} while (!head.compareAndSet(seq, seq + 1));
+		
+		Record r = ring[(int) (seq & mask)];
+		r.timestamp = System.currentTimeMillis();
+		r.remote = remote;
+		r.host = host;
+		r.method = method;
+		r.path = path;
+		r.protocol = protocol;
+		r.status = status;
+		r.bytes = bytes;
+		r.micros = micros;
+		r.referer = referer;
+		r.userAgent = userAgent;
+		r.sequence = seq; // publishes it
+	}
+	
+	public long dropped() {
+		return dropped.get();
+	}
+	
+	public long written() {
+		return written.get();
+	}
+	
+	private void drain(RollingFileWriter out) {
+		StringBuilder sb = new StringBuilder(256);
+		long reportedDropped = 0;
+		long lastWarning = 0;
+		try {
+			while (true) {
+				int count = 0;
+				long next = tail;
+				Record r;
+				while ((r = ring[(int) (next & mask)]).sequence == next) {
+					sb.setLength(0);
+					format.append(r, sb);
+					r.remote = null;
+					r.host = r.method = r.path = r.protocol = r.referer = r.userAgent = null;
+					out.write(sb);
+					next++;
+					tail = next;
+					count++;
+				}
+				if (count > 0) {
+					written.addAndGet(count);
+					out.flush();
+				} else if (!running) {
+					break;
+				} else {
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				}
+				long d = dropped.get();
+				if (d != reportedDropped && System.currentTimeMillis() - lastWarning > DROPPED_WARNING_INTERVAL_MILLIS) {
+					log.warn("dropped {} access log records for {} as the buffer was full", d - reportedDropped, file);
+					reportedDropped = d;
+					lastWarning = System.currentTimeMillis();
+				}
+			}
+		} catch (Throwable t) {
+			log.error("access log writer for {} stopped", file, t);
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+				log.warn("failed to close access log {}", file, e);
+			}
+		}
+	}
+
+	@Override
+	public void undeploy() {
+		Thread t;
+		synchronized (this) {
+			t = writer;
+			running = false;
+		}
+		if (t == null) return;
+		LockSupport.unpark(t);
+		try {
+			t.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Runnable pause() {
+		return () -> {};
+	}
+	
+}
@@ -0,0 +1,96 @@
+package reka.net.http.accesslog;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import org.codehaus.jackson.io.JsonStringEncoder;
+
+import reka.net.http.accesslog.AccessLog.Record;
+
+public enum AccessLogFormat {
+	
+	/**
+	 * The usual combined log format with the response time in microseconds on the end.
+	 */
+	COMBINED {
+		
+		private final DateTimeFormatter formatter = DateTimeFormatter
+				.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH)
+				.withZone(ZoneId.systemDefault());
+		
+		private long cachedSecond = -1;
+		private String cachedTime;
+
+		@Override
+		void append(Record r, StringBuilder sb) {
+			sb.append(address(r.remote)).append(" - - [").append(time(r.timestamp)).append("] \"")
+				.append(orDash(r.method)).append(' ').append(orDash(r.path)).append(' ').append(orDash(r.protocol)).append("\" ");
+			orDash(r.status, sb).append(' ');
+			orDash(r.bytes, sb).append(" \"") // no body is a - too
+				.append(orDash(r.referer)).append("\" \"")
+				.append(orDash(r.userAgent)).append("\" ")
+				.append(r.micros).append('\n');
+		}
+		
+		// only ever used from the writer thread
+		private String time(long timestamp) {
+			long second = timestamp / 1000;
+			if (second != cachedSecond) {
+				cachedTime = formatter.format(Instant.ofEpochMilli(timestamp));
+				cachedSecond = second;
+			}
+			return cachedTime;
+		}
+		
+	},
+	
+	JSON {
+		
+		private final JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+
+		@Override
+		void append(Record r, StringBuilder sb) {
+			sb.append("{\"time\":").append(r.timestamp);
+			field(sb, "remote", address(r.remote));
+			field(sb, "host", r.host);
+			field(sb, "method", r.method);
+			field(sb, "path", r.path);
+			field(sb, "protocol", r.protocol);
+			if (r.status > 0) sb.append(",\"status\":").append(r.status);
+			if (r.bytes >= 0) sb.append(",\"bytes\":").append(r.bytes);
+			sb.append(",\"us\":").append(r.micros);
+			field(sb, "referer", r.referer);
+			field(sb, "user-agent", r.userAgent);
+			sb.append("}\n");
+		}
+		
+		private void field(StringBuilder sb, String name, String value) {
+			if (value == null) return;
+			sb.append(",\"").append(name).append("\":\"").append(encoder.quoteAsString(value)).append('"');
+		}
+		
+	};
+	
+	abstract void append(Record record, StringBuilder sb);
+	
+	private static String orDash(String value) {
+		return value != null && !value.isEmpty() ? value : "-";
+	}
+	
+	private static StringBuilder orDash(long value, StringBuilder sb) {
+		return value > 0 ? sb.append(value) : sb.append('-');
+	}
+	
+	private static String address(SocketAddress remote) {
+		if (remote instanceof InetSocketAddress) {
+			InetSocketAddress inet = (InetSocketAddress) remote;
+			return inet.getAddress() != null ? inet.getAddress().getHostAddress() : inet.getHostString();
+		}
+		return remote != null ? remote.toString() : "-";
+	}
+
+}
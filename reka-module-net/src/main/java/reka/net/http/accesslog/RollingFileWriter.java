@@ -0,0 +1,80 @@
+package reka.net.http.accesslog;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Appends to a file, when it gets bigger than maxSize it is moved to file.1 
+ * (file.1 to file.2 and so on) keeping at most keep old files.
+ */
+final class RollingFileWriter implements Closeable {
+	
+	private final Path file;
+	private final long maxSize;
+	private final int keep;
+	
+	private OutputStream out;
+	private long size;
+	
+	RollingFileWriter(Path file, long maxSize, int keep) throws IOException {
+		this.file = file;
+		this.maxSize = maxSize;
+		this.keep = keep;
+		if (file.getParent() != null) Files.createDirectories(file.getParent());
+		open();
+	}
+	
+	private void open() throws IOException {
+		out = new BufferedOutputStream(Files.newOutputStream(file, CREATE, APPEND), 64 * 1024);
+		size = Files.size(file);
+	}
+	
+	void write(CharSequence text) throws IOException {
+		byte[] bytes = text.toString().getBytes(UTF_8);
+		out.write(bytes);
+		size += bytes.length;
+		if (maxSize > 0 && size >= maxSize) {
+			roll();
+		}
+	}
+	
+	void flush() throws IOException {
+		out.flush();
+	}
+	
+	private void roll() throws IOException {
+		out.close();
+		if (keep > 0) {
+			Files.deleteIfExists(rolled(keep));
+			for (int i = keep - 1; i >= 1; i--) {
+				Path from = rolled(i);
+				if (Files.exists(from)) {
+					Files.move(from, rolled(i + 1), REPLACE_EXISTING);
+				}
+			}
+			Files.move(file, rolled(1), REPLACE_EXISTING);
+		} else {
+			Files.delete(file);
+		}
+		open();
+	}
+	
+	private Path rolled(int n) {
+		return file.resolveSibling(file.getFileName() + "." + n);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+	
+}
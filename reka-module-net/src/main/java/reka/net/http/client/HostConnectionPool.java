@@ -0,0 +1,501 @@
+package reka.net.http.client;
+
+import static reka.util.Util.runtime;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import reka.data.MutableData;
+import reka.net.http.server.HttpResponseToDataDecoder;
+
+/**
+ * Keep-alive connections to a single host.
+ * 
+ * Requests go to an idle connection if there is one, otherwise a new connection is
+ * made if we are under the limit, otherwise they are pipelined onto a busy connection
+ * (if allowed) or wait for one to come free.
+ * 
+ * All the pool state is guarded by the pool itself, channel operations happen outside the lock.
+ */
+public class HostConnectionPool {
+	
+	private static final int MAX_CONTENT_LENGTH = 5242880;
+	
+	private final String host;
+	private final int port;
+	private final String name;
+	private final HttpClientSettings settings;
+	private final Bootstrap bootstrap;
+	
+	private final Set<Connection> connections = new HashSet<>();
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	private final Deque<Exchange> waiting = new ArrayDeque<>();
+	private int connecting;
+	private boolean closed;
+	
+	private long created, reused, requests, timeouts, errors, evicted;
+	
+	HostConnectionPool(EventLoopGroup group, Class<? extends Channel> channelType, String host, int port, SslContext ssl, HttpClientSettings settings) {
+		this.host = host;
+		this.port = port;
+		this.name = (ssl != null ? "https://" : "http://") + host + ":" + port;
+		this.settings = settings;
+		this.bootstrap = new Bootstrap()
+				.group(group)
+				.channel(channelType)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, settings.connectTimeoutMillis())
+				.option(ChannelOption.TCP_NODELAY, true)
+				.handler(new ChannelInitializer<Channel>() {
+
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ChannelPipeline pipeline = ch.pipeline();
+						if (ssl != null) {
+							pipeline.addLast("ssl", ssl.newHandler(ch.alloc(), host, port));
+						}
+						pipeline.addLast("http", new HttpClientCodec());
+						pipeline.addLast("aggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+						if (settings.idleTimeoutMillis() > 0) {
+							pipeline.addLast("idle", new IdleStateHandler(0, 0, settings.idleTimeoutMillis(), TimeUnit.MILLISECONDS));
+						}
+					}
+					
+				});
+	}
+	
+	public String name() {
+		return name;
+	}
+	
+	public String host() {
+		return host;
+	}
+	
+	/**
+	 * Sends a request, the supplier might be called more than once if the request needs
+	 * to be sent again because a kept-alive connection was closed underneath us. That only
+	 * happens for GET, HEAD, OPTIONS and TRACE, or if the request hadn't been sent yet.
+	 */
+	public void send(Supplier<HttpRequest> request, Consumer<MutableData> onResponse, Consumer<Throwable> onError) {
+		dispatch(new Exchange(request, onResponse, onError));
+	}
+	
+	private void dispatch(Exchange exchange) {
+		Connection conn = null;
+		boolean connect = false;
+		synchronized (this) {
+			if (closed) {
+				exchange.fail(runtime("connection pool for %s is closed", name));
+				return;
+			}
+			requests++;
+			conn = pollIdle();
+			if (conn == null) {
+				if (connections.size() + connecting < settings.maxConnections()) {
+					connecting++;
+					connect = true;
+				} else if (settings.pipelining() > 1) {
+					conn = leastBusy();
+				}
+			}
+			if (conn != null) {
+				conn.inFlight.add(exchange);
+			} else if (!connect) {
+				waiting.add(exchange);
+			}
+		}
+		if (conn != null) {
+			write(conn, exchange);
+		} else if (connect) {
+			connect(exchange);
+		}
+	}
+	
+	// must hold lock
+	private Connection pollIdle() {
+		Connection conn;
+		while ((conn = idle.pollFirst()) != null) {
+			if (conn.channel.isActive() && !conn.closing) {
+				reused++;
+				return conn;
+			}
+		}
+		return null;
+	}
+	
+	// must hold lock
+	private Connection leastBusy() {
+		Connection best = null;
+		for (Connection conn : connections) {
+			if (conn.closing || conn.inFlight.size() >= settings.pipelining()) continue;
+			if (best == null || conn.inFlight.size() < best.inFlight.size()) {
+				best = conn;
+			}
+		}
+		if (best != null) reused++;
+		return best;
+	}
+	
+	private void connect(Exchange exchange) {
+		bootstrap.connect(host, port).addListener((ChannelFuture future) -> {
+			if (future.isSuccess()) {
+				Channel ch = future.channel();
+				Connection conn = new Connection(ch);
+				boolean ok;
+				synchronized (this) {
+					connecting--;
+					ok = !closed;
+					if (ok) {
+						created++;
+						connections.add(conn);
+						conn.inFlight.add(exchange);
+					}
+				}
+				if (!ok) {
+					ch.close();
+					exchange.fail(runtime("connection pool for %s is closed", name));
+					return;
+				}
+				ch.pipeline().addLast("pool", new ResponseHandler(conn));
+				ch.closeFuture().addListener(unused -> closed(conn));
+				write(conn, exchange);
+			} else {
+				synchronized (this) {
+					connecting--;
+					errors++;
+				}
+				exchange.fail(future.cause());
+				next();
+			}
+		});
+	}
+	
+	private void write(Connection conn, Exchange exchange) {
+		HttpRequest req;
+		try {
+			req = exchange.request.get();
+		} catch (Throwable t) {
+			exchange.fail(t);
+			failed(conn, t);
+			return;
+		}
+		HttpHeaders.setKeepAlive(req, true);
+		exchange.method = req.getMethod();
+		exchange.flushed = false;
+		if (settings.readTimeoutMillis() > 0) {
+			exchange.timeout = conn.channel.eventLoop().schedule(() -> timedOut(conn, exchange), settings.readTimeoutMillis(), TimeUnit.MILLISECONDS);
+		}
+		conn.channel.writeAndFlush(req).addListener(future -> {
+			if (future.isSuccess()) {
+				exchange.flushed = true;
+			} else {
+				failed(conn, future.cause());
+			}
+		});
+	}
+	
+	private void received(Connection conn, FullHttpResponse response) {
+		Exchange exchange;
+		boolean keepAlive = HttpHeaders.isKeepAlive(response);
+		synchronized (this) {
+			exchange = conn.inFlight.pollFirst();
+			conn.responses++;
+			if (!keepAlive) conn.closing = true;
+		}
+		MutableData data = null;
+		Throwable error = null;
+		try {
+			data = HttpResponseToDataDecoder.toData(response);
+		} catch (Throwable t) {
+			error = t;
+		}
+		// give the connection back before completing so whatever happens next can use it
+		if (keepAlive) {
+			release(conn);
+		} else {
+			conn.channel.close();
+		}
+		if (exchange != null) {
+			if (error == null) {
+				exchange.complete(data);
+			} else {
+				exchange.fail(error);
+			}
+		}
+	}
+	
+	private void release(Connection conn) {
+		List<Exchange> send = new ArrayList<>();
+		synchronized (this) {
+			if (conn.closing || !conn.channel.isActive()) return;
+			while (!waiting.isEmpty() && conn.inFlight.size() < settings.pipelining()) {
+				Exchange exchange = waiting.pollFirst();
+				conn.inFlight.add(exchange);
+				send.add(exchange);
+			}
+			if (send.isEmpty()) {
+				if (conn.inFlight.isEmpty()) {
+					idle.addFirst(conn);
+				}
+			} else {
+				reused++;
+			}
+		}
+		send.forEach(exchange -> write(conn, exchange));
+	}
+	
+	private void timedOut(Connection conn, Exchange exchange) {
+		if (exchange.finish()) {
+			synchronized (this) {
+				timeouts++;
+			}
+			// responses come back in order so this connection can't be used any more
+			failed(conn, null);
+			exchange.onError.accept(new TimeoutException(String.format("no response from %s after %dms", name, settings.readTimeoutMillis())));
+		}
+	}
+	
+	private void failed(Connection conn, Throwable cause) {
+		synchronized (this) {
+			conn.failed = true;
+			conn.closing = true;
+			if (conn.cause == null) conn.cause = cause;
+		}
+		conn.channel.close();
+	}
+	
+	private void evict(Connection conn) {
+		synchronized (this) {
+			if (!conn.inFlight.isEmpty() || conn.closing) return;
+			conn.closing = true;
+			idle.remove(conn);
+			evicted++;
+		}
+		conn.channel.close();
+	}
+	
+	private void closed(Connection conn) {
+		List<Exchange> retry = new ArrayList<>();
+		List<Exchange> fail = new ArrayList<>();
+		Throwable cause;
+		synchronized (this) {
+			cause = conn.cause != null ? conn.cause : new ClosedChannelException();
+			connections.remove(conn);
+			idle.remove(conn);
+			for (Exchange exchange : conn.inFlight) {
+				// a kept-alive connection closed by the other side, worth one more go if the
+				// server can't have acted on it yet or it doesn't matter if it did (RFC 7230 6.3.1)
+				if (!conn.failed && conn.responses > 0 && !exchange.retried && !closed && (!exchange.flushed || idempotent(exchange.method))) {
+					exchange.retried = true;
+					retry.add(exchange);
+				} else {
+					fail.add(exchange);
+				}
+			}
+			conn.inFlight.clear();
+		}
+		fail.removeIf(exchange -> !exchange.finish());
+		if (!fail.isEmpty()) {
+			synchronized (this) {
+				errors += fail.size();
+			}
+			fail.forEach(exchange -> exchange.onError.accept(cause));
+		}
+		retry.forEach(exchange -> {
+			exchange.cancelTimeout();
+			dispatch(exchange);
+		});
+		next();
+	}
+	
+	private static boolean idempotent(HttpMethod method) {
+		return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method) || HttpMethod.TRACE.equals(method);
+	}
+	
+	/**
+	 * Makes a new connection for the next waiting request if there is room now.
+	 */
+	private void next() {
+		Exchange exchange = null;
+		synchronized (this) {
+			if (!waiting.isEmpty() && connections.size() + connecting < settings.maxConnections()) {
+				exchange = waiting.pollFirst();
+				connecting++;
+			}
+		}
+		if (exchange != null) {
+			connect(exchange);
+		}
+	}
+	
+	public void close() {
+		List<Connection> all;
+		List<Exchange> queued;
+		synchronized (this) {
+			closed = true;
+			all = new ArrayList<>(connections);
+			queued = new ArrayList<>(waiting);
+			waiting.clear();
+			idle.clear();
+		}
+		queued.forEach(exchange -> exchange.fail(runtime("connection pool for %s is closed", name)));
+		all.forEach(conn -> conn.channel.close());
+	}
+	
+	public synchronized Stats stats() {
+		long inFlight = 0;
+		for (Connection conn : connections) {
+			inFlight += conn.inFlight.size();
+		}
+		return new Stats(connections.size(), idle.size(), inFlight, waiting.size(), created, reused, requests, timeouts, errors, evicted);
+	}
+	
+	public static class Stats {
+		
+		public final long open, idle, inFlight, waiting;
+		public final long created, reused, requests, timeouts, errors, evicted;
+		
+		private Stats(long open, long idle, long inFlight, long waiting, long created, long reused, long requests, long timeouts, long errors, long evicted) {
+			this.open = open;
+			this.idle = idle;
+			this.inFlight = inFlight;
+			this.waiting = waiting;
+			this.created = created;
+			this.reused = reused;
+			this.requests = requests;
+			this.timeouts = timeouts;
+			this.errors = errors;
+			this.evicted = evicted;
+		}
+		
+		public void writeTo(MutableData data) {
+			data.putLong("open", open)
+				.putLong("idle", idle)
+				.putLong("in-flight", inFlight)
+				.putLong("waiting", waiting)
+				.putLong("created", created)
+				.putLong("reused", reused)
+				.putLong("requests", requests)
+				.putLong("timeouts", timeouts)
+				.putLong("errors", errors)
+				.putLong("evicted", evicted);
+		}
+		
+	}
+	
+	private static class Connection {
+		
+		private final Channel channel;
+		private final Deque<Exchange> inFlight = new ArrayDeque<>();
+		private long responses;
+		private boolean closing;
+		private boolean failed;
+		private Throwable cause;
+		
+		Connection(Channel channel) {
+			this.channel = channel;
+		}
+		
+	}
+	
+	private static class Exchange {
+		
+		private final Supplier<HttpRequest> request;
+		private final Consumer<MutableData> onResponse;
+		private final Consumer<Throwable> onError;
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile ScheduledFuture<?> timeout;
+		private boolean retried;
+		private volatile HttpMethod method;
+		private volatile boolean flushed;
+		
+		Exchange(Supplier<HttpRequest> request, Consumer<MutableData> onResponse, Consumer<Throwable> onError) {
+			this.request = request;
+			this.onResponse = onResponse;
+			this.onError = onError;
+		}
+		
+		void cancelTimeout() {
+			ScheduledFuture<?> t = timeout;
+			if (t != null) t.cancel(false);
+		}
+		
+		boolean finish() {
+			if (!done.compareAndSet(false, true)) return false;
+			cancelTimeout();
+			return true;
+		}
+		
+		void complete(MutableData data) {
+			if (finish()) {
+				onResponse.accept(data);
+			}
+		}
+		
+		void fail(Throwable t) {
+			if (finish()) {
+				onError.accept(t);
+			}
+		}
+		
+	}
+	
+	private class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+		
+		private final Connection conn;
+		
+		ResponseHandler(Connection conn) {
+			this.conn = conn;
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) throws Exception {
+			received(conn, response);
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if (evt instanceof IdleStateEvent) {
+				evict(conn);
+			} else {
+				ctx.fireUserEventTriggered(evt);
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			failed(conn, cause);
+		}
+		
+	}
+
+}
@@ -0,0 +1,127 @@
+package reka.net.http.client;
+
+import static reka.util.Path.path;
+import static reka.util.Util.unchecked;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.ssl.SslContext;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLException;
+
+import reka.app.ApplicationComponent;
+import reka.data.MutableData;
+
+/**
+ * Keeps the per-host connection pools used by the outgoing http requests of one app, they all
+ * run on the shared netty event loop group and are closed when the app is undeployed.
+ */
+public class HttpClientPool implements ApplicationComponent {
+	
+	private final EventLoopGroup group;
+	private final Class<? extends Channel> channelType;
+	
+	private final ConcurrentMap<Key,HostConnectionPool> pools = new ConcurrentHashMap<>();
+	
+	private volatile SslContext sslContext;
+	
+	public HttpClientPool(EventLoopGroup group, Class<? extends Channel> channelType) {
+		this.group = group;
+		this.channelType = channelType;
+	}
+	
+	public HostConnectionPool pool(String host, int port, boolean ssl, HttpClientSettings settings) {
+		return pools.computeIfAbsent(new Key(host, port, ssl, settings), 
+				key -> new HostConnectionPool(group, channelType, host, port, ssl ? sslContext() : null, settings));
+	}
+	
+	public void statusData(MutableData data) {
+		long open = 0, inFlight = 0, waiting = 0;
+		MutableData hosts = data.createMapAt(path("hosts"));
+		for (HostConnectionPool pool : pools.values()) {
+			HostConnectionPool.Stats stats = pool.stats();
+			open += stats.open;
+			inFlight += stats.inFlight;
+			waiting += stats.waiting;
+			String name = pool.name();
+			for (int n = 2; hosts.existsAt(path(name)); n++) {
+				name = pool.name() + " (" + n + ")";
+			}
+			stats.writeTo(hosts.createMapAt(path(name)));
+		}
+		data.putLong("open", open);
+		data.putLong("in-flight", inFlight);
+		data.putLong("waiting", waiting);
+	}
+	
+	public long open() {
+		long open = 0;
+		for (HostConnectionPool pool : pools.values()) {
+			open += pool.stats().open;
+		}
+		return open;
+	}
+	
+	public void shutdown() {
+		pools.values().forEach(HostConnectionPool::close);
+		pools.clear();
+	}
+	
+	@Override
+	public void undeploy() {
+		shutdown();
+	}
+	
+	@Override
+	public Runnable pause() {
+		return () -> {};
+	}
+	
+	private SslContext sslContext() {
+		if (sslContext == null) {
+			synchronized (this) {
+				if (sslContext == null) {
+					try {
+						sslContext = SslContext.newClientContext();
+					} catch (SSLException e) {
+						throw unchecked(e);
+					}
+				}
+			}
+		}
+		return sslContext;
+	}
+	
+	private static class Key {
+		
+		private final String host;
+		private final int port;
+		private final boolean ssl;
+		private final HttpClientSettings settings;
+		
+		Key(String host, int port, boolean ssl, HttpClientSettings settings) {
+			this.host = host;
+			this.port = port;
+			this.ssl = ssl;
+			this.settings = settings;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(host, port, ssl, settings);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return port == other.port && ssl == other.ssl && host.equals(other.host) && settings.equals(other.settings);
+		}
+		
+	}
+
+}
@@ -0,0 +1,71 @@
+package reka.net.http.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Objects;
+
+/**
+ * How connections to a single host are pooled. Pools are shared between operations
+ * that use the same host and the same settings.
+ */
+public class HttpClientSettings {
+	
+	public static final HttpClientSettings DEFAULT = new HttpClientSettings(8, 1, 60000, 10000, 30000);
+	
+	private final int maxConnections;
+	private final int pipelining;
+	private final long idleTimeoutMillis;
+	private final int connectTimeoutMillis;
+	private final long readTimeoutMillis;
+	
+	public HttpClientSettings(int maxConnections, int pipelining, long idleTimeoutMillis, int connectTimeoutMillis, long readTimeoutMillis) {
+		checkArgument(maxConnections > 0, "max connections must be positive");
+		checkArgument(pipelining > 0, "pipelining must be positive");
+		this.maxConnections = maxConnections;
+		this.pipelining = pipelining;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+	
+	public int maxConnections() {
+		return maxConnections;
+	}
+	
+	/**
+	 * @return how many requests can be outstanding on one connection at a time, 1 means no pipelining
+	 */
+	public int pipelining() {
+		return pipelining;
+	}
+	
+	public long idleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+	
+	public int connectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+	
+	public long readTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(maxConnections, pipelining, idleTimeoutMillis, connectTimeoutMillis, readTimeoutMillis);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof HttpClientSettings)) return false;
+		HttpClientSettings other = (HttpClientSettings) obj;
+		return maxConnections == other.maxConnections
+			&& pipelining == other.pipelining
+			&& idleTimeoutMillis == other.idleTimeoutMillis
+			&& connectTimeoutMillis == other.connectTimeoutMillis
+			&& readTimeoutMillis == other.readTimeoutMillis;
+	}
+	
+}
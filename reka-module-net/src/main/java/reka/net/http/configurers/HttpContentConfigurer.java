@@ -11,16 +11,23 @@ import reka.data.content.types.BinaryContent;
 import reka.module.setup.OperationConfigurer;
 import reka.module.setup.OperationSetup;
 import reka.net.http.operations.HttpContentUtils;
+import reka.net.http.server.HttpCompression;
 import reka.util.dirs.AppDirs;
 
 public class HttpContentConfigurer implements OperationConfigurer {
 	
 	private final AppDirs dirs;
+	private final HttpCompression compression;
 	private Content content;
 	private String contentType;
 	
 	public HttpContentConfigurer(AppDirs dirs) {
+		this(dirs, HttpCompression.DEFAULT);
+	}
+	
+	public HttpContentConfigurer(AppDirs dirs, HttpCompression compression) {
 		this.dirs = dirs;
+		this.compression = compression;
 	}
 	
 	@Conf.Config
@@ -63,7 +70,7 @@ public class HttpContentConfigurer implements OperationConfigurer {
 				contentType = ct;
 			}
 		}
-		ops.add("content", () -> HttpContentUtils.httpContent(dirs.tmp(), content, contentType, true));
+		ops.add("content", () -> HttpContentUtils.httpContent(dirs.tmp(), content, contentType, true, compression));
 	}
 
 }
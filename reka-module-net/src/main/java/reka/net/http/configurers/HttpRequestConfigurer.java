@@ -1,34 +1,40 @@
 package reka.net.http.configurers;
 
+import static reka.config.configurer.Configurer.Preconditions.checkConfig;
 import static reka.util.Path.dots;
 import static reka.util.Path.path;
-import io.netty.channel.Channel;
-import io.netty.channel.EventLoopGroup;
 
 import java.util.Optional;
 import java.util.function.Function;
 
+import reka.config.Config;
 import reka.config.configurer.annotations.Conf;
 import reka.data.Data;
 import reka.module.setup.OperationConfigurer;
 import reka.module.setup.OperationSetup;
+import reka.net.http.client.HttpClientPool;
+import reka.net.http.client.HttpClientSettings;
 import reka.net.http.operations.HttpRequestOperation;
 import reka.util.Path;
 
 public class HttpRequestConfigurer implements OperationConfigurer {
 	
-	private final EventLoopGroup group;
-	private final Class<? extends Channel> channelType;
+	private final HttpClientPool clients;
 	
 	private String url;
 	private String method = "GET";
 	private Path into = path("response");
 	
+	private int maxConnections = HttpClientSettings.DEFAULT.maxConnections();
+	private int pipelining = HttpClientSettings.DEFAULT.pipelining();
+	private long idleTimeout = HttpClientSettings.DEFAULT.idleTimeoutMillis();
+	private int connectTimeout = HttpClientSettings.DEFAULT.connectTimeoutMillis();
+	private long timeout = HttpClientSettings.DEFAULT.readTimeoutMillis();
+	
 	private Optional<Function<Data,Data>> bodyFnOption = Optional.empty();
 	
-	public HttpRequestConfigurer(EventLoopGroup group, Class<? extends Channel> channelType) {
-		this.group = group;
-		this.channelType = channelType;
+	public HttpRequestConfigurer(HttpClientPool clients) {
+		this.clients = clients;
 	}
 
 	@Conf.Val
@@ -54,10 +60,38 @@ public class HttpRequestConfigurer implements OperationConfigurer {
 		Function<Data,Data> fn = data -> data.at(path);
 		bodyFnOption = Optional.of(fn);
 	}
+	
+	@Conf.At("max-connections")
+	public void maxConnections(Config config) {
+		maxConnections = config.valueAsInt();
+		checkConfig(maxConnections > 0, "max-connections must be positive");
+	}
+	
+	@Conf.At("pipelining")
+	public void pipelining(Config config) {
+		pipelining = config.valueAsInt();
+		checkConfig(pipelining > 0, "pipelining must be positive");
+	}
+	
+	@Conf.At("idle-timeout")
+	public void idleTimeout(Config config) {
+		idleTimeout = config.valueAsLong();
+	}
+	
+	@Conf.At("connect-timeout")
+	public void connectTimeout(Config config) {
+		connectTimeout = config.valueAsInt();
+	}
+	
+	@Conf.At("timeout")
+	public void timeout(Config config) {
+		timeout = config.valueAsLong();
+	}
 
 	@Override
 	public void setup(OperationSetup ops) {
-		ops.add("request", () -> new HttpRequestOperation(group, channelType, url, method, bodyFnOption, into));
+		HttpClientSettings settings = new HttpClientSettings(maxConnections, pipelining, idleTimeout, connectTimeout, timeout);
+		ops.add("request", () -> new HttpRequestOperation(clients, settings, url, method, bodyFnOption, into));
 	}
 
 }
@@ -170,7 +170,7 @@ public class HttpRouterConfigurer extends HttpRouteGroupConfigurer implements Op
 				return new HttpRouter.StaticRoute(key, path, method, RouteFormatters.create(path));
 			} else {
 				log.debug("http router regex [{}] for [{}]", pattern, key);
-				return new HttpRouter.RegexRoute(key, pattern, ImmutableList.copyOf(vars), method, RouteFormatters.create(path));
+				return new HttpRouter.RegexRoute(key, pattern, ImmutableList.copyOf(vars), method, RouteFormatters.create(path), path);
 			}
 		}
 
@@ -3,15 +3,21 @@ package reka.net.http.converters;
 import static reka.data.content.Contents.binary;
 import static reka.util.Path.CONTENT;
 import io.netty.handler.codec.http.FullHttpMessage;
+
+import java.io.File;
+
 import reka.data.MutableData;
 
 public class DefaultMessageToDataConverter implements HttpMessageToDataConverter {
 
 	@Override
 	public void processData(FullHttpMessage message, MutableData out, String contentType) throws Exception {
-		byte[] bytes = new byte[message.content().readableBytes()];
-		message.content().readBytes(bytes);
-		out.put(CONTENT, binary(contentType, bytes));
+		File file = MessageBodies.file(message);
+		if (file != null) {
+			out.put(CONTENT, binary(contentType, file));
+		} else {
+			out.put(CONTENT, binary(contentType, MessageBodies.bytes(message)));
+		}
 	}
 	
 }
\ No newline at end of file
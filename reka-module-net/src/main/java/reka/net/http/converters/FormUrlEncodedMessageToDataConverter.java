@@ -18,8 +18,7 @@ public class FormUrlEncodedMessageToDataConverter implements HttpMessageToDataCo
 
 	@Override
 	public void processData(FullHttpMessage message, MutableData out, String contentType) throws Exception {
-		byte[] bytes = new byte[message.content().readableBytes()];
-		message.content().readBytes(bytes);
+		byte[] bytes = MessageBodies.bytes(message);
 		QueryStringDecoder formparams = new QueryStringDecoder("?" + new String(bytes));
 		MutableData requestData = out.createMapAt(CONTENT);
 		for (Entry<String, List<String>> entry : formparams.parameters().entrySet()) {
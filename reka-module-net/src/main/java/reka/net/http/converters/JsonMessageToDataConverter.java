@@ -1,7 +1,6 @@
 package reka.net.http.converters;
 
 import static reka.util.Path.CONTENT;
-import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.FullHttpMessage;
 
 import java.io.InputStream;
@@ -18,7 +17,7 @@ public class JsonMessageToDataConverter implements HttpMessageToDataConverter {
 
 	@Override
 	public void processData(FullHttpMessage message, MutableData out, String contentType) throws Exception {
-		try (InputStream content = new ByteBufInputStream(message.content())) {
+		try (InputStream content = MessageBodies.stream(message)) {
 			
 			// TODO: need to fix this up, and the data stuff too! (MutableMemoryData.readJson(factory.createJsonParser(content)))
 			
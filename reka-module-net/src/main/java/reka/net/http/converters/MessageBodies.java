@@ -0,0 +1,49 @@
+package reka.net.http.converters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.http.FullHttpMessage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import reka.net.http.server.SpooledHttpRequest;
+
+/**
+ * Reads message bodies whether they are in memory or have been spooled to disk, 
+ * without moving the reader index.
+ */
+final class MessageBodies {
+	
+	private MessageBodies() {}
+	
+	static File file(FullHttpMessage message) {
+		if (message instanceof SpooledHttpRequest) {
+			return ((SpooledHttpRequest) message).file();
+		}
+		return null;
+	}
+	
+	static byte[] bytes(FullHttpMessage message) throws IOException {
+		File file = file(message);
+		if (file != null) {
+			return Files.readAllBytes(file.toPath());
+		}
+		ByteBuf content = message.content();
+		byte[] bytes = new byte[content.readableBytes()];
+		content.getBytes(content.readerIndex(), bytes);
+		return bytes;
+	}
+	
+	static InputStream stream(FullHttpMessage message) throws IOException {
+		File file = file(message);
+		if (file != null) {
+			return new FileInputStream(file);
+		}
+		return new ByteBufInputStream(message.content().duplicate());
+	}
+
+}
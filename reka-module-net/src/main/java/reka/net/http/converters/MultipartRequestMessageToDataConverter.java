@@ -4,28 +4,53 @@ import static reka.data.content.Contents.binary;
 import static reka.data.content.Contents.utf8;
 import static reka.util.Path.CONTENT;
 import static reka.util.Path.dots;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
 import io.netty.handler.codec.http.FullHttpMessage;
-import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.multipart.Attribute;
 import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
 import io.netty.handler.codec.http.multipart.FileUpload;
 import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
 import io.netty.handler.codec.http.multipart.InterfaceHttpData;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import reka.data.MutableData;
 import reka.data.memory.MutableMemoryData;
+import reka.net.http.server.SpooledHttpRequest;
 
 public class MultipartRequestMessageToDataConverter implements HttpMessageToDataConverter {
 
 	private static final Logger log = LoggerFactory.getLogger(MultipartRequestMessageToDataConverter.class);
 	
+	private static final int CHUNK_SIZE = 8192;
+	
 	@Override
 	public void processData(FullHttpMessage message, MutableData out, String contentType) throws Exception {
 		MutableData requestData = out.createMapAt(CONTENT);
-		HttpPostRequestDecoder post = new HttpPostRequestDecoder(new DefaultHttpDataFactory(false), (FullHttpRequest)message);
+		
+		HttpRequest request = (HttpRequest) message;
+		HttpRequest head = new DefaultHttpRequest(request.getProtocolVersion(), request.getMethod(), request.getUri());
+		head.headers().set(request.headers());
+		
+		// parts bigger than MINSIZE are written to disk as they are decoded
+		HttpPostRequestDecoder post = new HttpPostRequestDecoder(new DefaultHttpDataFactory(DefaultHttpDataFactory.MINSIZE), head);
+		
+		if (message instanceof SpooledHttpRequest) {
+			((SpooledHttpRequest) message).onRelease(post::destroy);
+		}
+		
+		offerBody(post, message);
+		
 		int uploadCount = 0;
 		for (InterfaceHttpData postdata : post.getBodyHttpDatas()) {
 			log.debug("{} -> {}", postdata.getName(), postdata.getHttpDataType());
@@ -36,8 +61,13 @@ public class MultipartRequestMessageToDataConverter implements HttpMessageToData
 				MutableData postItem = MutableMemoryData.create();
 				postItem
 					//.put(dots("name"), utf8(upload.getName()))
-					.putString(dots("filename"), upload.getFilename())
-					.put(dots("data"), binary(upload.getContentType(), upload.getByteBuf().retain().nioBuffer().asReadOnlyBuffer()));
+					.putString(dots("filename"), upload.getFilename());
+				
+				if (upload.isInMemory()) {
+					postItem.put(dots("data"), binary(upload.getContentType(), upload.getByteBuf().retain().nioBuffer().asReadOnlyBuffer()));
+				} else {
+					postItem.put(dots("data"), binary(upload.getContentType(), upload.getFile()));
+				}
 										
 				requestData.put(dots(postdata.getName()), postItem);
 				uploadCount++;
@@ -61,4 +91,21 @@ public class MultipartRequestMessageToDataConverter implements HttpMessageToData
 		}
 	}
 	
-}
\ No newline at end of file
+	private static void offerBody(HttpPostRequestDecoder post, FullHttpMessage message) throws IOException {
+		File file = MessageBodies.file(message);
+		if (file != null) {
+			try (FileChannel channel = FileChannel.open(file.toPath())) {
+				ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+				while (channel.read(buffer) > 0) {
+					buffer.flip();
+					post.offer(new DefaultHttpContent(Unpooled.wrappedBuffer(buffer)));
+					buffer.clear();
+				}
+			}
+		} else {
+			post.offer(new DefaultHttpContent(message.content().duplicate()));
+		}
+		post.offer(LastHttpContent.EMPTY_LAST_CONTENT);
+	}
+	
+}
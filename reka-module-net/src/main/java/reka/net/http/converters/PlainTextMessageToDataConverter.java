@@ -11,8 +11,7 @@ public class PlainTextMessageToDataConverter implements HttpMessageToDataConvert
 
 	@Override
 	public void processData(FullHttpMessage message, MutableData out, String contentType) throws Exception {
-		byte[] bytes = new byte[message.content().readableBytes()];
-		message.content().readBytes(bytes);
+		byte[] bytes = MessageBodies.bytes(message);
 		out.putString(CONTENT, new String(bytes, StandardCharsets.UTF_8));
 	}
 	
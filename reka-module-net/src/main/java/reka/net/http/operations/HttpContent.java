@@ -1,5 +1,7 @@
 package reka.net.http.operations;
 
+import static reka.data.content.Contents.utf8;
+
 import java.nio.file.Path;
 
 import reka.data.MutableData;
@@ -7,20 +9,37 @@ import reka.data.content.Content;
 import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
 import reka.net.http.operations.HttpContentUtils.ContentAndType;
+import reka.net.http.server.HttpCompression;
 import reka.util.Path.Response;
 
 public class HttpContent implements Operation {
 	
+	static final Content GZIP = utf8(HttpCompression.GZIP);
+	static final Content ACCEPT_ENCODING = utf8("Accept-Encoding");
+	
 	private final Content content, contentType;
+	private final Content gzipped;
+	private final HttpCompression compression;
 	
-	protected HttpContent(Path tmpdir, Content content, String contentType) {
+	protected HttpContent(Path tmpdir, Content content, String contentType, HttpCompression compression) {
 		ContentAndType vals = HttpContentUtils.convert(tmpdir, content, contentType);
 		this.content = vals.content();
 		this.contentType = vals.type();
+		this.gzipped = HttpContentUtils.precompress(tmpdir, vals, compression);
+		this.compression = compression;
 	}
 
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
+		if (gzipped != null) {
+			data.put(Response.Headers.VARY, ACCEPT_ENCODING);
+			if (HttpContentUtils.acceptsGzip(data, compression)) {
+				data.put(Response.CONTENT, gzipped)
+					.put(Response.Headers.CONTENT_ENCODING, GZIP)
+					.put(Response.Headers.CONTENT_TYPE, contentType);
+				return;
+			}
+		}
 		data.put(Response.CONTENT, content)
 		    .put(Response.Headers.CONTENT_TYPE, contentType);
 	}
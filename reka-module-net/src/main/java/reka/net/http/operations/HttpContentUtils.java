@@ -12,8 +12,11 @@ import java.nio.file.Path;
 
 import javax.activation.MimetypesFileTypeMap;
 
+import reka.data.Data;
 import reka.data.content.Content;
 import reka.flow.ops.Operation;
+import reka.net.http.server.HttpCompression;
+import reka.util.Path.Request;
 
 public abstract class HttpContentUtils {
 	
@@ -24,7 +27,11 @@ public abstract class HttpContentUtils {
 	}
 	
 	public static Operation httpContent(Path tmpdir, Content content, String contentType, boolean useEtag) {
-		return useEtag ? new HttpContentWithETag(tmpdir, content, contentType) : new HttpContent(tmpdir, content, contentType);
+		return httpContent(tmpdir, content, contentType, useEtag, HttpCompression.DEFAULT);
+	}
+	
+	public static Operation httpContent(Path tmpdir, Content content, String contentType, boolean useEtag, HttpCompression compression) {
+		return useEtag ? new HttpContentWithETag(tmpdir, content, contentType, compression) : new HttpContent(tmpdir, content, contentType, compression);
 	}
 
 	private static final long PUT_IN_FILE_THRESHOLD = 1024L * 32l; // 32k;
@@ -76,6 +83,24 @@ public abstract class HttpContentUtils {
 		
 	}
 
+	/**
+	 * Gzips the content up front if it's worth it, so it doesn't need doing per request.
+	 * 
+	 * @return the compressed content or null if it shouldn't be compressed
+	 */
+	public static Content precompress(java.nio.file.Path basedir, ContentAndType vals, HttpCompression compression) {
+		String contentType = vals.type().asUTF8();
+		byte[] bytes = vals.content().asBytes();
+		if (!compression.compressible(contentType, bytes.length)) return null;
+		byte[] compressed = compression.compress(bytes, HttpCompression.GZIP);
+		if (compressed.length >= bytes.length) return null;
+		return convert(basedir, binary(contentType, compressed), contentType).content();
+	}
+	
+	public static boolean acceptsGzip(Data data, HttpCompression compression) {
+		return HttpCompression.GZIP.equals(compression.encodingFor(data.getString(Request.Headers.ACCEPT_ENCODING).orElse(null)));
+	}
+
 	private static String mimeType(String val) {
 		return val.contains("/") ? val : mimeTypesMap.getContentType("fn." + val);
 	}
@@ -13,6 +13,7 @@ import reka.data.content.Contents;
 import reka.flow.ops.Operation;
 import reka.flow.ops.OperationContext;
 import reka.net.http.operations.HttpContentUtils.ContentAndType;
+import reka.net.http.server.HttpCompression;
 import reka.util.Path.Request;
 import reka.util.Path.Response;
 
@@ -29,10 +30,16 @@ public class HttpContentWithETag implements Operation {
 	private final String etagValue;
 	private final Content etag;
 	
+	// the gzipped variant has its own etag
+	private final Content gzipped;
+	private final String gzippedEtagValue;
+	private final Content gzippedEtag;
+	private final HttpCompression compression;
+	
 	private static final Content EMPTY = Contents.nullValue();	
 	private static final Content NOT_MODIFIED = integer(304);
 	
-	protected HttpContentWithETag(Path tmpdir, Content content, String contentType) {
+	protected HttpContentWithETag(Path tmpdir, Content content, String contentType, HttpCompression compression) {
 		ContentAndType vals = HttpContentUtils.convert(tmpdir, content, contentType);
 		this.content = vals.content();
 		this.contentType = vals.type();
@@ -41,10 +48,26 @@ public class HttpContentWithETag implements Operation {
 		hasher.putString(contentType, StandardCharsets.UTF_8);
 		etagValue = hex(hasher.hash().asBytes());
 		etag = utf8(etagValue);
+		this.gzipped = HttpContentUtils.precompress(tmpdir, vals, compression);
+		this.gzippedEtagValue = etagValue + "-gzip";
+		this.gzippedEtag = utf8(gzippedEtagValue);
+		this.compression = compression;
 	}
 
 	@Override
 	public void call(MutableData data, OperationContext ctx) {
+		if (gzipped != null) {
+			data.put(Response.Headers.VARY, HttpContent.ACCEPT_ENCODING);
+			if (HttpContentUtils.acceptsGzip(data, compression)) {
+				respond(data, gzipped, gzippedEtagValue, gzippedEtag);
+				data.put(Response.Headers.CONTENT_ENCODING, HttpContent.GZIP);
+				return;
+			}
+		}
+		respond(data, content, etagValue, etag);
+	}
+	
+	private void respond(MutableData data, Content content, String etagValue, Content etag) {
 		if (data.existsAt(Request.Headers.IF_NONE_MATCH) && etagValue.equals(data.getString(Request.Headers.IF_NONE_MATCH).orElse(""))) {
 			data.put(Response.CONTENT, EMPTY)
 				.put(Response.STATUS, NOT_MODIFIED);
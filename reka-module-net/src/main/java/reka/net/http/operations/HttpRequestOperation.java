@@ -2,28 +2,16 @@ package reka.net.http.operations;
 
 import static reka.util.Util.runtime;
 import static reka.util.Util.unchecked;
-import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufOutputStream;
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelHandler;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
-import io.netty.handler.codec.http.DefaultHttpRequest;
-import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpVersion;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Optional;
@@ -36,27 +24,24 @@ import reka.data.Data;
 import reka.data.MutableData;
 import reka.flow.ops.AsyncOperation;
 import reka.flow.ops.OperationContext;
-import reka.net.http.server.HttpResponseToDataDecoder;
+import reka.net.http.client.HostConnectionPool;
+import reka.net.http.client.HttpClientPool;
+import reka.net.http.client.HttpClientSettings;
 import reka.util.JsonProvider;
 import reka.util.Path;
 
 public class HttpRequestOperation implements AsyncOperation {
 
-	private final Bootstrap bootstrap;
+	private final HostConnectionPool pool;
 
-	private final String host;
-	private final int port;
 	private final String path;
 	private final HttpMethod method;
 	private final Path into;
 	private final Function<Data,Data> bodyFn;
 
-	public HttpRequestOperation(EventLoopGroup group, Class<? extends Channel> channelType, String url, String method, Optional<Function<Data,Data>> bodyFnOption, Path into) {
+	public HttpRequestOperation(HttpClientPool clients, HttpClientSettings settings, String url, String method, Optional<Function<Data,Data>> bodyFnOption, Path into) {
 		URI uri = makeURI(url);
 		
-		this.port = uri.getPort();
-		this.host = uri.getHost();
-		
 		if (uri.getRawQuery() != null) {
 			this.path = uri.getRawPath() + "?" + uri.getRawQuery();
 		} else {
@@ -66,68 +51,44 @@ public class HttpRequestOperation implements AsyncOperation {
 		this.bodyFn = bodyFnOption.orElse(null);
 		this.into = into;
 		
-		final ChannelHandler decoder = new HttpResponseToDataDecoder();
-		
-		bootstrap = new Bootstrap()
-				.group(group)
-				.channel(channelType)
-				.handler(new ChannelInitializer<SocketChannel>() {
-
-					@Override
-					protected void initChannel(SocketChannel ch) throws Exception {
-						ChannelPipeline pipeline = ch.pipeline();
-						pipeline.addLast("http", new HttpClientCodec());
-						pipeline.addLast("aggregator", new HttpObjectAggregator(5242880));
-						pipeline.addLast("decode", decoder);
-					}
-					
-				});
+		this.pool = clients.pool(uri.getHost(), uri.getPort(), "https".equals(uri.getScheme()), settings);
 	}
 
 	@Override
 	public void call(MutableData data, OperationContext ctx, OperationResult res) {
-
-		bootstrap.connect(host, port).addListener(new ChannelFutureListener() {
-
-			@Override
-			public void operationComplete(ChannelFuture cf) throws Exception {
-				
-				Channel ch = cf.channel();
-				
-				ch.pipeline().addLast(new SimpleChannelInboundHandler<MutableData>(){
-
-					@Override
-					protected void channelRead0(ChannelHandlerContext ctx, MutableData msg) throws Exception {
-						data.put(into, msg);
-						res.done();
-					}
-					
-				});
-
-				HttpRequest req;
-
-				if (bodyFn != null) {
-					ByteBuf buf = ch.alloc().buffer();
-					Data bodyData = bodyFn.apply(data);
-					ByteBufOutputStream out = new ByteBufOutputStream(buf);
-					JsonGenerator json = JsonProvider.jsonFactory.createJsonGenerator(out);
-					bodyData.writeJsonTo(json);
-					json.flush();
-					json.close();
-					out.close();
-					req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, path, buf);
-					req.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
-					req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, buf.readableBytes());
-				} else {
-					req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, path);
-				}
-				
-				req.headers().set(HttpHeaders.Names.HOST, host);
-				req.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
-
-				ch.writeAndFlush(req);
+		pool.send(() -> request(data), response -> {
+			data.put(into, response);
+			res.done();
+		}, res::error);
+	}
+	
+	private HttpRequest request(Data data) {
+		
+		HttpRequest req;
+
+		if (bodyFn != null) {
+			ByteBuf buf = Unpooled.buffer();
+			Data bodyData = bodyFn.apply(data);
+			try (ByteBufOutputStream out = new ByteBufOutputStream(buf)) {
+				JsonGenerator json = JsonProvider.jsonFactory.createJsonGenerator(out);
+				bodyData.writeJsonTo(json);
+				json.flush();
+				json.close();
+			} catch (IOException e) {
+				buf.release();
+				throw unchecked(e);
 			}
-		});
+			req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, path, buf);
+			req.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+			req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, buf.readableBytes());
+		} else {
+			req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, path);
+			req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, 0);
+		}
+		
+		req.headers().set(HttpHeaders.Names.HOST, pool.host());
+		
+		return req;
 	}
 
 	private URI makeURI(String url) {
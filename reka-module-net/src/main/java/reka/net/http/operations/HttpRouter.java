@@ -52,6 +52,7 @@ public class HttpRouter implements RouterOperation {
 
 	private final Set<RouteKey> connectionNames = new HashSet<>();
 	private final Collection<Route> routes;
+	private final RouteTrie trie;
 	private final boolean hasOtherwiseRoute;
 
 	public HttpRouter(Collection<Route> incoming, boolean hasElseRoute) {
@@ -61,6 +62,7 @@ public class HttpRouter implements RouterOperation {
 		Collections.sort(sortedRoutes, routeComparator);
 		
 		this.routes = ImmutableList.copyOf(sortedRoutes);
+		this.trie = RouteTrie.compile(sortedRoutes);
 		this.hasOtherwiseRoute = hasElseRoute;
 		
 		for (Route route : routes) {
@@ -80,11 +82,9 @@ public class HttpRouter implements RouterOperation {
 		String path = data.getString(Request.PATH).orElse("");
 		HttpMethod method = HttpMethod.valueOf(data.getString(Request.METHOD).orElse("GET"));
 		
-		for (Route route : routes) {
-			if (route.matches(method, path, data)) {
-				router.routeTo(route.key());
-				break;
-			}
+		RouteKey key = trie.route(method, path, data);
+		if (key != null) {
+			router.routeTo(key);
 		}
 
 		if (hasOtherwiseRoute && router.routed().isEmpty()) {
@@ -203,6 +203,10 @@ public class HttpRouter implements RouterOperation {
 			throw unsupported();
 		}
 		
+		String prefix() {
+			return prefix;
+		}
+		
 	}
 	
 	public static final class StaticRoute implements Route {
@@ -240,6 +244,14 @@ public class HttpRouter implements RouterOperation {
 		public RouteFormatter formatter() {
 			return formatter;
 		}
+		
+		String path() {
+			return path;
+		}
+		
+		HttpMethod method() {
+			return method;
+		}
 	}
 	
 	public static final class HttpRouteVar {
@@ -249,6 +261,9 @@ public class HttpRouter implements RouterOperation {
 			this.id = id;
 			this.path = path;
 		}
+		Path path() {
+			return path;
+		}
 	}
 	
 	public static final class RegexRoute implements Route {
@@ -258,6 +273,7 @@ public class HttpRouter implements RouterOperation {
 		private final List<HttpRouteVar> keys;
 		private final HttpMethod method;
 		private final RouteFormatter formatter;
+		private final String template;
 		
 		private final ThreadLocal<Matcher> m = new ThreadLocal<Matcher>(){
 
@@ -270,11 +286,17 @@ public class HttpRouter implements RouterOperation {
 
 		public RegexRoute(RouteKey key, Pattern pattern, List<HttpRouteVar> keys,
 				HttpMethod method, RouteFormatter formatter) {
+			this(key, pattern, keys, method, formatter, null);
+		}
+
+		public RegexRoute(RouteKey key, Pattern pattern, List<HttpRouteVar> keys,
+				HttpMethod method, RouteFormatter formatter, String template) {
 			this.key = key;
 			this.pattern = pattern;
 			this.keys = keys;
 			this.method = method;
 			this.formatter = formatter;
+			this.template = template;
 		}
 		
 		@Override
@@ -309,6 +331,18 @@ public class HttpRouter implements RouterOperation {
 			return formatter;
 		}
 		
+		List<HttpRouteVar> keys() {
+			return keys;
+		}
+		
+		HttpMethod method() {
+			return method;
+		}
+		
+		String template() {
+			return template;
+		}
+		
 	}
 	
 	public static class RouteFunctions implements RouteFormatter {
@@ -0,0 +1,305 @@
+package reka.net.http.operations;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import reka.data.MutableData;
+import reka.flow.ops.RouteKey;
+import reka.net.http.operations.HttpRouter.HttpRouteVar;
+import reka.net.http.operations.HttpRouter.MountRoute;
+import reka.net.http.operations.HttpRouter.RegexRoute;
+import reka.net.http.operations.HttpRouter.Route;
+import reka.net.http.operations.HttpRouter.StaticRoute;
+
+/**
+ * Routes compiled into a segment trie per method, plus one for mount prefixes.
+ * 
+ * Every route keeps its position in the sorted route list as its rank, and the
+ * lowest ranked match wins, so the result is always the same as checking each
+ * route in order. Routes the trie can't represent exactly (optional vars, vars
+ * inside a segment, custom routes) are still checked in order, but only the
+ * ones that rank before the best trie match.
+ */
+final class RouteTrie {
+	
+	private static final Pattern PARAM = Pattern.compile("\\:(?:([a-zA-Z0-9_\\-]+)|\\{([a-zA-Z0-9_\\-\\.]+)\\})");
+	private static final Pattern STAR = Pattern.compile("\\:(?:([a-zA-Z0-9_\\-]+)|\\{([a-zA-Z0-9_\\-\\.]+)\\})\\*");
+	private static final String[] NO_CAPTURES = new String[0];
+	private static final Pattern ANY_VAR = Pattern.compile("\\:(?:[a-zA-Z0-9_\\-]|\\{[a-zA-Z0-9_\\-\\.]+\\})");
+	
+	private static class Candidate {
+		
+		final int rank;
+		final Route route;
+		
+		Candidate(int rank, Route route) {
+			this.rank = rank;
+			this.route = route;
+		}
+		
+	}
+	
+	private static final class StarCandidate extends Candidate {
+		
+		final String stem;
+		
+		StarCandidate(int rank, Route route, String stem) {
+			super(rank, route);
+			this.stem = stem;
+		}
+		
+	}
+	
+	private static final class Node {
+		
+		final Map<String,Node> children = new HashMap<>();
+		final List<StarCandidate> stars = new ArrayList<>();
+		
+		Node param;
+		Candidate terminal;
+		int minRank = Integer.MAX_VALUE;
+		
+		Node child(String segment) {
+			return children.computeIfAbsent(segment, s -> new Node());
+		}
+		
+		Node param() {
+			if (param == null) param = new Node();
+			return param;
+		}
+		
+	}
+	
+	private static final class Best {
+		
+		int rank = Integer.MAX_VALUE;
+		Candidate candidate;
+		String[] values;
+		
+		void offer(Candidate c, String[] captures, int depth, String rest) {
+			if (c.rank >= rank) return;
+			rank = c.rank;
+			candidate = c;
+			values = new String[rest != null ? depth + 1 : depth];
+			System.arraycopy(captures, 0, values, 0, depth);
+			if (rest != null) values[depth] = rest;
+		}
+		
+	}
+	
+	static RouteTrie compile(List<Route> sortedRoutes) {
+		RouteTrie trie = new RouteTrie();
+		for (int rank = 0; rank < sortedRoutes.size(); rank++) {
+			trie.add(rank, sortedRoutes.get(rank));
+		}
+		return trie;
+	}
+	
+	private final Node mounts = new Node();
+	private final Map<HttpMethod,Node> methods = new HashMap<>();
+	private final List<Candidate> fallback = new ArrayList<>();
+	
+	private int maxCaptures = 0;
+	
+	private RouteTrie() { }
+	
+	private void add(int rank, Route route) {
+		boolean added = false;
+		if (route instanceof MountRoute) {
+			added = addMount(rank, (MountRoute) route);
+		} else if (route instanceof StaticRoute) {
+			added = addStatic(rank, (StaticRoute) route);
+		} else if (route instanceof RegexRoute) {
+			added = addRegex(rank, (RegexRoute) route);
+		}
+		if (!added) {
+			fallback.add(new Candidate(rank, route));
+		}
+	}
+	
+	private boolean addMount(int rank, MountRoute route) {
+		String prefix = route.prefix();
+		if (!prefix.isEmpty() && !prefix.startsWith("/")) return false;
+		Node node = mounts;
+		visit(node, rank);
+		if (!prefix.isEmpty()) {
+			for (String segment : segments(prefix)) {
+				node = node.child(segment);
+				visit(node, rank);
+			}
+		}
+		if (node.terminal == null) node.terminal = new Candidate(rank, route);
+		return true;
+	}
+	
+	private boolean addStatic(int rank, StaticRoute route) {
+		String path = route.path();
+		if (!path.isEmpty() && !path.startsWith("/")) return false;
+		Node node = root(route.method());
+		visit(node, rank);
+		if (!path.isEmpty()) {
+			for (String segment : segments(path)) {
+				node = node.child(segment);
+				visit(node, rank);
+			}
+		}
+		if (node.terminal == null) node.terminal = new Candidate(rank, route);
+		return true;
+	}
+	
+	private boolean addRegex(int rank, RegexRoute route) {
+		String template = route.template();
+		if (template == null) return false;
+		boolean rooted = template.startsWith("/");
+		if (!rooted) template = "/" + template; // the regex always had a leading slash
+		
+		String[] segments = segments(template);
+		int last = segments.length - 1;
+		boolean starred = STAR.matcher(segments[last]).matches();
+		if (starred && last == 0 && !rooted) return false; // that leading slash isn't optional then
+		int params = 0;
+		
+		for (int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+			if (i == last && starred) continue;
+			if (PARAM.matcher(segment).matches()) {
+				params++;
+			} else if (ANY_VAR.matcher(segment).find()) {
+				return false; // optional, or sharing a segment with other text
+			}
+		}
+		
+		List<HttpRouteVar> keys = route.keys();
+		if (keys.size() != params + (starred ? 1 : 0)) return false;
+		
+		// a starred var swallows the slash before it, so it hangs off the segment before that
+		int stop = last;
+		String stem = "";
+		if (starred && last > 0 && !PARAM.matcher(segments[last - 1]).matches()) {
+			stop = last - 1;
+			stem = "/" + segments[last - 1];
+		}
+		
+		Node node = root(route.method());
+		visit(node, rank);
+		for (int i = 0; i < (starred ? stop : segments.length); i++) {
+			String segment = segments[i];
+			node = PARAM.matcher(segment).matches() ? node.param() : node.child(segment);
+			visit(node, rank);
+		}
+		
+		if (starred) {
+			node.stars.add(new StarCandidate(rank, route, stem));
+		} else if (node.terminal == null) {
+			node.terminal = new Candidate(rank, route);
+		}
+		
+		maxCaptures = Math.max(maxCaptures, params);
+		return true;
+	}
+	
+	private Node root(HttpMethod method) {
+		return methods.computeIfAbsent(method, m -> new Node());
+	}
+	
+	private static void visit(Node node, int rank) {
+		node.minRank = Math.min(node.minRank, rank);
+	}
+	
+	private static String[] segments(String path) {
+		// path starts with a '/', keeps empty segments so "/a/" and "/a" stay different
+		List<String> segments = new ArrayList<>();
+		int pos = 0;
+		while (pos < path.length()) {
+			int end = path.indexOf('/', pos + 1);
+			if (end < 0) end = path.length();
+			segments.add(path.substring(pos + 1, end));
+			pos = end;
+		}
+		return segments.toArray(new String[segments.size()]);
+	}
+	
+	RouteKey route(HttpMethod method, String path, MutableData data) {
+		
+		Best best = new Best();
+		
+		matchMount(path, best);
+		
+		Node root = methods.get(method);
+		if (root != null) {
+			match(root, path, 0, new String[maxCaptures], 0, best);
+		}
+		
+		for (Candidate c : fallback) {
+			if (c.rank >= best.rank) break;
+			if (c.route.matches(method, path, data)) {
+				return c.route.key();
+			}
+		}
+		
+		if (best.candidate == null) return null;
+		
+		Route route = best.candidate.route;
+		if (route instanceof MountRoute) {
+			route.matches(method, path, data);
+		} else if (route instanceof RegexRoute) {
+			List<HttpRouteVar> keys = ((RegexRoute) route).keys();
+			for (int i = 0; i < best.values.length; i++) {
+				data.putString(keys.get(i).path(), best.values[i]);
+			}
+		}
+		return route.key();
+	}
+	
+	private void matchMount(String path, Best best) {
+		Node node = mounts;
+		if (node.terminal != null && (path.isEmpty() || path.charAt(0) == '/')) {
+			best.offer(node.terminal, NO_CAPTURES, 0, null);
+		}
+		int pos = 0;
+		while (pos < path.length() && path.charAt(pos) == '/' && node.minRank < best.rank) {
+			int end = path.indexOf('/', pos + 1);
+			if (end < 0) end = path.length();
+			node = node.children.get(path.substring(pos + 1, end));
+			if (node == null) return;
+			if (node.terminal != null) best.offer(node.terminal, NO_CAPTURES, 0, null);
+			pos = end;
+		}
+	}
+	
+	private void match(Node node, String path, int pos, String[] captures, int depth, Best best) {
+		if (node.minRank >= best.rank) return;
+		
+		if (pos == path.length() && node.terminal != null) {
+			best.offer(node.terminal, captures, depth, null);
+		}
+		
+		for (StarCandidate star : node.stars) {
+			if (star.rank < best.rank && path.startsWith(star.stem, pos)) {
+				int rest = pos + star.stem.length();
+				if (rest < path.length() && path.charAt(rest) == '/') rest++;
+				best.offer(star, captures, depth, path.substring(rest));
+			}
+		}
+		
+		if (pos < path.length() && path.charAt(pos) == '/') {
+			int end = path.indexOf('/', pos + 1);
+			if (end < 0) end = path.length();
+			Node child = node.children.isEmpty() ? null : node.children.get(path.substring(pos + 1, end));
+			if (child != null) {
+				match(child, path, end, captures, depth, best);
+			}
+			if (node.param != null && end > pos + 1) {
+				captures[depth] = path.substring(pos + 1, end);
+				match(node.param, path, end, captures, depth + 1, best);
+			}
+		}
+	}
+	
+}
@@ -9,11 +9,14 @@ import static reka.util.Util.unwrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +25,7 @@ import reka.data.Data;
 import reka.data.MutableData;
 import reka.data.memory.MutableMemoryData;
 import reka.flow.ops.Subscriber;
+import reka.net.http.accesslog.AccessLog;
 import reka.util.Path;
 import reka.util.Path.Request;
 import reka.util.Path.Response;
@@ -29,28 +33,52 @@ import reka.util.Path.Response;
 public class ChannelHandlerContextDataSubscriber implements Subscriber {
 
 	public static final Path CLOSE_CHANNEL = dots("options.close");
+	private static final Path STREAM_ID = Response.HEADERS.add(Http2ServerHandler.STREAM_ID);
 	private static final Logger log = LoggerFactory.getLogger(ChannelHandlerContextDataSubscriber.class);
 
 	private final long started = System.nanoTime();
 	private final ChannelHandlerContext context;
+	private final AccessLog accessLog;
+	private final LazyRequestData request;
+	private final String streamId; // for http/2, where the connection stays open for the other streams
+	private final List<AutoCloseable> kept = new ArrayList<>();
 	
 	ChannelHandlerContextDataSubscriber(ChannelHandlerContext context) {
+		this(context, null, null);
+	}
+	
+	ChannelHandlerContextDataSubscriber(ChannelHandlerContext context, AccessLog accessLog, LazyRequestData request) {
 		this.context = context;
+		this.accessLog = accessLog;
+		this.request = request;
+		this.streamId = request != null ? request.header(Http2ServerHandler.STREAM_ID) : null;
+	}
+	
+	@Override
+	public boolean keep(AutoCloseable resource) {
+		// streamed content gets taken by the encoder, so hold on until the response is written
+		kept.add(resource);
+		return true;
 	}
 	
 	@Override
 	public void ok(MutableData data) {
-		ChannelFuture writeFuture = context.writeAndFlush(data);
-		writeFuture.addListener(new LogHttp(data));
-		if (data.existsAt(CLOSE_CHANNEL)) {
+		ResponsePromise writeFuture = write(data);
+		writeFuture.addListener(new LogHttp(data, writeFuture));
+		releaseWhenDone(writeFuture);
+		if (!kept.isEmpty()) {
+			writeFuture.addListener(f -> closeKept());
+		}
+		if (data.existsAt(CLOSE_CHANNEL) && streamId == null) {
 			writeFuture.addListener(ChannelFutureListener.CLOSE);
 		}
 	}
 
 	@Override
 	public void halted() {
-		Data data = MutableMemoryData.create().put(Response.STATUS, integer(404));
-		context.writeAndFlush(data).addListener(new LogHttp(data)).addListener(ChannelFutureListener.CLOSE);
+		MutableData data = MutableMemoryData.create().put(Response.STATUS, integer(404));
+		ResponsePromise writeFuture = write(data);
+		releaseWhenDone(closeUnlessStream(writeFuture.addListener(new LogHttp(data, writeFuture))));
 	}
 
 	@Override
@@ -64,7 +92,37 @@ public class ChannelHandlerContextDataSubscriber implements Subscriber {
 		} else {
 			textErrorMessage(data, error);
 		}
-		context.writeAndFlush(data).addListener(new LogHttp(data)).addListener(ChannelFutureListener.CLOSE);
+		ResponsePromise writeFuture = write(data);
+		releaseWhenDone(closeUnlessStream(writeFuture.addListener(new LogHttp(data, writeFuture))));
+	}
+	
+	private ResponsePromise write(MutableData data) {
+		if (streamId != null) {
+			data.putString(STREAM_ID, streamId);
+		}
+		ResponsePromise promise = new ResponsePromise(context.channel());
+		context.writeAndFlush(data, promise);
+		return promise;
+	}
+	
+	private void closeKept() {
+		for (AutoCloseable resource : kept) {
+			try {
+				resource.close();
+			} catch (Exception e) {
+				log.error("failed to close {}", resource, e);
+			}
+		}
+	}
+	
+	private ChannelFuture closeUnlessStream(ChannelFuture future) {
+		return streamId == null ? future.addListener(ChannelFutureListener.CLOSE) : future;
+	}
+	
+	private void releaseWhenDone(ChannelFuture future) {
+		if (request != null) {
+			future.addListener(f -> request.release());
+		}
 	}
 	
 	private static boolean acceptsHtml(String acceptHeader) {
@@ -120,14 +178,29 @@ public class ChannelHandlerContextDataSubscriber implements Subscriber {
 	public class LogHttp implements GenericFutureListener<Future<Void>> {
 
 		private final Data data;
+		private final ResponsePromise sent;
 		
-		public LogHttp(Data data) {
+		public LogHttp(Data data, ResponsePromise sent) {
 			this.data = data;
+			this.sent = sent;
 		}
 		
 		@Override
 		public void operationComplete(Future<Void> future) throws Exception {
 			long took = (System.nanoTime() - started) / 1000;
+			if (accessLog != null && request != null) {
+				accessLog.record(context.channel().remoteAddress(),
+						request.header(HttpHeaders.Names.HOST),
+						request.method(),
+						request.uri(),
+						request.protocol(),
+						sent.status(),
+						sent.bytes(),
+						took,
+						request.header(HttpHeaders.Names.REFERER),
+						request.header(HttpHeaders.Names.USER_AGENT));
+				return;
+			}
 			String status = data.getString(Response.STATUS).orElse("-");
 			log.info("{} - \"{} {}\" {} {}us", 
 					data.getString(Request.HOST).orElse(""), 
@@ -137,8 +210,6 @@ public class ChannelHandlerContextDataSubscriber implements Subscriber {
 					took);
 		}
 		
-		
-		
 	}
 	
 }
\ No newline at end of file
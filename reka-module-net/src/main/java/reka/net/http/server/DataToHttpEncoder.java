@@ -5,12 +5,16 @@ import static reka.data.MoreDataUtils.writeToOutputStreamAsJson;
 import static reka.data.MoreDataUtils.writeToOutputStreamAsPrettyJson;
 import static reka.util.Util.unchecked;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.DefaultFileRegion;
-import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.http.Cookie;
 import io.netty.handler.codec.http.DefaultCookie;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
@@ -24,14 +28,22 @@ import io.netty.handler.stream.ChunkedFile;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -40,24 +52,33 @@ import org.slf4j.LoggerFactory;
 import reka.Reka;
 import reka.data.Data;
 import reka.data.content.Content;
+import reka.data.content.types.StreamContent;
+import reka.net.http.server.HttpRanges.Range;
 import reka.util.Path.Request;
 import reka.util.Path.Response;
 
 @Sharable
-public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
+public class DataToHttpEncoder extends ChannelOutboundHandlerAdapter {
 
-	public static final DataToHttpEncoder NORMAL = new DataToHttpEncoder(false);
-	public static final DataToHttpEncoder SSL = new DataToHttpEncoder(true);
+	public static final DataToHttpEncoder NORMAL = new DataToHttpEncoder(false, HttpCompression.DEFAULT);
+	public static final DataToHttpEncoder SSL = new DataToHttpEncoder(true, HttpCompression.DEFAULT);
 
 	private static final String DEFAULT_SERVER_NAME = "reka-http";
 
 	private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
 
+	private static final int CHUNK_SIZE = 8192;
+
 	private static final String TEXT_PLAIN = "text/plain";
 	private static final String APPLICATION_JSON = "application/json";
 
 	private final Logger logger = LoggerFactory.getLogger("http-encoder");
 	private final boolean ssl;
+	private final HttpCompression compression;
+
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+			.withZone(ZoneOffset.UTC);
 
 	private static volatile CharSequence date;
 	private static final SimpleDateFormat sdf = new SimpleDateFormat("E, dd MMM yyyy HH:mm:ss z");
@@ -68,11 +89,56 @@ public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
 		Reka.SharedExecutors.scheduled.scheduleWithFixedDelay(setdate, 1, 1, TimeUnit.SECONDS);
 	}
 
-	private DataToHttpEncoder(boolean ssl) {
+	DataToHttpEncoder(boolean ssl, HttpCompression compression) {
 		this.ssl = ssl;
+		this.compression = compression;
 	}
 
 	@Override
+	public void write(ChannelHandlerContext context, Object msg, ChannelPromise promise) throws Exception {
+		if (!(msg instanceof Data)) {
+			context.write(msg, promise);
+			return;
+		}
+		List<Object> out = new ArrayList<>(4);
+		encode(context, (Data) msg, out);
+		if (out.isEmpty()) {
+			promise.setFailure(new EncoderException("could not encode response"));
+			return;
+		}
+		if (promise instanceof ResponsePromise) {
+			sent((ResponsePromise) promise, out);
+		}
+		int last = out.size() - 1;
+		for (int i = 0; i < last; i++) {
+			context.write(out.get(i));
+		}
+		context.write(out.get(last), promise);
+	}
+	
+	// has to be counted before it's written, the buffers are released once they have been
+	private static void sent(ResponsePromise promise, List<Object> out) {
+		int status = 0;
+		long bytes = 0;
+		for (Object o : out) {
+			if (o instanceof HttpResponse) {
+				status = ((HttpResponse) o).getStatus().code();
+			}
+			if (o instanceof ByteBufHolder) {
+				bytes += ((ByteBufHolder) o).content().readableBytes();
+			} else if (o instanceof ByteBuf) {
+				bytes += ((ByteBuf) o).readableBytes();
+			} else if (o instanceof FileRegion) {
+				bytes += ((FileRegion) o).count();
+			} else if (o instanceof ChunkedFile) {
+				bytes += ((ChunkedFile) o).endOffset() - ((ChunkedFile) o).startOffset();
+			} else if (o instanceof StreamChunkedInput) {
+				((StreamChunkedInput) o).countInto(promise);
+			}
+		}
+		promise.encoded(status, bytes);
+	}
+
 	protected void encode(ChannelHandlerContext context, Data data, List<Object> out) throws Exception {
 
 		try {
@@ -81,6 +147,8 @@ public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
 			ByteBuf buffer = null;
 			File file = null;
 			String contentType = null;
+			boolean binary = false;
+			StreamContent stream = null;
 
 			Data maybeContent = data.at(Response.CONTENT);
 
@@ -98,12 +166,22 @@ public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
 
 			if (maybeContent.isContent()) {
 
-				if (!headRequest) {
-
-					Content content = maybeContent.content();
+				Content content = maybeContent.content();
+				
+				if (content instanceof StreamContent) {
+					
+					stream = (StreamContent) content;
+					contentType = stream.contentType();
+					if (headRequest) {
+						stream.discard();
+						stream = null;
+					}
+					
+				} else if (!headRequest) {
 
 					switch (content.type()) {
 					case BINARY:
+						binary = true;
 						if (content.hasFile()) {
 							file = content.asFile();
 						} else if (content.hasByteBuffer()) {
@@ -143,6 +221,99 @@ public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
 			if (responseStatus == null) {
 				responseStatus = HttpResponseStatus.OK;
 			}
+			
+			// conditional and range requests, only for files and other static content (it has a
+			// Last-Modified from fs/read), not bytes made for this request like rendered templates
+			
+			boolean ranged = binary && (file != null || data.existsAt(Response.Headers.LAST_MODIFIED));
+			String lastModified = null;
+			String contentRange = null;
+			List<Range> ranges = null;
+			long length = file != null ? file.length() : buffer != null ? buffer.readableBytes() : 0;
+			
+			if (ranged && HttpResponseStatus.OK.equals(responseStatus)) {
+				
+				lastModified = data.getString(Response.Headers.LAST_MODIFIED).orElse(null);
+				if (lastModified == null && file != null) {
+					lastModified = HTTP_DATE.format(Instant.ofEpochMilli(file.lastModified()));
+				}
+				
+				if (notModified(data, lastModified)) {
+					responseStatus = HttpResponseStatus.NOT_MODIFIED;
+					file = null;
+					buffer = null;
+				} else {
+					Optional<String> range = data.getString(Request.Headers.RANGE);
+					if (range.isPresent() && ifRangeMatches(data, lastModified)) {
+						ranges = HttpRanges.parse(range.get(), length);
+						if (ranges != null && ranges.isEmpty()) {
+							responseStatus = HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+							contentRange = "bytes */" + length;
+							ranges = null;
+							file = null;
+							buffer = null;
+						} else if (ranges != null) {
+							responseStatus = HttpResponseStatus.PARTIAL_CONTENT;
+						}
+					}
+				}
+			}
+			
+			String boundary = null;
+			long partialLength = 0;
+			List<ByteBuf> multipartHeads = null;
+			
+			if (ranges != null) {
+				if (ranges.size() == 1) {
+					Range r = ranges.get(0);
+					contentRange = r.contentRange(length);
+					partialLength = r.length();
+					if (buffer != null) {
+						buffer = buffer.slice(buffer.readerIndex() + (int) r.start, (int) r.length());
+					}
+				} else {
+					boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+					String partContentType = data.getString(Response.Headers.CONTENT_TYPE).orElse(TEXT_PLAIN);
+					List<ByteBuf> parts = new ArrayList<>();
+					for (Range r : ranges) {
+						ByteBuf head = partHeader(boundary, partContentType, r.contentRange(length));
+						partialLength += head.readableBytes() + r.length();
+						parts.add(head);
+						if (buffer != null) {
+							// slices share the buffer's count, the composite releases each of them
+							parts.add(buffer.slice(buffer.readerIndex() + (int) r.start, (int) r.length()).retain());
+						}
+					}
+					ByteBuf end = partsEnd(boundary);
+					partialLength += end.readableBytes();
+					parts.add(end);
+					if (buffer != null) {
+						ByteBuf whole = buffer;
+						buffer = Unpooled.wrappedBuffer(parts.toArray(new ByteBuf[parts.size()]));
+						whole.release();
+					} else {
+						multipartHeads = parts;
+					}
+				}
+			}
+			
+			// compression
+			
+			String contentEncoding = null;
+			boolean vary = false;
+			
+			if (buffer != null && ranges == null && HttpResponseStatus.OK.equals(responseStatus) && !data.existsAt(Response.Headers.CONTENT_ENCODING)) {
+				String type = contentType != null ? contentType : data.getString(Response.Headers.CONTENT_TYPE).orElse(TEXT_PLAIN);
+				if (compression.compressible(type, buffer.readableBytes())) {
+					vary = true;
+					contentEncoding = compression.encodingFor(data.getString(Request.Headers.ACCEPT_ENCODING).orElse(null));
+					if (contentEncoding != null) {
+						ByteBuf compressed = compression.compress(buffer, contentEncoding, context.alloc());
+						buffer.release();
+						buffer = compressed;
+					}
+				}
+			}
 
 			HttpResponse response;
 			if (buffer != null) {
@@ -181,8 +352,43 @@ public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
 			if (contentType != null) {
 				response.headers().set(HttpHeaders.Names.CONTENT_TYPE, contentType);
 			}
+			
+			if (contentEncoding != null) {
+				response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, contentEncoding);
+				response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, buffer.readableBytes());
+			}
+			
+			if (vary && !response.headers().contains(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT_ENCODING, true)) {
+				response.headers().add(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT_ENCODING);
+			}
+			
+			if (ranged) {
+				if (contentEncoding == null) {
+					response.headers().set(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+				}
+				if (lastModified != null) {
+					response.headers().set(HttpHeaders.Names.LAST_MODIFIED, lastModified);
+				}
+			}
+			
+			if (contentRange != null) {
+				response.headers().set(HttpHeaders.Names.CONTENT_RANGE, contentRange);
+			}
+			
+			if (boundary != null) {
+				response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+			}
 
-			if (response.headers().get(HttpHeaders.Names.CONTENT_LENGTH) == null) {
+			if (stream != null) {
+				response.headers().remove(HttpHeaders.Names.CONTENT_LENGTH);
+				HttpHeaders.setTransferEncodingChunked(response);
+			} else if (HttpResponseStatus.NOT_MODIFIED.equals(responseStatus)) {
+				response.headers().remove(HttpHeaders.Names.CONTENT_LENGTH);
+			} else if (ranges != null) {
+				response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, partialLength);
+			} else if (HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE.equals(responseStatus)) {
+				response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, 0);
+			} else if (response.headers().get(HttpHeaders.Names.CONTENT_LENGTH) == null) {
 				if (file != null) {
 					response.headers().add(HttpHeaders.Names.CONTENT_LENGTH, file.length());
 				} else if (buffer != null) {
@@ -194,24 +400,88 @@ public class DataToHttpEncoder extends MessageToMessageEncoder<Data> {
 
 			out.add(response);
 
-			if (file != null) {
-				if (ssl) {
-					out.add(new ChunkedFile(file));
-					out.add(LastHttpContent.EMPTY_LAST_CONTENT);
+			if (stream != null) {
+				out.add(new StreamChunkedInput(stream.take(), Reka.SharedExecutors.general, context.alloc()));
+			} else if (file != null) {
+				if (ranges == null) {
+					out.add(fileRegion(file, 0, length));
+				} else if (multipartHeads == null) {
+					Range r = ranges.get(0);
+					out.add(fileRegion(file, r.start, r.length()));
 				} else {
-					try {
-						// TODO: handle the 'Range:' header here... :)
-						out.add(new DefaultFileRegion(new FileInputStream(file).getChannel(), 0, file.length()));
-						out.add(LastHttpContent.EMPTY_LAST_CONTENT);
-					} catch (FileNotFoundException e) {
-						throw unchecked(e); // not very good...
+					for (int i = 0; i < ranges.size(); i++) {
+						Range r = ranges.get(i);
+						out.add(multipartHeads.get(i));
+						out.add(fileRegion(file, r.start, r.length()));
 					}
+					out.add(multipartHeads.get(ranges.size()));
 				}
+				out.add(LastHttpContent.EMPTY_LAST_CONTENT);
 			} else if (buffer == null) {
 				out.add(LastHttpContent.EMPTY_LAST_CONTENT);
 			}
 		} catch (Throwable t) {
 			logger.error("oops!", t);
+			discardStream(data);
+		}
+	}
+	
+	private static void discardStream(Data data) {
+		Data content = data.at(Response.CONTENT);
+		if (content.isContent() && content.content() instanceof StreamContent) {
+			((StreamContent) content.content()).discard();
+		}
+	}
+	
+	private Object fileRegion(File file, long position, long count) {
+		try {
+			if (ssl) {
+				return new ChunkedFile(new RandomAccessFile(file, "r"), position, count, CHUNK_SIZE);
+			} else {
+				return new DefaultFileRegion(new FileInputStream(file).getChannel(), position, count);
+			}
+		} catch (IOException e) {
+			throw unchecked(e); // not very good...
+		}
+	}
+	
+	private static ByteBuf partHeader(String boundary, String contentType, String contentRange) {
+		return Unpooled.copiedBuffer("\r\n--" + boundary + "\r\n" 
+				+ HttpHeaders.Names.CONTENT_TYPE + ": " + contentType + "\r\n" 
+				+ HttpHeaders.Names.CONTENT_RANGE + ": " + contentRange + "\r\n\r\n", StandardCharsets.US_ASCII);
+	}
+	
+	private static ByteBuf partsEnd(String boundary) {
+		return Unpooled.copiedBuffer("\r\n--" + boundary + "--\r\n", StandardCharsets.US_ASCII);
+	}
+	
+	private static boolean notModified(Data data, String lastModified) {
+		if (lastModified == null || data.existsAt(Request.Headers.IF_NONE_MATCH)) return false;
+		Optional<String> since = data.getString(Request.Headers.IF_MODIFIED_SINCE);
+		if (!since.isPresent()) return false;
+		long modified = parseDate(lastModified);
+		long ims = parseDate(since.get());
+		return modified >= 0 && ims >= 0 && modified <= ims;
+	}
+	
+	private static boolean ifRangeMatches(Data data, String lastModified) {
+		Optional<String> ifRange = data.getString(Request.Headers.IF_RANGE);
+		if (!ifRange.isPresent()) return true;
+		String value = ifRange.get().trim();
+		if (value.startsWith("\"") || value.startsWith("W/")) {
+			// has to be a strong match
+			Optional<String> etag = data.getString(Response.Headers.ETAG);
+			return !value.startsWith("W/") && etag.isPresent() && value.equals(etag.get());
+		}
+		long date = parseDate(value);
+		return date >= 0 && lastModified != null && date == parseDate(lastModified);
+	}
+	
+	private static long parseDate(String value) {
+		try {
+			return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+		} catch (DateTimeParseException e) {
+			return -1;
 		}
 	}
 
@@ -0,0 +1,273 @@
+package reka.net.http.server;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Header compression for HTTP/2 (RFC 7541).
+ *
+ * The decoder keeps the dynamic table the client builds up. The encoder only ever uses
+ * the static table and doesn't add anything to the client's table, so there is nothing
+ * to keep in sync when the client changes its table size.
+ */
+final class Hpack {
+
+	private Hpack() {}
+
+	static final int DEFAULT_TABLE_SIZE = 4096;
+
+	private static final int ENTRY_OVERHEAD = 32;
+
+	private static final String[][] STATIC_TABLE = {
+		{ ":authority", "" },
+		{ ":method", "GET" },
+		{ ":method", "POST" },
+		{ ":path", "/" },
+		{ ":path", "/index.html" },
+		{ ":scheme", "http" },
+		{ ":scheme", "https" },
+		{ ":status", "200" },
+		{ ":status", "204" },
+		{ ":status", "206" },
+		{ ":status", "304" },
+		{ ":status", "400" },
+		{ ":status", "404" },
+		{ ":status", "500" },
+		{ "accept-charset", "" },
+		{ "accept-encoding", "gzip, deflate" },
+		{ "accept-language", "" },
+		{ "accept-ranges", "" },
+		{ "accept", "" },
+		{ "access-control-allow-origin", "" },
+		{ "age", "" },
+		{ "allow", "" },
+		{ "authorization", "" },
+		{ "cache-control", "" },
+		{ "content-disposition", "" },
+		{ "content-encoding", "" },
+		{ "content-language", "" },
+		{ "content-length", "" },
+		{ "content-location", "" },
+		{ "content-range", "" },
+		{ "content-type", "" },
+		{ "cookie", "" },
+		{ "date", "" },
+		{ "etag", "" },
+		{ "expect", "" },
+		{ "expires", "" },
+		{ "from", "" },
+		{ "host", "" },
+		{ "if-match", "" },
+		{ "if-modified-since", "" },
+		{ "if-none-match", "" },
+		{ "if-range", "" },
+		{ "if-unmodified-since", "" },
+		{ "last-modified", "" },
+		{ "link", "" },
+		{ "location", "" },
+		{ "max-forwards", "" },
+		{ "proxy-authenticate", "" },
+		{ "proxy-authorization", "" },
+		{ "range", "" },
+		{ "referer", "" },
+		{ "refresh", "" },
+		{ "retry-after", "" },
+		{ "server", "" },
+		{ "set-cookie", "" },
+		{ "strict-transport-security", "" },
+		{ "transfer-encoding", "" },
+		{ "user-agent", "" },
+		{ "vary", "" },
+		{ "via", "" },
+		{ "www-authenticate", "" }
+	};
+
+	private static final Map<String,Integer> STATIC_NAMES = new HashMap<>();
+	private static final Map<String,Integer> STATIC_ENTRIES = new HashMap<>();
+
+	static {
+		for (int i = STATIC_TABLE.length - 1; i >= 0; i--) {
+			// going backwards so the first index for a name wins
+			STATIC_NAMES.put(STATIC_TABLE[i][0], i + 1);
+			if (!STATIC_TABLE[i][1].isEmpty()) {
+				STATIC_ENTRIES.put(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i + 1);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	static class HpackException extends Exception {
+		HpackException(String msg) {
+			super(msg);
+		}
+	}
+
+	static class Decoder {
+
+		private final ArrayDeque<String[]> dynamic = new ArrayDeque<>(); // newest first
+		private final int maxAllowedSize;
+		private int maxSize;
+		private int size;
+
+		Decoder(int maxAllowedSize) {
+			this.maxAllowedSize = maxAllowedSize;
+			this.maxSize = maxAllowedSize;
+		}
+
+		/**
+		 * Decodes a whole header block, headers past maxHeaderListSize aren't passed on and it returns false,
+		 * the whole block is still read so the table stays usable.
+		 */
+		boolean decode(ByteBuf in, int maxHeaderListSize, BiConsumer<String,String> headers) throws HpackException {
+			int listSize = 0;
+			boolean headerSeen = false;
+			while (in.isReadable()) {
+				int b = in.getUnsignedByte(in.readerIndex());
+				String name, value;
+				if ((b & 0x80) != 0) {
+					String[] entry = entry(decodeInt(in, 7));
+					name = entry[0];
+					value = entry[1];
+				} else if ((b & 0x40) != 0) {
+					int index = decodeInt(in, 6);
+					name = index == 0 ? decodeString(in) : entry(index)[0];
+					value = decodeString(in);
+					add(name, value);
+				} else if ((b & 0x20) != 0) {
+					if (headerSeen) throw new HpackException("table size update after a header");
+					int newSize = decodeInt(in, 5);
+					if (newSize > maxAllowedSize) throw new HpackException("table size update too big");
+					maxSize = newSize;
+					evict();
+					continue;
+				} else {
+					// without indexing (0000) or never indexed (0001)
+					int index = decodeInt(in, 4);
+					name = index == 0 ? decodeString(in) : entry(index)[0];
+					value = decodeString(in);
+				}
+				headerSeen = true;
+				listSize += name.length() + value.length() + ENTRY_OVERHEAD;
+				if (listSize <= maxHeaderListSize) {
+					headers.accept(name, value);
+				}
+			}
+			return listSize <= maxHeaderListSize;
+		}
+
+		private String[] entry(int index) throws HpackException {
+			if (index <= 0) throw new HpackException("invalid index 0");
+			if (index <= STATIC_TABLE.length) return STATIC_TABLE[index - 1];
+			int i = index - STATIC_TABLE.length - 1;
+			if (i >= dynamic.size()) throw new HpackException("invalid index " + index);
+			Iterator<String[]> it = dynamic.iterator();
+			while (i-- > 0) it.next();
+			return it.next();
+		}
+
+		private void add(String name, String value) {
+			int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+			if (entrySize > maxSize) {
+				// clears the table
+				dynamic.clear();
+				size = 0;
+				return;
+			}
+			size += entrySize;
+			dynamic.addFirst(new String[] { name, value });
+			evict();
+		}
+
+		private void evict() {
+			while (size > maxSize) {
+				String[] oldest = dynamic.removeLast();
+				size -= oldest[0].length() + oldest[1].length() + ENTRY_OVERHEAD;
+			}
+		}
+
+	}
+
+	static class Encoder {
+
+		void encode(String name, String value, ByteBuf out) {
+			Integer index = STATIC_ENTRIES.get(name + '\0' + value);
+			if (index != null) {
+				encodeInt(out, 0x80, 7, index);
+				return;
+			}
+			index = STATIC_NAMES.get(name);
+			if (index != null) {
+				encodeInt(out, 0x00, 4, index);
+			} else {
+				out.writeByte(0);
+				encodeString(out, name);
+			}
+			encodeString(out, value);
+		}
+
+	}
+
+	static int decodeInt(ByteBuf in, int prefixBits) throws HpackException {
+		if (!in.isReadable()) throw new HpackException("truncated integer");
+		int max = (1 << prefixBits) - 1;
+		int value = in.readUnsignedByte() & max;
+		if (value < max) return value;
+		long result = value;
+		int shift = 0;
+		int b;
+		do {
+			if (!in.isReadable()) throw new HpackException("truncated integer");
+			b = in.readUnsignedByte();
+			result += (long) (b & 0x7f) << shift;
+			shift += 7;
+			if (result > Integer.MAX_VALUE) throw new HpackException("integer overflow");
+		} while ((b & 0x80) != 0);
+		return (int) result;
+	}
+
+	static void encodeInt(ByteBuf out, int mask, int prefixBits, int value) {
+		int max = (1 << prefixBits) - 1;
+		if (value < max) {
+			out.writeByte(mask | value);
+			return;
+		}
+		out.writeByte(mask | max);
+		value -= max;
+		while (value >= 0x80) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static String decodeString(ByteBuf in) throws HpackException {
+		if (!in.isReadable()) throw new HpackException("truncated string");
+		boolean huffman = (in.getByte(in.readerIndex()) & 0x80) != 0;
+		int length = decodeInt(in, 7);
+		if (length > in.readableBytes()) throw new HpackException("truncated string");
+		if (huffman) {
+			return HpackHuffman.decode(in, length);
+		}
+		String value = in.toString(in.readerIndex(), length, ISO_8859_1);
+		in.skipBytes(length);
+		return value;
+	}
+
+	private static void encodeString(ByteBuf out, String value) {
+		int huffmanLength = HpackHuffman.encodedLength(value);
+		if (huffmanLength < value.length()) {
+			encodeInt(out, 0x80, 7, huffmanLength);
+			HpackHuffman.encode(value, out);
+		} else {
+			encodeInt(out, 0x00, 7, value.length());
+			out.writeBytes(value.getBytes(ISO_8859_1));
+		}
+	}
+
+}
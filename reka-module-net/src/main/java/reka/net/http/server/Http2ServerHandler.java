@@ -0,0 +1,1175 @@
+package reka.net.http.server;
+
+import static io.netty.buffer.Unpooled.copiedBuffer;
+import static io.netty.buffer.Unpooled.unreleasableBuffer;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reka.net.http.server.Hpack.HpackException;
+
+/**
+ * Serves HTTP/2 on one connection (RFC 7540), each stream is handed on as its own
+ * {@link FullHttpRequest} so the rest of the pipeline runs a flow for it like any other request.
+ *
+ * Requests carry their stream id in the {@value #STREAM_ID} header and responses need to carry
+ * it back, responses without it go to the oldest stream still waiting for one. Response bodies
+ * are sent as the flow control windows allow, one frame per stream at a time so a big response
+ * doesn't hold up the small ones.
+ *
+ * Server push and priorities aren't supported, priority information is read and ignored.
+ */
+public class Http2ServerHandler extends ChannelDuplexHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(Http2ServerHandler.class);
+
+	public static final String STREAM_ID = "x-http2-stream-id";
+
+	public static final ByteBuf PREFACE = unreleasableBuffer(copiedBuffer("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n", US_ASCII));
+
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int PRIORITY = 0x2;
+	private static final int RST_STREAM = 0x3;
+	private static final int SETTINGS = 0x4;
+	private static final int PUSH_PROMISE = 0x5;
+	private static final int PING = 0x6;
+	private static final int GOAWAY = 0x7;
+	private static final int WINDOW_UPDATE = 0x8;
+	private static final int CONTINUATION = 0x9;
+
+	private static final int FLAG_END_STREAM = 0x1;
+	private static final int FLAG_ACK = 0x1;
+	private static final int FLAG_END_HEADERS = 0x4;
+	private static final int FLAG_PADDED = 0x8;
+	private static final int FLAG_PRIORITY = 0x20;
+
+	private static final int NO_ERROR = 0x0;
+	private static final int PROTOCOL_ERROR = 0x1;
+	private static final int INTERNAL_ERROR = 0x2;
+	private static final int FLOW_CONTROL_ERROR = 0x3;
+	private static final int STREAM_CLOSED = 0x5;
+	private static final int FRAME_SIZE_ERROR = 0x6;
+	private static final int REFUSED_STREAM = 0x7;
+	private static final int COMPRESSION_ERROR = 0x9;
+	private static final int ENHANCE_YOUR_CALM = 0xb;
+
+	private static final int SETTINGS_ENABLE_PUSH = 0x2;
+	private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	private static final int FRAME_HEADER_LENGTH = 9;
+	private static final int DEFAULT_WINDOW = 65535;
+	private static final int MAX_FRAME_SIZE = 16384; // what we take, and the default for what we send
+	private static final int MAX_CONCURRENT_STREAMS = 100;
+	private static final int MAX_HEADER_LIST_SIZE = 64 * 1024;
+	private static final int MAX_HEADER_BLOCK = 256 * 1024; // compressed, across CONTINUATION frames
+	private static final int STREAM_WINDOW = 256 * 1024;
+	private static final int CONNECTION_WINDOW = 1024 * 1024;
+
+	private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", STREAM_ID));
+
+	@SuppressWarnings("serial")
+	private static class Http2Exception extends Exception {
+
+		private final int code;
+
+		Http2Exception(int code, String msg) {
+			super(msg);
+			this.code = code;
+		}
+
+	}
+
+	private final int maxInMemory;
+	private final long maxBody;
+	private final File tmpdir;
+
+	private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+	private final Hpack.Encoder encoder = new Hpack.Encoder();
+
+	private final Map<Integer,Stream> streams = new LinkedHashMap<>(); // oldest first
+	private final ArrayDeque<Stream> sending = new ArrayDeque<>();
+
+	private FullHttpRequest upgrade; // from an h2c upgrade, it becomes stream 1
+	private ByteBuf upgradeSettings;
+
+	private ChannelHandlerContext ctx;
+	private ByteBuf cumulation;
+	private boolean started;
+	private boolean prefaceReceived;
+	private boolean settingsReceived;
+	private boolean goingAway;
+	private boolean closing;
+	private boolean writing;
+	private boolean writeAgain;
+	private int lastStreamId;
+
+	private int headersStreamId; // set while waiting for CONTINUATION frames
+	private int headersFlags;
+	private ByteBuf headerBlock;
+
+	private int remoteMaxFrameSize = MAX_FRAME_SIZE;
+	private int remoteInitialWindow = DEFAULT_WINDOW;
+	private int sendWindow = DEFAULT_WINDOW;
+	private int recvWindow = CONNECTION_WINDOW;
+	private int recvUnacked;
+
+	private Stream currentWrite;
+
+	public Http2ServerHandler(int maxInMemory, long maxBody, File tmpdir) {
+		this(maxInMemory, maxBody, tmpdir, null, null);
+	}
+
+	/**
+	 * For a connection upgraded from HTTP/1.1, the request that asked for it is answered on
+	 * stream 1 and settings are what came in its HTTP2-Settings header.
+	 */
+	public Http2ServerHandler(int maxInMemory, long maxBody, File tmpdir, FullHttpRequest upgrade, ByteBuf settings) {
+		this.maxInMemory = maxInMemory;
+		this.maxBody = maxBody;
+		this.tmpdir = tmpdir;
+		this.upgrade = upgrade;
+		this.upgradeSettings = settings;
+	}
+
+	private final class Stream {
+
+		private final int id;
+		private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+		private HttpRequest head;
+		private RequestBodySpool body;
+		private int sendWindow = remoteInitialWindow;
+		private int recvWindow = STREAM_WINDOW;
+		private int recvUnacked;
+
+		private boolean remoteClosed;
+		private boolean dispatched;
+		private boolean responding;
+		private boolean discarding;
+		private boolean queued;
+		private boolean closed;
+
+		Stream(int id) {
+			this.id = id;
+		}
+
+	}
+
+	/**
+	 * Something written for a stream, either a block of headers, some data or a chunked input.
+	 */
+	private static final class Pending {
+
+		private final ByteBuf headers;
+		private final ByteBuf data;
+		private final ChunkedInput<?> input;
+		private boolean end;
+		private ChannelPromise promise;
+
+		Pending(ByteBuf headers, ByteBuf data, ChunkedInput<?> input, boolean end, ChannelPromise promise) {
+			this.headers = headers;
+			this.data = data;
+			this.input = input;
+			this.end = end;
+			this.promise = promise;
+		}
+
+		void discard(Throwable cause) {
+			ReferenceCountUtil.release(headers);
+			ReferenceCountUtil.release(data);
+			if (input != null) {
+				try {
+					input.close();
+				} catch (Throwable t) {
+					log.debug("failed to close chunked input", t);
+				}
+			}
+			if (promise != null) promise.tryFailure(cause);
+		}
+
+	}
+
+	// lifecycle
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+		if (ctx.channel().isActive()) start();
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		start();
+		super.channelActive(ctx);
+	}
+
+	private void start() throws Exception {
+		if (started) return;
+		started = true;
+
+		ByteBuf settings = ctx.alloc().buffer(FRAME_HEADER_LENGTH + 18);
+		writeFrameHeader(settings, 18, SETTINGS, 0, 0);
+		settings.writeShort(SETTINGS_MAX_CONCURRENT_STREAMS).writeInt(MAX_CONCURRENT_STREAMS);
+		settings.writeShort(SETTINGS_INITIAL_WINDOW_SIZE).writeInt(STREAM_WINDOW);
+		settings.writeShort(SETTINGS_MAX_HEADER_LIST_SIZE).writeInt(MAX_HEADER_LIST_SIZE);
+		ctx.write(settings);
+		writeWindowUpdate(0, CONNECTION_WINDOW - DEFAULT_WINDOW);
+		ctx.flush();
+
+		if (upgrade != null) {
+			// implicitly acknowledged by the 101 response
+			try {
+				applySettings(upgradeSettings);
+			} catch (Http2Exception e) {
+				upgrade.release();
+				upgrade = null;
+				goAway(e.code, e.getMessage());
+				return;
+			} finally {
+				upgradeSettings.release();
+				upgradeSettings = null;
+			}
+			FullHttpRequest req = upgrade;
+			upgrade = null;
+			Stream stream = new Stream(1);
+			stream.remoteClosed = true;
+			stream.dispatched = true;
+			streams.put(1, stream);
+			lastStreamId = 1;
+			req.headers().set(STREAM_ID, 1);
+			ctx.fireChannelRead(req);
+		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		cleanup();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		cleanup();
+	}
+
+	private void cleanup() {
+		closing = true;
+		if (cumulation != null) {
+			cumulation.release();
+			cumulation = null;
+		}
+		if (headerBlock != null) {
+			headerBlock.release();
+			headerBlock = null;
+		}
+		if (upgrade != null) {
+			upgrade.release();
+			upgrade = null;
+		}
+		if (upgradeSettings != null) {
+			upgradeSettings.release();
+			upgradeSettings = null;
+		}
+		ClosedChannelException cause = new ClosedChannelException();
+		for (Stream stream : new ArrayList<>(streams.values())) {
+			closeStream(stream, cause);
+		}
+		sending.clear();
+	}
+
+	// reading
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (!(msg instanceof ByteBuf)) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+		ByteBuf in = (ByteBuf) msg;
+		if (closing) {
+			in.release();
+			return;
+		}
+		if (cumulation == null) {
+			cumulation = in;
+		} else {
+			if (cumulation.writableBytes() < in.readableBytes()) {
+				ByteBuf bigger = ctx.alloc().buffer(cumulation.readableBytes() + in.readableBytes());
+				bigger.writeBytes(cumulation);
+				cumulation.release();
+				cumulation = bigger;
+			}
+			cumulation.writeBytes(in);
+			in.release();
+		}
+		try {
+			readFrames();
+		} catch (Http2Exception e) {
+			goAway(e.code, e.getMessage());
+		} finally {
+			if (cumulation != null && !cumulation.isReadable()) {
+				cumulation.release();
+				cumulation = null;
+			} else if (cumulation != null) {
+				cumulation.discardSomeReadBytes();
+			}
+		}
+		writePending();
+		ctx.flush();
+	}
+
+	private void readFrames() throws Http2Exception {
+		if (!prefaceReceived) {
+			int n = Math.min(cumulation.readableBytes(), PREFACE.readableBytes());
+			for (int i = 0; i < n; i++) {
+				if (cumulation.getByte(cumulation.readerIndex() + i) != PREFACE.getByte(i)) {
+					throw new Http2Exception(PROTOCOL_ERROR, "bad connection preface");
+				}
+			}
+			if (n < PREFACE.readableBytes()) return;
+			cumulation.skipBytes(n);
+			prefaceReceived = true;
+		}
+		while (!closing && cumulation != null && cumulation.readableBytes() >= FRAME_HEADER_LENGTH) {
+			int index = cumulation.readerIndex();
+			int length = cumulation.getUnsignedMedium(index);
+			int type = cumulation.getUnsignedByte(index + 3);
+			int flags = cumulation.getUnsignedByte(index + 4);
+			int streamId = cumulation.getInt(index + 5) & 0x7fffffff;
+			if (length > MAX_FRAME_SIZE) {
+				throw new Http2Exception(FRAME_SIZE_ERROR, "frame of " + length + " bytes");
+			}
+			if (cumulation.readableBytes() < FRAME_HEADER_LENGTH + length) return;
+			ByteBuf payload = cumulation.slice(index + FRAME_HEADER_LENGTH, length);
+			cumulation.skipBytes(FRAME_HEADER_LENGTH + length);
+			readFrame(type, flags, streamId, payload);
+		}
+	}
+
+	private void readFrame(int type, int flags, int streamId, ByteBuf payload) throws Http2Exception {
+		if (!settingsReceived && type != SETTINGS) {
+			throw new Http2Exception(PROTOCOL_ERROR, "expected SETTINGS first");
+		}
+		if (headersStreamId != 0 && (type != CONTINUATION || streamId != headersStreamId)) {
+			throw new Http2Exception(PROTOCOL_ERROR, "expected CONTINUATION");
+		}
+		switch (type) {
+		case DATA:
+			onData(flags, streamId, payload);
+			break;
+		case HEADERS:
+			onHeaders(flags, streamId, payload);
+			break;
+		case PRIORITY:
+			if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, "PRIORITY on stream 0");
+			if (payload.readableBytes() != 5) resetStream(streamId, FRAME_SIZE_ERROR);
+			break;
+		case RST_STREAM:
+			onRstStream(streamId, payload);
+			break;
+		case SETTINGS:
+			onSettings(flags, streamId, payload);
+			break;
+		case PUSH_PROMISE:
+			throw new Http2Exception(PROTOCOL_ERROR, "clients can't push");
+		case PING:
+			onPing(flags, streamId, payload);
+			break;
+		case GOAWAY:
+			onGoAway(streamId);
+			break;
+		case WINDOW_UPDATE:
+			onWindowUpdate(streamId, payload);
+			break;
+		case CONTINUATION:
+			onContinuation(flags, streamId, payload);
+			break;
+		default:
+			// unknown frame types are ignored
+		}
+	}
+
+	private static ByteBuf unpad(int flags, ByteBuf payload) throws Http2Exception {
+		if ((flags & FLAG_PADDED) == 0) return payload;
+		if (!payload.isReadable()) throw new Http2Exception(PROTOCOL_ERROR, "missing pad length");
+		int padding = payload.readUnsignedByte();
+		if (padding > payload.readableBytes()) throw new Http2Exception(PROTOCOL_ERROR, "too much padding");
+		return payload.slice(payload.readerIndex(), payload.readableBytes() - padding);
+	}
+
+	private void onData(int flags, int streamId, ByteBuf payload) throws Http2Exception {
+		if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, "DATA on stream 0");
+		int length = payload.readableBytes();
+		recvWindow -= length;
+		if (recvWindow < 0) throw new Http2Exception(FLOW_CONTROL_ERROR, "connection window exceeded");
+		ByteBuf data = unpad(flags, payload);
+
+		Stream stream = streams.get(streamId);
+		if (stream == null) {
+			if (streamId > lastStreamId) throw new Http2Exception(PROTOCOL_ERROR, "DATA on idle stream");
+			// it's been reset or finished, the client might not know yet
+			consumed(null, length);
+			return;
+		}
+		if (stream.remoteClosed) {
+			consumed(null, length);
+			resetStream(streamId, STREAM_CLOSED);
+			return;
+		}
+		stream.recvWindow -= length;
+		if (stream.recvWindow < 0) {
+			consumed(null, length);
+			resetStream(streamId, FLOW_CONTROL_ERROR);
+			return;
+		}
+
+		if (!stream.discarding) {
+			if (stream.body == null) stream.body = new RequestBodySpool(maxInMemory, tmpdir);
+			if (stream.body.length() + data.readableBytes() > maxBody) {
+				respondAndDiscard(stream, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+			} else {
+				try {
+					stream.body.append(data);
+				} catch (IOException e) {
+					log.error("failed to spool request body", e);
+					resetStream(streamId, INTERNAL_ERROR);
+					consumed(null, length);
+					return;
+				}
+			}
+		}
+
+		boolean end = (flags & FLAG_END_STREAM) != 0;
+		consumed(end ? null : stream, length);
+		if (end) {
+			stream.remoteClosed = true;
+			dispatch(stream);
+		}
+	}
+
+	/**
+	 * Gives flow control credit back once half the window has been used.
+	 */
+	private void consumed(Stream stream, int length) {
+		recvUnacked += length;
+		if (recvUnacked >= CONNECTION_WINDOW / 2) {
+			writeWindowUpdate(0, recvUnacked);
+			recvWindow += recvUnacked;
+			recvUnacked = 0;
+		}
+		if (stream != null) {
+			stream.recvUnacked += length;
+			if (stream.recvUnacked >= STREAM_WINDOW / 2) {
+				writeWindowUpdate(stream.id, stream.recvUnacked);
+				stream.recvWindow += stream.recvUnacked;
+				stream.recvUnacked = 0;
+			}
+		}
+	}
+
+	private void onHeaders(int flags, int streamId, ByteBuf payload) throws Http2Exception {
+		if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, "HEADERS on stream 0");
+		ByteBuf fragment = unpad(flags, payload);
+		if ((flags & FLAG_PRIORITY) != 0) {
+			if (fragment.readableBytes() < 5) throw new Http2Exception(FRAME_SIZE_ERROR, "short HEADERS frame");
+			fragment.skipBytes(5);
+		}
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			headerBlock(flags, streamId, fragment);
+		} else {
+			headersStreamId = streamId;
+			headersFlags = flags;
+			headerBlock = ctx.alloc().buffer(fragment.readableBytes() * 2);
+			headerBlock.writeBytes(fragment);
+		}
+	}
+
+	private void onContinuation(int flags, int streamId, ByteBuf payload) throws Http2Exception {
+		if (headersStreamId == 0) throw new Http2Exception(PROTOCOL_ERROR, "unexpected CONTINUATION");
+		if (headerBlock.readableBytes() + payload.readableBytes() > MAX_HEADER_BLOCK) {
+			throw new Http2Exception(ENHANCE_YOUR_CALM, "header block too big");
+		}
+		headerBlock.writeBytes(payload);
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			ByteBuf block = headerBlock;
+			headerBlock = null;
+			headersStreamId = 0;
+			try {
+				headerBlock(headersFlags, streamId, block);
+			} finally {
+				block.release();
+			}
+		}
+	}
+
+	private void headerBlock(int flags, int streamId, ByteBuf block) throws Http2Exception {
+		boolean end = (flags & FLAG_END_STREAM) != 0;
+
+		// always decoded, even for streams we refuse, so the table stays in step with the client's
+		RequestHeaders headers = new RequestHeaders();
+		boolean tooBig = false;
+		try {
+			tooBig = !decoder.decode(block, MAX_HEADER_LIST_SIZE, headers);
+		} catch (HpackException e) {
+			throw new Http2Exception(COMPRESSION_ERROR, e.getMessage());
+		}
+
+		Stream stream = streams.get(streamId);
+		if (stream != null) {
+			// trailers, which we don't keep
+			if (stream.remoteClosed) {
+				resetStream(streamId, STREAM_CLOSED);
+			} else if (!end) {
+				resetStream(streamId, PROTOCOL_ERROR);
+			} else {
+				stream.remoteClosed = true;
+				dispatch(stream);
+			}
+			return;
+		}
+
+		if ((streamId & 1) == 0 || streamId <= lastStreamId) {
+			throw new Http2Exception(PROTOCOL_ERROR, "HEADERS on closed or invalid stream " + streamId);
+		}
+		lastStreamId = streamId;
+
+		if (goingAway) return;
+
+		if (streams.size() >= MAX_CONCURRENT_STREAMS) {
+			resetStream(streamId, REFUSED_STREAM);
+			return;
+		}
+
+		stream = new Stream(streamId);
+		stream.remoteClosed = end;
+		streams.put(streamId, stream);
+
+		if (tooBig) {
+			respondAndDiscard(stream, HttpResponseStatus.REQUEST_HEADER_FIELDS_TOO_LARGE);
+			return;
+		}
+
+		HttpRequest req = headers.toRequest(streamId);
+		if (req == null) {
+			resetStream(streamId, PROTOCOL_ERROR);
+			return;
+		}
+		stream.head = req;
+
+		String contentLength = req.headers().get(HttpHeaders.Names.CONTENT_LENGTH);
+		if (contentLength != null) {
+			try {
+				if (Long.parseLong(contentLength) > maxBody) {
+					respondAndDiscard(stream, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+					return;
+				}
+			} catch (NumberFormatException e) {
+				resetStream(streamId, PROTOCOL_ERROR);
+				return;
+			}
+		}
+
+		if (end) dispatch(stream);
+	}
+
+	/**
+	 * Collects the decoded headers for a new request.
+	 */
+	private static final class RequestHeaders implements BiConsumer<String,String> {
+
+		private final HttpHeaders headers = new DefaultHttpHeaders(false);
+		private String method, scheme, authority, path;
+		private List<String> cookies;
+		private boolean regularSeen;
+		private boolean malformed;
+
+		@Override
+		public void accept(String name, String value) {
+			if (name.startsWith(":")) {
+				if (regularSeen) malformed = true;
+				switch (name) {
+				case ":method": method = value; break;
+				case ":scheme": scheme = value; break;
+				case ":authority": authority = value; break;
+				case ":path": path = value; break;
+				default: malformed = true;
+				}
+				return;
+			}
+			regularSeen = true;
+			if (CONNECTION_HEADERS.contains(name)) {
+				malformed = true;
+			} else if (HttpHeaders.Names.COOKIE.equalsIgnoreCase(name)) {
+				// split up for better compression, put back together for http/1 code (RFC 7540 8.1.2.5)
+				if (cookies == null) cookies = new ArrayList<>(4);
+				cookies.add(value);
+			} else {
+				headers.add(name, value);
+			}
+		}
+
+		HttpRequest toRequest(int streamId) {
+			if (malformed || method == null) return null;
+			if (!"CONNECT".equals(method) && (scheme == null || path == null || path.isEmpty())) return null;
+			HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(method), path != null ? path : "/");
+			req.headers().set(headers);
+			if (authority != null && !req.headers().contains(HttpHeaders.Names.HOST)) {
+				req.headers().set(HttpHeaders.Names.HOST, authority);
+			}
+			if (cookies != null) {
+				req.headers().set(HttpHeaders.Names.COOKIE, String.join("; ", cookies));
+			}
+			req.headers().set(STREAM_ID, streamId);
+			return req;
+		}
+
+	}
+
+	private void dispatch(Stream stream) {
+		if (stream.discarding || stream.dispatched) return;
+		stream.dispatched = true;
+		if (stream.body == null) stream.body = new RequestBodySpool(maxInMemory, tmpdir);
+		HttpRequest head = stream.head;
+		stream.head = null;
+		HttpHeaders.setContentLength(head, stream.body.length());
+		FullHttpRequest req;
+		try {
+			req = stream.body.toRequest(head);
+		} catch (IOException e) {
+			log.error("failed to spool request body", e);
+			resetStream(stream.id, INTERNAL_ERROR);
+			return;
+		}
+		stream.body = null;
+		ctx.fireChannelRead(req);
+	}
+
+	private void respondAndDiscard(Stream stream, HttpResponseStatus status) {
+		stream.discarding = true;
+		stream.responding = true;
+		discardBody(stream);
+		ByteBuf block = ctx.alloc().buffer();
+		encoder.encode(":status", String.valueOf(status.code()), block);
+		encoder.encode("content-length", "0", block);
+		queue(stream, new Pending(block, null, null, true, null));
+	}
+
+	private void onRstStream(int streamId, ByteBuf payload) throws Http2Exception {
+		if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, "RST_STREAM on stream 0");
+		if (payload.readableBytes() != 4) throw new Http2Exception(FRAME_SIZE_ERROR, "bad RST_STREAM length");
+		if (streamId > lastStreamId) throw new Http2Exception(PROTOCOL_ERROR, "RST_STREAM on idle stream");
+		Stream stream = streams.get(streamId);
+		if (stream != null) {
+			closeStream(stream, new ClosedChannelException());
+		}
+	}
+
+	private void onSettings(int flags, int streamId, ByteBuf payload) throws Http2Exception {
+		if (streamId != 0) throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS on a stream");
+		if ((flags & FLAG_ACK) != 0) {
+			if (payload.isReadable()) throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS ack with payload");
+			return;
+		}
+		applySettings(payload);
+		settingsReceived = true;
+		ByteBuf ack = ctx.alloc().buffer(FRAME_HEADER_LENGTH);
+		writeFrameHeader(ack, 0, SETTINGS, FLAG_ACK, 0);
+		ctx.write(ack);
+	}
+
+	private void applySettings(ByteBuf payload) throws Http2Exception {
+		if (payload.readableBytes() % 6 != 0) throw new Http2Exception(FRAME_SIZE_ERROR, "bad SETTINGS length");
+		while (payload.isReadable()) {
+			int id = payload.readUnsignedShort();
+			long value = payload.readUnsignedInt();
+			switch (id) {
+			case SETTINGS_ENABLE_PUSH:
+				if (value > 1) throw new Http2Exception(PROTOCOL_ERROR, "bad ENABLE_PUSH");
+				break;
+			case SETTINGS_INITIAL_WINDOW_SIZE:
+				if (value > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, "bad INITIAL_WINDOW_SIZE");
+				int delta = (int) value - remoteInitialWindow;
+				remoteInitialWindow = (int) value;
+				for (Stream stream : streams.values()) {
+					long window = (long) stream.sendWindow + delta;
+					if (window > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, "window overflow");
+					stream.sendWindow = (int) window;
+					if (delta > 0) enqueue(stream);
+				}
+				break;
+			case SETTINGS_MAX_FRAME_SIZE:
+				if (value < MAX_FRAME_SIZE || value > 0xffffff) throw new Http2Exception(PROTOCOL_ERROR, "bad MAX_FRAME_SIZE");
+				remoteMaxFrameSize = (int) value;
+				break;
+			default:
+				// the others don't matter to us, we never add to the client's header table
+			}
+		}
+	}
+
+	private void onPing(int flags, int streamId, ByteBuf payload) throws Http2Exception {
+		if (streamId != 0) throw new Http2Exception(PROTOCOL_ERROR, "PING on a stream");
+		if (payload.readableBytes() != 8) throw new Http2Exception(FRAME_SIZE_ERROR, "bad PING length");
+		if ((flags & FLAG_ACK) != 0) return;
+		ByteBuf pong = ctx.alloc().buffer(FRAME_HEADER_LENGTH + 8);
+		writeFrameHeader(pong, 8, PING, FLAG_ACK, 0);
+		pong.writeBytes(payload);
+		ctx.write(pong);
+	}
+
+	private void onGoAway(int streamId) throws Http2Exception {
+		if (streamId != 0) throw new Http2Exception(PROTOCOL_ERROR, "GOAWAY on a stream");
+		goingAway = true;
+		if (streams.isEmpty()) {
+			closing = true;
+			ctx.flush();
+			ctx.close();
+		}
+		// otherwise it's closed once the open streams are done
+	}
+
+	private void onWindowUpdate(int streamId, ByteBuf payload) throws Http2Exception {
+		if (payload.readableBytes() != 4) throw new Http2Exception(FRAME_SIZE_ERROR, "bad WINDOW_UPDATE length");
+		int increment = payload.readInt() & 0x7fffffff;
+		if (streamId == 0) {
+			if (increment == 0) throw new Http2Exception(PROTOCOL_ERROR, "WINDOW_UPDATE of 0");
+			long window = (long) sendWindow + increment;
+			if (window > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, "window overflow");
+			sendWindow = (int) window;
+			for (Stream stream : streams.values()) {
+				enqueue(stream);
+			}
+			return;
+		}
+		Stream stream = streams.get(streamId);
+		if (stream == null) return;
+		if (increment == 0) {
+			resetStream(streamId, PROTOCOL_ERROR);
+			return;
+		}
+		long window = (long) stream.sendWindow + increment;
+		if (window > Integer.MAX_VALUE) {
+			resetStream(streamId, FLOW_CONTROL_ERROR);
+			return;
+		}
+		stream.sendWindow = (int) window;
+		enqueue(stream);
+	}
+
+	// writing
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		ChannelPromise p = promise == ctx.voidPromise() ? null : promise;
+		if (msg instanceof HttpResponse) {
+			HttpResponse res = (HttpResponse) msg;
+			Stream stream = streamFor(res);
+			if (stream == null) {
+				// probably reset by the client while the flow was running
+				ReferenceCountUtil.release(msg);
+				if (p != null) p.tryFailure(new ClosedChannelException());
+				return;
+			}
+			boolean informational = res.getStatus().code() < 200;
+			if (!informational) {
+				stream.responding = true;
+				currentWrite = stream;
+			}
+			ByteBuf block = encodeHeaders(res);
+			if (msg instanceof FullHttpResponse) {
+				ByteBuf content = ((FullHttpResponse) msg).content();
+				if (informational || !content.isReadable()) {
+					ReferenceCountUtil.release(msg);
+					queue(stream, new Pending(block, null, null, !informational, p));
+				} else {
+					queue(stream, new Pending(block, null, null, false, null));
+					queue(stream, new Pending(null, content, null, true, p));
+				}
+			} else {
+				queue(stream, new Pending(block, null, null, false, p));
+			}
+		} else if (msg instanceof HttpContent) {
+			queueOrDrop(new Pending(null, ((HttpContent) msg).content(), null, msg instanceof LastHttpContent, p), msg);
+		} else if (msg instanceof ByteBuf) {
+			queueOrDrop(new Pending(null, (ByteBuf) msg, null, false, p), msg);
+		} else if (msg instanceof ChunkedInput) {
+			queueOrDrop(new Pending(null, null, (ChunkedInput<?>) msg, false, p), msg);
+		} else {
+			ReferenceCountUtil.release(msg);
+			if (p != null) p.tryFailure(new UnsupportedOperationException("can't send " + msg.getClass().getName() + " over http/2"));
+		}
+	}
+
+	private void queueOrDrop(Pending item, Object msg) {
+		Stream stream = currentWrite;
+		if (stream == null || stream.closed) {
+			item.discard(new ClosedChannelException());
+			return;
+		}
+		if (item.end) currentWrite = null;
+		queue(stream, item);
+	}
+
+	private Stream streamFor(HttpResponse res) {
+		String id = res.headers().get(STREAM_ID);
+		if (id != null) {
+			res.headers().remove(STREAM_ID);
+			try {
+				Stream stream = streams.get(Integer.valueOf(id));
+				return stream != null && !stream.responding ? stream : null;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		for (Stream stream : streams.values()) {
+			if (stream.dispatched && !stream.responding) return stream;
+		}
+		return null;
+	}
+
+	private ByteBuf encodeHeaders(HttpResponse res) {
+		ByteBuf block = ctx.alloc().buffer();
+		encoder.encode(":status", String.valueOf(res.getStatus().code()), block);
+		for (Entry<String,String> header : res.headers()) {
+			String name = header.getKey().toLowerCase(Locale.ENGLISH);
+			if (CONNECTION_HEADERS.contains(name)) continue;
+			encoder.encode(name, header.getValue(), block);
+		}
+		return block;
+	}
+
+	private void queue(Stream stream, Pending item) {
+		stream.pending.add(item);
+		enqueue(stream);
+	}
+
+	private void enqueue(Stream stream) {
+		if (!stream.queued && !stream.closed && !stream.pending.isEmpty()) {
+			stream.queued = true;
+			sending.add(stream);
+		}
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		writePending();
+		ctx.flush();
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isWritable()) {
+			writePending();
+			ctx.flush();
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
+	/**
+	 * For chunked inputs that had nothing to give last time, can be called from any thread.
+	 */
+	public void resumeTransfer() {
+		ChannelHandlerContext ctx = this.ctx;
+		if (ctx == null) return;
+		if (ctx.executor().inEventLoop()) {
+			resume();
+		} else {
+			ctx.executor().execute(this::resume);
+		}
+	}
+
+	private void resume() {
+		for (Stream stream : streams.values()) {
+			enqueue(stream);
+		}
+		writePending();
+		ctx.flush();
+	}
+
+	private static final int DONE = 0, MORE = 1, WAITING = 2, BLOCKED = 3;
+
+	/**
+	 * Takes turns sending a frame from each stream with something to send.
+	 */
+	private void writePending() {
+		if (writing) {
+			writeAgain = true;
+			return;
+		}
+		writing = true;
+		try {
+			do {
+				writeAgain = false;
+				while (!closing && !sending.isEmpty() && ctx.channel().isWritable()) {
+					Stream stream = sending.poll();
+					stream.queued = false;
+					if (stream.closed) continue;
+					int result;
+					try {
+						result = send(stream);
+					} catch (Throwable t) {
+						log.error("failed to send response for stream {}", stream.id, t);
+						resetStream(stream.id, INTERNAL_ERROR);
+						continue;
+					}
+					if (result == MORE) {
+						enqueue(stream);
+					} else if (result == BLOCKED) {
+						// the connection window is used up, WINDOW_UPDATE starts it again
+						stream.queued = true;
+						sending.addFirst(stream);
+						break;
+					}
+					// for WAITING, a WINDOW_UPDATE or resumeTransfer() brings it back
+				}
+			} while (writeAgain);
+		} finally {
+			writing = false;
+		}
+	}
+
+	private int send(Stream stream) throws Exception {
+		while (true) {
+			Pending item = stream.pending.peek();
+			if (item == null) return DONE;
+
+			if (item.headers != null) {
+				stream.pending.poll();
+				boolean end = item.end;
+				ChannelPromise promise = item.promise;
+				Pending next = stream.pending.peek();
+				if (!end && next != null && next.data != null && next.end && !next.data.isReadable()) {
+					// saves an empty DATA frame
+					stream.pending.poll();
+					next.data.release();
+					end = true;
+					promise = combine(promise, next.promise);
+				}
+				writeHeaders(stream.id, item.headers, end, promise);
+				if (end) {
+					finished(stream);
+					return DONE;
+				}
+				continue;
+			}
+
+			if (item.input != null) {
+				Object chunk = item.input.readChunk(ctx);
+				if (chunk == null) {
+					if (!item.input.isEndOfInput()) return WAITING;
+					stream.pending.poll();
+					item.input.close();
+					if (item.promise != null) item.promise.trySuccess();
+					continue;
+				}
+				boolean last = chunk instanceof LastHttpContent;
+				ByteBuf buf = chunk instanceof HttpContent ? ((HttpContent) chunk).content() : (ByteBuf) chunk;
+				if (last || item.input.isEndOfInput()) {
+					stream.pending.poll();
+					item.input.close();
+					stream.pending.addFirst(new Pending(null, buf, null, last, item.promise));
+				} else {
+					stream.pending.addFirst(new Pending(null, buf, null, false, null));
+				}
+				continue;
+			}
+
+			ByteBuf data = item.data;
+			int n = Math.min(data.readableBytes(), Math.min(remoteMaxFrameSize, Math.min(stream.sendWindow, sendWindow)));
+			if (data.isReadable() && n <= 0) {
+				return sendWindow <= 0 ? BLOCKED : WAITING;
+			}
+			boolean finishes = n == data.readableBytes();
+			ByteBuf frame = data.readSlice(n).retain();
+			stream.sendWindow -= n;
+			sendWindow -= n;
+			if (finishes) {
+				stream.pending.poll();
+				writeData(stream.id, frame, item.end, item.promise);
+				data.release();
+				if (item.end) {
+					finished(stream);
+					return DONE;
+				}
+			} else {
+				writeData(stream.id, frame, false, null);
+			}
+			return stream.pending.isEmpty() ? DONE : MORE;
+		}
+	}
+
+	private ChannelPromise combine(ChannelPromise a, ChannelPromise b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		ChannelPromise both = ctx.newPromise();
+		both.addListener((ChannelFutureListener) f -> {
+			if (f.isSuccess()) {
+				a.trySuccess();
+				b.trySuccess();
+			} else {
+				a.tryFailure(f.cause());
+				b.tryFailure(f.cause());
+			}
+		});
+		return both;
+	}
+
+	/**
+	 * Our side of the stream is done.
+	 */
+	private void finished(Stream stream) {
+		if (currentWrite == stream) currentWrite = null;
+		if (!stream.remoteClosed) {
+			// answered before the request was all in, ask the client to stop sending (RFC 7540 8.1)
+			writeRstStream(stream.id, NO_ERROR);
+		}
+		closeStream(stream, null);
+	}
+
+	private void closeStream(Stream stream, Throwable cause) {
+		stream.closed = true;
+		streams.remove(stream.id);
+		if (currentWrite == stream) currentWrite = null;
+		Pending item;
+		while ((item = stream.pending.poll()) != null) {
+			item.discard(cause != null ? cause : new ClosedChannelException());
+		}
+		discardBody(stream);
+		if (goingAway && streams.isEmpty() && !closing) {
+			closing = true;
+			ctx.flush();
+			ctx.close();
+		}
+	}
+
+	private void discardBody(Stream stream) {
+		if (stream.body != null) {
+			try {
+				stream.body.reset();
+			} catch (IOException e) {
+				log.warn("failed to remove spooled request body", e);
+			}
+			stream.body = null;
+		}
+	}
+
+	private void resetStream(int streamId, int code) {
+		writeRstStream(streamId, code);
+		Stream stream = streams.get(streamId);
+		if (stream != null) {
+			closeStream(stream, new ClosedChannelException());
+		}
+	}
+
+	private void goAway(int code, String message) {
+		if (closing) return;
+		log.debug("closing http/2 connection ({}): {}", code, message);
+		closing = true;
+		byte[] debug = message != null ? message.getBytes(US_ASCII) : new byte[0];
+		ByteBuf frame = ctx.alloc().buffer(FRAME_HEADER_LENGTH + 8 + debug.length);
+		writeFrameHeader(frame, 8 + debug.length, GOAWAY, 0, 0);
+		frame.writeInt(lastStreamId);
+		frame.writeInt(code);
+		frame.writeBytes(debug);
+		ctx.writeAndFlush(frame).addListener(ChannelFutureListener.CLOSE);
+	}
+
+	// frames, never written with a void promise as IdleStateHandler adds a listener to every write
+
+	private static void writeFrameHeader(ByteBuf out, int length, int type, int flags, int streamId) {
+		out.writeMedium(length);
+		out.writeByte(type);
+		out.writeByte(flags);
+		out.writeInt(streamId);
+	}
+
+	private void writeHeaders(int streamId, ByteBuf block, boolean end, ChannelPromise promise) {
+		int type = HEADERS;
+		int flags = end ? FLAG_END_STREAM : 0;
+		try {
+			do {
+				int n = Math.min(block.readableBytes(), remoteMaxFrameSize);
+				boolean last = n == block.readableBytes();
+				ByteBuf frame = ctx.alloc().buffer(FRAME_HEADER_LENGTH + n);
+				writeFrameHeader(frame, n, type, flags | (last ? FLAG_END_HEADERS : 0), streamId);
+				frame.writeBytes(block, n);
+				if (last && promise != null) {
+					ctx.write(frame, promise);
+				} else {
+					ctx.write(frame);
+				}
+				type = CONTINUATION;
+				flags = 0;
+			} while (block.isReadable());
+		} finally {
+			block.release();
+		}
+	}
+
+	private void writeData(int streamId, ByteBuf data, boolean end, ChannelPromise promise) {
+		ByteBuf header = ctx.alloc().buffer(FRAME_HEADER_LENGTH);
+		writeFrameHeader(header, data.readableBytes(), DATA, end ? FLAG_END_STREAM : 0, streamId);
+		ByteBuf frame = Unpooled.wrappedBuffer(header, data);
+		if (promise != null) {
+			ctx.write(frame, promise);
+		} else {
+			ctx.write(frame);
+		}
+	}
+
+	private void writeWindowUpdate(int streamId, int increment) {
+		ByteBuf frame = ctx.alloc().buffer(FRAME_HEADER_LENGTH + 4);
+		writeFrameHeader(frame, 4, WINDOW_UPDATE, 0, streamId);
+		frame.writeInt(increment);
+		ctx.write(frame);
+	}
+
+	private void writeRstStream(int streamId, int code) {
+		ByteBuf frame = ctx.alloc().buffer(FRAME_HEADER_LENGTH + 4);
+		writeFrameHeader(frame, 4, RST_STREAM, 0, streamId);
+		frame.writeInt(code);
+		ctx.write(frame);
+	}
+
+}
@@ -73,11 +73,20 @@ public class HttpChannelSetup extends ChannelInboundHandlerAdapter implements Ch
 			return;
 		}
 		
+		if (ctx.isRemoved()) {
+			// another request on the same (http/2) connection was paused too and has set it up already
+			ctx.fireChannelRead(req);
+			return;
+		}
+		
 		Channel channel = ctx.channel();
 		
+		// http/2 can't send a FileRegion as is, so it gets the chunked files ssl uses
+		boolean chunkedFiles = ssl || ctx.pipeline().get(Http2ServerHandler.class) != null;
+		
 		ctx.pipeline()
 			.addLast("ds", DATASET_DECODER)
-			.addLast("data", ssl ? DataToHttpEncoder.SSL : DataToHttpEncoder.NORMAL)
+			.addLast("data", flow.compression().encoder(chunkedFiles))
 			.addLast("flow", new HttpFlowHandler(flow, ctx.channel()))
 			.remove(this);
 		
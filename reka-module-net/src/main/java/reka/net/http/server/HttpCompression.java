@@ -0,0 +1,168 @@
+package reka.net.http.server;
+
+import static reka.util.Util.runtime;
+import static reka.util.Util.unchecked;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Settings for compressing responses, which content types, how big they need to be,
+ * and picking an encoding from the Accept-Encoding header.
+ */
+public class HttpCompression {
+	
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+	
+	public static final Set<String> DEFAULT_TYPES = ImmutableSet.of(
+			"text/*", 
+			"application/json", 
+			"application/javascript", 
+			"application/x-javascript", 
+			"application/xml", 
+			"application/xhtml+xml", 
+			"application/rss+xml", 
+			"image/svg+xml");
+	
+	public static final int DEFAULT_MIN_SIZE = 1024;
+	public static final int DEFAULT_LEVEL = 6;
+	
+	public static final HttpCompression NONE = new HttpCompression(false, DEFAULT_MIN_SIZE, DEFAULT_LEVEL, DEFAULT_TYPES);
+	public static final HttpCompression ENABLED = new HttpCompression(true, DEFAULT_MIN_SIZE, DEFAULT_LEVEL, DEFAULT_TYPES);
+	
+	// apps have to ask for it
+	public static final HttpCompression DEFAULT = NONE;
+	
+	private final boolean enabled;
+	private final int minSize;
+	private final int level;
+	private final Set<String> types;
+	
+	private DataToHttpEncoder encoder, sslEncoder;
+	
+	public HttpCompression(boolean enabled, int minSize, int level, Set<String> types) {
+		this.enabled = enabled;
+		this.minSize = minSize;
+		this.level = level;
+		this.types = ImmutableSet.copyOf(types);
+	}
+	
+	public synchronized DataToHttpEncoder encoder(boolean ssl) {
+		if (ssl) {
+			if (sslEncoder == null) sslEncoder = new DataToHttpEncoder(true, this);
+			return sslEncoder;
+		} else {
+			if (encoder == null) encoder = new DataToHttpEncoder(false, this);
+			return encoder;
+		}
+	}
+	
+	public boolean compressible(String contentType, long size) {
+		if (!enabled || size < minSize || contentType == null) return false;
+		int semicolon = contentType.indexOf(';');
+		String type = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ENGLISH);
+		if (types.contains(type)) return true;
+		int slash = type.indexOf('/');
+		return slash > 0 && types.contains(type.substring(0, slash) + "/*");
+	}
+	
+	/**
+	 * @return gzip or deflate if the client will take it, otherwise null
+	 */
+	public String encodingFor(String acceptEncoding) {
+		if (!enabled || acceptEncoding == null) return null;
+		float gzip = -1, deflate = -1, star = -1;
+		for (String part : acceptEncoding.split(",")) {
+			String coding = part;
+			float q = 1;
+			int semicolon = part.indexOf(';');
+			if (semicolon >= 0) {
+				coding = part.substring(0, semicolon);
+				q = quality(part.substring(semicolon + 1));
+			}
+			coding = coding.trim().toLowerCase(Locale.ENGLISH);
+			switch (coding) {
+			case GZIP: 
+			case "x-gzip":
+				gzip = q; 
+				break;
+			case DEFLATE: 
+				deflate = q; 
+				break;
+			case "*": 
+				star = q; 
+				break;
+			}
+		}
+		if (gzip < 0) gzip = star;
+		if (deflate < 0) deflate = star;
+		if (gzip > 0 && gzip >= deflate) return GZIP;
+		if (deflate > 0) return DEFLATE;
+		return null;
+	}
+	
+	private static float quality(String params) {
+		for (String param : params.split(";")) {
+			param = param.trim();
+			if (param.startsWith("q=")) {
+				try {
+					return Float.parseFloat(param.substring(2));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+	
+	public ByteBuf compress(ByteBuf in, String encoding, ByteBufAllocator alloc) {
+		ByteBuf out = alloc.buffer(Math.max(64, in.readableBytes() / 2));
+		try (OutputStream stream = stream(new ByteBufOutputStream(out), encoding, level)) {
+			in.getBytes(in.readerIndex(), stream, in.readableBytes());
+		} catch (IOException e) {
+			out.release();
+			throw unchecked(e);
+		}
+		return out;
+	}
+	
+	public byte[] compress(byte[] in, String encoding) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, in.length / 2));
+		try (OutputStream stream = stream(out, encoding, Deflater.BEST_COMPRESSION)) {
+			stream.write(in);
+		} catch (IOException e) {
+			throw unchecked(e);
+		}
+		return out.toByteArray();
+	}
+	
+	private static OutputStream stream(OutputStream out, String encoding, int level) throws IOException {
+		switch (encoding) {
+		case GZIP:
+			return new GZIPOutputStream(out, 8192) {{ def.setLevel(level); }};
+		case DEFLATE:
+			return new DeflaterOutputStream(out, new Deflater(level), 8192) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					def.end();
+				}
+			};
+		default:
+			throw runtime("unknown encoding %s", encoding);
+		}
+	}
+	
+}
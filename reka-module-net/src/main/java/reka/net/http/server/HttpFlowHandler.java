@@ -9,20 +9,24 @@ import reka.identity.IdentityStore;
 import reka.identity.IdentityStoreReader;
 import reka.net.NetManager.HttpFlows;
 import reka.net.NetModule;
+import reka.net.http.accesslog.AccessLog;
 
 public class HttpFlowHandler extends SimpleChannelInboundHandler<MutableData> {
 	
 	private final Flow flow;
-	private final IdentityStoreReader store;
+	private final IdentityStoreReader store; // shared by every request on the channel
+	private final AccessLog accessLog;
 	
 	public HttpFlowHandler(HttpFlows flows, Channel channel) {
 		this.flow = flows.onMessage();
+		this.accessLog = flows.accessLog();
 		this.store = IdentityStore.immutableBuilder().put(NetModule.Keys.channel, channel).build();
 	}
 
 	@Override
 	protected void channelRead0(ChannelHandlerContext context, MutableData data) {
-		flow.run(context.executor(), context.executor(), data, new ChannelHandlerContextDataSubscriber(context), store, true);
+		LazyRequestData request = data instanceof LazyRequestData ? (LazyRequestData) data : null;
+		flow.run(context.executor(), context.executor(), data, new ChannelHandlerContextDataSubscriber(context, accessLog, request), store, true);
 	}
 	
 	@Override
@@ -1,51 +1,256 @@
 package reka.net.http.server;
 
 import static reka.util.Util.unchecked;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
 import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 
+import java.io.File;
+import java.util.Base64;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import reka.net.NetSettings.TlsSettings;
 
+/**
+ * Sets up a connection for HTTP/1.1 or HTTP/2.
+ *
+ * TLS connections pick with ALPN, which needs the JDK's engine, if that can't load the key
+ * they use OpenSSL and only HTTP/1.1. Plaintext connections are HTTP/2 if they start with the
+ * connection preface (prior knowledge) or can upgrade to it with "Upgrade: h2c".
+ */
 public class HttpInitializer extends ChannelInitializer<SocketChannel> {
 
+	private static final Logger log = LoggerFactory.getLogger(HttpInitializer.class);
+
+	private static final int MAX_IN_MEMORY = 256 * 1024; // 256k, bigger bodies are spooled to disk
+	private static final File TMPDIR = new File(System.getProperty("java.io.tmpdir"));
+
+	private static final String H2 = "h2";
+	private static final String H2C = "h2c";
+	private static final String HTTP2_SETTINGS = "HTTP2-Settings";
+
 	private final ChannelHandler handler;
 	private final SslContext ssl;
-	
-	public HttpInitializer(ChannelHandler handler, TlsSettings sslSettings) {
+	private final boolean alpn;
+	private final HttpLoadShedder shedder;
+
+	public HttpInitializer(ChannelHandler handler, TlsSettings sslSettings, HttpLoadShedder shedder) {
 		this.handler = handler;
+		this.shedder = shedder;
 		if (sslSettings != null) {
+			SslContext context;
+			boolean jdk;
 			try {
-				this.ssl = SslContext.newServerContext(SslProvider.OPENSSL, sslSettings.certChainFile(), sslSettings.keyFile());
+				context = SslContext.newServerContext(SslProvider.JDK, sslSettings.certChainFile(), sslSettings.keyFile());
+				jdk = true;
 			} catch (SSLException e) {
-				throw unchecked(e);
+				log.warn("can't use the JDK engine for {} ({}), falling back to OpenSSL without HTTP/2", sslSettings.keyFile(), e.getMessage());
+				try {
+					context = SslContext.newServerContext(SslProvider.OPENSSL, sslSettings.certChainFile(), sslSettings.keyFile());
+				} catch (SSLException e2) {
+					throw unchecked(e2);
+				}
+				jdk = false;
 			}
+			this.ssl = context;
+			this.alpn = jdk;
 		} else {
 			this.ssl = null;
+			this.alpn = false;
 		}
 	}
-	
+
 	@Override
 	protected void initChannel(SocketChannel ch) throws Exception {
 		ch.config().setAutoRead(true);
 		ChannelPipeline pipeline = ch.pipeline();
+		HttpLimits limits = shedder.limits();
 		if (ssl != null) {
-			pipeline.addLast("ssl", ssl.newHandler(ch.alloc()));
+			SSLEngine engine = ssl.newEngine(ch.alloc());
+			if (alpn) {
+				SSLParameters params = engine.getSSLParameters();
+				params.setApplicationProtocols(new String[] { H2, "http/1.1" });
+				engine.setSSLParameters(params);
+			}
+			pipeline.addLast("ssl", new SslHandler(engine));
 		}
+		if (limits.readIdle() > 0 || limits.writeIdle() > 0) {
+			pipeline.addLast(HttpLoadShedder.IDLE_HANDLER, new IdleStateHandler(limits.readIdle(), limits.writeIdle(), 0));
+		}
+		if (ssl == null) {
+			pipeline.addLast("negotiate", new PrefaceDetector(limits));
+		} else if (alpn) {
+			pipeline.addLast("negotiate", new AlpnNegotiator(limits));
+		} else {
+			http1(pipeline, limits, false);
+		}
+	}
+
+	private void http1(ChannelPipeline pipeline, HttpLimits limits, boolean upgradable) {
 		pipeline.addLast("decoder", new HttpRequestDecoder());
-		pipeline.addLast("aggregator", new HttpObjectAggregator(1024 * 1024 * 500)); // 500mb
+		pipeline.addLast("aggregator", new SpoolingHttpRequestAggregator(MAX_IN_MEMORY, limits.maxBodyOrDefault(), TMPDIR));
 		pipeline.addLast("encoder", new HttpResponseEncoder());
-		pipeline.addLast("chunking", new ChunkedWriteHandler()); 
-		pipeline.addLast("handler", handler);	
+		if (upgradable) {
+			pipeline.addLast("upgrade", new H2cUpgrade(limits));
+		}
+		pipeline.addLast("limits", shedder.newHandler(limits));
+		pipeline.addLast("chunking", new ChunkedWriteHandler());
+		pipeline.addLast("handler", handler);
 	}
-	
+
+	private void http2(ChannelPipeline pipeline, HttpLimits limits) {
+		pipeline.addLast("http2", new Http2ServerHandler(MAX_IN_MEMORY, limits.maxBodyOrDefault(), TMPDIR));
+		pipeline.addLast("limits", shedder.newHandler(limits));
+		pipeline.addLast("handler", handler);
+	}
+
+	/**
+	 * Waits for enough of a plaintext connection to see if it starts with the HTTP/2 preface.
+	 */
+	private class PrefaceDetector extends ByteToMessageDecoder {
+
+		private final HttpLimits limits;
+
+		PrefaceDetector(HttpLimits limits) {
+			this.limits = limits;
+		}
+
+		@Override
+		protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+			ByteBuf preface = Http2ServerHandler.PREFACE;
+			int n = Math.min(in.readableBytes(), preface.readableBytes());
+			boolean matches = true;
+			for (int i = 0; i < n && matches; i++) {
+				matches = in.getByte(in.readerIndex() + i) == preface.getByte(i);
+			}
+			if (!matches) {
+				http1(ctx.pipeline(), limits, true);
+			} else if (n == preface.readableBytes()) {
+				http2(ctx.pipeline(), limits);
+			} else {
+				return;
+			}
+			ctx.pipeline().remove(this); // passes on what it's got so far
+		}
+
+	}
+
+	/**
+	 * Sets up whatever protocol was agreed on once the TLS handshake is done.
+	 */
+	private class AlpnNegotiator extends ChannelInboundHandlerAdapter {
+
+		private final HttpLimits limits;
+
+		AlpnNegotiator(HttpLimits limits) {
+			this.limits = limits;
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if (evt instanceof SslHandshakeCompletionEvent && ((SslHandshakeCompletionEvent) evt).isSuccess()) {
+				configure(ctx);
+			}
+			super.userEventTriggered(ctx, evt);
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			configure(ctx);
+			ctx.fireChannelRead(msg);
+		}
+
+		private void configure(ChannelHandlerContext ctx) {
+			if (ctx.isRemoved()) return;
+			SslHandler sslHandler = ctx.pipeline().get(SslHandler.class);
+			if (H2.equals(sslHandler.engine().getApplicationProtocol())) {
+				http2(ctx.pipeline(), limits);
+			} else {
+				http1(ctx.pipeline(), limits, false);
+			}
+			ctx.pipeline().remove(this);
+		}
+
+	}
+
+	/**
+	 * Switches a plaintext HTTP/1.1 connection to HTTP/2 when a request asks for it (RFC 7540 3.2),
+	 * that request gets its response as stream 1.
+	 */
+	private class H2cUpgrade extends ChannelInboundHandlerAdapter {
+
+		private final HttpLimits limits;
+
+		H2cUpgrade(HttpLimits limits) {
+			this.limits = limits;
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (!(msg instanceof FullHttpRequest)) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+			FullHttpRequest req = (FullHttpRequest) msg;
+			HttpHeaders headers = req.headers();
+			String settings = headers.get(HTTP2_SETTINGS);
+			if (!H2C.equalsIgnoreCase(headers.get(HttpHeaders.Names.UPGRADE)) || settings == null || req.content().isReadable()) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+
+			ByteBuf decoded;
+			try {
+				decoded = Unpooled.wrappedBuffer(Base64.getUrlDecoder().decode(settings));
+			} catch (IllegalArgumentException e) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+
+			FullHttpResponse switching = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SWITCHING_PROTOCOLS);
+			switching.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Names.UPGRADE);
+			switching.headers().set(HttpHeaders.Names.UPGRADE, H2C);
+			ctx.writeAndFlush(switching);
+
+			headers.remove(HttpHeaders.Names.UPGRADE);
+			headers.remove(HttpHeaders.Names.CONNECTION);
+			headers.remove(HTTP2_SETTINGS);
+
+			ChannelPipeline pipeline = ctx.pipeline();
+			pipeline.remove("decoder");
+			pipeline.remove("aggregator");
+			pipeline.remove("encoder");
+			pipeline.remove("chunking");
+			pipeline.replace(this, "http2", new Http2ServerHandler(MAX_IN_MEMORY, limits.maxBodyOrDefault(), TMPDIR, req, decoded));
+		}
+
+	}
+
 }
@@ -0,0 +1,79 @@
+package reka.net.http.server;
+
+import static reka.util.Util.runtime;
+
+/**
+ * Settings for what one http listener will take on, idle timeouts, how many connections
+ * and in-flight requests it allows and how big a request body can be.
+ *
+ * A limit of 0 means it isn't set, so no limit (or no timeout), except for the body which
+ * stays at {@link #DEFAULT_MAX_BODY}.
+ */
+public class HttpLimits {
+
+	public static final long DEFAULT_MAX_BODY = 1024L * 1024 * 500; // 500mb
+
+	public static final HttpLimits DEFAULT = new HttpLimits(0, 0, 0, 0, 0);
+
+	private final int readIdle;
+	private final int writeIdle;
+	private final int maxConnections;
+	private final int maxInFlight;
+	private final long maxBody;
+
+	public HttpLimits(int readIdle, int writeIdle, int maxConnections, int maxInFlight, long maxBody) {
+		this.readIdle = readIdle;
+		this.writeIdle = writeIdle;
+		this.maxConnections = maxConnections;
+		this.maxInFlight = maxInFlight;
+		this.maxBody = maxBody;
+	}
+
+	public int readIdle() {
+		return readIdle;
+	}
+
+	public int writeIdle() {
+		return writeIdle;
+	}
+
+	public int maxConnections() {
+		return maxConnections;
+	}
+
+	public int maxInFlight() {
+		return maxInFlight;
+	}
+
+	public long maxBody() {
+		return maxBody;
+	}
+
+	public long maxBodyOrDefault() {
+		return maxBody > 0 ? maxBody : DEFAULT_MAX_BODY;
+	}
+
+	/**
+	 * The limits for a port shared by more than one deployment, each one takes what the
+	 * others set, but two can't set the same one differently.
+	 */
+	public HttpLimits merge(HttpLimits other) {
+		return new HttpLimits(
+				merge("read-idle", readIdle, other.readIdle),
+				merge("write-idle", writeIdle, other.writeIdle),
+				merge("max-connections", maxConnections, other.maxConnections),
+				merge("max-in-flight", maxInFlight, other.maxInFlight),
+				merge("max-body", maxBody, other.maxBody));
+	}
+
+	private static int merge(String name, int a, int b) {
+		return (int) merge(name, (long) a, (long) b);
+	}
+
+	private static long merge(String name, long a, long b) {
+		if (a == 0) return b;
+		if (b == 0 || a == b) return a;
+		throw runtime("%s is already set to %d for this port, can't also have %d", name, a, b);
+	}
+
+}
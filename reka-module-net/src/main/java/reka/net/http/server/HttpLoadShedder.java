@@ -0,0 +1,237 @@
+package reka.net.http.server;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import reka.data.MutableData;
+
+/**
+ * Keeps one http listener within its {@link HttpLimits}.
+ *
+ * Each channel gets a handler that sits between the aggregator and the response encoder, it
+ * counts the connection and each request until the end of its response is written. Anything
+ * over the limits gets a 503 and the connection is closed (just the stream for http/2), this
+ * happens on the raw request so no data is built and no flow is run for it.
+ */
+public class HttpLoadShedder {
+
+	public static final String IDLE_HANDLER = "idle";
+
+	private static final String WS_HEADER = "Upgrade";
+	private static final String WS_HEADER_VALUE = "websocket";
+
+	private volatile HttpLimits limits;
+
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final LongAdder rejectedConnections = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+	private final LongAdder idleClosed = new LongAdder();
+
+	public HttpLoadShedder(HttpLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Applies to connections made from now on, existing ones keep what they started with.
+	 */
+	public void limits(HttpLimits limits) {
+		this.limits = limits;
+	}
+
+	public HttpLimits limits() {
+		return limits;
+	}
+
+	public ChannelDuplexHandler newHandler(HttpLimits limits) {
+		return new Handler(limits);
+	}
+
+	public long rejected() {
+		return rejectedConnections.sum() + rejectedRequests.sum();
+	}
+
+	public void statusData(MutableData data) {
+		HttpLimits current = limits;
+		data.putLong("connections", connections.get());
+		data.putLong("in-flight", inFlight.get());
+		data.putLong("max-connections", current.maxConnections());
+		data.putLong("max-in-flight", current.maxInFlight());
+		data.putLong("max-body", current.maxBodyOrDefault());
+		data.putLong("rejected-connections", rejectedConnections.sum());
+		data.putLong("rejected-requests", rejectedRequests.sum());
+		data.putLong("idle-closed", idleClosed.sum());
+	}
+
+	private class Handler extends ChannelDuplexHandler {
+
+		private final HttpLimits limits;
+
+		// only touched from the channel's event loop
+		private boolean counted;
+		private boolean overLimit;
+		private boolean websocket;
+		private int requests;
+		
+		// the streams with a response started but its body not yet ended, latest last
+		private final Deque<String> responding = new ArrayDeque<>();
+
+		Handler(HttpLimits limits) {
+			this.limits = limits;
+		}
+
+		@Override
+		public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+			// added once the protocol has been picked, after the channel became active
+			if (ctx.channel().isActive()) count();
+		}
+
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) throws Exception {
+			count();
+			super.channelActive(ctx);
+		}
+
+		private void count() {
+			if (counted || overLimit) return;
+			int max = limits.maxConnections();
+			if (max > 0 && connections.incrementAndGet() > max) {
+				connections.decrementAndGet();
+				rejectedConnections.increment();
+				overLimit = true; // it'll get a 503 for its first request
+			} else {
+				if (max <= 0) connections.incrementAndGet();
+				counted = true;
+			}
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			if (counted) {
+				counted = false;
+				connections.decrementAndGet();
+			}
+			if (requests > 0) {
+				inFlight.addAndGet(-requests);
+				requests = 0;
+			}
+			responding.clear();
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (!(msg instanceof FullHttpRequest) || websocket) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+
+			FullHttpRequest req = (FullHttpRequest) msg;
+
+			if (overLimit) {
+				reject(ctx, req);
+				return;
+			}
+
+			if (WS_HEADER_VALUE.equals(req.headers().get(WS_HEADER))) {
+				// long lived, so it's only counted as a connection
+				websocket = true;
+				if (ctx.pipeline().get(IDLE_HANDLER) != null) ctx.pipeline().remove(IDLE_HANDLER);
+				ctx.fireChannelRead(msg);
+				return;
+			}
+
+			int max = limits.maxInFlight();
+			if (max > 0 && inFlight.incrementAndGet() > max) {
+				inFlight.decrementAndGet();
+				rejectedRequests.increment();
+				reject(ctx, req);
+				return;
+			}
+			if (max <= 0) inFlight.incrementAndGet();
+			requests++;
+
+			ctx.fireChannelRead(msg);
+		}
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+			boolean ended = false;
+			if (msg instanceof FullHttpResponse) {
+				// other streams' responses can come in while one is sending its body
+				ended = true;
+			} else if (msg instanceof HttpResponse) {
+				responding.addLast(streamOf((HttpResponse) msg));
+			} else if (!responding.isEmpty() && (msg instanceof LastHttpContent || msg instanceof ChunkedInput)) {
+				// http/2 takes a chunked input as is, for http/1 it's after this and we see the chunks,
+				// either way the body goes with the latest response started
+				responding.removeLast();
+				ended = true;
+			}
+			if (ended) {
+				if (requests > 0) {
+					requests--;
+					inFlight.decrementAndGet();
+				}
+			}
+			ctx.write(msg, promise);
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if (evt instanceof IdleStateEvent && !websocket) {
+				IdleState state = ((IdleStateEvent) evt).state();
+				if ((state == IdleState.READER_IDLE && requests == 0) ||
+					(state == IdleState.WRITER_IDLE && requests > 0)) {
+					idleClosed.increment();
+					ctx.close();
+					return;
+				}
+			}
+			super.userEventTriggered(ctx, evt);
+		}
+
+		private String streamOf(HttpResponse response) {
+			String id = response.headers().get(Http2ServerHandler.STREAM_ID);
+			return id != null ? id : "";
+		}
+
+		private void reject(ChannelHandlerContext ctx, FullHttpRequest req) {
+			String streamId = req.headers().get(Http2ServerHandler.STREAM_ID);
+			req.release();
+			FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, SERVICE_UNAVAILABLE);
+			HttpHeaders.setContentLength(response, 0);
+			response.headers().set(HttpHeaders.Names.RETRY_AFTER, 1);
+			if (streamId != null && !overLimit) {
+				// the other streams can carry on
+				response.headers().set(Http2ServerHandler.STREAM_ID, streamId);
+				ctx.writeAndFlush(response);
+				return;
+			}
+			if (streamId != null) response.headers().set(Http2ServerHandler.STREAM_ID, streamId);
+			response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+			ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+		}
+
+	}
+
+}
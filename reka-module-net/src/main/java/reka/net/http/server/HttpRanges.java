@@ -0,0 +1,98 @@
+package reka.net.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses "Range: bytes=..." headers.
+ */
+final class HttpRanges {
+	
+	private static final String BYTES_UNIT = "bytes=";
+	
+	// more than this and we just send the whole thing
+	private static final int MAX_RANGES = 16;
+	
+	private HttpRanges() {}
+	
+	static final class Range {
+		
+		final long start;
+		final long end; // inclusive
+		
+		Range(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+		
+		long length() {
+			return end - start + 1;
+		}
+		
+		String contentRange(long total) {
+			return "bytes " + start + "-" + end + "/" + total;
+		}
+		
+	}
+	
+	/**
+	 * @return the satisfiable ranges in order with overlaps merged, an empty list if 
+	 * none are satisfiable, or null if the header should be ignored
+	 */
+	static List<Range> parse(String header, long length) {
+		
+		if (header == null || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+			return null;
+		}
+		
+		List<Range> ranges = new ArrayList<>();
+		
+		for (String spec : header.substring(BYTES_UNIT.length()).split(",")) {
+			spec = spec.trim();
+			if (spec.isEmpty()) continue;
+			int dash = spec.indexOf('-');
+			if (dash < 0) return null;
+			String from = spec.substring(0, dash).trim();
+			String to = spec.substring(dash + 1).trim();
+			try {
+				if (from.isEmpty()) {
+					if (to.isEmpty()) return null;
+					long suffix = Long.parseLong(to);
+					if (suffix < 0) return null;
+					if (suffix > 0 && length > 0) {
+						ranges.add(new Range(Math.max(0, length - suffix), length - 1));
+					}
+				} else {
+					long start = Long.parseLong(from);
+					long end = to.isEmpty() ? length - 1 : Long.parseLong(to);
+					if (start < 0 || end < start) return null;
+					if (start < length) {
+						ranges.add(new Range(start, Math.min(end, length - 1)));
+					}
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (ranges.size() > MAX_RANGES) return null;
+		}
+		
+		if (ranges.size() < 2) return ranges;
+		
+		Collections.sort(ranges, (a, b) -> Long.compare(a.start, b.start));
+		List<Range> merged = new ArrayList<>(ranges.size());
+		Range current = ranges.get(0);
+		for (int i = 1; i < ranges.size(); i++) {
+			Range next = ranges.get(i);
+			if (next.start <= current.end + 1) {
+				current = new Range(current.start, Math.max(current.end, next.end));
+			} else {
+				merged.add(current);
+				current = next;
+			}
+		}
+		merged.add(current);
+		return merged;
+	}
+
+}
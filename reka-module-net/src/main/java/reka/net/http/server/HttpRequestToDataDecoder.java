@@ -1,17 +1,8 @@
 package reka.net.http.server;
 
-import static reka.data.content.Contents.utf8;
-import static reka.util.Path.COOKIES;
-import static reka.util.Path.HEADERS;
-import static reka.util.Path.PARAMS;
-import static reka.util.Path.REQUEST;
-import static reka.util.Path.dots;
-import static reka.util.Path.path;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageDecoder;
-import io.netty.handler.codec.http.Cookie;
-import io.netty.handler.codec.http.CookieDecoder;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
@@ -20,7 +11,6 @@ import io.netty.handler.codec.http.QueryStringDecoder;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +24,6 @@ import reka.net.http.converters.HttpMessageToDataConverter;
 import reka.net.http.converters.JsonMessageToDataConverter;
 import reka.net.http.converters.MultipartRequestMessageToDataConverter;
 import reka.net.http.converters.PlainTextMessageToDataConverter;
-import reka.util.Path.PathElements;
 import reka.util.Path.Request;
 import reka.util.Path.Response;
 
@@ -67,11 +56,6 @@ public class HttpRequestToDataDecoder extends MessageToMessageDecoder<FullHttpRe
 			data.putBool(HttpHostHandler.CLOSE_CHANNEL, true);
 		}
 
-		MutableData requestData = data.createMapAt(REQUEST);
-		MutableData params = requestData.createMapAt(PARAMS);
-		MutableData headers = requestData.createMapAt(HEADERS);
-		MutableData cookies = requestData.createMapAt(COOKIES);
-		
 		String host = hostSplitter.split(HttpHeaders.getHost(req, "")).iterator().next();
 
 		QueryStringDecoder qs = new QueryStringDecoder(req.getUri());
@@ -87,54 +71,27 @@ public class HttpRequestToDataDecoder extends MessageToMessageDecoder<FullHttpRe
 		}
 		data.putString(Request.METHOD, httpMethod);
 		
-		// params
-
-		for (Entry<String, List<String>> entry : qs.parameters().entrySet()) {
-			for (String value : entry.getValue()) {
-				params.putOrAppend(dots(entry.getKey()), utf8(value));
-			}
-		}
-
-		// headers
-
-		for (Entry<String, String> header : req.headers()) {
-			headers.put(path(PathElements.name(header.getKey())), utf8(header.getValue()));
-		}
-		
-		// cookies mmmm
-		
-		String cookieHeader = req.headers().get(com.google.common.net.HttpHeaders.COOKIE);
-		if (cookieHeader != null) {
-			for (Cookie cookie : CookieDecoder.decode(cookieHeader)) {
-				cookies.putMap(cookie.getName(), c -> {
-					c.putString("value", cookie.getValue());
-					if (cookie.getDomain() != null) c.putString("domain", cookie.getDomain());
-					if (cookie.getPath() != null) c.putString("path", cookie.getPath());
-					if (cookie.getMaxAge() != Long.MIN_VALUE) c.putLong("max-age", cookie.getMaxAge());	
-				});
-			}
-		}
+		// params, headers, cookies and body are decoded when they are first used
 		
-		// body
+		String contentType = null;
+		HttpMessageToDataConverter converter = null;
 		
 		if (req.getMethod().equals(HttpMethod.POST) || req.getMethod().equals(HttpMethod.PUT)) {
 			
-			String contentType = req.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+			contentType = req.headers().get(HttpHeaders.Names.CONTENT_TYPE);
 			if (contentType == null) contentType = "application/octet-stream";
 			
 			// just take the first bit if there is a semicolon, ignore the rest (charset, etc)
 			contentType = semicolonSplitter.split(contentType).iterator().next().toLowerCase();
 			
-			data.putString(Request.Headers.CONTENT_TYPE, contentType);
-			
 			if (contentType.startsWith("multipart/")) {
-				multipartHandler.processData(req, data, contentType);
+				converter = multipartHandler;
 			} else {
-				contentHandlers.getOrDefault(contentType, defaultContentHandler).processData(req, requestData, contentType);
+				converter = contentHandlers.getOrDefault(contentType, defaultContentHandler);
 			}
 		}
 		
-		out.add(data);
+		out.add(new LazyRequestData(data, req, qs, contentType, converter));
 	}
 
 }
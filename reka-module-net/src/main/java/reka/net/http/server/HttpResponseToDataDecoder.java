@@ -43,6 +43,10 @@ public class HttpResponseToDataDecoder extends MessageToMessageDecoder<FullHttpR
 	
 	@Override
 	protected void decode(ChannelHandlerContext ctx, FullHttpResponse res, List<Object> out) throws Exception {
+		out.add(toData(res));
+	}
+	
+	public static MutableData toData(FullHttpResponse res) throws Exception {
 		
 		final MutableData data = MutableMemoryData.create();
 		
@@ -72,7 +76,7 @@ public class HttpResponseToDataDecoder extends MessageToMessageDecoder<FullHttpR
 			contentHandlers.getOrDefault(contentType, defaultContentHandler).processData(res, data, contentType);
 		}
 		
-		out.add(data);
+		return data;
 	}
 
 }
@@ -0,0 +1,444 @@
+package reka.net.http.server;
+
+import static reka.data.content.Contents.utf8;
+import static reka.util.Path.COOKIES;
+import static reka.util.Path.CONTENT;
+import static reka.util.Path.HEADERS;
+import static reka.util.Path.METHOD;
+import static reka.util.Path.PARAMS;
+import static reka.util.Path.REQUEST;
+import static reka.util.Path.dots;
+import static reka.util.Path.path;
+import static reka.util.Util.unchecked;
+import io.netty.handler.codec.http.Cookie;
+import io.netty.handler.codec.http.CookieDecoder;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import org.codehaus.jackson.JsonGenerator;
+
+import reka.data.Data;
+import reka.data.ListMutation;
+import reka.data.MapMutation;
+import reka.data.MutableData;
+import reka.data.ObjBuilder;
+import reka.data.content.Content;
+import reka.net.http.converters.FormUrlEncodedMessageToDataConverter;
+import reka.net.http.converters.HttpMessageToDataConverter;
+import reka.util.Path;
+import reka.util.Path.PathElement;
+import reka.util.Path.PathElements;
+import reka.util.ThrowingConsumer;
+
+import com.google.common.hash.Hasher;
+
+/**
+ * The request data handed to the flow, the cheap bits (method, path, host) are put in
+ * straight away but the params, headers, cookies and body are only decoded when something
+ * looks at or changes a path that could include them.
+ * 
+ * Anything that needs the whole data (iterating, copying, json, etc) decodes everything first.
+ */
+final class LazyRequestData implements MutableData {
+	
+	private static final int PARAMS_SECTION = 1;
+	private static final int HEADERS_SECTION = 1 << 1;
+	private static final int COOKIES_SECTION = 1 << 2;
+	private static final int BODY_SECTION = 1 << 3;
+	
+	private static final PathElement REQUEST_ELEMENT = REQUEST.first();
+	private static final PathElement PARAMS_ELEMENT = PARAMS.first();
+	private static final PathElement HEADERS_ELEMENT = HEADERS.first();
+	private static final PathElement COOKIES_ELEMENT = COOKIES.first();
+	private static final PathElement CONTENT_ELEMENT = CONTENT.first();
+	private static final PathElement METHOD_ELEMENT = METHOD.first();
+	
+	private static final Path REQUEST_PARAMS = REQUEST.add(PARAMS);
+	private static final Path REQUEST_HEADERS = REQUEST.add(HEADERS);
+	private static final Path REQUEST_COOKIES = REQUEST.add(COOKIES);
+	
+	private final MutableData data;
+	
+	private final QueryStringDecoder qs;
+	private final HttpHeaders headers;
+	private final String method;
+	private final String uri;
+	private final String protocol;
+	
+	private final FullHttpRequest body;
+	private final String contentType;
+	private final HttpMessageToDataConverter converter;
+	private final boolean bodyCanSetMethod;
+	
+	private volatile int pending;
+	private final AtomicBoolean released = new AtomicBoolean();
+	
+	LazyRequestData(MutableData data, FullHttpRequest req, QueryStringDecoder qs, String contentType, HttpMessageToDataConverter converter) {
+		this.data = data;
+		this.qs = qs;
+		this.headers = req.headers();
+		this.method = req.getMethod().name();
+		this.uri = req.getUri();
+		this.protocol = headers.contains(Http2ServerHandler.STREAM_ID) ? "HTTP/2.0" : req.getProtocolVersion().text();
+		this.contentType = contentType;
+		this.converter = converter;
+		this.bodyCanSetMethod = converter instanceof FormUrlEncodedMessageToDataConverter;
+		
+		int sections = PARAMS_SECTION | HEADERS_SECTION | COOKIES_SECTION;
+		
+		if (converter != null) {
+			// held until the response has been written, see release()
+			body = req.retain();
+			sections |= BODY_SECTION;
+		} else {
+			body = null;
+		}
+		
+		pending = sections;
+	}
+	
+	private void decode(Path path) {
+		if (pending == 0) return;
+		if (path.isEmpty()) {
+			decodeAll();
+			return;
+		}
+		PathElement first = path.first();
+		if (first.equals(REQUEST_ELEMENT)) {
+			if (path.length() == 1) {
+				decodeAll();
+				return;
+			}
+			PathElement second = path.get(1);
+			if (second.equals(PARAMS_ELEMENT)) {
+				decode(PARAMS_SECTION);
+			} else if (second.equals(HEADERS_ELEMENT)) {
+				decode(HEADERS_SECTION);
+			} else if (second.equals(COOKIES_ELEMENT)) {
+				decode(COOKIES_SECTION);
+			} else if (second.equals(CONTENT_ELEMENT)) {
+				decode(BODY_SECTION);
+			} else if (bodyCanSetMethod && second.equals(METHOD_ELEMENT)) {
+				// forms can override the method with a _method field
+				decode(BODY_SECTION);
+			}
+		} else if (first.equals(CONTENT_ELEMENT)) {
+			// multipart content goes in at the top level
+			decode(BODY_SECTION);
+		}
+	}
+	
+	private void decodeAll() {
+		if (pending == 0) return;
+		decode(PARAMS_SECTION | HEADERS_SECTION | COOKIES_SECTION | BODY_SECTION);
+	}
+	
+	private synchronized void decode(int sections) {
+		int todo = pending & sections;
+		if (todo == 0) return;
+		pending &= ~todo;
+		if ((todo & PARAMS_SECTION) != 0) decodeParams();
+		if ((todo & HEADERS_SECTION) != 0) decodeHeaders();
+		if ((todo & COOKIES_SECTION) != 0) decodeCookies();
+		if ((todo & BODY_SECTION) != 0) decodeBody();
+	}
+	
+	private void decodeParams() {
+		MutableData params = data.createMapAt(REQUEST_PARAMS);
+		for (Entry<String, List<String>> entry : qs.parameters().entrySet()) {
+			for (String value : entry.getValue()) {
+				params.putOrAppend(dots(entry.getKey()), utf8(value));
+			}
+		}
+	}
+	
+	private void decodeHeaders() {
+		MutableData out = data.createMapAt(REQUEST_HEADERS);
+		for (Entry<String, String> header : headers) {
+			out.put(path(PathElements.name(header.getKey())), utf8(header.getValue()));
+		}
+		if (contentType != null) {
+			out.putString(HttpHeaders.Names.CONTENT_TYPE, contentType);
+		}
+	}
+	
+	private void decodeCookies() {
+		MutableData cookies = data.createMapAt(REQUEST_COOKIES);
+		String cookieHeader = headers.get(HttpHeaders.Names.COOKIE);
+		if (cookieHeader != null) {
+			for (Cookie cookie : CookieDecoder.decode(cookieHeader)) {
+				cookies.putMap(cookie.getName(), c -> {
+					c.putString("value", cookie.getValue());
+					if (cookie.getDomain() != null) c.putString("domain", cookie.getDomain());
+					if (cookie.getPath() != null) c.putString("path", cookie.getPath());
+					if (cookie.getMaxAge() != Long.MIN_VALUE) c.putLong("max-age", cookie.getMaxAge());	
+				});
+			}
+		}
+	}
+	
+	private void decodeBody() {
+		try {
+			if (contentType.startsWith("multipart/")) {
+				converter.processData(body, data, contentType);
+			} else {
+				converter.processData(body, data.mutableAt(REQUEST), contentType);
+			}
+		} catch (Exception e) {
+			throw unchecked(e, "could not decode %s request body", contentType);
+		}
+	}
+	
+	/**
+	 * A request header, without decoding the rest of them.
+	 */
+	String header(String name) {
+		return headers.get(name);
+	}
+	
+	// the request line as it came in, whatever the flow does to the data
+	
+	String method() {
+		return method;
+	}
+	
+	String uri() {
+		return uri;
+	}
+	
+	String protocol() {
+		return protocol;
+	}
+	
+	/**
+	 * Lets go of the request body (and any spooled files) once the response has been written.
+	 */
+	void release() {
+		if (body != null && released.compareAndSet(false, true)) {
+			body.release();
+		}
+	}
+	
+	// reading
+
+	@Override
+	public Optional<Content> getContent(Path path) {
+		decode(path);
+		return data.getContent(path);
+	}
+
+	@Override
+	public Data at(Path path) {
+		decode(path);
+		return data.at(path);
+	}
+	
+	@Override
+	public boolean existsAt(Path path) {
+		decode(path);
+		return data.existsAt(path);
+	}
+
+	@Override
+	public boolean contentExistsAt(Path path) {
+		decode(path);
+		return data.contentExistsAt(path);
+	}
+
+	@Override
+	public void forEachContent(BiConsumer<Path, Content> visitor) {
+		decodeAll();
+		data.forEachContent(visitor);
+	}
+
+	@Override
+	public boolean isPresent() {
+		return true;
+	}
+
+	@Override
+	public boolean isMap() {
+		return true;
+	}
+
+	@Override
+	public boolean isList() {
+		return false;
+	}
+
+	@Override
+	public boolean isContent() {
+		return false;
+	}
+
+	@Override
+	public Iterator<Entry<PathElement, Data>> iterator() {
+		decodeAll();
+		return data.iterator();
+	}
+
+	@Override
+	public Collection<PathElement> elements() {
+		decodeAll();
+		return data.elements();
+	}
+
+	@Override
+	public Collection<Data> values() {
+		decodeAll();
+		return data.values();
+	}
+
+	@Override
+	public int size() {
+		decodeAll();
+		return data.size();
+	}
+
+	@Override
+	public Map<String, Object> toMap() {
+		decodeAll();
+		return data.toMap();
+	}
+
+	@Override
+	public void writeJsonTo(JsonGenerator json) throws IOException {
+		decodeAll();
+		data.writeJsonTo(json);
+	}
+	
+	@Override
+	public String toJson() {
+		decodeAll();
+		return data.toJson();
+	}
+	
+	@Override
+	public String toPrettyJson() {
+		decodeAll();
+		return data.toPrettyJson();
+	}
+
+	@Override
+	public void writeObj(ObjBuilder obj) {
+		decodeAll();
+		data.writeObj(obj);
+	}
+
+	@Override
+	public Hasher hash(Hasher hasher) {
+		decodeAll();
+		return data.hash(hasher);
+	}
+	
+	// writing
+	
+	@Override
+	public MutableData put(Path path, Content content) {
+		decode(path);
+		data.put(path, content);
+		return this;
+	}
+
+	@Override
+	public MutableData put(Path path, Data value) {
+		decode(path);
+		data.put(path, value);
+		return this;
+	}
+
+	@Override
+	public MutableData putOrAppend(Path path, Content content) {
+		decode(path);
+		data.putOrAppend(path, content);
+		return this;
+	}
+
+	@Override
+	public MutableData putOrAppend(Path path, Data value) {
+		decode(path);
+		data.putOrAppend(path, value);
+		return this;
+	}
+
+	@Override
+	public MutableData remove(Path path) {
+		decode(path);
+		data.remove(path);
+		return this;
+	}
+
+	@Override
+	public MutableData createMapAt(Path path) {
+		decode(path);
+		return data.createMapAt(path);
+	}
+
+	@Override
+	public MutableData createListAt(Path path) {
+		decode(path);
+		return data.createListAt(path);
+	}
+
+	@Override
+	public MutableData putMap(Path path, ThrowingConsumer<MapMutation> map) {
+		decode(path);
+		data.putMap(path, map);
+		return this;
+	}
+
+	@Override
+	public MutableData putList(Path path, ThrowingConsumer<ListMutation> list) {
+		decode(path);
+		data.putList(path, list);
+		return this;
+	}
+
+	@Override
+	public void clear() {
+		pending = 0;
+		data.clear();
+	}
+
+	@Override
+	public MutableData mutableCopy() {
+		decodeAll();
+		return data.mutableCopy();
+	}
+
+	@Override
+	public MutableData mutableAt(Path path) {
+		decode(path);
+		return data.mutableAt(path);
+	}
+	
+	@Override
+	public int hashCode() {
+		decodeAll();
+		return data.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		decodeAll();
+		return data.equals(obj);
+	}
+	
+	@Override
+	public String toString() {
+		decodeAll();
+		return data.toString();
+	}
+
+}
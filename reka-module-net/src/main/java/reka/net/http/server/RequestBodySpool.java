@@ -0,0 +1,99 @@
+package reka.net.http.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * Collects one request body, in memory up to maxInMemory bytes and then in a
+ * temporary file.
+ */
+class RequestBodySpool {
+
+	private final int maxInMemory;
+	private final File tmpdir;
+
+	private ByteBuf memory;
+	private File file;
+	private FileChannel channel;
+	private long length;
+
+	RequestBodySpool(int maxInMemory, File tmpdir) {
+		this.maxInMemory = maxInMemory;
+		this.tmpdir = tmpdir;
+	}
+
+	long length() {
+		return length;
+	}
+
+	void append(ByteBuf chunk) throws IOException {
+		int readable = chunk.readableBytes();
+		if (readable == 0) return;
+		if (channel == null && length + readable > maxInMemory) {
+			file = File.createTempFile("reka-upload.", ".tmp", tmpdir);
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			if (memory != null) {
+				write(memory);
+				memory = null;
+			}
+		}
+		if (channel != null) {
+			write(chunk);
+		} else {
+			if (memory == null) {
+				// heap, so it's fine for it to be held onto by the flow until it's garbage
+				memory = Unpooled.buffer(Math.min(maxInMemory, Math.max(readable, 1024)));
+			}
+			memory.writeBytes(chunk, chunk.readerIndex(), readable);
+		}
+		length += readable;
+	}
+
+	private void write(ByteBuf buf) throws IOException {
+		int index = buf.readerIndex();
+		int remaining = buf.readableBytes();
+		while (remaining > 0) {
+			int n = buf.getBytes(index, channel, remaining);
+			index += n;
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Hands the body over to a request, the spool is empty again afterwards.
+	 */
+	SpooledHttpRequest toRequest(HttpRequest head) throws IOException {
+		SpooledHttpRequest req;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			req = new SpooledHttpRequest(head, file, length);
+			file = null;
+		} else {
+			req = new SpooledHttpRequest(head, memory != null ? memory : Unpooled.EMPTY_BUFFER);
+			memory = null;
+		}
+		length = 0;
+		return req;
+	}
+
+	void reset() throws IOException {
+		length = 0;
+		memory = null;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		if (file != null) {
+			file.delete();
+			file = null;
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package reka.net.http.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelPromise;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The promise for writing a response, the encoder fills in the status and body bytes it
+ * actually sent so they can go in the access log.
+ */
+final class ResponsePromise extends DefaultChannelPromise {
+
+	private final AtomicLong bytes = new AtomicLong();
+	private volatile int status;
+	private volatile boolean encoded;
+
+	ResponsePromise(Channel channel) {
+		super(channel);
+	}
+
+	void encoded(int status, long bytes) {
+		this.status = status;
+		this.bytes.addAndGet(bytes);
+		encoded = true;
+	}
+
+	void sent(long bytes) {
+		this.bytes.addAndGet(bytes);
+	}
+
+	/**
+	 * The status sent, or 0 if nothing was.
+	 */
+	int status() {
+		return encoded ? status : 0;
+	}
+
+	/**
+	 * The body bytes sent, or -1 if nothing was.
+	 */
+	long bytes() {
+		return encoded ? bytes.get() : -1;
+	}
+
+}
@@ -0,0 +1,91 @@
+package reka.net.http.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A complete request where the body is either in memory as usual or, if it was 
+ * too big, in a temporary file.
+ * 
+ * The file, and anything else registered with onRelease, is cleaned up when the 
+ * request is finally released.
+ */
+public class SpooledHttpRequest extends DefaultFullHttpRequest {
+	
+	private static final Logger log = LoggerFactory.getLogger(SpooledHttpRequest.class);
+	
+	private final File file;
+	private final long length;
+	private final List<Runnable> onRelease = new ArrayList<>();
+	
+	SpooledHttpRequest(HttpRequest head, ByteBuf content) {
+		super(head.getProtocolVersion(), head.getMethod(), head.getUri(), content);
+		headers().set(head.headers());
+		this.file = null;
+		this.length = content.readableBytes();
+	}
+	
+	SpooledHttpRequest(HttpRequest head, File file, long length) {
+		super(head.getProtocolVersion(), head.getMethod(), head.getUri(), Unpooled.buffer(0));
+		headers().set(head.headers());
+		this.file = file;
+		this.length = length;
+	}
+	
+	public boolean isSpooled() {
+		return file != null;
+	}
+	
+	public File file() {
+		return file;
+	}
+	
+	public long length() {
+		return length;
+	}
+	
+	public void onRelease(Runnable runnable) {
+		synchronized (onRelease) {
+			onRelease.add(runnable);
+		}
+	}
+	
+	@Override
+	public boolean release() {
+		return cleanupIf(super.release());
+	}
+	
+	@Override
+	public boolean release(int decrement) {
+		return cleanupIf(super.release(decrement));
+	}
+	
+	private boolean cleanupIf(boolean released) {
+		if (released) {
+			synchronized (onRelease) {
+				for (Runnable r : onRelease) {
+					try {
+						r.run();
+					} catch (Throwable t) {
+						log.warn("error cleaning up request", t);
+					}
+				}
+				onRelease.clear();
+			}
+			if (file != null && !file.delete() && file.exists()) {
+				log.warn("could not delete spooled request body {}", file);
+			}
+		}
+		return released;
+	}
+
+}
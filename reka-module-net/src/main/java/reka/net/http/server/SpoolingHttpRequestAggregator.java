@@ -0,0 +1,119 @@
+package reka.net.http.server;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Used instead of HttpObjectAggregator, collects the body in memory up to maxInMemory 
+ * bytes and then carries on in a temporary file so the memory used by a connection for 
+ * an upload stays bounded.
+ * 
+ * It produces {@link SpooledHttpRequest}s.
+ */
+public class SpoolingHttpRequestAggregator extends MessageToMessageDecoder<HttpObject> {
+	
+	private final long maxBody;
+	private final RequestBodySpool body;
+	
+	private HttpRequest head;
+	private boolean discarding;
+	
+	public SpoolingHttpRequestAggregator(int maxInMemory, long maxBody, File tmpdir) {
+		this.maxBody = maxBody;
+		this.body = new RequestBodySpool(maxInMemory, tmpdir);
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+		
+		if (msg instanceof FullHttpRequest) {
+			reset();
+			out.add(((FullHttpRequest) msg).retain());
+			return;
+		}
+		
+		if (msg instanceof HttpRequest) {
+			reset();
+			HttpRequest req = (HttpRequest) msg;
+			if (req.getDecoderResult().isFailure()) {
+				ctx.close();
+				return;
+			}
+			if (HttpHeaders.getContentLength(req, -1) > maxBody) {
+				tooLarge(ctx);
+				return;
+			}
+			if (HttpHeaders.is100ContinueExpected(req)) {
+				ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, CONTINUE));
+				req.headers().remove(HttpHeaders.Names.EXPECT);
+			}
+			head = req;
+			discarding = false;
+		}
+		
+		if (msg instanceof HttpContent) {
+			
+			if (head == null || discarding) return;
+			
+			ByteBuf chunk = ((HttpContent) msg).content();
+			
+			if (body.length() + chunk.readableBytes() > maxBody) {
+				reset();
+				tooLarge(ctx);
+				return;
+			}
+			
+			body.append(chunk);
+			
+			if (msg instanceof LastHttpContent) {
+				HttpHeaders.removeTransferEncodingChunked(head);
+				HttpHeaders.setContentLength(head, body.length());
+				out.add(body.toRequest(head));
+				head = null;
+			}
+		}
+		
+	}
+	
+	private void tooLarge(ChannelHandlerContext ctx) {
+		discarding = true;
+		FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, REQUEST_ENTITY_TOO_LARGE);
+		HttpHeaders.setContentLength(response, 0);
+		ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+	}
+	
+	private void reset() throws IOException {
+		head = null;
+		body.reset();
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		reset();
+		super.channelInactive(ctx);
+	}
+	
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		reset();
+		super.handlerRemoved(ctx);
+	}
+
+}
@@ -0,0 +1,170 @@
+package reka.net.http.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reka.data.content.types.StreamContent;
+
+/**
+ * Writes out a stream as http chunks.
+ * 
+ * The source is read on the executor (it might block, e.g. fetching rows) into a small 
+ * queue, and the chunked writer takes from the queue only while the channel is writable.
+ * When the queue is full the producer stops until the writer catches up, so a slow client
+ * slows down the source and at most a few chunks are ever held in memory.
+ */
+class StreamChunkedInput implements ChunkedInput<HttpContent> {
+	
+	private static final int CHUNK_SIZE = 8192;
+	private static final int MAX_QUEUED = 4;
+	
+	private final StreamContent.Source source;
+	private final Executor executor;
+	private final ByteBufAllocator alloc;
+	
+	private final Queue<ByteBuf> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicBoolean producing = new AtomicBoolean();
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private final AtomicBoolean sourceClosed = new AtomicBoolean();
+	
+	private volatile ResponsePromise counter;
+	private volatile Runnable resume;
+	private volatile boolean finished;
+	private volatile Throwable error;
+	private boolean sentLast;
+	
+	StreamChunkedInput(StreamContent.Source source, Executor executor, ByteBufAllocator alloc) {
+		this.source = source;
+		this.executor = executor;
+		this.alloc = alloc;
+	}
+	
+	/**
+	 * Adds the bytes of each chunk to the response's count as it is written.
+	 */
+	void countInto(ResponsePromise promise) {
+		counter = promise;
+	}
+	
+	@Override
+	public boolean isEndOfInput() throws Exception {
+		return sentLast;
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (closed.compareAndSet(false, true)) {
+			if (!producing.get()) {
+				shutdown();
+			}
+			// otherwise the producer shuts down when it notices
+		}
+	}
+
+	@Override
+	public HttpContent readChunk(ChannelHandlerContext ctx) throws Exception {
+		if (sentLast) return null;
+		if (resume == null) {
+			resume = resumer(ctx.handler());
+			schedule();
+		}
+		ByteBuf buf = queue.poll();
+		if (buf != null) {
+			queued.decrementAndGet();
+			schedule();
+			ResponsePromise promise = counter;
+			if (promise != null) promise.sent(buf.readableBytes());
+			return new DefaultHttpContent(buf);
+		}
+		if (finished && queue.isEmpty()) {
+			if (error != null) {
+				// can't send an error now, the client will see a truncated response
+				ctx.channel().close();
+				throw new Exception("stream failed", error);
+			}
+			sentLast = true;
+			return LastHttpContent.EMPTY_LAST_CONTENT;
+		}
+		return null; // the producer will resume the transfer
+	}
+	
+	private static Runnable resumer(ChannelHandler writer) {
+		if (writer instanceof Http2ServerHandler) {
+			return ((Http2ServerHandler) writer)::resumeTransfer;
+		}
+		return ((ChunkedWriteHandler) writer)::resumeTransfer;
+	}
+	
+	private void schedule() {
+		if (!finished && !closed.get() && queued.get() < MAX_QUEUED && producing.compareAndSet(false, true)) {
+			executor.execute(this::produce);
+		}
+	}
+	
+	private void produce() {
+		try {
+			while (!finished && !closed.get() && queued.get() < MAX_QUEUED) {
+				ByteBuf buf = alloc.buffer(CHUNK_SIZE);
+				try (ByteBufOutputStream out = new ByteBufOutputStream(buf)) {
+					finished = !source.next(out);
+				} catch (Throwable t) {
+					buf.release();
+					error = t;
+					finished = true;
+					break;
+				}
+				if (buf.isReadable()) {
+					queue.add(buf);
+					queued.incrementAndGet();
+					resume.run();
+				} else {
+					buf.release();
+				}
+			}
+		} finally {
+			producing.set(false);
+		}
+		if (closed.get()) {
+			shutdown();
+		} else if (finished) {
+			closeSource();
+			resume.run();
+		} else {
+			// the writer might have taken something while we were finishing up
+			schedule();
+		}
+	}
+	
+	private void closeSource() {
+		if (sourceClosed.compareAndSet(false, true)) {
+			source.close();
+		}
+	}
+	
+	private void shutdown() {
+		try {
+			closeSource();
+		} finally {
+			ByteBuf buf;
+			while ((buf = queue.poll()) != null) {
+				buf.release();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import reka.net.http.accesslog.AccessLog;
+import reka.net.http.accesslog.AccessLogFormat;
+
+public class AccessLogTest {
+	
+	private static final InetSocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 41234);
+	
+	private Path dir;
+	
+	@Before
+	public void before() throws IOException {
+		dir = Files.createTempDirectory("reka-access-log");
+	}
+	
+	@After
+	public void after() throws IOException {
+		Files.walk(dir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+	}
+	
+	@Test
+	public void writesCombinedFormat() throws IOException {
+		Path file = dir.resolve("access.log");
+		AccessLog log = new AccessLog(file, AccessLogFormat.COMBINED, 16, 0, 0);
+		log.start();
+		log.record(REMOTE, "example.com", "GET", "/things", "HTTP/1.1", 200, 42, 123, "http://example.com/", "curl/7.0");
+		log.record(REMOTE, "example.com", "POST", "/things", "HTTP/2.0", 0, -1, 5, null, null);
+		log.undeploy();
+		
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertEquals(2, lines.size());
+		assertThat(lines.get(0), startsWith("127.0.0.1 - - ["));
+		assertThat(lines.get(0), containsString("] \"GET /things HTTP/1.1\" 200 42 \"http://example.com/\" \"curl/7.0\" 123"));
+		assertThat(lines.get(1), containsString("\"POST /things HTTP/2.0\" - - \"-\" \"-\" 5"));
+		assertEquals(2, log.written());
+	}
+	
+	@Test
+	public void writesJsonFormat() throws IOException {
+		Path file = dir.resolve("access.json");
+		AccessLog log = new AccessLog(file, AccessLogFormat.JSON, 16, 0, 0);
+		log.start();
+		log.record(REMOTE, "example.com", "GET", "/a\"b", "HTTP/1.1", 404, 9, 7, null, "agent");
+		log.undeploy();
+		
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertEquals(1, lines.size());
+		assertThat(lines.get(0), containsString("\"remote\":\"127.0.0.1\",\"host\":\"example.com\",\"method\":\"GET\",\"path\":\"/a\\\"b\",\"protocol\":\"HTTP/1.1\",\"status\":404,\"bytes\":9,\"us\":7,\"user-agent\":\"agent\"}"));
+	}
+	
+	@Test
+	public void dropsWhenFull() throws IOException {
+		Path file = dir.resolve("access.log");
+		AccessLog log = new AccessLog(file, AccessLogFormat.COMBINED, 4, 0, 0);
+		for (int i = 0; i < 10; i++) {
+			log.record(REMOTE, "example.com", "GET", "/" + i, "HTTP/1.1", 200, 0, 1, null, null);
+		}
+		assertEquals(6, log.dropped());
+		log.start();
+		log.undeploy();
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertEquals(4, lines.size());
+		assertThat(lines.get(3), containsString("GET /3 "));
+	}
+	
+	@Test
+	public void rollsFiles() throws IOException {
+		Path file = dir.resolve("access.log");
+		AccessLog log = new AccessLog(file, AccessLogFormat.COMBINED, 64, 200, 2);
+		log.start();
+		for (int i = 0; i < 20; i++) {
+			log.record(REMOTE, "example.com", "GET", "/" + i, "HTTP/1.1", 200, 0, 1, null, null);
+		}
+		log.undeploy();
+		assertTrue(Files.exists(dir.resolve("access.log.1")));
+		assertTrue(Files.exists(dir.resolve("access.log.2")));
+		assertTrue(!Files.exists(dir.resolve("access.log.3")));
+		assertTrue(Files.size(dir.resolve("access.log.1")) >= 200);
+	}
+
+}
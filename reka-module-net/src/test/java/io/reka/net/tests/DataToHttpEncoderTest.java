@@ -0,0 +1,174 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static reka.data.content.Contents.binary;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.net.http.server.DataToHttpEncoder;
+import reka.util.Path;
+import reka.util.Path.Request;
+import reka.util.Path.Response;
+import reka.util.RenderCache;
+
+public class DataToHttpEncoderTest {
+	
+	private static final byte[] BYTES = "0123456789abcdefghij".getBytes(US_ASCII);
+	
+	private static EmbeddedChannel encode(MutableData data) {
+		EmbeddedChannel channel = new EmbeddedChannel(DataToHttpEncoder.NORMAL);
+		channel.writeOutbound(data);
+		return channel;
+	}
+	
+	// like fs/read gives for a cached file
+	private static MutableData bytes() {
+		return MutableMemoryData.create()
+				.put(Response.CONTENT, binary("text/plain", BYTES))
+				.putString(Response.Headers.LAST_MODIFIED, "Sat, 17 Oct 2026 10:00:00 GMT");
+	}
+	
+	private static String string(ByteBuf buf) {
+		return buf.toString(US_ASCII);
+	}
+	
+	@Test
+	public void sendsEverythingWithoutRange() {
+		FullHttpResponse response = (FullHttpResponse) encode(bytes()).readOutbound();
+		assertEquals(HttpResponseStatus.OK, response.getStatus());
+		assertEquals("bytes", response.headers().get("Accept-Ranges"));
+		assertEquals("20", response.headers().get("Content-Length"));
+	}
+	
+	@Test
+	public void sendsSingleRangeOfBytes() {
+		MutableData data = bytes().putString(Request.Headers.RANGE, "bytes=5-9");
+		FullHttpResponse response = (FullHttpResponse) encode(data).readOutbound();
+		assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 5-9/20", response.headers().get("Content-Range"));
+		assertEquals("5", response.headers().get("Content-Length"));
+		assertEquals("56789", string(response.content()));
+	}
+	
+	@Test
+	public void sendsSuffixRange() {
+		MutableData data = bytes().putString(Request.Headers.RANGE, "bytes=-3");
+		FullHttpResponse response = (FullHttpResponse) encode(data).readOutbound();
+		assertEquals("bytes 17-19/20", response.headers().get("Content-Range"));
+		assertEquals("hij", string(response.content()));
+	}
+	
+	@Test
+	public void sendsMultipleRanges() {
+		MutableData data = bytes().putString(Request.Headers.RANGE, "bytes=0-1, 10-, 12-13");
+		FullHttpResponse response = (FullHttpResponse) encode(data).readOutbound();
+		assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.getStatus());
+		String contentType = response.headers().get("Content-Type");
+		assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+		String boundary = contentType.substring(contentType.indexOf('=') + 1);
+		String expected = 
+				"\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/20\r\n\r\n01" +
+				"\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 10-19/20\r\n\r\nabcdefghij" +
+				"\r\n--" + boundary + "--\r\n";
+		assertEquals(expected, string(response.content()));
+		assertEquals(String.valueOf(expected.length()), response.headers().get("Content-Length"));
+		assertTrue(response.release());
+		assertEquals(0, response.refCnt());
+	}
+	
+	@Test
+	public void ignoresRangeForARenderedPage() {
+		MutableData data = MutableMemoryData.create().putString("name", "nick").putString(Request.Headers.RANGE, "bytes=0-1");
+		RenderCache cache = new RenderCache.Group().create("page", "hello {{name}}", "text/html");
+		cache.render(data, Path.empty(), Response.CONTENT, (map, writer) -> writer.write("hello " + map.get("name")));
+		FullHttpResponse response = (FullHttpResponse) encode(data).readOutbound();
+		assertEquals(HttpResponseStatus.OK, response.getStatus());
+		assertNull(response.headers().get("Accept-Ranges"));
+		assertNull(response.headers().get("Content-Range"));
+		assertEquals("hello nick", string(response.content()));
+		response.release();
+	}
+	
+	@Test
+	public void rejectsUnsatisfiableRange() {
+		MutableData data = bytes().putString(Request.Headers.RANGE, "bytes=50-60");
+		HttpResponse response = (HttpResponse) encode(data).readOutbound();
+		assertEquals(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */20", response.headers().get("Content-Range"));
+	}
+	
+	@Test
+	public void ignoresRangeWhenIfRangeDoesNotMatch() {
+		MutableData data = bytes()
+				.putString(Request.Headers.RANGE, "bytes=5-9")
+				.putString(Request.Headers.IF_RANGE, "\"old\"")
+				.putString(Response.Headers.ETAG, "\"new\"");
+		FullHttpResponse response = (FullHttpResponse) encode(data).readOutbound();
+		assertEquals(HttpResponseStatus.OK, response.getStatus());
+		assertEquals(20, response.content().readableBytes());
+		
+		data.putString(Request.Headers.IF_RANGE, "\"new\"");
+		response = (FullHttpResponse) encode(data).readOutbound();
+		assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.getStatus());
+	}
+	
+	@Test
+	public void sendsFileRegionForRangeOfFile() throws IOException {
+		File file = File.createTempFile("reka-range", ".txt");
+		try {
+			Files.write(file.toPath(), BYTES);
+			MutableData data = MutableMemoryData.create()
+					.put(Response.CONTENT, binary("text/plain", file))
+					.putString(Request.Headers.RANGE, "bytes=10-");
+			EmbeddedChannel channel = encode(data);
+			HttpResponse response = (HttpResponse) channel.readOutbound();
+			assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.getStatus());
+			assertEquals("10", response.headers().get("Content-Length"));
+			FileRegion region = (FileRegion) channel.readOutbound();
+			assertEquals(10, region.position());
+			assertEquals(10, region.count());
+			region.release();
+			assertEquals(LastHttpContent.EMPTY_LAST_CONTENT, channel.readOutbound());
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void notModifiedSinceLastModified() throws IOException {
+		File file = File.createTempFile("reka-range", ".txt");
+		try {
+			Files.write(file.toPath(), BYTES);
+			MutableData data = MutableMemoryData.create()
+					.put(Response.CONTENT, binary("text/plain", file));
+			HttpResponse response = (HttpResponse) encode(data).readOutbound();
+			String lastModified = response.headers().get("Last-Modified");
+			
+			data.putString(Request.Headers.IF_MODIFIED_SINCE, lastModified);
+			EmbeddedChannel channel = encode(data);
+			response = (HttpResponse) channel.readOutbound();
+			assertEquals(HttpResponseStatus.NOT_MODIFIED, response.getStatus());
+			assertNull(response.headers().get("Content-Length"));
+			assertEquals(LastHttpContent.EMPTY_LAST_CONTENT, channel.readOutbound());
+		} finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import reka.net.http.server.Http2ServerHandler;
+
+public class Http2ServerHandlerTest {
+
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int RST_STREAM = 0x3;
+	private static final int SETTINGS = 0x4;
+	private static final int GOAWAY = 0x7;
+	private static final int WINDOW_UPDATE = 0x8;
+
+	private static final int END_STREAM = 0x1;
+	private static final int END_HEADERS = 0x4;
+
+	// RFC 7541 C.4, three requests on one connection with huffman coding and the dynamic table
+	private static final String FIRST = "828684418cf1e3c2e5f23a6ba0ab90f4ff";
+	private static final String SECOND = "828684be5886a8eb10649cbf";
+	private static final String THIRD = "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf";
+
+	private static final class Frame {
+
+		final int type;
+		final int flags;
+		final int streamId;
+		final ByteBuf payload;
+
+		Frame(int type, int flags, int streamId, ByteBuf payload) {
+			this.type = type;
+			this.flags = flags;
+			this.streamId = streamId;
+			this.payload = payload;
+		}
+
+	}
+
+	private final EmbeddedChannel channel = new EmbeddedChannel(new Http2ServerHandler(1024, 1024 * 1024, new File(System.getProperty("java.io.tmpdir"))));
+	private final ByteBuf received = Unpooled.buffer();
+
+	@After
+	public void close() {
+		channel.finish();
+		received.release();
+	}
+
+	private static ByteBuf hex(String hex) {
+		ByteBuf buf = Unpooled.buffer(hex.length() / 2);
+		for (int i = 0; i < hex.length(); i += 2) {
+			buf.writeByte(Integer.parseInt(hex.substring(i, i + 2), 16));
+		}
+		return buf;
+	}
+
+	private static ByteBuf frame(int type, int flags, int streamId, ByteBuf payload) {
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeMedium(payload.readableBytes());
+		buf.writeByte(type);
+		buf.writeByte(flags);
+		buf.writeInt(streamId);
+		buf.writeBytes(payload);
+		payload.release();
+		return buf;
+	}
+
+	private void connect() {
+		ByteBuf start = Unpooled.buffer();
+		start.writeBytes(Http2ServerHandler.PREFACE.duplicate());
+		start.writeBytes(frame(SETTINGS, 0, 0, Unpooled.EMPTY_BUFFER));
+		channel.writeInbound(start);
+		assertEquals(SETTINGS, next().type);
+		assertEquals(WINDOW_UPDATE, next().type);
+		Frame ack = next();
+		assertEquals(SETTINGS, ack.type);
+		assertEquals(1, ack.flags);
+	}
+
+	private Frame next() {
+		Object msg;
+		while ((msg = channel.readOutbound()) != null) {
+			ByteBuf buf = (ByteBuf) msg;
+			received.writeBytes(buf);
+			buf.release();
+		}
+		if (received.readableBytes() < 9) return null;
+		int length = received.getUnsignedMedium(received.readerIndex());
+		if (received.readableBytes() < 9 + length) return null;
+		received.skipBytes(3);
+		int type = received.readUnsignedByte();
+		int flags = received.readUnsignedByte();
+		int streamId = received.readInt();
+		return new Frame(type, flags, streamId, received.readSlice(length));
+	}
+
+	private FullHttpRequest request(int streamId, String block) {
+		channel.writeInbound(frame(HEADERS, END_STREAM | END_HEADERS, streamId, hex(block)));
+		return (FullHttpRequest) channel.readInbound();
+	}
+
+	private void respond(int streamId, String body) {
+		FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer(body, UTF_8));
+		response.headers().set(Http2ServerHandler.STREAM_ID, streamId);
+		response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		HttpHeaders.setContentLength(response, response.content().readableBytes());
+		channel.writeAndFlush(response);
+	}
+
+	private static ByteBuf windowUpdate(int increment) {
+		return Unpooled.buffer(4).writeInt(increment);
+	}
+
+	private static String literal(String name, String value) {
+		// literal header field without indexing, new name (RFC 7541 6.2.2)
+		StringBuilder sb = new StringBuilder("00");
+		for (String s : new String[] { name, value }) {
+			sb.append(String.format("%02x", s.length()));
+			for (byte b : s.getBytes(ISO_8859_1)) {
+				sb.append(String.format("%02x", b));
+			}
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void eachStreamIsARequest() {
+		connect();
+
+		FullHttpRequest first = request(1, FIRST);
+		assertEquals("GET", first.getMethod().name());
+		assertEquals("/", first.getUri());
+		assertEquals("www.example.com", HttpHeaders.getHost(first));
+		assertEquals("1", first.headers().get(Http2ServerHandler.STREAM_ID));
+		first.release();
+
+		FullHttpRequest second = request(3, SECOND);
+		assertEquals("no-cache", second.headers().get("cache-control"));
+		assertEquals("www.example.com", HttpHeaders.getHost(second));
+		second.release();
+
+		FullHttpRequest third = request(5, THIRD);
+		assertEquals("/index.html", third.getUri());
+		assertEquals("custom-value", third.headers().get("custom-key"));
+		assertNull(third.headers().get("cache-control"));
+		third.release();
+	}
+
+	@Test
+	public void collectsTheRequestBody() {
+		connect();
+		channel.writeInbound(frame(HEADERS, END_HEADERS, 1, hex("838684" + literal(":authority", "localhost"))));
+		assertNull(channel.readInbound());
+		channel.writeInbound(frame(DATA, 0, 1, Unpooled.copiedBuffer("hello ", UTF_8)));
+		channel.writeInbound(frame(DATA, END_STREAM, 1, Unpooled.copiedBuffer("there", UTF_8)));
+		FullHttpRequest req = (FullHttpRequest) channel.readInbound();
+		assertEquals("POST", req.getMethod().name());
+		assertEquals("hello there", req.content().toString(UTF_8));
+		assertEquals(11, HttpHeaders.getContentLength(req));
+		req.release();
+	}
+
+	@Test
+	public void writesResponsesToTheirStream() {
+		connect();
+		request(1, FIRST).release();
+		request(3, SECOND).release();
+
+		respond(3, "second");
+		respond(1, "first");
+
+		Frame headers = next();
+		assertEquals(HEADERS, headers.type);
+		assertEquals(3, headers.streamId);
+		assertEquals(END_HEADERS, headers.flags);
+		assertEquals(0x88, headers.payload.getUnsignedByte(0)); // :status 200 from the static table
+		Frame data = next();
+		assertEquals(DATA, data.type);
+		assertEquals(3, data.streamId);
+		assertEquals(END_STREAM, data.flags);
+		assertEquals("second", data.payload.toString(UTF_8));
+
+		assertEquals(1, next().streamId);
+		Frame first = next();
+		assertEquals(1, first.streamId);
+		assertEquals("first", first.payload.toString(UTF_8));
+		assertNull(next());
+	}
+
+	@Test
+	public void waitsForTheWindowToOpen() {
+		connect();
+		// like most clients, only the stream windows hold it back
+		channel.writeInbound(frame(WINDOW_UPDATE, 0, 0, windowUpdate(1024 * 1024)));
+		request(1, FIRST).release();
+		request(3, SECOND).release();
+
+		StringBuilder big = new StringBuilder();
+		while (big.length() < 100000) big.append("0123456789");
+		respond(1, big.toString());
+		respond(3, "small");
+
+		int sent = 0;
+		boolean smallDone = false;
+		Frame frame;
+		while ((frame = next()) != null) {
+			if (frame.type != DATA) continue;
+			assertTrue(frame.payload.readableBytes() <= 16384);
+			if (frame.streamId == 1) {
+				sent += frame.payload.readableBytes();
+				assertFalse((frame.flags & END_STREAM) != 0);
+			} else {
+				smallDone = true;
+			}
+		}
+		assertEquals(65535, sent); // the default initial window
+		assertTrue(smallDone); // didn't wait for the big one
+
+		channel.writeInbound(frame(WINDOW_UPDATE, 0, 1, windowUpdate(100000)));
+
+		Frame last = null;
+		while ((frame = next()) != null) {
+			if (frame.type != DATA) continue;
+			sent += frame.payload.readableBytes();
+			last = frame;
+		}
+		assertEquals(100000, sent);
+		assertNotNull(last);
+		assertEquals(END_STREAM, last.flags);
+	}
+
+	@Test
+	public void dropsTheResponseForAResetStream() {
+		connect();
+		request(1, FIRST).release();
+		channel.writeInbound(frame(RST_STREAM, 0, 1, Unpooled.buffer(4).writeInt(0x8)));
+		respond(1, "too late");
+		assertNull(next());
+		assertTrue(channel.isOpen());
+	}
+
+	@Test
+	public void refusesStreamsItCannotDecode() {
+		connect();
+		channel.writeInbound(frame(HEADERS, END_STREAM | END_HEADERS, 1, hex("82" + "ff")));
+		Frame goAway = next();
+		assertEquals(GOAWAY, goAway.type);
+		assertEquals(0x9, goAway.payload.getInt(4)); // COMPRESSION_ERROR
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void closesWithoutThePreface() {
+		channel.writeInbound(Unpooled.copiedBuffer("GET / HTTP/1.1\r\n\r\n", UTF_8));
+		List<Integer> types = new ArrayList<>();
+		Frame frame;
+		while ((frame = next()) != null) {
+			types.add(frame.type);
+		}
+		assertTrue(types.contains(GOAWAY));
+		assertFalse(channel.isOpen());
+	}
+
+}
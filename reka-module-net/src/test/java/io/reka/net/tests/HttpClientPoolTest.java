@@ -0,0 +1,236 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static reka.util.Path.dots;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.net.http.client.HostConnectionPool;
+import reka.net.http.client.HttpClientPool;
+import reka.net.http.client.HttpClientSettings;
+
+public class HttpClientPoolTest {
+	
+	private EventLoopGroup group;
+	private Channel server;
+	private int port;
+	private HttpClientPool clients;
+	
+	private final AtomicInteger accepted = new AtomicInteger();
+	private final AtomicInteger dropped = new AtomicInteger();
+	
+	@Before
+	public void before() throws InterruptedException {
+		group = new NioEventLoopGroup(2);
+		server = new ServerBootstrap()
+			.group(group)
+			.channel(NioServerSocketChannel.class)
+			.childHandler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					accepted.incrementAndGet();
+					ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(65536), new SimpleChannelInboundHandler<FullHttpRequest>() {
+
+						@Override
+						protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) throws Exception {
+							if (req.getUri().equals("/slow")) return;
+							if (req.getUri().equals("/drop")) {
+								// read it, then go away without answering
+								dropped.incrementAndGet();
+								ctx.close();
+								return;
+							}
+							FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, 
+									Unpooled.copiedBuffer("{\"path\":\"" + req.getUri() + "\"}", UTF_8));
+							res.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+							res.headers().set(HttpHeaders.Names.CONTENT_LENGTH, res.content().readableBytes());
+							if (req.getUri().equals("/close")) {
+								res.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+							}
+							ctx.writeAndFlush(res);
+						}
+						
+					});
+				}
+				
+			})
+			.bind("127.0.0.1", 0).sync().channel();
+		port = ((InetSocketAddress) server.localAddress()).getPort();
+		clients = new HttpClientPool(group, NioSocketChannel.class);
+	}
+	
+	@After
+	public void after() throws InterruptedException {
+		clients.shutdown();
+		server.close().sync();
+		group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+	}
+	
+	private static CompletableFuture<MutableData> get(HostConnectionPool pool, String path) {
+		return send(pool, HttpMethod.GET, path);
+	}
+	
+	private static CompletableFuture<MutableData> send(HostConnectionPool pool, HttpMethod method, String path) {
+		CompletableFuture<MutableData> future = new CompletableFuture<>();
+		pool.send(() -> {
+			DefaultFullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, path);
+			req.headers().set(HttpHeaders.Names.HOST, "127.0.0.1");
+			req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, 0);
+			return req;
+		}, future::complete, future::completeExceptionally);
+		return future;
+	}
+	
+	private static String path(MutableData response) {
+		return response.getString(dots("content.path")).get();
+	}
+	
+	@Test
+	public void reusesKeptAliveConnections() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, HttpClientSettings.DEFAULT);
+		for (int i = 0; i < 5; i++) {
+			assertEquals("/a" + i, path(get(pool, "/a" + i).get(5, TimeUnit.SECONDS)));
+		}
+		assertEquals(1, accepted.get());
+		assertEquals(1, pool.stats().created);
+		assertEquals(4, pool.stats().reused);
+		assertEquals(1, pool.stats().idle);
+	}
+	
+	@Test
+	public void limitsConnectionsPerHost() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, new HttpClientSettings(2, 1, 60000, 5000, 5000));
+		@SuppressWarnings("unchecked")
+		CompletableFuture<MutableData>[] futures = new CompletableFuture[20];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = get(pool, "/b" + i);
+		}
+		for (int i = 0; i < futures.length; i++) {
+			assertEquals("/b" + i, path(futures[i].get(5, TimeUnit.SECONDS)));
+		}
+		assertTrue(accepted.get() <= 2);
+		assertEquals(0, pool.stats().waiting);
+	}
+	
+	@Test
+	public void pipelinesRequests() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, new HttpClientSettings(1, 4, 60000, 5000, 5000));
+		@SuppressWarnings("unchecked")
+		CompletableFuture<MutableData>[] futures = new CompletableFuture[10];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = get(pool, "/c" + i);
+		}
+		for (int i = 0; i < futures.length; i++) {
+			assertEquals("/c" + i, path(futures[i].get(5, TimeUnit.SECONDS)));
+		}
+		assertEquals(1, accepted.get());
+	}
+	
+	@Test
+	public void opensNewConnectionWhenServerCloses() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, HttpClientSettings.DEFAULT);
+		assertEquals("/close", path(get(pool, "/close").get(5, TimeUnit.SECONDS)));
+		assertEquals("/d", path(get(pool, "/d").get(5, TimeUnit.SECONDS)));
+		assertEquals(2, accepted.get());
+	}
+	
+	@Test
+	public void doesNotSendAPostAgainWhenTheServerClosesAfterReadingIt() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, HttpClientSettings.DEFAULT);
+		get(pool, "/h").get(5, TimeUnit.SECONDS);
+		try {
+			send(pool, HttpMethod.POST, "/drop").get(5, TimeUnit.SECONDS);
+			fail("should have failed");
+		} catch (ExecutionException e) {
+			// expected
+		}
+		assertEquals(1, dropped.get());
+	}
+	
+	@Test
+	public void sendsAGetAgainWhenTheServerClosesAfterReadingIt() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, HttpClientSettings.DEFAULT);
+		get(pool, "/h").get(5, TimeUnit.SECONDS);
+		try {
+			get(pool, "/drop").get(5, TimeUnit.SECONDS);
+			fail("should have failed");
+		} catch (ExecutionException e) {
+			// expected
+		}
+		assertEquals(2, dropped.get());
+	}
+	
+	@Test
+	public void timesOutSlowResponses() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, new HttpClientSettings(1, 1, 60000, 5000, 200));
+		try {
+			get(pool, "/slow").get(5, TimeUnit.SECONDS);
+			fail("should have timed out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(1, pool.stats().timeouts);
+		assertEquals("/e", path(get(pool, "/e").get(5, TimeUnit.SECONDS)));
+	}
+	
+	@Test
+	public void evictsIdleConnections() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, new HttpClientSettings(1, 1, 100, 5000, 5000));
+		get(pool, "/f").get(5, TimeUnit.SECONDS);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.stats().open > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, pool.stats().open);
+		assertEquals(1, pool.stats().evicted);
+	}
+
+	@Test
+	public void closesConnectionsWhenUndeployed() throws Exception {
+		HostConnectionPool pool = clients.pool("127.0.0.1", port, false, HttpClientSettings.DEFAULT);
+		get(pool, "/g").get(5, TimeUnit.SECONDS);
+		assertEquals(1, clients.open());
+		clients.undeploy();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.stats().open > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, pool.stats().open);
+		assertEquals(0, clients.open());
+	}
+
+}
@@ -0,0 +1,143 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static reka.data.content.Contents.binary;
+import static reka.data.content.Contents.utf8;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.flow.ops.Operation;
+import reka.net.http.operations.HttpContentUtils;
+import reka.net.http.server.HttpCompression;
+import reka.util.Path.Request;
+import reka.util.Path.Response;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+public class HttpCompressionTest {
+	
+	private static final String TEXT = Strings.repeat("hello compression! ", 200);
+	
+	private static FullHttpResponse encode(MutableData data) {
+		EmbeddedChannel channel = new EmbeddedChannel(HttpCompression.ENABLED.encoder(false));
+		channel.writeOutbound(data);
+		return (FullHttpResponse) channel.readOutbound();
+	}
+	
+	private static byte[] gunzip(InputStream in) throws IOException {
+		try (InputStream gz = new GZIPInputStream(in)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteStreams.copy(gz, out);
+			return out.toByteArray();
+		}
+	}
+	
+	private static byte[] gunzip(ByteBuf buf) throws IOException {
+		return gunzip(new ByteBufInputStream(buf));
+	}
+	
+	@Test
+	public void picksEncodingFromAcceptEncoding() {
+		HttpCompression c = HttpCompression.ENABLED;
+		assertEquals("gzip", c.encodingFor("gzip, deflate"));
+		assertEquals("gzip", c.encodingFor("deflate, gzip"));
+		assertEquals("deflate", c.encodingFor("gzip;q=0.5, deflate"));
+		assertEquals("gzip", c.encodingFor("*"));
+		assertNull(c.encodingFor("gzip;q=0, identity"));
+		assertNull(c.encodingFor(null));
+		assertNull(HttpCompression.NONE.encodingFor("gzip"));
+	}
+	
+	@Test
+	public void matchesContentTypes() {
+		HttpCompression c = HttpCompression.ENABLED;
+		assertTrue(c.compressible("text/html; charset=utf-8", 5000));
+		assertTrue(c.compressible("application/json", 5000));
+		assertFalse(c.compressible("image/png", 5000));
+		assertFalse(c.compressible("text/html", 10));
+	}
+	
+	@Test
+	public void compressesLargeTextResponses() throws IOException {
+		MutableData data = MutableMemoryData.create()
+				.put(Response.CONTENT, utf8(TEXT))
+				.putString(Response.Headers.CONTENT_TYPE, "text/plain")
+				.putString(Request.Headers.ACCEPT_ENCODING, "gzip, deflate");
+		FullHttpResponse response = encode(data);
+		assertEquals("gzip", response.headers().get("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.headers().get("Vary"));
+		assertNull(response.headers().get("Accept-Ranges"));
+		assertEquals(String.valueOf(response.content().readableBytes()), response.headers().get("Content-Length"));
+		assertTrue(response.content().readableBytes() < TEXT.length());
+		assertEquals(TEXT, new String(gunzip(response.content()), UTF_8));
+	}
+	
+	@Test
+	public void leavesResponsesAloneIfClientDoesNotAcceptIt() {
+		MutableData data = MutableMemoryData.create()
+				.put(Response.CONTENT, utf8(TEXT))
+				.putString(Response.Headers.CONTENT_TYPE, "text/plain");
+		FullHttpResponse response = encode(data);
+		assertNull(response.headers().get("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.headers().get("Vary"));
+		assertEquals(String.valueOf(TEXT.length()), response.headers().get("Content-Length"));
+	}
+	
+	@Test
+	public void leavesSmallResponsesAlone() {
+		MutableData data = MutableMemoryData.create()
+				.put(Response.CONTENT, utf8("tiny"))
+				.putString(Response.Headers.CONTENT_TYPE, "text/plain")
+				.putString(Request.Headers.ACCEPT_ENCODING, "gzip");
+		FullHttpResponse response = encode(data);
+		assertNull(response.headers().get("Content-Encoding"));
+		assertEquals("4", response.headers().get("Content-Length"));
+	}
+	
+	@Test
+	public void servesPrecompressedStaticContent() throws IOException {
+		Path tmp = Files.createTempDirectory("reka-compression");
+		Operation op = HttpContentUtils.httpContent(tmp, binary("text/css", TEXT.getBytes(UTF_8)), "text/css", true, HttpCompression.ENABLED);
+		
+		MutableData gzipped = MutableMemoryData.create().putString(Request.Headers.ACCEPT_ENCODING, "gzip");
+		op.call(gzipped, null);
+		assertEquals("gzip", gzipped.getString(Response.Headers.CONTENT_ENCODING).get());
+		assertEquals("Accept-Encoding", gzipped.getString(Response.Headers.VARY).get());
+		String etag = gzipped.getString(Response.Headers.ETAG).get();
+		assertTrue(etag.endsWith("-gzip"));
+		byte[] bytes = gzipped.getContent(Response.CONTENT).get().asBytes();
+		assertArrayEquals(TEXT.getBytes(UTF_8), gunzip(new ByteArrayInputStream(bytes)));
+		
+		MutableData plain = MutableMemoryData.create();
+		op.call(plain, null);
+		assertFalse(plain.existsAt(Response.Headers.CONTENT_ENCODING));
+		assertFalse(etag.equals(plain.getString(Response.Headers.ETAG).get()));
+		
+		MutableData cached = MutableMemoryData.create()
+				.putString(Request.Headers.ACCEPT_ENCODING, "gzip")
+				.putString(Request.Headers.IF_NONE_MATCH, etag);
+		op.call(cached, null);
+		assertEquals(304, cached.getContent(Response.STATUS).get().asInt());
+	}
+	
+}
@@ -0,0 +1,166 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.net.http.server.HttpLimits;
+import reka.net.http.server.Http2ServerHandler;
+import reka.net.http.server.HttpLoadShedder;
+import reka.util.Path;
+
+public class HttpLoadShedderTest {
+	
+	private static EmbeddedChannel channel(HttpLoadShedder shedder) {
+		return new EmbeddedChannel(new HttpRequestDecoder(), new HttpObjectAggregator(1024), shedder.newHandler(shedder.limits()));
+	}
+	
+	private static ByteBuf get() {
+		return Unpooled.copiedBuffer("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n", UTF_8);
+	}
+	
+	private static String response(EmbeddedChannel channel) {
+		Object msg = channel.readOutbound();
+		assertNotNull(msg);
+		return ((DefaultFullHttpResponse) msg).getStatus().toString();
+	}
+	
+	private static long stat(HttpLoadShedder shedder, String name) {
+		MutableData data = MutableMemoryData.create();
+		shedder.statusData(data);
+		return data.getContent(Path.path(name)).get().asLong();
+	}
+	
+	@Test
+	public void rejectsRequestsOverTheInFlightLimit() {
+		HttpLoadShedder shedder = new HttpLoadShedder(new HttpLimits(0, 0, 0, 1, 1024));
+		EmbeddedChannel a = channel(shedder);
+		EmbeddedChannel b = channel(shedder);
+		
+		a.writeInbound(get());
+		FullHttpRequest req = (FullHttpRequest) a.readInbound();
+		assertNotNull(req);
+		req.release();
+		
+		b.writeInbound(get());
+		assertNull(b.readInbound());
+		assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE.toString(), response(b));
+		assertFalse(b.isOpen());
+		assertEquals(1, stat(shedder, "rejected-requests"));
+		
+		// once a has its response there is room again
+		a.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+		assertEquals(0, stat(shedder, "in-flight"));
+		
+		EmbeddedChannel c = channel(shedder);
+		c.writeInbound(get());
+		req = (FullHttpRequest) c.readInbound();
+		assertNotNull(req);
+		req.release();
+	}
+	
+	@Test
+	public void rejectsConnectionsOverTheLimit() {
+		HttpLoadShedder shedder = new HttpLoadShedder(new HttpLimits(0, 0, 1, 0, 1024));
+		EmbeddedChannel a = channel(shedder);
+		EmbeddedChannel b = channel(shedder);
+		
+		b.writeInbound(get());
+		assertNull(b.readInbound());
+		assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE.toString(), response(b));
+		assertEquals(1, stat(shedder, "rejected-connections"));
+		
+		a.finish();
+		assertEquals(0, stat(shedder, "connections"));
+	}
+	
+	@Test
+	public void closesConnectionsThatGoIdleBetweenRequests() {
+		HttpLoadShedder shedder = new HttpLoadShedder(new HttpLimits(60, 60, 0, 0, 0));
+		EmbeddedChannel a = channel(shedder);
+		a.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+		assertFalse(a.isOpen());
+		
+		EmbeddedChannel b = channel(shedder);
+		b.writeInbound(get());
+		((FullHttpRequest) b.readInbound()).release();
+		// still waiting on the flow, that's not the client being idle
+		b.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+		assertTrue(b.isOpen());
+		assertEquals(1, stat(shedder, "idle-closed"));
+	}
+	
+	private static FullHttpRequest get(String stream) {
+		FullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+		req.headers().set(Http2ServerHandler.STREAM_ID, stream);
+		return req;
+	}
+	
+	private static HttpResponse ok(HttpResponse response, String stream) {
+		response.headers().set(Http2ServerHandler.STREAM_ID, stream);
+		return response;
+	}
+	
+	@Test
+	public void countsInterleavedStreamsEachTimeTheyEnd() {
+		HttpLoadShedder shedder = new HttpLoadShedder(HttpLimits.DEFAULT);
+		EmbeddedChannel channel = new EmbeddedChannel(shedder.newHandler(shedder.limits()));
+		channel.writeInbound(get("1"), get("3"), get("5"));
+		assertEquals(3, stat(shedder, "in-flight"));
+		
+		channel.writeOutbound(ok(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK), "1"));
+		channel.writeOutbound(ok(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK), "3"));
+		assertEquals(2, stat(shedder, "in-flight"));
+		channel.writeOutbound(ok(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK), "5"));
+		channel.writeOutbound(LastHttpContent.EMPTY_LAST_CONTENT);
+		assertEquals(1, stat(shedder, "in-flight"));
+		channel.writeOutbound(LastHttpContent.EMPTY_LAST_CONTENT);
+		assertEquals(0, stat(shedder, "in-flight"));
+		channel.finish();
+	}
+	
+	@Test
+	public void limitsAreOffUnlessSet() {
+		HttpLimits limits = HttpLimits.DEFAULT;
+		assertEquals(0, limits.readIdle());
+		assertEquals(0, limits.maxConnections());
+		assertEquals(0, limits.maxInFlight());
+		assertEquals(HttpLimits.DEFAULT_MAX_BODY, limits.maxBodyOrDefault());
+	}
+	
+	@Test
+	public void mergesLimitsFromDeploymentsSharingAPort() {
+		HttpLimits merged = new HttpLimits(30, 0, 100, 0, 0).merge(new HttpLimits(30, 0, 0, 10, 0));
+		assertEquals(30, merged.readIdle());
+		assertEquals(100, merged.maxConnections());
+		assertEquals(10, merged.maxInFlight());
+	}
+	
+	@Test(expected = RuntimeException.class)
+	public void rejectsConflictingLimitsForAPort() {
+		new HttpLimits(0, 0, 100, 0, 0).merge(new HttpLimits(0, 0, 200, 0, 0));
+	}
+	
+}
@@ -0,0 +1,100 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static reka.util.Path.dots;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.net.http.server.HttpRequestToDataDecoder;
+import reka.util.Path;
+import reka.util.Path.Request;
+
+public class HttpRequestToDataDecoderTest {
+	
+	private static MutableData decode(FullHttpRequest req) {
+		EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestToDataDecoder());
+		channel.writeInbound(req);
+		return (MutableData) channel.readInbound();
+	}
+	
+	private static FullHttpRequest request(HttpMethod method, String uri, String contentType, String body) {
+		FullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri, Unpooled.copiedBuffer(body, UTF_8));
+		req.headers().set("Host", "example.com:8080");
+		if (contentType != null) req.headers().set("Content-Type", contentType);
+		return req;
+	}
+	
+	@Test
+	public void decodesEverythingWhenItIsUsed() {
+		FullHttpRequest req = request(HttpMethod.GET, "/some%20where?a=1&a=2&b.c=3", null, "");
+		req.headers().set("Cookie", "session=abc");
+		MutableData data = decode(req);
+		
+		assertEquals("/some where", data.getString(Request.PATH).get());
+		assertEquals("example.com", data.getString(Request.HOST).get());
+		assertEquals("GET", data.getString(Request.METHOD).get());
+		assertEquals("2", data.getString(Request.PARAMS.add("a").add(1)).get());
+		assertEquals("3", data.getString(Request.PARAMS.add(dots("b.c"))).get());
+		assertEquals("example.com:8080", data.getString(Request.HEADERS.add("Host")).get());
+		assertEquals("abc", data.getString(Request.COOKIES.add(dots("session.value"))).get());
+		
+		MutableData expected = MutableMemoryData.create();
+		expected.putMap(Request.PARAMS, params -> {
+			params.putList("a", list -> list.addString("1").addString("2"));
+			params.putMap("b", b -> b.putString("c", "3"));
+		});
+		expected.putMap(Request.HEADERS, headers -> {
+			headers.putString("Host", "example.com:8080");
+			headers.putString("Cookie", "session=abc");
+		});
+		expected.putMap(Request.COOKIES, cookies -> cookies.putMap("session", c -> c.putString("value", "abc")));
+		expected.putString(Request.PATH, "/some where")
+			.putString(Request.PATH_BASE, "")
+			.putString(Request.HOST, "example.com")
+			.putString(Request.METHOD, "GET");
+		
+		List<Path> differences = new ArrayList<>();
+		data.diffContentTo(expected, (path, type, previous, current) -> differences.add(path));
+		assertEquals(emptyList(), differences);
+	}
+	
+	@Test
+	public void writesToLazySectionsKeepTheDecodedValues() {
+		MutableData data = decode(request(HttpMethod.GET, "/?q=x", null, ""));
+		data.putString(Request.HEADERS.add("X-Extra"), "yes");
+		data.remove(Request.PARAMS.add("q"));
+		assertEquals("yes", data.getString(Request.HEADERS.add("X-Extra")).get());
+		assertEquals("example.com:8080", data.getString(Request.HEADERS.add("Host")).get());
+		assertFalse(data.existsAt(Request.PARAMS.add("q")));
+	}
+	
+	@Test
+	public void decodesJsonBody() {
+		MutableData data = decode(request(HttpMethod.POST, "/things", "application/json; charset=utf-8", "{\"name\":\"bob\",\"tags\":[\"a\",\"b\"]}"));
+		assertEquals("bob", data.getString(Request.CONTENT.add("name")).get());
+		assertEquals("b", data.getString(Request.CONTENT.add("tags").add(1)).get());
+		assertEquals("application/json", data.getString(Request.Headers.CONTENT_TYPE).get());
+	}
+	
+	@Test
+	public void formCanOverrideMethod() {
+		MutableData data = decode(request(HttpMethod.POST, "/things", "application/x-www-form-urlencoded", "_method=PUT&name=bob"));
+		assertEquals("PUT", data.getString(Request.METHOD).get());
+		assertEquals("bob", data.getString(Request.CONTENT.add("name")).get());
+	}
+
+}
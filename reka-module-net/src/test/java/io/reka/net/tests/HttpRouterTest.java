@@ -0,0 +1,142 @@
+package io.reka.net.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static reka.util.Path.dots;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.flow.ops.RouteCollector;
+import reka.flow.ops.RouteKey;
+import reka.net.http.configurers.HttpRouterConfigurer.RouteBuilder;
+import reka.net.http.operations.HttpRouter;
+import reka.net.http.operations.HttpRouter.MountRoute;
+import reka.net.http.operations.HttpRouter.Route;
+import reka.runtime.DefaultRouteCollector;
+import reka.util.Path.Request;
+
+public class HttpRouterTest {
+	
+	private final List<Route> routes = new ArrayList<>();
+	
+	private HttpRouterTest route(String method, String path) {
+		routes.add(new RouteBuilder().method(method).path(path).key(RouteKey.named(method + " " + path)).build());
+		return this;
+	}
+	
+	private HttpRouterTest mount(String prefix) {
+		routes.add(new MountRoute(prefix));
+		return this;
+	}
+	
+	private MutableData data;
+	
+	private String call(String method, String path) {
+		HttpRouter router = new HttpRouter(routes, true);
+		Collection<RouteKey> keys = new ArrayList<>();
+		routes.forEach(route -> keys.add(route.key()));
+		keys.add(HttpRouter.OTHERWISE);
+		RouteCollector collector = DefaultRouteCollector.create(keys);
+		data = MutableMemoryData.create().putString(Request.METHOD, method).putString(Request.PATH, path);
+		router.call(data, collector);
+		assertEquals(1, collector.routed().size());
+		return collector.routed().iterator().next().name();
+	}
+	
+	private String param(String path) {
+		return data.getString(dots(path)).orElse(null);
+	}
+	
+	@Test
+	public void staticRoutesAndMethods() {
+		route("GET", "/").route("GET", "/a").route("GET", "/a/").route("POST", "/a");
+		assertEquals("GET /", call("GET", "/"));
+		assertEquals("GET /a", call("GET", "/a"));
+		assertEquals("GET /a/", call("GET", "/a/"));
+		assertEquals("POST /a", call("POST", "/a"));
+		assertEquals("otherwise", call("PUT", "/a"));
+		assertEquals("otherwise", call("GET", "/a/b"));
+	}
+	
+	@Test
+	public void capturesParams() {
+		route("GET", "/users/:id").route("GET", "/users/:id/posts/:{post.id}");
+		assertEquals("GET /users/:id", call("GET", "/users/42"));
+		assertEquals("42", param("id"));
+		assertEquals("GET /users/:id/posts/:{post.id}", call("GET", "/users/42/posts/7"));
+		assertEquals("42", param("id"));
+		assertEquals("7", param("post.id"));
+		assertEquals("otherwise", call("GET", "/users/"));
+		assertEquals("otherwise", call("GET", "/users/42/posts"));
+	}
+	
+	@Test
+	public void staticRoutesBeatParams() {
+		route("GET", "/users/:id").route("GET", "/users/me");
+		assertEquals("GET /users/me", call("GET", "/users/me"));
+		assertFalse(data.existsAt(dots("id")));
+		assertEquals("GET /users/:id", call("GET", "/users/you"));
+	}
+	
+	@Test
+	public void moreVarsWinThenLongerPatterns() {
+		route("GET", "/:a/x").route("GET", "/:a/:b").route("GET", "/:a/xy");
+		assertEquals("GET /:a/:b", call("GET", "/1/x"));
+		assertEquals("1", param("a"));
+		assertEquals("x", param("b"));
+	}
+	
+	@Test
+	public void starredVars() {
+		route("GET", "/files/:rest*").route("GET", "/other/:id/:rest*");
+		assertEquals("GET /files/:rest*", call("GET", "/files/a/b/c"));
+		assertEquals("a/b/c", param("rest"));
+		assertEquals("GET /files/:rest*", call("GET", "/files"));
+		assertEquals("", param("rest"));
+		assertEquals("GET /files/:rest*", call("GET", "/filesystem"));
+		assertEquals("ystem", param("rest"));
+		assertEquals("GET /other/:id/:rest*", call("GET", "/other/5"));
+		assertEquals("5", param("id"));
+		assertEquals("", param("rest"));
+	}
+	
+	@Test
+	public void unusualPatternsStillWork() {
+		route("GET", "/file-:name.json").route("GET", "/opt/:maybe?");
+		assertEquals("GET /file-:name.json", call("GET", "/file-thing.json"));
+		assertEquals("thing", param("name"));
+		assertEquals("GET /opt/:maybe?", call("GET", "/opt/"));
+	}
+	
+	@Test
+	public void mountsComeFirst() {
+		route("GET", "/api/things").mount("/api").mount("/api/v2");
+		assertEquals("prefix /api", call("GET", "/api/things"));
+		assertEquals("/things", data.getString(Request.PATH).get());
+		assertEquals("/api", data.getString(Request.PATH_BASE).get());
+		assertEquals("prefix /api", call("GET", "/api/v2/x"));
+		assertEquals("otherwise", call("GET", "/apix"));
+		assertEquals("prefix /api", call("GET", "/api"));
+		assertEquals("/", data.getString(Request.PATH).get());
+	}
+	
+	@Test
+	public void manyRoutes() {
+		for (int i = 0; i < 500; i++) {
+			route("GET", "/r" + i + "/:id");
+			route("POST", "/r" + i);
+		}
+		assertEquals("GET /r321/:id", call("GET", "/r321/abc"));
+		assertEquals("abc", param("id"));
+		assertEquals("POST /r499", call("POST", "/r499"));
+		assertTrue(call("GET", "/r500/abc").equals("otherwise"));
+	}
+
+}
@@ -0,0 +1,142 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static reka.util.Path.dots;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.content.Content;
+import reka.net.http.server.HttpRequestToDataDecoder;
+import reka.net.http.server.SpooledHttpRequest;
+import reka.net.http.server.SpoolingHttpRequestAggregator;
+import reka.util.Path.Request;
+
+public class SpoolingHttpRequestAggregatorTest {
+	
+	private static final File TMPDIR = new File(System.getProperty("java.io.tmpdir"));
+	
+	private static EmbeddedChannel channel(int maxInMemory, long maxBody) {
+		return new EmbeddedChannel(new HttpRequestDecoder(), new SpoolingHttpRequestAggregator(maxInMemory, maxBody, TMPDIR));
+	}
+	
+	private static EmbeddedChannel dataChannel(int maxInMemory, long maxBody) {
+		return new EmbeddedChannel(new HttpRequestDecoder(), new SpoolingHttpRequestAggregator(maxInMemory, maxBody, TMPDIR), new HttpRequestToDataDecoder());
+	}
+	
+	private static ByteBuf post(String contentType, byte[] body, boolean chunked) {
+		StringBuilder sb = new StringBuilder()
+			.append("POST /upload HTTP/1.1\r\n")
+			.append("Host: localhost\r\n")
+			.append("Content-Type: ").append(contentType).append("\r\n");
+		if (chunked) {
+			sb.append("Transfer-Encoding: chunked\r\n\r\n");
+			ByteBuf buf = Unpooled.buffer();
+			buf.writeBytes(sb.toString().getBytes(UTF_8));
+			for (int i = 0; i < body.length; i += 10) {
+				int n = Math.min(10, body.length - i);
+				buf.writeBytes((Integer.toHexString(n) + "\r\n").getBytes(UTF_8));
+				buf.writeBytes(body, i, n);
+				buf.writeBytes("\r\n".getBytes(UTF_8));
+			}
+			buf.writeBytes("0\r\n\r\n".getBytes(UTF_8));
+			return buf;
+		}
+		sb.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+		return Unpooled.buffer().writeBytes(sb.toString().getBytes(UTF_8)).writeBytes(body);
+	}
+	
+	private static byte[] body(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) bytes[i] = (byte) ('a' + (i % 26));
+		return bytes;
+	}
+	
+	@Test
+	public void keepsSmallBodiesInMemory() {
+		EmbeddedChannel channel = channel(64, 1024);
+		channel.writeInbound(post("text/plain", body(50), false));
+		SpooledHttpRequest req = (SpooledHttpRequest) channel.readInbound();
+		assertFalse(req.isSpooled());
+		assertEquals(50, req.content().readableBytes());
+		req.release();
+	}
+	
+	@Test
+	public void spoolsBigBodiesToDisk() throws IOException {
+		EmbeddedChannel channel = channel(64, 1024);
+		byte[] body = body(500);
+		channel.writeInbound(post("application/octet-stream", body, true));
+		SpooledHttpRequest req = (SpooledHttpRequest) channel.readInbound();
+		assertTrue(req.isSpooled());
+		assertEquals(500, req.length());
+		assertEquals("500", req.headers().get("Content-Length"));
+		assertArrayEquals(body, Files.readAllBytes(req.file().toPath()));
+		File file = req.file();
+		req.release();
+		assertFalse(file.exists());
+	}
+	
+	@Test
+	public void spooledBodyIsFileContent() {
+		EmbeddedChannel channel = dataChannel(64, 1024);
+		channel.writeInbound(post("application/octet-stream", body(500), false));
+		MutableData data = (MutableData) channel.readInbound();
+		Content content = data.getContent(Request.CONTENT).get();
+		assertTrue(content.hasFile());
+		assertEquals(500, content.asFile().length());
+	}
+	
+	@Test
+	public void writesLargeMultipartPartsToDisk() {
+		byte[] file = body(40000);
+		String boundary = "xxBOUNDARYxx";
+		ByteBuf multipart = Unpooled.buffer()
+			.writeBytes(("--" + boundary + "\r\n"
+				+ "Content-Disposition: form-data; name=\"name\"\r\n\r\n"
+				+ "bob\r\n"
+				+ "--" + boundary + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n"
+				+ "Content-Type: text/plain\r\n\r\n").getBytes(UTF_8))
+			.writeBytes(file)
+			.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(UTF_8));
+		byte[] body = new byte[multipart.readableBytes()];
+		multipart.readBytes(body);
+		
+		EmbeddedChannel channel = dataChannel(1024, 1024 * 1024);
+		channel.writeInbound(post("multipart/form-data; boundary=" + boundary, body, false));
+		MutableData data = (MutableData) channel.readInbound();
+		
+		assertEquals("bob", data.getString(dots("content.name")).get());
+		assertEquals("a.txt", data.getString(dots("content.file.filename")).get());
+		Content upload = data.getContent(dots("content.file.data")).get();
+		assertTrue(upload.hasFile());
+		assertTrue(Arrays.equals(file, upload.asBytes()));
+	}
+	
+	@Test
+	public void rejectsBodiesThatAreTooLarge() {
+		EmbeddedChannel channel = channel(64, 100);
+		channel.writeInbound(post("text/plain", body(200), true));
+		assertEquals(null, channel.readInbound());
+		FullHttpResponse response = (FullHttpResponse) channel.readOutbound();
+		assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, response.getStatus());
+		assertFalse(channel.isOpen());
+	}
+
+}
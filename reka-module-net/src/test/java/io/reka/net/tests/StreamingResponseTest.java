@@ -0,0 +1,190 @@
+package io.reka.net.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedWriteHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import reka.data.MutableData;
+import reka.data.content.Contents;
+import reka.data.content.types.StreamContent;
+import reka.data.memory.MutableMemoryData;
+import reka.net.http.server.HttpCompression;
+import reka.util.Path.Response;
+
+public class StreamingResponseTest {
+	
+	private static class Counting implements StreamContent.Source {
+		
+		private final int total;
+		protected final AtomicInteger produced = new AtomicInteger();
+		protected final AtomicBoolean closed = new AtomicBoolean();
+		
+		Counting(int total) {
+			this.total = total;
+		}
+
+		@Override
+		public boolean next(OutputStream out) throws IOException {
+			int n = produced.incrementAndGet();
+			out.write(String.format("{\"n\":%d}\n", n).getBytes(UTF_8));
+			return n < total;
+		}
+
+		@Override
+		public void close() {
+			closed.set(true);
+		}
+		
+	}
+	
+	private static EmbeddedChannel channel() {
+		return new EmbeddedChannel(new ChunkedWriteHandler(), HttpCompression.ENABLED.encoder(false));
+	}
+	
+	private static void write(EmbeddedChannel channel, MutableData data) {
+		channel.write(data);
+		channel.flush();
+	}
+	
+	private static Object read(EmbeddedChannel channel) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < deadline) {
+			channel.runPendingTasks();
+			Object msg = channel.readOutbound();
+			if (msg != null) return msg;
+			Thread.sleep(1);
+		}
+		return null;
+	}
+	
+	@Test
+	public void writesStreamAsChunks() throws InterruptedException {
+		Counting source = new Counting(1000);
+		EmbeddedChannel channel = channel();
+		MutableData data = MutableMemoryData.create().put(Response.CONTENT, Contents.stream("application/x-ndjson", source));
+		write(channel, data);
+		
+		HttpResponse response = (HttpResponse) read(channel);
+		assertTrue(HttpHeaders.isTransferEncodingChunked(response));
+		assertNull(response.headers().get(HttpHeaders.Names.CONTENT_LENGTH));
+		assertEquals("application/x-ndjson", response.headers().get(HttpHeaders.Names.CONTENT_TYPE));
+		
+		StringBuilder body = new StringBuilder();
+		Object msg;
+		while (!((msg = read(channel)) instanceof LastHttpContent)) {
+			HttpContent chunk = (HttpContent) msg;
+			body.append(chunk.content().toString(UTF_8));
+			chunk.release();
+		}
+		
+		String[] lines = body.toString().split("\n");
+		assertEquals(1000, lines.length);
+		assertEquals("{\"n\":1000}", lines[999]);
+		assertTrue(source.closed.get());
+	}
+	
+	@Test
+	public void stopsProducingWhenClientIsNotReading() throws Exception {
+		
+		int chunk = 8192;
+		
+		Counting source = new Counting(Integer.MAX_VALUE) {
+			@Override
+			public boolean next(OutputStream out) throws IOException {
+				produced.incrementAndGet();
+				out.write(new byte[chunk]);
+				return true;
+			}
+		};
+		
+		EventLoopGroup group = new NioEventLoopGroup(2);
+		try {
+			Channel server = new ServerBootstrap()
+				.group(group)
+				.channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(new HttpResponseEncoder(), new ChunkedWriteHandler(), HttpCompression.ENABLED.encoder(false), new ChannelInboundHandlerAdapter() {
+							@Override
+							public void channelActive(ChannelHandlerContext ctx) throws Exception {
+								ctx.writeAndFlush(MutableMemoryData.create().put(Response.CONTENT, Contents.stream("application/octet-stream", source)));
+							}
+						});
+					}
+				})
+				.bind("127.0.0.1", 0).sync().channel();
+			
+			// a client that never reads anything
+			Channel client = new Bootstrap()
+				.group(group)
+				.channel(NioSocketChannel.class)
+				.option(ChannelOption.AUTO_READ, false)
+				.handler(new ChannelInboundHandlerAdapter())
+				.connect(server.localAddress()).sync().channel();
+			
+			int before;
+			long deadline = System.currentTimeMillis() + 5000;
+			do {
+				before = source.produced.get();
+				Thread.sleep(300);
+			} while (source.produced.get() != before && System.currentTimeMillis() < deadline);
+			
+			assertEquals("producer should have stalled", before, source.produced.get());
+			// socket buffers plus the channel high water mark plus a few queued chunks, not everything
+			assertTrue((long) before * chunk < 64L * 1024 * 1024);
+			
+			client.close().sync();
+			deadline = System.currentTimeMillis() + 5000;
+			while (!source.closed.get() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertTrue(source.closed.get());
+			server.close().sync();
+		} finally {
+			group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+		}
+	}
+	
+	@Test
+	public void discardsStreamForHeadRequests() throws InterruptedException {
+		Counting source = new Counting(10);
+		EmbeddedChannel channel = channel();
+		write(channel, MutableMemoryData.create()
+				.put(Response.CONTENT, Contents.stream("application/json", source))
+				.putString(Response.HEAD, "true"));
+		assertTrue(read(channel) instanceof HttpResponse);
+		assertTrue(source.closed.get());
+		assertEquals(0, source.produced.get());
+		assertTrue(!(channel.readOutbound() instanceof FullHttpResponse));
+	}
+
+}
@@ -0,0 +1,241 @@
+package io.reka.net.tests.bench;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reka.net.http.server.Http2ServerHandler;
+import reka.net.http.server.HttpInitializer;
+import reka.net.http.server.HttpLimits;
+import reka.net.http.server.HttpLoadShedder;
+
+/**
+ * A batch of small requests over one connection, one after the other for HTTP/1.1
+ * and all at once as streams for HTTP/2 (prior knowledge), run with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.reka.net.tests.bench.Http2Benchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Http2Benchmark {
+
+	private static final byte[] BODY = "hello".getBytes(UTF_8);
+
+	private static final byte[] H1_REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ISO_8859_1);
+
+	// GET http / with a literal :authority localhost
+	private static final byte[] H2_HEADERS = { (byte) 0x82, (byte) 0x86, (byte) 0x84, 0x01, 0x09, 'l', 'o', 'c', 'a', 'l', 'h', 'o', 's', 't' };
+
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int SETTINGS = 0x4;
+	private static final int GOAWAY = 0x7;
+	private static final int WINDOW_UPDATE = 0x8;
+
+	private static final int END_STREAM = 0x1;
+	private static final int END_HEADERS = 0x4;
+	private static final int ACK = 0x1;
+
+	@Param({"1", "10", "100"})
+	public int requests;
+
+	private NioEventLoopGroup group;
+	private Channel server;
+
+	private Socket h1;
+	private DataInputStream h1in;
+	private OutputStream h1out;
+
+	private Socket h2;
+	private DataInputStream h2in;
+	private OutputStream h2out;
+	private int nextStreamId = 1;
+
+	@Sharable
+	private static class Answer extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			FullHttpRequest req = (FullHttpRequest) msg;
+			FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(BODY));
+			HttpHeaders.setContentLength(response, BODY.length);
+			String streamId = req.headers().get(Http2ServerHandler.STREAM_ID);
+			if (streamId != null) {
+				response.headers().set(Http2ServerHandler.STREAM_ID, streamId);
+			}
+			req.release();
+			ctx.writeAndFlush(response);
+		}
+
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		group = new NioEventLoopGroup(1);
+		server = new ServerBootstrap()
+			.group(group)
+			.channel(NioServerSocketChannel.class)
+			.childHandler(new HttpInitializer(new Answer(), null, new HttpLoadShedder(HttpLimits.DEFAULT)))
+			.bind("localhost", 0).sync().channel();
+		int port = ((InetSocketAddress) server.localAddress()).getPort();
+
+		h1 = connect(port);
+		h1in = new DataInputStream(new BufferedInputStream(h1.getInputStream()));
+		h1out = h1.getOutputStream();
+
+		h2 = connect(port);
+		h2in = new DataInputStream(new BufferedInputStream(h2.getInputStream()));
+		h2out = h2.getOutputStream();
+		ByteArrayOutputStream start = new ByteArrayOutputStream();
+		start.write(Http2ServerHandler.PREFACE.toString(ISO_8859_1).getBytes(ISO_8859_1));
+		frame(start, SETTINGS, 0, 0, new byte[0]);
+		h2out.write(start.toByteArray());
+		h2out.flush();
+	}
+
+	@TearDown
+	public void teardown() throws Exception {
+		h1.close();
+		h2.close();
+		server.close().sync();
+		group.shutdownGracefully().sync();
+	}
+
+	private static Socket connect(int port) throws IOException {
+		Socket socket = new Socket("localhost", port);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+
+	@Benchmark
+	public int http1() throws IOException {
+		int total = 0;
+		for (int i = 0; i < requests; i++) {
+			h1out.write(H1_REQUEST);
+			h1out.flush();
+			int length = -1;
+			String line;
+			while (!(line = readLine(h1in)).isEmpty()) {
+				if (line.regionMatches(true, 0, HttpHeaders.Names.CONTENT_LENGTH + ":", 0, 15)) {
+					length = Integer.parseInt(line.substring(15).trim());
+				}
+			}
+			skip(h1in, length);
+			total += length;
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int http2() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < requests; i++) {
+			frame(out, HEADERS, END_STREAM | END_HEADERS, nextStreamId, H2_HEADERS);
+			nextStreamId += 2;
+		}
+		h2out.write(out.toByteArray());
+		h2out.flush();
+
+		int total = 0;
+		int done = 0;
+		while (done < requests) {
+			int length = h2in.readUnsignedShort() << 8 | h2in.readUnsignedByte();
+			int type = h2in.readUnsignedByte();
+			int flags = h2in.readUnsignedByte();
+			h2in.readInt();
+			skip(h2in, length);
+			switch (type) {
+			case DATA:
+				total += length;
+				if ((flags & END_STREAM) != 0) done++;
+				break;
+			case SETTINGS:
+				if ((flags & ACK) == 0) {
+					frame(h2out, SETTINGS, ACK, 0, new byte[0]);
+				}
+				break;
+			case GOAWAY:
+				throw new IOException("connection closed by the server");
+			}
+		}
+
+		// give back what the responses used of the connection window
+		frame(h2out, WINDOW_UPDATE, 0, 0, new byte[] { (byte) (total >>> 24), (byte) (total >>> 16), (byte) (total >>> 8), (byte) total });
+		h2out.flush();
+		return total;
+	}
+
+	private static void frame(OutputStream out, int type, int flags, int streamId, byte[] payload) throws IOException {
+		out.write(payload.length >>> 16);
+		out.write(payload.length >>> 8);
+		out.write(payload.length);
+		out.write(type);
+		out.write(flags);
+		out.write(streamId >>> 24);
+		out.write(streamId >>> 16);
+		out.write(streamId >>> 8);
+		out.write(streamId);
+		out.write(payload);
+	}
+
+	private static void skip(DataInputStream in, int length) throws IOException {
+		in.readFully(new byte[length]);
+	}
+
+	private static String readLine(DataInputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b < 0) throw new IOException("connection closed by the server");
+			if (b != '\r') sb.append((char) b);
+		}
+		return sb.toString();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(Http2Benchmark.class.getSimpleName()).build()).run();
+	}
+
+}
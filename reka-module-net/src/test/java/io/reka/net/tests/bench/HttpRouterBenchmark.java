@@ -0,0 +1,105 @@
+package io.reka.net.tests.bench;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reka.data.MutableData;
+import reka.data.memory.MutableMemoryData;
+import reka.flow.ops.RouteCollector;
+import reka.flow.ops.RouteKey;
+import reka.net.http.configurers.HttpRouterConfigurer.RouteBuilder;
+import reka.net.http.operations.HttpRouter;
+import reka.net.http.operations.HttpRouter.Route;
+import reka.runtime.DefaultRouteCollector;
+import reka.util.Path.Request;
+
+/**
+ * Routing a request that matches one of the last routes, compared to checking
+ * each route in turn, run with:
+ * 
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.reka.net.tests.bench.HttpRouterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HttpRouterBenchmark {
+	
+	@Param({"10", "100", "1000"})
+	public int routes;
+	
+	private final List<Route> all = new ArrayList<>();
+	private final Collection<RouteKey> keys = new HashSet<>();
+	
+	private HttpRouter router;
+	private String path;
+	
+	@Setup
+	public void setup() {
+		for (int i = 0; i < routes; i++) {
+			add("GET", "/section" + i + "/items/:id");
+			add("POST", "/section" + i + "/items");
+			add("GET", "/section" + i + "/static/:file*");
+		}
+		keys.add(HttpRouter.OTHERWISE);
+		router = new HttpRouter(all, true);
+		path = "/section" + (routes - 1) + "/items/1234";
+	}
+	
+	private void add(String method, String path) {
+		Route route = new RouteBuilder().method(method).path(path).key(RouteKey.named(method + " " + path)).build();
+		all.add(route);
+		keys.add(route.key());
+	}
+	
+	@Benchmark
+	public RouteCollector route() {
+		RouteCollector collector = DefaultRouteCollector.create(keys);
+		router.call(request(), collector);
+		return collector;
+	}
+	
+	@Benchmark
+	public RouteKey linearScan() {
+		MutableData data = request();
+		for (Route route : all) {
+			if (route.matches(HttpMethod.GET, path, data)) {
+				return route.key();
+			}
+		}
+		return null;
+	}
+	
+	private MutableData request() {
+		return MutableMemoryData.create()
+			.putString(Request.METHOD, "GET")
+			.putString(Request.PATH, path);
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(HttpRouterBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -47,6 +47,11 @@ public final class MultiProcessManager implements ProcessManager {
 		all.forEach(m -> m.addListener(consumer));
 	}
 
+	@Override
+	public void removeListener(Consumer<String> consumer) {
+		all.forEach(m -> m.removeListener(consumer));
+	}
+
 	@Override
 	public boolean up() {
 		return all.stream().anyMatch(StatusDataProvider::up);
@@ -10,6 +10,7 @@ import static reka.util.Util.unchecked;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -44,6 +45,9 @@ public class ProcessConfigurer extends ModuleConfigurer {
 	@Conf.At("command")
 	public void command(String val) {
 		command = toArray(Splitter.on(" ").split(val), String.class); // TODO make it better, splitting on space is just wrong!
+		if (command[0].contains("/")) {
+			readsFile(Paths.get(command[0]));
+		}
 	}
 	
 	@Conf.At("noreply")
@@ -95,9 +99,13 @@ public class ProcessConfigurer extends ModuleConfigurer {
 				
 				ProcessManager manager = ctx.get(PROCESS_MANAGER);
 				
-				manager.addListener(line -> {
+				Consumer<String> listener = line -> {
 					flow.prepare().mutableData(MutableMemoryData.create().putString("out", line)).run();
-				});
+				};
+				
+				manager.addListener(listener);
+				
+				app.onUndeploy("remove listener", () -> manager.removeListener(listener));
 				
 			});
 		}
@@ -125,8 +133,8 @@ public class ProcessConfigurer extends ModuleConfigurer {
 		
 		app.registerStatusProvider(() -> ctx.get(PROCESS_MANAGER));
 		
-		app.onUndeploy("kill process", () -> {
-			ctx.lookup(PROCESS_MANAGER).ifPresent(ProcessManager::shutdown);
+		app.onUndeploy("kill process", (idv, store) -> {
+			store.lookup(PROCESS_MANAGER).ifPresent(ProcessManager::shutdown);
 		});
 		
 		app.defineOperation(root(), provider -> new ProcessCallConfigurer(noreply));
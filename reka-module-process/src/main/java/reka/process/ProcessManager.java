@@ -16,5 +16,6 @@ public interface ProcessManager extends StatusDataProvider {
 	void send(String input, Consumer<String> rely);
 	void shutdown();
 	void addListener(Consumer<String> reply);
+	void removeListener(Consumer<String> reply);
 	
 }
\ No newline at end of file
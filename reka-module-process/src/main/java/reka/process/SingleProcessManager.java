@@ -120,6 +120,11 @@ public final class SingleProcessManager implements ProcessManager {
 		lineTriggers.add(consumer);
 	}
 
+	@Override
+	public void removeListener(Consumer<String> consumer) {
+		lineTriggers.remove(consumer);
+	}
+
 	@Override
 	public boolean up() {
 		return process.isAlive();